@@ -0,0 +1,60 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The relaxation kernel of the JDK Vector API: a block of friends per step, as many as
+ * the preferred double vector has lanes. The weights, distances and epochs of the friends
+ * are gathered through the friend indices, du is added and compared in every lane at once,
+ * and the lanes that improve are read off the mask. The tail of a block goes through the
+ * scalar kernel.
+ *
+ * The Vector API is an incubator module: this class is compiled and run with
+ * --add-modules jdk.incubator.vector, and RelaxationKernel.best() falls back to the
+ * scalar kernel without it.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class VectorRelaxationKernel implements RelaxationKernel {
+
+	private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+	// the ints of the epochs, as many lanes as the doubles
+	private static final VectorSpecies<Integer> INTS =
+			IntVector.SPECIES_PREFERRED.withShape(VectorShape.forBitSize(DOUBLES.length() * Integer.SIZE));
+
+	@Override
+	public String getName() {
+		return "vector " + DOUBLES.length() + "x" + Double.SIZE;
+	}
+
+	@Override
+	public boolean isVectorised() {
+		return DOUBLES.length() > 1;
+	}
+
+	@Override
+	public int relax(int[] targets, int from, int to, double du, double[] w, double[] dist, int[] seen, int epoch, int[] improved) {
+		int lanes = DOUBLES.length();
+		int bound = from + DOUBLES.loopBound(to - from);
+		DoubleVector base = DoubleVector.broadcast(DOUBLES, du);
+		int count = 0;
+		int i = from;
+		for (; i < bound; i += lanes) {
+			DoubleVector d = DoubleVector.fromArray(DOUBLES, w, 0, targets, i).add(base);
+			DoubleVector current = DoubleVector.fromArray(DOUBLES, dist, 0, targets, i);
+			VectorMask<Integer> stale = IntVector.fromArray(INTS, seen, 0, targets, i).compare(VectorOperators.NE, epoch);
+			VectorMask<Double> better = d.compare(VectorOperators.LT, current).or(stale.cast(DOUBLES));
+			// skip the walk over the mask when no lane improves
+			if (!better.anyTrue())
+				continue;
+			for (long bits = better.toLong(); bits != 0; bits &= bits - 1) {
+				improved[count++] = targets[i + Long.numberOfTrailingZeros(bits)];
+			}
+		}
+		return ScalarRelaxationKernel.relax(targets, i, to, du, w, dist, seen, epoch, improved, count);
+	}
+}
@@ -1,5 +1,6 @@
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -157,4 +158,25 @@ public class AdjacencyListMap<V,E,D> implements Graph<V,E,D>{
 	public void remove(V e) {
 		network.remove(e);
 	}
+	
+	/**
+	 * Estimates the memory retained by the id map, the vertex objects and the friend sets,
+	 * assuming boxed ids, skills and distances and HashSet friend sets.
+	 * @return the estimated bytes of each structure by name
+	 */
+	@Override
+	public Map<String, Long> memoryFootprint() {
+		long n = network.size();
+		long friendSets = 0;
+		for (Vertex<V,E,D> v : network.values()) {
+			long friends = v.getFriends() == null ? 0 : v.getFriends().size();
+			friendSets += MemoryEstimate.hashSet(friends) + friends * MemoryEstimate.BOXED;
+		}
+		Map<String, Long> res = new LinkedHashMap<String, Long>();
+		res.put("id map", MemoryEstimate.hashMap(n) + n * MemoryEstimate.BOXED);
+		// a User has five references and the visited flag, plus its boxed skills and distance
+		res.put("vertices", n * (MemoryEstimate.object(5, 1) + 2 * MemoryEstimate.BOXED));
+		res.put("friend sets", friendSets);
+		return res;
+	}
 }
@@ -0,0 +1,284 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Validates the friend lists of a loaded graph and repairs them in place, so the searches
+ * can rely on every friend id having a record and on friendship being symmetric:
+ * <ul>
+ * <li>friend ids without a record of their own (dangling ids) are dropped,</li>
+ * <li>users listed as their own friend lose the self-loop,</li>
+ * <li>a friendship listed by only one of the two users is added to the other.</li>
+ * </ul>
+ * The friend lists are checked on several threads against a hash table of the ids and
+ * then as sorted arrays of dense ids; only the users whose list changes are written
+ * back, on the calling thread.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class AdjacencyValidator {
+
+	private static final int CHUNK = 1024;		// users per unit of work
+
+	/**
+	 * What the validation found and repaired.
+	 */
+	public static class Report {
+		private final int users;
+		private final long danglingLinks;
+		private final int danglingIds;
+		private final long selfLoops;
+		private final long oneSidedLinks;
+		private final int repairedUsers;
+		private final long elapsedMillis;
+
+		Report(int users, long danglingLinks, int danglingIds, long selfLoops, long oneSidedLinks, int repairedUsers, long elapsedMillis) {
+			this.users = users;
+			this.danglingLinks = danglingLinks;
+			this.danglingIds = danglingIds;
+			this.selfLoops = selfLoops;
+			this.oneSidedLinks = oneSidedLinks;
+			this.repairedUsers = repairedUsers;
+			this.elapsedMillis = elapsedMillis;
+		}
+
+		/**
+		 * Returns the number of users checked.
+		 * @return the number of users
+		 */
+		public int getUsers() {
+			return users;
+		}
+
+		/**
+		 * Returns the number of friend links to ids without a record, which were dropped.
+		 * @return the number of dangling links
+		 */
+		public long getDanglingLinks() {
+			return danglingLinks;
+		}
+
+		/**
+		 * Returns the number of distinct ids without a record that were listed as friends.
+		 * @return the number of dangling ids
+		 */
+		public int getDanglingIds() {
+			return danglingIds;
+		}
+
+		/**
+		 * Returns the number of users listed as their own friend.
+		 * @return the number of self-loops removed
+		 */
+		public long getSelfLoops() {
+			return selfLoops;
+		}
+
+		/**
+		 * Returns the number of friendships listed by only one of the two users, whose
+		 * missing direction was added.
+		 * @return the number of one-sided links
+		 */
+		public long getOneSidedLinks() {
+			return oneSidedLinks;
+		}
+
+		/**
+		 * Returns the number of users whose friend list was rewritten.
+		 * @return the number of repaired users
+		 */
+		public int getRepairedUsers() {
+			return repairedUsers;
+		}
+
+		/**
+		 * Returns the time the validation took.
+		 * @return the elapsed time in milliseconds
+		 */
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		/**
+		 * Returns whether the graph was valid already.
+		 * @return <b>true</b> if nothing was repaired
+		 */
+		public boolean isClean() {
+			return repairedUsers == 0;
+		}
+
+		@Override
+		public String toString() {
+			return "Report [users=" + users + ", danglingLinks=" + danglingLinks + ", danglingIds=" + danglingIds
+					+ ", selfLoops=" + selfLoops + ", oneSidedLinks=" + oneSidedLinks + ", repairedUsers="
+					+ repairedUsers + ", elapsedMillis=" + elapsedMillis + "]";
+		}
+	}
+
+	/**
+	 * Checks and repairs the friend lists of the graph.
+	 * @param graph the graph, which must not be modified by other threads meanwhile
+	 * @param threads the number of threads checking the friend lists
+	 * @return what was found and repaired
+	 */
+	public static Report validate(Graph<Long, Double, Double> graph, int threads) {
+		long start = System.nanoTime();
+		List<Vertex<Long, Double, Double>> users = new ArrayList<Vertex<Long, Double, Double>>(graph.getAllVertices());
+		int n = users.size();
+		long[] ids = new long[n];
+		for (int i = 0; i < n; i++) {
+			ids[i] = users.get(i).getId();
+		}
+		// open addressing table from id to dense id, probed with the mixed id
+		int mask = Integer.highestOneBit(Math.max(1, n) * 2 - 1) * 2 - 1;
+		int[] slots = new int[mask + 1];
+		Arrays.fill(slots, -1);
+		for (int i = 0; i < n; i++) {
+			int h = mix(ids[i]) & mask;
+			while (slots[h] >= 0) {
+				h = (h + 1) & mask;
+			}
+			slots[h] = i;
+		}
+
+		// pass 1: sorted friend lists of dense ids, without dangling ids and self-loops
+		int[][] friends = new int[n][];
+		boolean[] changed = new boolean[n];
+		LongAdder dangling = new LongAdder();
+		LongAdder selfLoops = new LongAdder();
+		Set<Long> danglingIds = ConcurrentHashMap.newKeySet();
+		parallel(threads, n, (from, to) -> {
+			for (int i = from; i < to; i++) {
+				Set<Long> fs = users.get(i).getFriends();
+				int[] row = new int[fs == null ? 0 : fs.size()];
+				int count = 0;
+				if (fs != null) {
+					for (Long f : fs) {
+						int j = denseOf(ids, slots, mask, f);
+						if (j == i) {
+							selfLoops.increment();
+							changed[i] = true;
+						} else if (j < 0) {
+							dangling.increment();
+							danglingIds.add(f);
+							changed[i] = true;
+						} else {
+							row[count++] = j;
+						}
+					}
+				}
+				row = Arrays.copyOf(row, count);
+				Arrays.sort(row);
+				friends[i] = row;
+			}
+		});
+
+		// pass 2: links whose reverse is missing, as (user, friend to add) pairs
+		List<int[]> missing = new ArrayList<int[]>();
+		parallel(threads, n, (from, to) -> {
+			int[] pairs = new int[16];
+			int count = 0;
+			for (int i = from; i < to; i++) {
+				for (int j : friends[i]) {
+					if (Arrays.binarySearch(friends[j], i) < 0) {
+						if (count == pairs.length)
+							pairs = Arrays.copyOf(pairs, count * 2);
+						pairs[count++] = j;
+						pairs[count++] = i;
+					}
+				}
+			}
+			if (count > 0) {
+				synchronized (missing) {
+					missing.add(Arrays.copyOf(pairs, count));
+				}
+			}
+		});
+
+		// pass 3: write back the lists that changed
+		List<List<Long>> added = new ArrayList<List<Long>>(n);
+		for (int i = 0; i < n; i++) {
+			added.add(null);
+		}
+		long oneSided = 0;
+		for (int[] pairs : missing) {
+			for (int k = 0; k < pairs.length; k += 2) {
+				int j = pairs[k];
+				if (added.get(j) == null)
+					added.set(j, new ArrayList<Long>());
+				added.get(j).add(ids[pairs[k + 1]]);
+				oneSided++;
+			}
+		}
+		int repaired = 0;
+		for (int i = 0; i < n; i++) {
+			if (!changed[i] && added.get(i) == null)
+				continue;
+			Set<Long> fs = new HashSet<Long>();
+			for (int j : friends[i]) {
+				fs.add(ids[j]);
+			}
+			if (added.get(i) != null)
+				fs.addAll(added.get(i));
+			users.get(i).setFriends(fs);
+			repaired++;
+		}
+		return new Report(n, dangling.sum(), danglingIds.size(), selfLoops.sum(), oneSided, repaired,
+				(System.nanoTime() - start) / 1000000);
+	}
+
+	/**
+	 * Returns the dense id of a user id, or -1 if the id has no record.
+	 */
+	private static int denseOf(long[] ids, int[] slots, int mask, long id) {
+		for (int h = mix(id) & mask; slots[h] >= 0; h = (h + 1) & mask) {
+			if (ids[slots[h]] == id)
+				return slots[h];
+		}
+		return -1;
+	}
+
+	private static int mix(long id) {
+		long h = id * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * A range of users checked by one thread.
+	 */
+	private interface RangeTask {
+		void run(int from, int to);
+	}
+
+	/**
+	 * Runs the task over the users 0 to n - 1 in chunks, on a few threads.
+	 */
+	private static void parallel(int threads, int n, RangeTask task) {
+		AtomicInteger next = new AtomicInteger();
+		Runnable worker = () -> {
+			for (int from = next.getAndAdd(CHUNK); from < n; from = next.getAndAdd(CHUNK)) {
+				task.run(from, Math.min(n, from + CHUNK));
+			}
+		};
+		Thread[] pool = new Thread[Math.max(1, Math.min(threads, (n + CHUNK - 1) / CHUNK)) - 1];
+		for (int j = 0; j < pool.length; j++) {
+			pool[j] = new Thread(worker, "adjacency-validator-" + j);
+			pool[j].start();
+		}
+		worker.run();
+		for (Thread t : pool) {
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("interrupted while validating the friend lists", e);
+			}
+		}
+	}
+}
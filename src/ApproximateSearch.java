@@ -0,0 +1,231 @@
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Queue;
+
+/**
+ * Bidirectional Dijkstra search that may stop early with a path whose cost is within
+ * a factor (1 + epsilon) of the shortest one. A forward search from the source and a
+ * backward search from the destination (over the transposed index) run in turn; the
+ * cheapest path through a user reached by both is the best path U found so far, and
+ * the sum of the smallest keys left in both queues is a lower bound L of every path
+ * not found yet. The search stops as soon as U &lt;= (1 + epsilon) * L, so the returned
+ * path costs at most U / min(U, L) times the optimum, which is the bound it reports.
+ * With epsilon 0 the search is exact.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class ApproximateSearch {
+
+	private final GraphIndex graph;
+	private final GraphIndex reverse;
+	private final double[] weights;
+
+	// forward search from the source
+	private final double[] distForward;
+	private final int[] pred;			// previous user on the path from the source
+	private final int[] seenForward;
+	private final int[] settledForward;
+	private final Queue<Entry<Integer, Double>> forward;
+
+	// backward search from the destination
+	private final double[] distBackward;
+	private final int[] succ;			// next user on the path to the destination
+	private final int[] seenBackward;
+	private final int[] settledBackward;
+	private final Queue<Entry<Integer, Double>> backward;
+
+	private int epoch;
+	private int settledCount;
+	private double lowerBound;
+
+	// best path found so far: its cost and the user where both searches met
+	private double best;
+	private int meet;
+
+	/**
+	 * Constructor
+	 * @param graph the graph to search
+	 * @param weights the cost of stepping onto each user
+	 */
+	public ApproximateSearch(GraphIndex graph, double[] weights) {
+		int n = graph.size();
+		this.graph = graph;
+		this.reverse = graph.transpose();
+		this.weights = weights;
+		this.distForward = new double[n];
+		this.pred = new int[n];
+		this.seenForward = new int[n];
+		this.settledForward = new int[n];
+		this.forward = new PriorityQueue<>();
+		this.distBackward = new double[n];
+		this.succ = new int[n];
+		this.seenBackward = new int[n];
+		this.settledBackward = new int[n];
+		this.backward = new PriorityQueue<>();
+	}
+
+	/**
+	 * Returns a path from source to destination that costs at most (1 + epsilon) times
+	 * the cheapest one.
+	 * @param source the dense id of the source
+	 * @param destination the dense id of the destination
+	 * @param epsilon the accepted relative error, 0 for the shortest path
+	 * @return the path or null if the destination cannot be reached
+	 */
+	public WeightedPath find(int source, int destination, double epsilon) {
+		if (epsilon < 0)
+			throw new IllegalArgumentException("epsilon must not be negative: " + epsilon);
+		reset();
+		if (source == destination) {
+			lowerBound = 0.0;
+			return new WeightedPath(new int[] { source }, 0.0);
+		}
+		seenForward[source] = epoch;
+		distForward[source] = 0.0;
+		pred[source] = -1;
+		forward.add(new Entry<Integer, Double>(source, 0.0));
+		seenBackward[destination] = epoch;
+		distBackward[destination] = 0.0;
+		succ[destination] = -1;
+		backward.add(new Entry<Integer, Double>(destination, 0.0));
+
+		// an empty queue means that side has settled everything it can reach, so best is exact
+		double bound = Double.POSITIVE_INFINITY;
+		while (skipSettled(forward, settledForward) && skipSettled(backward, settledBackward)) {
+			bound = forward.peek().getDistance() + backward.peek().getDistance();
+			if (best <= (1.0 + epsilon) * bound)
+				break;
+			bound = Double.POSITIVE_INFINITY;
+			// expand the smaller frontier
+			if (forward.size() <= backward.size())
+				expandForward();
+			else
+				expandBackward();
+		}
+		lowerBound = Math.min(best, bound);
+		if (meet < 0)
+			return null;
+		return new WeightedPath(pathThrough(meet), best);
+	}
+
+	/**
+	 * Returns the lower bound of the shortest path proven by the last search. It equals
+	 * the cost of the returned path when the search found the shortest path.
+	 * @return the lower bound
+	 */
+	public double lowerBound() {
+		return lowerBound;
+	}
+
+	/**
+	 * Returns the number of users settled by both directions of the last search.
+	 * @return the number of settled users
+	 */
+	public int settledCount() {
+		return settledCount;
+	}
+
+	private void reset() {
+		if (++epoch == Integer.MAX_VALUE) {
+			Arrays.fill(seenForward, 0);
+			Arrays.fill(settledForward, 0);
+			Arrays.fill(seenBackward, 0);
+			Arrays.fill(settledBackward, 0);
+			epoch = 1;
+		}
+		forward.clear();
+		backward.clear();
+		settledCount = 0;
+		best = Double.POSITIVE_INFINITY;
+		meet = -1;
+	}
+
+	/**
+	 * Drops the stale entries at the head of the queue.
+	 * @return <b>true</b> if the queue is not empty
+	 */
+	private boolean skipSettled(Queue<Entry<Integer, Double>> pq, int[] settled) {
+		while (!pq.isEmpty() && settled[pq.peek().getId()] == epoch) {
+			pq.poll();
+		}
+		return !pq.isEmpty();
+	}
+
+	private void expandForward() {
+		int u = forward.poll().getId();
+		settledForward[u] = epoch;
+		settledCount++;
+		int[] offsets = graph.offsets();
+		int[] targets = graph.targets();
+		double du = distForward[u];
+		for (int i = offsets[u], end = offsets[u + 1]; i < end; i++) {
+			int f = targets[i];
+			double d = du + weights[f];
+			if (seenForward[f] == epoch && distForward[f] <= d)
+				continue;
+			seenForward[f] = epoch;
+			distForward[f] = d;
+			pred[f] = u;
+			forward.add(new Entry<Integer, Double>(f, d));
+			if (seenBackward[f] == epoch)
+				meet(f, d + distBackward[f]);
+		}
+	}
+
+	private void expandBackward() {
+		int v = backward.poll().getId();
+		settledBackward[v] = epoch;
+		settledCount++;
+		int[] offsets = reverse.offsets();
+		int[] targets = reverse.targets();
+		// every user pointing at v pays for stepping onto v
+		double d = distBackward[v] + weights[v];
+		for (int i = offsets[v], end = offsets[v + 1]; i < end; i++) {
+			int f = targets[i];
+			if (seenBackward[f] == epoch && distBackward[f] <= d)
+				continue;
+			seenBackward[f] = epoch;
+			distBackward[f] = d;
+			succ[f] = v;
+			backward.add(new Entry<Integer, Double>(f, d));
+			if (seenForward[f] == epoch)
+				meet(f, distForward[f] + d);
+		}
+	}
+
+	private void meet(int v, double cost) {
+		if (cost < best) {
+			best = cost;
+			meet = v;
+		}
+	}
+
+	/**
+	 * Joins the forward path to v and the backward path from v.
+	 */
+	private int[] pathThrough(int v) {
+		int length = 0;
+		for (int u = v; u != -1; u = pred[u]) {
+			length++;
+		}
+		for (int u = succ[v]; u != -1; u = succ[u]) {
+			length++;
+		}
+		int[] path = new int[length];
+		int i = 0;
+		for (int u = v; u != -1; u = pred[u]) {
+			path[i++] = u;
+		}
+		// the forward part was written backwards
+		for (int a = 0, b = i - 1; a < b; a++, b--) {
+			int t = path[a];
+			path[a] = path[b];
+			path[b] = t;
+		}
+		for (int u = succ[v]; u != -1; u = succ[u]) {
+			path[i++] = u;
+		}
+		return path;
+	}
+}
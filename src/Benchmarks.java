@@ -0,0 +1,686 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Command line benchmarks over a dataset.
+ *
+ * <pre>
+ * java -cp bin:json-simple-1.1.jar Benchmarks &lt;benchmark&gt; [dataset] [queries]
+ * </pre>
+ *
+ * The dataset defaults to task.json and the number of queries to 200.
+ * Every benchmark runs the same random source/destination pairs (fixed seed)
+ * against the alternatives it compares and checks that the path costs agree.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class Benchmarks {
+
+	private static final long SEED = 42;
+
+	/**
+	 * Application entry point.
+	 * @param args the benchmark name, the dataset and the number of queries
+	 */
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			System.out.println("usage: Benchmarks compression|ordering|approximate|oracle|labels|hubs|msbfs|relax [dataset] [queries]");
+			return;
+		}
+		String dataset = args.length > 1 ? args[1] : "task.json";
+		int queries = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+		switch (args[0]) {
+		case "compression":
+			compression(dataset, queries);
+			break;
+		case "ordering":
+			ordering(dataset, queries);
+			break;
+		case "approximate":
+			approximate(dataset, queries);
+			break;
+		case "oracle":
+			oracle(dataset, queries);
+			break;
+		case "labels":
+			labels(dataset, queries);
+			break;
+		case "hubs":
+			hubs(args.length > 1 ? args[1] : "100000", queries);
+			break;
+		case "msbfs":
+			msbfs(dataset, queries);
+			break;
+		case "relax":
+			relax(args.length > 1 ? args[1] : "100000", queries);
+			break;
+		default:
+			System.out.println("unknown benchmark: " + args[0]);
+		}
+	}
+
+	/**
+	 * Compares the HashMap/HashSet adjacency with the compressed adjacency:
+	 * bits per edge, the latency of findShortestPathBetween and the memory report of each.
+	 */
+	static void compression(String dataset, int queries) {
+		SocialNetwork plain = load(dataset, new SocialNetwork());
+		CompressedAdjacencyGraph compressed = new CompressedAdjacencyGraph();
+		SocialNetwork packed = load(dataset, new SocialNetwork(() -> compressed));
+
+		long[][] pairs = randomPairs(plain, queries);
+		// a HashSet<Long> entry is a HashMap.Node (32 bytes), a Long (16) and a table slot (4)
+		long edges = compressed.numEdges();
+		System.out.printf("edges: %d%n", edges);
+		System.out.printf("HashSet<Long>: ~%.1f bits/edge%n", 8.0 * 52);
+		System.out.printf("compressed:    %.2f bits/edge (%d bytes)%n", compressed.bitsPerEdge(), compressed.adjacencyBytes());
+
+		int mismatches = 0;
+		for (long[] p : pairs) {
+			double x = cost(plain, plain.findShortestPathBetween(plain.getUser(p[0]), plain.getUser(p[1])));
+			double y = cost(packed, packed.findShortestPathBetween(packed.getUser(p[0]), packed.getUser(p[1])));
+			if (Math.abs(x - y) > 1e-9)
+				mismatches++;
+		}
+		System.out.printf("cost mismatches: %d%n", mismatches);
+
+		long[] a = timeLegacy(plain, pairs);
+		long[] b = timeLegacy(packed, pairs);
+		report("AdjacencyListMap", a);
+		report("CompressedAdjacencyGraph", b);
+		System.out.printf("slowdown (mean): %.2fx%n", mean(b) / mean(a));
+
+		System.out.println("AdjacencyListMap memory:");
+		System.out.print(plain.memoryReport());
+		System.out.println("CompressedAdjacencyGraph memory:");
+		System.out.print(packed.memoryReport());
+	}
+
+	/**
+	 * Compares the vertex orderings: the locality of the friend lists and the latency
+	 * of index based Dijkstra queries. Java cannot count cache misses itself; the mean
+	 * log gap between friends is the usual proxy, and running the benchmark under
+	 * 'perf stat -e cache-misses' gives the hardware counts.
+	 */
+	static void ordering(String dataset, int queries) {
+		SocialNetwork network = load(dataset, new SocialNetwork());
+		long[][] pairs = randomPairs(network, queries);
+		GraphIndex natural = network.getIndex();
+		double[] reference = null;
+
+		for (VertexOrdering o : VertexOrdering.values()) {
+			long start = System.nanoTime();
+			GraphIndex g = o == VertexOrdering.NATURAL ? natural : natural.reorder(o.rank(natural));
+			double build = (System.nanoTime() - start) / 1e6;
+
+			// mean log2 distance between the dense ids of friends
+			double logGap = 0.0;
+			int[] offsets = g.offsets(), targets = g.targets();
+			for (int v = 0; v < g.size(); v++) {
+				for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+					logGap += Math.log(1 + Math.abs(targets[i] - v)) / Math.log(2);
+				}
+			}
+			logGap /= Math.max(1, g.numEdges());
+
+			SearchScratch scratch = new SearchScratch(g.size());
+			double[] costs = new double[pairs.length];
+			long[] times = new long[pairs.length];
+			for (int round = 0; round < 2; round++) {
+				// the first round warms up the JIT
+				for (int i = 0; i < pairs.length; i++) {
+					long t = System.nanoTime();
+					costs[i] = scratch.run(g, g.weights(), g.indexOf(pairs[i][0]), g.indexOf(pairs[i][1]));
+					times[i] = System.nanoTime() - t;
+				}
+			}
+			if (reference == null)
+				reference = costs;
+			int mismatches = 0;
+			for (int i = 0; i < costs.length; i++) {
+				if (Math.abs(costs[i] - reference[i]) > 1e-9)
+					mismatches++;
+			}
+			System.out.printf("%-8s reorder %6.0f ms  mean log2 gap %5.2f  mismatches %d%n", o, build, logGap, mismatches);
+			report("  Dijkstra", times);
+		}
+	}
+
+	/**
+	 * Compares exact Dijkstra with the approximate bidirectional search for several
+	 * values of epsilon: the latency, the settled users, and the ratio between the cost
+	 * of the approximate path and the shortest one, against the bound the search proved.
+	 */
+	static void approximate(String dataset, int queries) {
+		SocialNetwork network = load(dataset, new SocialNetwork());
+		long[][] pairs = randomPairs(network, queries);
+		GraphIndex g = network.getIndex();
+		SearchScratch scratch = new SearchScratch(g.size());
+
+		double[] exact = new double[pairs.length];
+		long[] times = new long[pairs.length];
+		long settled = 0;
+		for (int round = 0; round < 2; round++) {
+			settled = 0;
+			for (int i = 0; i < pairs.length; i++) {
+				long t = System.nanoTime();
+				exact[i] = scratch.run(g, g.weights(), g.indexOf(pairs[i][0]), g.indexOf(pairs[i][1]));
+				times[i] = System.nanoTime() - t;
+				settled += scratch.settledCount();
+			}
+		}
+		System.out.printf("Dijkstra             settled %9.0f%n", (double) settled / pairs.length);
+		report("  latency", times);
+
+		for (double epsilon : new double[] { 0.0, 0.1, 0.25, 0.5, 1.0 }) {
+			double sumRatio = 0.0, maxRatio = 1.0, maxBound = 1.0;
+			int found = 0, violations = 0;
+			for (int round = 0; round < 2; round++) {
+				settled = 0;
+				for (int i = 0; i < pairs.length; i++) {
+					long t = System.nanoTime();
+					SearchResult r = network.findApproximatePathBetween(network.getUser(pairs[i][0]), network.getUser(pairs[i][1]), epsilon);
+					times[i] = System.nanoTime() - t;
+					settled += r.getSettled();
+					if (round == 0 || exact[i] == Double.POSITIVE_INFINITY || exact[i] == 0.0)
+						continue;
+					double ratio = r.getUpperBound() / exact[i];
+					found++;
+					sumRatio += ratio;
+					maxRatio = Math.max(maxRatio, ratio);
+					maxBound = Math.max(maxBound, r.getErrorBound());
+					if (ratio > r.getErrorBound() + 1e-9 || ratio > 1.0 + epsilon + 1e-9)
+						violations++;
+				}
+			}
+			System.out.printf("epsilon %.2f         settled %9.0f  cost ratio mean %.4f max %.4f  proven bound max %.4f  violations %d%n",
+					epsilon, (double) settled / pairs.length, found == 0 ? 1.0 : sumRatio / found, maxRatio, maxBound, violations);
+			report("  latency", times);
+		}
+	}
+
+	/**
+	 * Builds landmark distance oracles of several sizes and reports their build time,
+	 * size, estimate latency and error against exact Dijkstra distances.
+	 */
+	static void oracle(String dataset, int queries) {
+		SocialNetwork network = load(dataset, new SocialNetwork());
+		long[][] pairs = randomPairs(network, queries);
+		GraphIndex g = network.getIndex();
+		SearchScratch scratch = new SearchScratch(g.size());
+		int[][] dense = new int[pairs.length][2];
+		double[] exact = new double[pairs.length];
+		for (int i = 0; i < pairs.length; i++) {
+			dense[i][0] = g.indexOf(pairs[i][0]);
+			dense[i][1] = g.indexOf(pairs[i][1]);
+			exact[i] = scratch.run(g, g.weights(), dense[i][0], dense[i][1]);
+		}
+
+		for (DistanceOracle.Selection selection : DistanceOracle.Selection.values()) {
+			for (int k : new int[] { 4, 16, 32 }) {
+				long start = System.nanoTime();
+				DistanceOracle oracle = DistanceOracle.build(g, k, selection, Runtime.getRuntime().availableProcessors());
+				double build = (System.nanoTime() - start) / 1e6;
+
+				double sumError = 0.0, maxError = 0.0, sumGap = 0.0;
+				int reachable = 0, exactHits = 0, wrongUnreachable = 0;
+				for (int i = 0; i < pairs.length; i++) {
+					double upper = oracle.upperBound(dense[i][0], dense[i][1]);
+					double lower = oracle.lowerBound(dense[i][0], dense[i][1]);
+					if (exact[i] == Double.POSITIVE_INFINITY || exact[i] == 0.0) {
+						if (lower != Double.POSITIVE_INFINITY && exact[i] != 0.0)
+							wrongUnreachable++;
+						continue;
+					}
+					reachable++;
+					double error = upper / exact[i] - 1.0;
+					sumError += error;
+					maxError = Math.max(maxError, error);
+					sumGap += lower / exact[i];
+					if (error < 1e-6)
+						exactHits++;
+				}
+
+				// estimates are too fast to time one by one
+				int rounds = Math.max(1, 2000000 / pairs.length);
+				double sink = 0.0;
+				start = System.nanoTime();
+				for (int r = 0; r < rounds; r++) {
+					for (int[] p : dense) {
+						sink += oracle.estimate(p[0], p[1]);
+					}
+				}
+				double nanos = (double) (System.nanoTime() - start) / rounds / pairs.length;
+				System.out.printf("%-8s %2d landmarks  build %7.0f ms  %6.1f MB  estimate %5.0f ns  "
+						+ "upper bound error mean %.3f max %.3f exact %d/%d  lower bound ratio %.3f  unproven unreachable %d%s%n",
+						selection, k, build, oracle.sizeInBytes() / 1e6, nanos, reachable == 0 ? 0 : sumError / reachable, maxError,
+						exactHits, reachable, reachable == 0 ? 0 : sumGap / reachable, wrongUnreachable, sink == 42 ? " " : "");
+			}
+		}
+	}
+
+	/**
+	 * Builds the pruned landmark labels and compares their distance queries and
+	 * recovered paths with Dijkstra.
+	 */
+	static void labels(String dataset, int queries) {
+		SocialNetwork network = load(dataset, new SocialNetwork());
+		long[][] pairs = randomPairs(network, queries);
+		GraphIndex g = network.getIndex();
+
+		long start = System.nanoTime();
+		PrunedLandmarkLabels labels = network.buildLandmarkLabels(true);
+		System.out.printf("build %.0f ms on %d threads, %.1f entries per user, %.1f MB%n", (System.nanoTime() - start) / 1e6,
+				Runtime.getRuntime().availableProcessors(), (double) labels.numEntries() / g.size(), labels.sizeInBytes() / 1e6);
+
+		SearchScratch scratch = new SearchScratch(g.size());
+		int[][] dense = new int[pairs.length][2];
+		long[] times = new long[pairs.length];
+		int mismatches = 0;
+		for (int i = 0; i < pairs.length; i++) {
+			dense[i][0] = g.indexOf(pairs[i][0]);
+			dense[i][1] = g.indexOf(pairs[i][1]);
+			long t = System.nanoTime();
+			double exact = scratch.run(g, g.weights(), dense[i][0], dense[i][1]);
+			times[i] = System.nanoTime() - t;
+			if (dense[i][0] == dense[i][1])
+				exact = 0.0;
+			List<Long> path = network.findLabelledPathBetween(network.getUser(pairs[i][0]), network.getUser(pairs[i][1]));
+			double cost = path == null ? (dense[i][0] == dense[i][1] ? 0.0 : Double.POSITIVE_INFINITY) : cost(network, path);
+			double d = labels.distance(dense[i][0], dense[i][1]);
+			if (!(Math.abs(d - exact) <= 1e-9 || d == exact) || !(Math.abs(cost - exact) <= 1e-9 || cost == exact))
+				mismatches++;
+		}
+		System.out.printf("mismatches: %d%n", mismatches);
+		report("Dijkstra", times);
+
+		int rounds = Math.max(1, 1000000 / pairs.length);
+		double sink = 0.0;
+		start = System.nanoTime();
+		for (int r = 0; r < rounds; r++) {
+			for (int[] p : dense) {
+				sink += labels.distance(p[0], p[1]);
+			}
+		}
+		System.out.printf("label distance query mean %.0f ns%s%n", (double) (System.nanoTime() - start) / rounds / pairs.length, sink == 42 ? " " : "");
+		for (int i = 0; i < pairs.length; i++) {
+			long t = System.nanoTime();
+			labels.path(dense[i][0], dense[i][1]);
+			times[i] = System.nanoTime() - t;
+		}
+		report("label path query", times);
+	}
+
+	/**
+	 * Compares searches with and without the weight sorted hub friend lists, for several
+	 * hub thresholds, on a skewed graph. The dataset may be a number of users, in which
+	 * case a synthetic graph is generated: preferential attachment (8 links per user)
+	 * plus a few celebrities who are friends with up to a fifth of the network.
+	 */
+	static void hubs(String dataset, int queries) {
+		if (dataset.matches("\\d+")) {
+			dataset = skewedGraph(Integer.parseInt(dataset), 8, 16);
+		}
+		SocialNetwork network = load(dataset, new SocialNetwork());
+		long[][] pairs = randomPairs(network, queries);
+		GraphIndex g = network.getIndex();
+		int maxDegree = 0;
+		for (int v = 0; v < g.size(); v++) {
+			maxDegree = Math.max(maxDegree, g.degree(v));
+		}
+		System.out.printf("edges %d, mean degree %.1f, max degree %d%n", g.numEdges(), (double) g.numEdges() / g.size(), maxDegree);
+
+		double[] reference = null;
+		for (int threshold : new int[] { Integer.MAX_VALUE, 4096, 256, 32 }) {
+			network.setHubThreshold(threshold);
+			SearchScratch scratch = network.getScratch();
+			HubAdjacency hubs = network.getHubAdjacency();
+			double[] costs = new double[pairs.length];
+			long[] times = new long[pairs.length];
+			for (int round = 0; round < 2; round++) {
+				for (int i = 0; i < pairs.length; i++) {
+					long t = System.nanoTime();
+					costs[i] = scratch.run(g, g.weights(), g.indexOf(pairs[i][0]), g.indexOf(pairs[i][1]));
+					times[i] = System.nanoTime() - t;
+				}
+			}
+			if (reference == null)
+				reference = costs;
+			int mismatches = 0;
+			for (int i = 0; i < costs.length; i++) {
+				double legacy = cost(network, network.findShortestPathBetween(network.getUser(pairs[i][0]), network.getUser(pairs[i][1])));
+				if (Math.abs(costs[i] - reference[i]) > 1e-9 || (legacy >= 0 && Math.abs(legacy - reference[i]) > 1e-9))
+					mismatches++;
+			}
+			String name = threshold == Integer.MAX_VALUE ? "no hubs" : "hubs >= " + threshold;
+			System.out.printf("%-14s %6d hubs  mismatches %d%n", name, hubs.numHubs(), mismatches);
+			report("  index Dijkstra", times);
+			report("  findShortestPathBetween", timeLegacy(network, pairs));
+		}
+	}
+
+	/**
+	 * Writes a synthetic skewed graph to a temporary file and returns its name.
+	 */
+	@SuppressWarnings("unchecked")
+	static String skewedGraph(int users, int links, int celebrities) {
+		Random random = new Random(SEED);
+		List<Set<Integer>> friends = new ArrayList<Set<Integer>>();
+		// every link end, so picking a random element picks users in proportion to their degree
+		int[] ends = new int[2 * users * links + 2];
+		int numEnds = 0;
+		for (int v = 0; v < users; v++) {
+			friends.add(new HashSet<Integer>());
+			for (int i = 0; i < Math.min(links, v); i++) {
+				int u = ends[random.nextInt(Math.max(1, numEnds))];
+				if (u != v && friends.get(v).add(u)) {
+					friends.get(u).add(v);
+					ends[numEnds++] = u;
+					ends[numEnds++] = v;
+				}
+			}
+			if (numEnds == 0)
+				ends[numEnds++] = v;
+		}
+		for (int c = 0; c < Math.min(celebrities, users); c++) {
+			int fans = random.nextInt(Math.max(1, users / 5));
+			for (int i = 0; i < fans; i++) {
+				int u = random.nextInt(users);
+				if (u != c) {
+					friends.get(c).add(u);
+					friends.get(u).add(c);
+				}
+			}
+		}
+		try {
+			File file = File.createTempFile("skewed", ".json");
+			file.deleteOnExit();
+			try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
+				for (int v = 0; v < users; v++) {
+					JSONObject user = new JSONObject();
+					JSONArray list = new JSONArray();
+					for (int f : friends.get(v)) {
+						list.add((long) f + 1);
+					}
+					user.put("user", (long) v + 1);
+					user.put("friends", list);
+					user.put("skill", (long) random.nextInt(101));
+					out.println(user.toJSONString());
+				}
+			}
+			return file.getPath();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Loads the dataset into the network, exiting if it cannot be read.
+	 */
+	static SocialNetwork load(String dataset, SocialNetwork network) {
+		long start = System.nanoTime();
+		if (!network.loadData(dataset)) {
+			System.out.println("cannot load " + dataset);
+			System.exit(1);
+		}
+		System.out.printf("loaded %d users in %.0f ms%n", network.numUsers(), (System.nanoTime() - start) / 1e6);
+		return network;
+	}
+
+	/**
+	 * Compares the hop histograms of many sources computed one breadth first search at a
+	 * time (HopSearch, direction optimizing) with the multi-source search at several
+	 * widths and thread counts: the sources per second, and that the histograms agree.
+	 * The number of queries is the number of sources.
+	 */
+	static void msbfs(String dataset, int sources) {
+		SocialNetwork network = load(dataset, new SocialNetwork());
+		GraphIndex g = network.getIndex();
+		Random random = new Random(SEED);
+		int[] s = new int[sources];
+		for (int i = 0; i < sources; i++) {
+			s[i] = random.nextInt(g.size());
+		}
+
+		HopSearch single = new HopSearch(g);
+		int[][] expected = new int[sources][];
+		long start = System.nanoTime();
+		for (int i = 0; i < sources; i++) {
+			int[] levels = single.levels(s[i]);
+			int max = 0;
+			for (int l : levels) {
+				max = Math.max(max, l);
+			}
+			expected[i] = new int[max + 1];
+			for (int l : levels) {
+				if (l >= 0)
+					expected[i][l]++;
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%-28s %8.1f sources/s%n", "one at a time", sources / seconds);
+
+		int processors = Runtime.getRuntime().availableProcessors();
+		for (int threads : new int[] { 1, processors }) {
+			for (int width : new int[] { 64, 256, 1024 }) {
+				start = System.nanoTime();
+				MultiSourceBfs.Result r = new MultiSourceBfs(g, width).run(s, threads);
+				seconds = (System.nanoTime() - start) / 1e9;
+				int mismatches = 0;
+				for (int i = 0; i < sources; i++) {
+					if (!Arrays.equals(r.getHistogram(i), expected[i]))
+						mismatches++;
+				}
+				System.out.printf("%-28s %8.1f sources/s  mismatches %d%n",
+						"MS-BFS width " + width + " x" + threads, sources / seconds, mismatches);
+			}
+			if (processors == 1)
+				break;
+		}
+	}
+
+	/**
+	 * Compares the scalar and the best available relaxation kernel (the Vector API one
+	 * when run with --add-modules jdk.incubator.vector) on the rows of the users with the
+	 * most friends, against random distances of which half are stale, then the index
+	 * Dijkstra with and without the kernel. A number as the dataset gives a synthetic
+	 * skewed graph of that many users, as for the hubs benchmark.
+	 */
+	static void relax(String dataset, int queries) {
+		if (dataset.matches("\\d+")) {
+			dataset = skewedGraph(Integer.parseInt(dataset), 8, 16);
+		}
+		SocialNetwork network = load(dataset, new SocialNetwork());
+		GraphIndex g = network.getIndex();
+		int n = g.size();
+		int[] offsets = g.offsets();
+		int[] targets = g.targets();
+		double[] w = g.weights();
+
+		// the rows of the users with the most friends
+		Integer[] byDegree = new Integer[n];
+		for (int v = 0; v < n; v++) {
+			byDegree[v] = v;
+		}
+		Arrays.sort(byDegree, (a, b) -> Integer.compare(g.degree(b), g.degree(a)));
+		int rows = Math.min(queries, n);
+		long links = 0;
+		for (int i = 0; i < rows; i++) {
+			links += g.degree(byDegree[i]);
+		}
+		Random random = new Random(SEED);
+		double[] dist = new double[n];
+		int[] seen = new int[n];
+		for (int v = 0; v < n; v++) {
+			dist[v] = 10.0 * random.nextDouble();
+			seen[v] = random.nextBoolean() ? 1 : 0;
+		}
+		double[] du = new double[rows];
+		for (int i = 0; i < rows; i++) {
+			du[i] = 5.0 * random.nextDouble();
+		}
+		System.out.printf("%d rows, %d links, degree %d to %d%n", rows, links,
+				g.degree(byDegree[rows - 1]), g.degree(byDegree[0]));
+
+		RelaxationKernel best = RelaxationKernel.best();
+		int[] improved = new int[g.degree(byDegree[0])];
+		long[] expected = null;
+		for (RelaxationKernel kernel : new RelaxationKernel[] { RelaxationKernel.scalar(), best }) {
+			int reps = (int) Math.max(1, 200_000_000L / Math.max(1, links));
+			long elapsed = 0;
+			long found = 0;
+			for (int round = 0; round < 2; round++) {
+				long start = System.nanoTime();
+				for (int r = 0; r < reps; r++) {
+					for (int i = 0; i < rows; i++) {
+						int v = byDegree[i];
+						found += kernel.relax(targets, offsets[v], offsets[v + 1], du[i], w, dist, seen, 1, improved);
+					}
+				}
+				elapsed = System.nanoTime() - start;
+			}
+			// the batches, outside the timing
+			long[] checksums = new long[rows];
+			for (int i = 0; i < rows; i++) {
+				int v = byDegree[i];
+				int count = kernel.relax(targets, offsets[v], offsets[v + 1], du[i], w, dist, seen, 1, improved);
+				long sum = count;
+				for (int j = 0; j < count; j++) {
+					sum = 31 * sum + improved[j];
+				}
+				checksums[i] = sum;
+			}
+			if (expected == null)
+				expected = checksums;
+			int mismatches = 0;
+			for (int i = 0; i < rows; i++) {
+				if (checksums[i] != expected[i])
+					mismatches++;
+			}
+			System.out.printf("%-28s %8.3f ns/link  improved %.2f  mismatches %d%n", kernel.getName(),
+					(double) elapsed / reps / links, (double) found / (2L * reps * links), mismatches);
+		}
+
+		long[][] pairs = randomPairs(network, queries);
+		SearchScratch scratch = new SearchScratch(n);
+		double[] reference = null;
+		for (RelaxationKernel kernel : new RelaxationKernel[] { null, best }) {
+			scratch.setRelaxationKernel(kernel);
+			double[] costs = new double[pairs.length];
+			long[] times = new long[pairs.length];
+			for (int round = 0; round < 2; round++) {
+				for (int i = 0; i < pairs.length; i++) {
+					long t = System.nanoTime();
+					costs[i] = scratch.run(g, w, g.indexOf(pairs[i][0]), g.indexOf(pairs[i][1]));
+					times[i] = System.nanoTime() - t;
+				}
+			}
+			if (reference == null)
+				reference = costs;
+			int mismatches = 0;
+			for (int i = 0; i < costs.length; i++) {
+				if (Double.compare(costs[i], reference[i]) != 0)
+					mismatches++;
+			}
+			String name = kernel == null ? "index Dijkstra" : "index Dijkstra, " + kernel.getName();
+			report(name, times);
+			System.out.printf("%-28s mismatches %d%n", "", mismatches);
+		}
+	}
+
+	/**
+	 * Returns random pairs of user ids.
+	 */
+	static long[][] randomPairs(SocialNetwork network, int count) {
+		List<Long> ids = new ArrayList<Long>();
+		for (Vertex<Long,Double,Double> v : network.getAllUsers()) {
+			ids.add(v.getId());
+		}
+		// the iteration order of the users depends on the backend, sort for reproducible pairs
+		ids.sort(null);
+		Random random = new Random(SEED);
+		long[][] pairs = new long[count][2];
+		for (long[] p : pairs) {
+			p[0] = ids.get(random.nextInt(ids.size()));
+			p[1] = ids.get(random.nextInt(ids.size()));
+		}
+		return pairs;
+	}
+
+	/**
+	 * Times findShortestPathBetween for every pair, after a warm up pass.
+	 * @return the latency of every query in nanoseconds
+	 */
+	static long[] timeLegacy(SocialNetwork network, long[][] pairs) {
+		for (int i = 0; i < Math.min(20, pairs.length); i++) {
+			network.findShortestPathBetween(network.getUser(pairs[i][0]), network.getUser(pairs[i][1]));
+		}
+		long[] times = new long[pairs.length];
+		for (int i = 0; i < pairs.length; i++) {
+			long start = System.nanoTime();
+			network.findShortestPathBetween(network.getUser(pairs[i][0]), network.getUser(pairs[i][1]));
+			times[i] = System.nanoTime() - start;
+		}
+		return times;
+	}
+
+	/**
+	 * Returns the cost of a path, or -1 if there is no path.
+	 */
+	static double cost(SocialNetwork network, Collection<Long> path) {
+		if (path == null)
+			return -1;
+		double c = 0.0;
+		boolean first = true;
+		for (Long id : path) {
+			if (!first)
+				c += network.getUser(id).getSkills();
+			first = false;
+		}
+		return c;
+	}
+
+	/**
+	 * Prints the mean and percentiles of the latencies.
+	 */
+	static void report(String name, long[] nanos) {
+		long[] sorted = nanos.clone();
+		Arrays.sort(sorted);
+		System.out.printf("%-28s mean %8.3f ms  p50 %8.3f ms  p99 %8.3f ms%n", name,
+				mean(sorted) / 1e6, percentile(sorted, 50) / 1e6, percentile(sorted, 99) / 1e6);
+	}
+
+	static double mean(long[] values) {
+		double sum = 0;
+		for (long v : values) {
+			sum += v;
+		}
+		return values.length == 0 ? 0 : sum / values.length;
+	}
+
+	/**
+	 * Returns the p-th percentile of sorted values.
+	 */
+	static long percentile(long[] sorted, double p) {
+		if (sorted.length == 0)
+			return 0;
+		int i = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+	}
+}
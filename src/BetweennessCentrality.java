@@ -0,0 +1,415 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Betweenness centrality of every user over the strongest coder paths: how many of the
+ * shortest paths between two other users go through it, a path shared by several equally
+ * short ones counting for its share (Brandes' algorithm).
+ *
+ * <pre>
+ * java -cp bin:json-simple-1.1.jar BetweennessCentrality &lt;dataset&gt; &lt;output&gt; [samples] [threads]
+ * </pre>
+ *
+ * A path costs the skill weights of the users it steps onto, so the path from s to t and
+ * the one from t to s differ; the score counts ordered pairs. Each source is one Dijkstra
+ * search counting the shortest paths to every user, followed by a pass in decreasing
+ * distance that accumulates the dependency of the source on each user. Sources are
+ * handed out to the threads one at a time and every thread adds the dependencies into
+ * its own array; the arrays are summed at the end, so the threads share nothing.
+ *
+ * The exact scores run every user as a source. The sampled scores run a uniform sample
+ * of sources and scale the sum by n / k; the spread of the dependencies over the sample
+ * gives the standard error of each score.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class BetweennessCentrality {
+
+	// distances within this relative difference are ties, they add up in different orders
+	private static final double TIE = 1e-12;
+
+	private final GraphIndex graph;
+	private final double[] scores;
+	private final double[] errors;		// standard error of each score, null for the exact scores
+	private final int sources;
+	private final long elapsed;
+
+	private BetweennessCentrality(GraphIndex graph, double[] scores, double[] errors, int sources, long elapsed) {
+		this.graph = graph;
+		this.scores = scores;
+		this.errors = errors;
+		this.sources = sources;
+		this.elapsed = elapsed;
+	}
+
+	/**
+	 * Application entry point: writes the users by decreasing score.
+	 * @param args dataset output [samples] [threads]
+	 * @throws IOException if the output cannot be written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("usage: BetweennessCentrality <dataset> <output> [samples] [threads]");
+			return;
+		}
+		int samples = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		SocialNetwork network = new SocialNetwork();
+		if (!network.loadData(args[0]))
+			return;
+		BetweennessCentrality centrality = network.computeBetweenness(samples, threads);
+		centrality.write(args[1]);
+		System.out.printf("%d sources on %d threads in %.1f s, max standard error %.1f%n",
+				centrality.getSources(), threads, centrality.getElapsedMillis() / 1e3, centrality.getMaxStandardError());
+		for (Long id : centrality.top(10)) {
+			System.out.printf("%d\t%.1f%n", id, centrality.getScore(id));
+		}
+	}
+
+	/**
+	 * Computes the exact scores, with every user as a source.
+	 * @param graph the graph
+	 * @param threads the number of threads
+	 * @return the scores
+	 */
+	public static BetweennessCentrality exact(GraphIndex graph, int threads) {
+		int n = graph.size();
+		int[] sources = new int[n];
+		for (int v = 0; v < n; v++) {
+			sources[v] = v;
+		}
+		return compute(graph, sources, false, threads);
+	}
+
+	/**
+	 * Estimates the scores from a uniform sample of sources.
+	 * @param graph the graph
+	 * @param samples the number of sources, the exact scores if it is at least the number of users
+	 * @param seed the seed of the sample
+	 * @param threads the number of threads
+	 * @return the estimated scores with their standard errors
+	 */
+	public static BetweennessCentrality sampled(GraphIndex graph, int samples, long seed, int threads) {
+		int n = graph.size();
+		if (samples >= n)
+			return exact(graph, threads);
+		if (samples < 2)
+			throw new IllegalArgumentException("at least 2 sources are needed for an error estimate: " + samples);
+		// the first samples entries of a partial Fisher-Yates shuffle
+		int[] all = new int[n];
+		for (int v = 0; v < n; v++) {
+			all[v] = v;
+		}
+		Random random = new Random(seed);
+		for (int i = 0; i < samples; i++) {
+			int j = i + random.nextInt(n - i);
+			int t = all[i];
+			all[i] = all[j];
+			all[j] = t;
+		}
+		return compute(graph, Arrays.copyOf(all, samples), true, threads);
+	}
+
+	private static BetweennessCentrality compute(GraphIndex graph, int[] sources, boolean sampled, int threads) {
+		long start = System.nanoTime();
+		int n = graph.size();
+		// the predecessors of a user are found among the users that list it as a friend
+		GraphIndex in = graph.transpose();
+		AtomicInteger next = new AtomicInteger();
+		List<Accumulator> accumulators = new ArrayList<Accumulator>();
+		Runnable worker = () -> {
+			Accumulator a = new Accumulator(graph, in, sampled);
+			synchronized (accumulators) {
+				accumulators.add(a);
+			}
+			for (int i = next.getAndIncrement(); i < sources.length; i = next.getAndIncrement()) {
+				a.run(sources[i]);
+			}
+		};
+		Thread[] pool = new Thread[Math.max(1, Math.min(threads, sources.length)) - 1];
+		for (int j = 0; j < pool.length; j++) {
+			pool[j] = new Thread(worker, "betweenness-" + j);
+			pool[j].start();
+		}
+		worker.run();
+		for (Thread t : pool) {
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("interrupted while computing the betweenness", e);
+			}
+		}
+
+		double[] sum = new double[n];
+		double[] squares = sampled ? new double[n] : null;
+		for (Accumulator a : accumulators) {
+			for (int v = 0; v < n; v++) {
+				sum[v] += a.sum[v];
+				if (sampled)
+					squares[v] += a.squares[v];
+			}
+		}
+		double[] errors = null;
+		if (sampled) {
+			int k = sources.length;
+			double scale = (double) n / k;
+			// sample variance of the dependency of a source on v, with the finite population correction
+			double correction = (double) (n - k) / (n - 1);
+			errors = new double[n];
+			for (int v = 0; v < n; v++) {
+				double mean = sum[v] / k;
+				double variance = Math.max(0.0, (squares[v] - k * mean * mean) / (k - 1));
+				errors[v] = n * Math.sqrt(variance / k * correction);
+				sum[v] *= scale;
+			}
+		}
+		return new BetweennessCentrality(graph, sum, errors, sources.length, System.nanoTime() - start);
+	}
+
+	/**
+	 * Search state and dependency sums of one thread.
+	 */
+	private static class Accumulator {
+		private final int[] offsets;
+		private final int[] targets;
+		private final int[] inOffsets;
+		private final int[] inTargets;
+		private final double[] w;
+		private final boolean sampled;
+
+		private final double[] dist;
+		private final double[] sigma;		// number of shortest paths from the source
+		private final double[] delta;		// dependency of the source on the user
+		private final int[] order;			// settled users by increasing distance
+		private final int[] seen;			// epoch in which the user was reached
+		private final int[] done;			// epoch in which the user was settled
+		private int epoch;
+		// binary min heap of queued users with their distance at the time, stale entries are skipped
+		private double[] keys = new double[1024];
+		private int[] values = new int[1024];
+		private int size;
+
+		final double[] sum;
+		final double[] squares;
+
+		Accumulator(GraphIndex graph, GraphIndex in, boolean sampled) {
+			int n = graph.size();
+			this.offsets = graph.offsets();
+			this.targets = graph.targets();
+			this.inOffsets = in.offsets();
+			this.inTargets = in.targets();
+			this.w = graph.weights();
+			this.sampled = sampled;
+			this.dist = new double[n];
+			this.sigma = new double[n];
+			this.delta = new double[n];
+			this.order = new int[n];
+			this.seen = new int[n];
+			this.done = new int[n];
+			this.sum = new double[n];
+			this.squares = sampled ? new double[n] : null;
+		}
+
+		/**
+		 * Adds the dependencies of a source.
+		 */
+		void run(int s) {
+			epoch++;
+			int settled = 0;
+			seen[s] = epoch;
+			dist[s] = 0.0;
+			sigma[s] = 1.0;
+			delta[s] = 0.0;
+			push(0.0, s);
+			while (size > 0) {
+				double du = keys[0];
+				int u = pop();
+				if (done[u] == epoch || du > dist[u])
+					continue;
+				done[u] = epoch;
+				order[settled++] = u;
+				for (int i = offsets[u], end = offsets[u + 1]; i < end; i++) {
+					int f = targets[i];
+					if (done[f] == epoch)
+						continue;
+					double d = du + w[f];
+					if (seen[f] != epoch) {
+						seen[f] = epoch;
+						dist[f] = d;
+						sigma[f] = sigma[u];
+						delta[f] = 0.0;
+						push(d, f);
+					} else if (d < dist[f] - TIE * d) {
+						dist[f] = d;
+						sigma[f] = sigma[u];
+						push(d, f);
+					} else if (d <= dist[f] + TIE * d) {
+						sigma[f] += sigma[u];
+					}
+				}
+			}
+
+			// in decreasing distance, hand the dependency of each user to its predecessors
+			for (int i = settled - 1; i > 0; i--) {
+				int v = order[i];
+				double share = (1.0 + delta[v]) / sigma[v];
+				for (int j = inOffsets[v], end = inOffsets[v + 1]; j < end; j++) {
+					int p = inTargets[j];
+					if (done[p] == epoch && Math.abs(dist[p] + w[v] - dist[v]) <= TIE * dist[v])
+						delta[p] += sigma[p] * share;
+				}
+				sum[v] += delta[v];
+				if (sampled)
+					squares[v] += delta[v] * delta[v];
+			}
+		}
+
+		private void push(double key, int value) {
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			int i = size++;
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (keys[parent] <= key)
+					break;
+				keys[i] = keys[parent];
+				values[i] = values[parent];
+				i = parent;
+			}
+			keys[i] = key;
+			values[i] = value;
+		}
+
+		private int pop() {
+			int top = values[0];
+			double key = keys[--size];
+			int value = values[size];
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= size)
+					break;
+				if (child + 1 < size && keys[child + 1] < keys[child])
+					child++;
+				if (keys[child] >= key)
+					break;
+				keys[i] = keys[child];
+				values[i] = values[child];
+				i = child;
+			}
+			keys[i] = key;
+			values[i] = value;
+			return top;
+		}
+	}
+
+	/**
+	 * Returns the score of a user.
+	 * @param id the user id
+	 * @return the (estimated) number of shortest paths through the user, 0 for an unknown user
+	 */
+	public double getScore(Long id) {
+		int v = graph.indexOf(id);
+		return v < 0 ? 0.0 : scores[v];
+	}
+
+	/**
+	 * Returns the standard error of the score of a user.
+	 * @param id the user id
+	 * @return the standard error, 0 for the exact scores
+	 */
+	public double getStandardError(Long id) {
+		int v = graph.indexOf(id);
+		return v < 0 || errors == null ? 0.0 : errors[v];
+	}
+
+	/**
+	 * Returns the largest standard error of any score.
+	 * @return the largest standard error, 0 for the exact scores
+	 */
+	public double getMaxStandardError() {
+		double max = 0.0;
+		if (errors != null)
+			for (double e : errors) {
+				max = Math.max(max, e);
+			}
+		return max;
+	}
+
+	/**
+	 * Returns whether every user was a source.
+	 * @return <b>true</b> for the exact scores
+	 */
+	public boolean isExact() {
+		return errors == null;
+	}
+
+	/**
+	 * Returns the number of sources searched.
+	 * @return the number of sources
+	 */
+	public int getSources() {
+		return sources;
+	}
+
+	/**
+	 * Returns the time the computation took.
+	 * @return the time in milliseconds
+	 */
+	public double getElapsedMillis() {
+		return elapsed / 1e6;
+	}
+
+	/**
+	 * Returns the users with the highest scores, the best connectors.
+	 * @param k the number of users
+	 * @return the user ids by decreasing score, ties by id
+	 */
+	public List<Long> top(int k) {
+		Integer[] ranked = ranking();
+		List<Long> res = new ArrayList<Long>();
+		for (int i = 0; i < Math.min(k, ranked.length); i++) {
+			res.add(graph.idOf(ranked[i]));
+		}
+		return res;
+	}
+
+	/**
+	 * Writes every user by decreasing score, one tab separated line each: rank, user id,
+	 * score and standard error. The lines are written as they are formatted, nothing is
+	 * built up in memory but the ranking.
+	 * @param filename the output file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(String filename) throws IOException {
+		Integer[] ranked = ranking();
+		try (BufferedWriter out = new BufferedWriter(new FileWriter(filename), 1 << 16)) {
+			out.write("# rank\tuser\tscore\tstderr");
+			out.newLine();
+			for (int i = 0; i < ranked.length; i++) {
+				int v = ranked[i];
+				out.write((i + 1) + "\t" + graph.idOf(v) + "\t" + scores[v] + "\t" + (errors == null ? 0.0 : errors[v]));
+				out.newLine();
+			}
+		}
+	}
+
+	private Integer[] ranking() {
+		Integer[] ranked = new Integer[scores.length];
+		for (int v = 0; v < ranked.length; v++) {
+			ranked[v] = v;
+		}
+		Arrays.sort(ranked, (a, b) -> scores[a] != scores[b] ? Double.compare(scores[b], scores[a]) : Long.compare(graph.idOf(a), graph.idOf(b)));
+		return ranked;
+	}
+}
@@ -0,0 +1,727 @@
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Implements the Graph interface with compressed adjacency lists.
+ * Users are numbered by the rank of their id, so a user id is looked up with a
+ * binary search over a sorted long[] instead of a HashMap. The friends of each user
+ * are stored as sorted dense ids, gap encoded as variable length integers in one
+ * byte array (in the style of WebGraph):
+ *
+ * <pre>
+ * degree | skip table (optional) | first - v (zig-zag) | gap - 1 | gap - 1 | ...
+ * </pre>
+ *
+ * Lists longer than the skip interval carry a table with the byte offset and value of
+ * every skip-th friend, so membership tests can jump into the middle of the list.
+ * Friend ids that have no record of their own are kept uncompressed on the side.
+ *
+ * The compressed form is immutable; inserted, updated and removed users are staged
+ * and the arrays are rebuilt on the next read. Rebuilding resets distances,
+ * predecessors and visited flags. Vertices returned by this graph are views over
+ * the arrays; the vertex returned by insertVertex is detached until the next rebuild.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class CompressedAdjacencyGraph implements Graph<Long,Double,Double> {
+
+	private static final int DEFAULT_SKIP_INTERVAL = 32;
+
+	private final int skipInterval;			// friends per skip block, 0 for no skip table
+
+	// compressed form
+	private long[] ids;						// sorted user ids, the index is the dense id
+	private int[] offsets;					// start of the list of v in adjacency
+	private byte[] adjacency;				// encoded friend lists
+	private long numEdges;
+	private Map<Integer, long[]> external;	// friend ids without a record, by dense id
+
+	// per user state
+	private double[] skills;
+	private double[] distance;
+	private int[] predecessor;
+	private BitSet visited;
+
+	// changes not yet compressed
+	private Map<Long, User<Long,Double,Double>> staged;
+	private Set<Long> removed;
+
+	/**
+	 * Default Constructor
+	 */
+	public CompressedAdjacencyGraph() {
+		this(DEFAULT_SKIP_INTERVAL);
+	}
+
+	/**
+	 * Constructor
+	 * @param skipInterval the number of friends per skip block, 0 to disable random access
+	 */
+	public CompressedAdjacencyGraph(int skipInterval) {
+		this.skipInterval = skipInterval;
+		this.ids = new long[0];
+		this.offsets = new int[1];
+		this.adjacency = new byte[0];
+		this.external = new HashMap<Integer, long[]>();
+		this.skills = new double[0];
+		this.distance = new double[0];
+		this.predecessor = new int[0];
+		this.visited = new BitSet();
+		this.staged = new HashMap<Long, User<Long,Double,Double>>();
+		this.removed = new HashSet<Long>();
+	}
+
+	/**
+	 * Returns the total number of vertices in the graph.
+	 */
+	@Override
+	public int numVertices() {
+		compact();
+		return ids.length;
+	}
+
+	/**
+	 * Inserts a new vertex in the graph with the given element, skills and friends.
+	 * The vertex is compressed on the next read.
+	 * @param element - user id
+	 * @param skills - skills of the user
+	 * @param friends - friends of the user
+	 * @return a detached vertex with the specified attributes
+	 */
+	@Override
+	public Vertex<Long,Double,Double> insertVertex(Long element, Double skills, Set<Long> friends) {
+		User<Long,Double,Double> v = new User<Long,Double,Double>(element, skills, Double.valueOf(Double.MAX_VALUE), friends);
+		staged.put(element, v);
+		removed.remove(element);
+		return v;
+	}
+
+	/**
+	 * Returns the set of vertices listed as the friends of the given vertex.
+	 * The set is decoded lazily while it is iterated.
+	 * @param vertex the id of the vertex
+	 * @return the set of friends of the given vertex
+	 */
+	@Override
+	public Set<Long> getFriends(Long vertex) {
+		int v = denseOf(vertex);
+		return v < 0 ? null : new FriendSet(v);
+	}
+
+	/**
+	 * Returns the Vertex identified by the specified vertex id
+	 * @param v the vertex id
+	 * @return the vertex identified by the id <b>v</b> or <b>null</b> if no such vertex exists
+	 */
+	@Override
+	public Vertex<Long,Double,Double> getVertex(Long v) {
+		int d = denseOf(v);
+		return d < 0 ? null : new CompressedUser(d);
+	}
+
+	@Override
+	public void setDistance(Long v, Double d) {
+		distance[denseOf(v)] = d;
+	}
+
+	@Override
+	public Double getDistance(Long v) {
+		return distance[denseOf(v)];
+	}
+
+	@Override
+	public void setPredecessor(Long v, Vertex<Long,Double,Double> p) {
+		predecessor[denseOf(v)] = p == null ? -1 : denseOf(p.getId());
+	}
+
+	@Override
+	public Vertex<Long,Double,Double> getPredecessor(Long v) {
+		int p = predecessor[denseOf(v)];
+		return p < 0 ? null : new CompressedUser(p);
+	}
+
+	@Override
+	public void setSkills(Long v, Double s) {
+		skills[denseOf(v)] = s;
+	}
+
+	@Override
+	public Double getSkills(Long v) {
+		return skills[denseOf(v)];
+	}
+
+	/**
+	 * Utility function to print all the vertices in the graph.
+	 */
+	@Override
+	public void printGraph() {
+		for (Vertex<Long,Double,Double> v : getAllVertices()) {
+			System.out.println(v.toString());
+		}
+	}
+
+	/**
+	 * Utility function to print a vertex
+	 * @param vertex the vertex id
+	 */
+	@Override
+	public void printVertex(Long vertex) {
+		System.out.println(getVertex(vertex).toString());
+	}
+
+	/**
+	 * Get all vertices in the graph
+	 * @return a collection of views of all the vertices in the graph
+	 */
+	@Override
+	public Collection<Vertex<Long,Double,Double>> getAllVertices() {
+		compact();
+		return new AbstractCollection<Vertex<Long,Double,Double>>() {
+			@Override
+			public Iterator<Vertex<Long,Double,Double>> iterator() {
+				return new Iterator<Vertex<Long,Double,Double>>() {
+					private int next = 0;
+
+					@Override
+					public boolean hasNext() {
+						return next < ids.length;
+					}
+
+					@Override
+					public Vertex<Long,Double,Double> next() {
+						if (next >= ids.length)
+							throw new NoSuchElementException();
+						return new CompressedUser(next++);
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return ids.length;
+			}
+		};
+	}
+
+	/**
+	 * Remove a vertex. The vertex is dropped on the next read.
+	 * @param v the vertex id
+	 */
+	@Override
+	public void remove(Long v) {
+		staged.remove(v);
+		removed.add(v);
+	}
+
+	/**
+	 * Returns the number of friend links stored in the graph.
+	 * @return the number of edges
+	 */
+	public long numEdges() {
+		compact();
+		return numEdges;
+	}
+
+	/**
+	 * Returns the number of friends of a user.
+	 * @param v the dense id
+	 * @return the degree
+	 */
+	public int degree(int v) {
+		compact();
+		return readVarInt(adjacency, offsets[v]);
+	}
+
+	/**
+	 * Returns the size of the encoded friend lists, including the skip tables, in bytes.
+	 * @return the size of the adjacency data
+	 */
+	public long adjacencyBytes() {
+		compact();
+		return adjacency.length;
+	}
+
+	/**
+	 * Returns the number of bits used to store each friend link, including the
+	 * degrees and skip tables but not the offsets of the lists.
+	 * @return the bits per edge
+	 */
+	public double bitsPerEdge() {
+		compact();
+		return numEdges == 0 ? 0.0 : 8.0 * adjacency.length / numEdges;
+	}
+
+	/**
+	 * Returns the dense id of a user.
+	 * @param id the user id
+	 * @return the dense id or -1 if the user does not exist
+	 */
+	public int denseOf(Long id) {
+		compact();
+		int d = Arrays.binarySearch(ids, id);
+		return d < 0 ? -1 : d;
+	}
+
+	/**
+	 * Returns the user id of a dense id.
+	 * @param v the dense id
+	 * @return the user id
+	 */
+	public long idOf(int v) {
+		return ids[v];
+	}
+
+	/**
+	 * Decodes the friends of a user that have a record of their own, sequentially.
+	 * @param v the dense id
+	 * @param buffer receives the dense ids of the friends, must hold degree(v) entries
+	 * @return the number of friends written to the buffer
+	 */
+	public int decodeFriends(int v, int[] buffer) {
+		compact();
+		FriendCursor c = new FriendCursor(v);
+		int n = 0;
+		while (c.hasNext()) {
+			buffer[n++] = c.next();
+		}
+		return n;
+	}
+
+	/**
+	 * Returns whether u lists v as a friend, using the skip table where available.
+	 * @param u the dense id of the user
+	 * @param v the dense id of the friend
+	 * @return <b>true</b> if v is a friend of u
+	 */
+	public boolean isFriend(int u, int v) {
+		compact();
+		int degree = readVarInt(adjacency, offsets[u]);
+		if (degree == 0)
+			return false;
+		int table = offsets[u] + varIntSize(degree);
+		int blocks = blocksOf(degree);
+		int data = table + 8 * blocks;
+
+		// binary search the skip table for the last block starting at or before v
+		int lo = 0, hi = blocks;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (readInt(adjacency, table + 8 * (mid - 1) + 4) <= v)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+
+		int pos, value, index;
+		if (lo == 0) {
+			int zz = readVarInt(adjacency, data);
+			value = u + ((zz >>> 1) ^ -(zz & 1));
+			pos = data + varIntSize(zz);
+			index = 0;
+		} else {
+			pos = data + readInt(adjacency, table + 8 * (lo - 1));
+			value = readInt(adjacency, table + 8 * (lo - 1) + 4);
+			pos += varIntSize(readVarInt(adjacency, pos));
+			index = lo * skipInterval;
+		}
+		// decode sequentially from the block start, the list is sorted
+		while (true) {
+			if (value >= v)
+				return value == v;
+			if (++index >= degree)
+				return false;
+			int gap = readVarInt(adjacency, pos);
+			pos += varIntSize(gap);
+			value += gap + 1;
+		}
+	}
+
+	/**
+	 * Returns the number of skip table entries of a list of the given length.
+	 */
+	private int blocksOf(int degree) {
+		return skipInterval > 0 && degree > skipInterval ? (degree - 1) / skipInterval : 0;
+	}
+
+	/**
+	 * Rebuilds the compressed arrays if users were inserted or removed since the last read.
+	 */
+	public void compact() {
+		if (staged.isEmpty() && removed.isEmpty())
+			return;
+
+		// collect the records of every user, staged versions replacing the compressed ones
+		List<Long> newIds = new ArrayList<Long>(ids.length + staged.size());
+		for (int v = 0; v < ids.length; v++) {
+			if (!staged.containsKey(ids[v]) && !removed.contains(ids[v]))
+				newIds.add(ids[v]);
+		}
+		newIds.addAll(staged.keySet());
+		long[] sorted = new long[newIds.size()];
+		for (int i = 0; i < sorted.length; i++) {
+			sorted[i] = newIds.get(i);
+		}
+		Arrays.sort(sorted);
+
+		double[] newSkills = new double[sorted.length];
+		long[][] friendIds = new long[sorted.length][];
+		for (int i = 0; i < sorted.length; i++) {
+			User<Long,Double,Double> s = staged.get(sorted[i]);
+			if (s != null) {
+				newSkills[i] = s.getSkills();
+				Set<Long> fs = s.getFriends();
+				friendIds[i] = new long[fs == null ? 0 : fs.size()];
+				int j = 0;
+				if (fs != null) {
+					for (Long f : fs) {
+						friendIds[i][j++] = f;
+					}
+				}
+			} else {
+				int v = Arrays.binarySearch(ids, sorted[i]);
+				newSkills[i] = skills[v];
+				friendIds[i] = friendIdsOf(v);
+			}
+		}
+
+		encode(sorted, friendIds);
+		skills = newSkills;
+		distance = new double[ids.length];
+		Arrays.fill(distance, Double.MAX_VALUE);
+		predecessor = new int[ids.length];
+		Arrays.fill(predecessor, -1);
+		visited = new BitSet(ids.length);
+		staged.clear();
+		removed.clear();
+	}
+
+	/**
+	 * Returns every friend id of a compressed user, including friends without a record.
+	 */
+	private long[] friendIdsOf(int v) {
+		FriendCursor c = new FriendCursor(v);
+		long[] ext = external.get(v);
+		long[] res = new long[c.degree + (ext == null ? 0 : ext.length)];
+		int n = 0;
+		while (c.hasNext()) {
+			res[n++] = ids[c.next()];
+		}
+		if (ext != null)
+			System.arraycopy(ext, 0, res, n, ext.length);
+		return res;
+	}
+
+	/**
+	 * Encodes the friend lists of the given users.
+	 */
+	private void encode(long[] sorted, long[][] friendIds) {
+		int n = sorted.length;
+		Map<Integer, long[]> newExternal = new HashMap<Integer, long[]>();
+		int[] newOffsets = new int[n + 1];
+		byte[] out = new byte[Math.max(16, n * 4)];
+		int len = 0;
+		long edges = 0;
+		int[] row = new int[16];
+
+		for (int v = 0; v < n; v++) {
+			long[] fs = friendIds[v];
+			if (row.length < fs.length)
+				row = new int[fs.length];
+			int degree = 0;
+			long[] unknown = new long[fs.length];
+			int numUnknown = 0;
+			for (long f : fs) {
+				int d = Arrays.binarySearch(sorted, f);
+				if (d >= 0)
+					row[degree++] = d;
+				else
+					unknown[numUnknown++] = f;
+			}
+			if (numUnknown > 0)
+				newExternal.put(v, Arrays.copyOf(unknown, numUnknown));
+			Arrays.sort(row, 0, degree);
+			edges += degree;
+
+			int blocks = blocksOf(degree);
+			// worst case: 5 bytes per varint and 8 per skip entry
+			int need = len + 5 + 8 * blocks + 5 * degree;
+			if (need > out.length)
+				out = Arrays.copyOf(out, Math.max(need, out.length * 2));
+
+			newOffsets[v] = len;
+			len = writeVarInt(out, len, degree);
+			int table = len;
+			len += 8 * blocks;
+			int data = len;
+			for (int i = 0; i < degree; i++) {
+				if (i == 0) {
+					int delta = row[0] - v;
+					len = writeVarInt(out, len, (delta << 1) ^ (delta >> 31));
+				} else {
+					if (blocks > 0 && i % skipInterval == 0) {
+						int b = i / skipInterval - 1;
+						writeInt(out, table + 8 * b, len - data);
+						writeInt(out, table + 8 * b + 4, row[i]);
+					}
+					len = writeVarInt(out, len, row[i] - row[i - 1] - 1);
+				}
+			}
+		}
+		newOffsets[n] = len;
+
+		ids = sorted;
+		offsets = newOffsets;
+		adjacency = Arrays.copyOf(out, len);
+		external = newExternal;
+		numEdges = edges;
+	}
+
+	private static int writeVarInt(byte[] out, int pos, int value) {
+		while ((value & ~0x7f) != 0) {
+			out[pos++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out[pos++] = (byte) value;
+		return pos;
+	}
+
+	private static int readVarInt(byte[] in, int pos) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = in[pos++];
+			value |= (b & 0x7f) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+
+	private static int varIntSize(int value) {
+		int size = 1;
+		while ((value & ~0x7f) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	private static void writeInt(byte[] out, int pos, int value) {
+		out[pos] = (byte) (value >>> 24);
+		out[pos + 1] = (byte) (value >>> 16);
+		out[pos + 2] = (byte) (value >>> 8);
+		out[pos + 3] = (byte) value;
+	}
+
+	private static int readInt(byte[] in, int pos) {
+		return ((in[pos] & 0xff) << 24) | ((in[pos + 1] & 0xff) << 16) | ((in[pos + 2] & 0xff) << 8) | (in[pos + 3] & 0xff);
+	}
+
+	/**
+	 * Sequential decoder of the friends (dense ids) of one user.
+	 */
+	private class FriendCursor {
+		private final int degree;
+		private int index;
+		private int pos;
+		private int value;
+
+		FriendCursor(int v) {
+			pos = offsets[v];
+			degree = readVarInt(adjacency, pos);
+			pos += varIntSize(degree);
+			pos += 8 * blocksOf(degree);
+			value = v;
+		}
+
+		boolean hasNext() {
+			return index < degree;
+		}
+
+		int next() {
+			int x = readVarInt(adjacency, pos);
+			pos += varIntSize(x);
+			if (index++ == 0)
+				value += (x >>> 1) ^ -(x & 1);
+			else
+				value += x + 1;
+			return value;
+		}
+	}
+
+	/**
+	 * Read-only set of the friends of a user, decoded while it is iterated.
+	 */
+	private class FriendSet extends AbstractSet<Long> {
+		private final int v;
+
+		FriendSet(int v) {
+			this.v = v;
+		}
+
+		@Override
+		public Iterator<Long> iterator() {
+			final FriendCursor c = new FriendCursor(v);
+			final long[] ext = external.get(v);
+			return new Iterator<Long>() {
+				private int e = 0;
+
+				@Override
+				public boolean hasNext() {
+					return c.hasNext() || (ext != null && e < ext.length);
+				}
+
+				@Override
+				public Long next() {
+					if (c.hasNext())
+						return ids[c.next()];
+					if (ext != null && e < ext.length)
+						return ext[e++];
+					throw new NoSuchElementException();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			long[] ext = external.get(v);
+			return readVarInt(adjacency, offsets[v]) + (ext == null ? 0 : ext.length);
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof Long))
+				return false;
+			int d = Arrays.binarySearch(ids, (Long) o);
+			if (d >= 0)
+				return isFriend(v, d);
+			long[] ext = external.get(v);
+			if (ext != null) {
+				for (long x : ext) {
+					if (x == (Long) o)
+						return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * View of a compressed user. Reads and writes go straight to the arrays of the graph.
+	 */
+	private class CompressedUser extends User<Long,Double,Double> {
+		private final int v;
+
+		CompressedUser(int v) {
+			super(ids[v], null, null);
+			this.v = v;
+		}
+
+		@Override
+		public void setId(Long id) {
+			throw new UnsupportedOperationException("ids of a compressed graph are immutable");
+		}
+
+		@Override
+		public Double getSkills() {
+			return skills[v];
+		}
+
+		@Override
+		public void setSkills(Double s) {
+			skills[v] = s;
+		}
+
+		@Override
+		public Double getDistance() {
+			return distance[v];
+		}
+
+		@Override
+		public void setDistance(Double d) {
+			distance[v] = d;
+		}
+
+		@Override
+		public Vertex<Long,Double,Double> getPredecessor() {
+			return predecessor[v] < 0 ? null : new CompressedUser(predecessor[v]);
+		}
+
+		@Override
+		public void setPredecessor(Vertex<Long,Double,Double> p) {
+			predecessor[v] = p == null ? -1 : denseOf(p.getId());
+		}
+
+		@Override
+		public Set<Long> getFriends() {
+			return new FriendSet(v);
+		}
+
+		@Override
+		public void setFriends(Set<Long> friends) {
+			insertVertex(ids[v], skills[v], friends);
+		}
+
+		@Override
+		public boolean isVisited() {
+			return visited.get(v);
+		}
+
+		@Override
+		public void setVisited(boolean b) {
+			visited.set(v, b);
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(ids[v]);
+		}
+
+		@Override
+		public String toString() {
+			int p = predecessor[v];
+			return "User [id=" + ids[v] + ", skills=" + skills[v] + ", distance=" + distance[v] + ", predecessor="
+					+ (p < 0 ? null : ids[p]) + ", friends=" + getFriends() + ", visited=" + isVisited() + "]";
+		}
+	}
+
+	/**
+	 * Estimates the memory retained by the compressed arrays, the per user state and
+	 * the changes not compressed yet.
+	 * @return the estimated bytes of each structure by name
+	 */
+	@Override
+	public Map<String, Long> memoryFootprint() {
+		long externalBytes = MemoryEstimate.hashMap(external.size());
+		for (long[] friends : external.values()) {
+			externalBytes += MemoryEstimate.BOXED + MemoryEstimate.array(friends.length, 8);
+		}
+		long stagedBytes = MemoryEstimate.hashMap(staged.size()) + MemoryEstimate.hashSet(removed.size())
+				+ (long) removed.size() * MemoryEstimate.BOXED;
+		for (User<Long,Double,Double> u : staged.values()) {
+			long friends = u.getFriends() == null ? 0 : u.getFriends().size();
+			stagedBytes += MemoryEstimate.BOXED + MemoryEstimate.object(5, 1) + 2 * MemoryEstimate.BOXED
+					+ MemoryEstimate.hashSet(friends) + friends * MemoryEstimate.BOXED;
+		}
+		Map<String, Long> res = new LinkedHashMap<String, Long>();
+		res.put("id map", MemoryEstimate.array(ids.length, 8));
+		res.put("vertices", MemoryEstimate.array(skills.length, 8) + MemoryEstimate.array(distance.length, 8)
+				+ MemoryEstimate.array(predecessor.length, 4) + MemoryEstimate.array(visited.size() / 64, 8));
+		res.put("friend sets", MemoryEstimate.array(offsets.length, 4) + MemoryEstimate.array(adjacency.length, 1) + externalBytes);
+		res.put("staged changes", stagedBytes);
+		return res;
+	}
+}
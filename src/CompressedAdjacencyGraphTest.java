@@ -0,0 +1,99 @@
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class CompressedAdjacencyGraphTest {
+
+	@Test
+	public void testInsertVertexAndNumVertices() {
+		Graph<Long,Double,Double> graph = new CompressedAdjacencyGraph();
+		graph.insertVertex(new Long(1), new Double(0.0), new HashSet<Long>());
+		assertEquals(graph.numVertices(), 1);
+		graph.insertVertex(new Long(2), new Double(0.0), new HashSet<Long>());
+		assertEquals(graph.numVertices(), 2);
+	}
+	
+	@Test
+	public void testGetFriends() {
+		Graph<Long,Double,Double> graph = new CompressedAdjacencyGraph();
+		Set<Long> hs = new HashSet<Long>(Arrays.asList(new Long(2), new Long(3), new Long(99)));
+		graph.insertVertex(new Long(1), new Double(0.0), hs);
+		graph.insertVertex(new Long(2), new Double(0.0), new HashSet<Long>());
+		graph.insertVertex(new Long(3), new Double(0.0), new HashSet<Long>(Arrays.asList(new Long(1))));
+		
+		// 99 has no record of its own but is still listed as a friend
+		assertEquals(graph.getFriends(new Long(1)), hs);
+		assertTrue(graph.getFriends(new Long(1)).contains(new Long(99)));
+		assertFalse(graph.getFriends(new Long(1)).contains(new Long(4)));
+		assertTrue(graph.getFriends(new Long(2)).isEmpty());
+		assertEquals(graph.getFriends(new Long(3)), new HashSet<Long>(Arrays.asList(new Long(1))));
+	}
+	
+	@Test
+	public void testSkipPointers() {
+		CompressedAdjacencyGraph graph = new CompressedAdjacencyGraph(4);
+		Set<Long> hub = new HashSet<Long>();
+		for (long i = 1; i <= 100; i++) {
+			graph.insertVertex(i * 7, new Double(1.0), new HashSet<Long>(Arrays.asList(new Long(0))));
+			if (i % 3 != 0)
+				hub.add(i * 7);
+		}
+		graph.insertVertex(new Long(0), new Double(1.0), hub);
+		
+		assertEquals(graph.getFriends(new Long(0)), hub);
+		int h = graph.denseOf(new Long(0));
+		for (long i = 1; i <= 100; i++) {
+			assertEquals(graph.isFriend(h, graph.denseOf(i * 7)), i % 3 != 0);
+		}
+		assertEquals(graph.numEdges(), 100 + hub.size());
+	}
+	
+	@Test
+	public void testVertexViews() {
+		Graph<Long,Double,Double> graph = new CompressedAdjacencyGraph();
+		graph.insertVertex(new Long(1), new Double(0.5), null);
+		graph.insertVertex(new Long(2), new Double(0.25), null);
+		
+		Vertex<Long,Double,Double> v = graph.getVertex(new Long(2));
+		assertEquals(v.getDistance(), new Double(Double.MAX_VALUE));
+		v.setDistance(new Double(1.25));
+		v.setPredecessor(graph.getVertex(new Long(1)));
+		v.setVisited(true);
+		
+		assertEquals(graph.getVertex(new Long(2)).getDistance(), new Double(1.25));
+		assertEquals(graph.getVertex(new Long(2)).getPredecessor(), graph.getVertex(new Long(1)));
+		assertTrue(graph.getVertex(new Long(2)).isVisited());
+		assertEquals(graph.getSkills(new Long(1)), new Double(0.5));
+	}
+	
+	@Test
+	public void testRemove() {
+		Graph<Long,Double,Double> graph = new CompressedAdjacencyGraph();
+		graph.insertVertex(new Long(1), new Double(0.0), null);
+		graph.insertVertex(new Long(2), new Double(0.5), null);
+		graph.insertVertex(new Long(3), new Double(0.33), null);
+		assertEquals(graph.getAllVertices().size(), 3);
+		
+		graph.remove(new Long(2));
+		assertEquals(graph.getAllVertices().size(), 2);
+		assertNull(graph.getVertex(new Long(2)));
+		assertEquals(graph.getVertex(new Long(3)).getSkills(), new Double(0.33));
+	}
+	
+	@Test
+	public void testShortestPathsMatchAdjacencyListMap() {
+		SocialNetwork network = new SocialNetwork(CompressedAdjacencyGraph::new);
+		network.loadData("sample.json");
+		
+		assertEquals(network.findShortestPathBetween(network.getUser(new Long(1)), network.getUser(new Long(4))), 
+				Arrays.asList(new Long(1),new Long(2),new Long(4)));
+		assertEquals(network.findShortestPathBetween(network.getUser(new Long(5)), network.getUser(new Long(8))), 
+				Arrays.asList(new Long(5),new Long(7),new Long(8)));
+		assertEquals(network.findShortestPathBetween(network.getUser(new Long(13)), network.getUser(new Long(16))), 
+				Arrays.asList(new Long(13),new Long(14),new Long(16)));
+	}
+}
@@ -0,0 +1,220 @@
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Queue;
+
+/**
+ * Finds the cheapest path that satisfies a set of SearchConstraints.
+ * Excluded users and the minimum skill are applied while relaxing friends.
+ * Without a hop limit this is the plain Dijkstra search of SearchScratch;
+ * with a hop limit it is a label-setting search over (user, hops) labels,
+ * where a label is only expanded if no cheaper label with fewer or equal hops
+ * has been settled at the same user, so the first label settled at the
+ * destination is the cheapest path within the limit. Labels that cannot reach
+ * the destination within the remaining hops, found with a bounded reverse
+ * breadth first search, are never created.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class ConstrainedSearch {
+
+	private final GraphIndex graph;
+	private final double[] weights;
+	private final SearchScratch scratch;
+
+	// fewest hops of a settled label of each user, reset through the touched list
+	private final int[] bestHops;
+	private int[] touched;
+	private int numTouched;
+
+	// fewest hops from each user to the destination, reset through the reached list
+	private final int[] hopsToDestination;
+	private int[] reached;
+	private int numReached;
+
+	// labels: user, distance, hops and parent label
+	private int[] labelVertex;
+	private double[] labelDist;
+	private int[] labelHops;
+	private int[] labelParent;
+	private int numLabels;
+
+	private int settledCount;
+
+	/**
+	 * Constructor
+	 * @param graph the graph to search
+	 * @param weights the cost of stepping onto each user
+	 * @param scratch the scratch state holding the exclusions
+	 */
+	public ConstrainedSearch(GraphIndex graph, double[] weights, SearchScratch scratch) {
+		this.graph = graph;
+		this.weights = weights;
+		this.scratch = scratch;
+		this.bestHops = new int[graph.size()];
+		Arrays.fill(bestHops, Integer.MAX_VALUE);
+		this.touched = new int[64];
+		this.hopsToDestination = new int[graph.size()];
+		Arrays.fill(hopsToDestination, Integer.MAX_VALUE);
+		this.reached = new int[64];
+		this.labelVertex = new int[64];
+		this.labelDist = new double[64];
+		this.labelHops = new int[64];
+		this.labelParent = new int[64];
+	}
+
+	/**
+	 * Returns the cheapest path from source to destination that satisfies the constraints.
+	 * @param source the dense id of the source
+	 * @param destination the dense id of the destination
+	 * @param constraints the constraints of the request
+	 * @return the path or null if no path satisfies the constraints
+	 */
+	public WeightedPath find(int source, int destination, SearchConstraints constraints) {
+		scratch.clearBans();
+		for (Long id : constraints.getExcluded()) {
+			int v = graph.indexOf(id);
+			if (v >= 0)
+				scratch.banVertex(v);
+		}
+		scratch.setWeightLimit(constraints.weightLimit());
+
+		WeightedPath res;
+		if (scratch.isBanned(source) || scratch.isBanned(destination) || source == destination) {
+			res = null;
+			settledCount = 0;
+		} else if (!constraints.hasHopLimit()) {
+			double d = scratch.run(graph, weights, source, destination);
+			settledCount = scratch.settledCount();
+			res = d == Double.POSITIVE_INFINITY ? null : new WeightedPath(scratch.path(destination), d);
+		} else {
+			res = labelSetting(source, destination, constraints.getMaxHops(), constraints.weightLimit());
+		}
+		scratch.clearBans();
+		return res;
+	}
+
+	/**
+	 * Resource constrained search with the number of hops as the resource.
+	 */
+	private WeightedPath labelSetting(int source, int destination, int maxHops, double limit) {
+		int[] offsets = graph.offsets();
+		int[] targets = graph.targets();
+		double[] skills = graph.weights();
+		Queue<Entry<Integer, Double>> pq = new PriorityQueue<>();
+		numLabels = 0;
+		settledCount = 0;
+		WeightedPath res = null;
+		reverseBreadthFirst(destination, maxHops);
+
+		pq.add(new Entry<Integer, Double>(addLabel(source, 0.0, 0, -1), 0.0));
+		while (!pq.isEmpty()) {
+			int l = pq.poll().getId();
+			int u = labelVertex[l];
+			int h = labelHops[l];
+			// dominated: a cheaper label with fewer or equal hops was settled here already
+			if (bestHops[u] <= h)
+				continue;
+			if (bestHops[u] == Integer.MAX_VALUE)
+				touch(u);
+			bestHops[u] = h;
+			settledCount++;
+			if (u == destination) {
+				res = new WeightedPath(pathOf(l), labelDist[l]);
+				break;
+			}
+			if (h == maxHops)
+				continue;
+
+			double du = labelDist[l];
+			for (int i = offsets[u], end = offsets[u + 1]; i < end; i++) {
+				int f = targets[i];
+				if (bestHops[f] <= h + 1 || hopsToDestination[f] > maxHops - h - 1 || scratch.isBanned(f))
+					continue;
+				if (skills[f] > limit && f != destination)
+					continue;
+				double d = du + weights[f];
+				pq.add(new Entry<Integer, Double>(addLabel(f, d, h + 1, l), d));
+			}
+		}
+
+		// reset only the users this search touched
+		for (int i = 0; i < numTouched; i++) {
+			bestHops[touched[i]] = Integer.MAX_VALUE;
+		}
+		numTouched = 0;
+		for (int i = 0; i < numReached; i++) {
+			hopsToDestination[reached[i]] = Integer.MAX_VALUE;
+		}
+		numReached = 0;
+		return res;
+	}
+
+	/**
+	 * Computes the fewest hops from every user within maxHops of the destination,
+	 * ignoring excluded users. Users further away keep Integer.MAX_VALUE.
+	 */
+	private void reverseBreadthFirst(int destination, int maxHops) {
+		GraphIndex reverse = graph.transpose();
+		int[] offsets = reverse.offsets();
+		int[] targets = reverse.targets();
+		hopsToDestination[destination] = 0;
+		reached = ensure(reached, 1);
+		reached[numReached++] = destination;
+		// the reached list doubles as the queue
+		for (int head = 0; head < numReached; head++) {
+			int u = reached[head];
+			int h = hopsToDestination[u];
+			if (h == maxHops)
+				continue;
+			for (int i = offsets[u], end = offsets[u + 1]; i < end; i++) {
+				int f = targets[i];
+				if (hopsToDestination[f] != Integer.MAX_VALUE || scratch.isBanned(f))
+					continue;
+				hopsToDestination[f] = h + 1;
+				reached = ensure(reached, numReached + 1);
+				reached[numReached++] = f;
+			}
+		}
+	}
+
+	private static int[] ensure(int[] a, int size) {
+		return size <= a.length ? a : Arrays.copyOf(a, Math.max(size, a.length * 2));
+	}
+
+	/**
+	 * Returns the number of labels settled by the last search.
+	 * @return the number of settled labels
+	 */
+	public int settledCount() {
+		return settledCount;
+	}
+
+	private int addLabel(int v, double d, int hops, int parent) {
+		if (numLabels == labelVertex.length) {
+			int size = numLabels * 2;
+			labelVertex = Arrays.copyOf(labelVertex, size);
+			labelDist = Arrays.copyOf(labelDist, size);
+			labelHops = Arrays.copyOf(labelHops, size);
+			labelParent = Arrays.copyOf(labelParent, size);
+		}
+		labelVertex[numLabels] = v;
+		labelDist[numLabels] = d;
+		labelHops[numLabels] = hops;
+		labelParent[numLabels] = parent;
+		return numLabels++;
+	}
+
+	private void touch(int v) {
+		touched = ensure(touched, numTouched + 1);
+		touched[numTouched++] = v;
+	}
+
+	private int[] pathOf(int l) {
+		int[] path = new int[labelHops[l] + 1];
+		for (int i = path.length - 1; l != -1; l = labelParent[l]) {
+			path[i--] = labelVertex[l];
+		}
+		return path;
+	}
+}
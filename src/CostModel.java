@@ -0,0 +1,24 @@
+/**
+ * Cost model of a path search: the cost of stepping onto each user.
+ * A model is materialised into a primitive weight array indexed by dense id once
+ * per GraphIndex, so the searches never evaluate it while relaxing friends.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public interface CostModel {
+
+	/**
+	 * Returns the name of the cost model.
+	 * @return the name
+	 */
+	String getName();
+
+	/**
+	 * Computes the cost of stepping onto every user of the graph.
+	 * The costs must be positive.
+	 * @param graph the graph
+	 * @return the weights indexed by dense id
+	 */
+	double[] materialise(GraphIndex graph);
+}
@@ -0,0 +1,631 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Loads a JSON lines dataset into a graph, plain or compressed with gzip or zstd, in a
+ * pipeline of three stages that overlap:
+ * <ol>
+ * <li>a reader thread decompresses the file into a fixed ring of byte buffers, each cut
+ * after its last complete line;</li>
+ * <li>parse workers turn the lines of a buffer into users with their friend sets;</li>
+ * <li>the calling thread inserts the parsed buffers into the graph in file order, then
+ * hands the buffer back to the reader.</li>
+ * </ol>
+ * The ring bounds the memory in flight and makes a stage that is ahead wait for the
+ * slowest one, so the load takes about as long as that stage alone. Its buffers are
+ * allocated when the reader first fills them, so a small file takes only the buffers
+ * its lines need. The Report gives the
+ * busy time of each stage.
+ *
+ * The format is detected from the first bytes of the file. Gzip is read with the JDK;
+ * zstd needs zstd-jni on the class path, or else the zstd command line tool.
+ *
+ * Lines are scanned directly from the bytes when they hold only the user, skill and
+ * friends keys with integer values, which is what the snapshots contain; any other line
+ * goes through the JSONParser as in the original loadData, so malformed lines are
+ * reported and skipped the same way.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class DatasetLoader {
+
+	static final int BUFFER_SIZE = 1 << 20;
+	// buffers per parse worker, enough to keep every stage busy
+	private static final int BUFFERS_PER_WORKER = 3;
+	// at most this many buffers in the ring, whatever the number of workers
+	private static final int MAX_BUFFERS = 32;
+
+	private static final byte[] GZIP_MAGIC = { (byte) 0x1f, (byte) 0x8b };
+	private static final byte[] ZSTD_MAGIC = { (byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd };
+	// the zstd command line tool, replaced in the tests
+	static String[] zstdCommand = { "zstd" };
+
+	/**
+	 * Time spent in each stage of a load.
+	 */
+	public static class Report {
+		private final long users;
+		private final long bytes;
+		private final long readNanos;
+		private final long parseNanos;
+		private final long insertNanos;
+		private final long elapsedNanos;
+
+		Report(long users, long bytes, long readNanos, long parseNanos, long insertNanos, long elapsedNanos) {
+			this.users = users;
+			this.bytes = bytes;
+			this.readNanos = readNanos;
+			this.parseNanos = parseNanos;
+			this.insertNanos = insertNanos;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		/**
+		 * Returns the number of users inserted.
+		 * @return the number of parsed user records
+		 */
+		public long getUsers() {
+			return users;
+		}
+
+		/**
+		 * Returns the size of the dataset after decompression.
+		 * @return the number of bytes
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * Returns the time the reader spent reading and decompressing.
+		 * @return the time in milliseconds
+		 */
+		public double getReadMillis() {
+			return readNanos / 1e6;
+		}
+
+		/**
+		 * Returns the time the workers spent parsing, summed over the workers.
+		 * @return the time in milliseconds
+		 */
+		public double getParseMillis() {
+			return parseNanos / 1e6;
+		}
+
+		/**
+		 * Returns the time spent inserting into the graph.
+		 * @return the time in milliseconds
+		 */
+		public double getInsertMillis() {
+			return insertNanos / 1e6;
+		}
+
+		/**
+		 * Returns the wall clock time of the load.
+		 * @return the time in milliseconds
+		 */
+		public double getElapsedMillis() {
+			return elapsedNanos / 1e6;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d users, %.1f MB in %.0f ms (read %.0f ms, parse %.0f ms, insert %.0f ms)",
+					users, bytes / 1e6, getElapsedMillis(), getReadMillis(), getParseMillis(), getInsertMillis());
+		}
+	}
+
+	/**
+	 * A ring buffer holding whole lines, numbered in file order.
+	 */
+	private static class Chunk {
+		byte[] data = new byte[0];	// allocated by the reader
+		int length;
+		long sequence;
+		// users parsed from the lines
+		int users;
+		long[] ids = new long[0];
+		double[] weights = new double[0];
+		List<Set<Long>> friends = new ArrayList<Set<Long>>();
+	}
+
+	// marks the end of the file, one per worker
+	private static final Chunk END = new Chunk();
+
+	/**
+	 * Opens a dataset, decompressing it if it starts with the gzip or zstd magic bytes.
+	 * @param filename the file
+	 * @return the stream of the decompressed JSON lines
+	 * @throws IOException if the file cannot be opened or no zstd decoder is available
+	 */
+	public static InputStream open(String filename) throws IOException {
+		BufferedInputStream in = new BufferedInputStream(new FileInputStream(filename), 1 << 16);
+		try {
+			byte[] head = new byte[4];
+			in.mark(head.length);
+			int n = in.readNBytes(head, 0, head.length);
+			in.reset();
+			if (startsWith(head, n, GZIP_MAGIC))
+				return new GZIPInputStream(in, 1 << 16);
+			if (startsWith(head, n, ZSTD_MAGIC))
+				return zstd(filename, in);
+			return in;
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens a dataset for reading line by line, decompressing it if needed.
+	 * @param filename the file
+	 * @return the reader of the JSON lines
+	 * @throws IOException if the file cannot be opened or no zstd decoder is available
+	 */
+	public static BufferedReader reader(String filename) throws IOException {
+		return new BufferedReader(new InputStreamReader(open(filename), StandardCharsets.UTF_8), 1 << 16);
+	}
+
+	/**
+	 * Loads a dataset into a graph.
+	 * @param filename the JSON lines file, plain, gzip or zstd
+	 * @param graph the graph to insert the users into
+	 * @param threads the number of parse workers
+	 * @return the time spent in each stage
+	 * @throws IOException if the file cannot be read or a line is not a user record
+	 */
+	public static Report load(String filename, Graph<Long, Double, Double> graph, int threads) throws IOException {
+		long start = System.nanoTime();
+		int workers = Math.max(1, threads);
+		int buffers = Math.min(workers * BUFFERS_PER_WORKER, MAX_BUFFERS);
+		BlockingQueue<Chunk> free = new ArrayBlockingQueue<Chunk>(buffers);
+		for (int i = 0; i < buffers; i++) {
+			free.add(new Chunk());
+		}
+		BlockingQueue<Chunk> filled = new ArrayBlockingQueue<Chunk>(buffers + workers);
+		BlockingQueue<Chunk> parsed = new ArrayBlockingQueue<Chunk>(buffers + workers);
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		AtomicLong readNanos = new AtomicLong();
+		AtomicLong parseNanos = new AtomicLong();
+		AtomicLong bytes = new AtomicLong();
+
+		InputStream in = open(filename);
+		List<Thread> stages = new ArrayList<Thread>();
+		stages.add(new Thread(() -> {
+			try {
+				read(in, free, filled, workers, readNanos, bytes);
+			} catch (Throwable e) {
+				failure.compareAndSet(null, e);
+			}
+		}, "dataset-reader"));
+		for (int i = 0; i < workers; i++) {
+			stages.add(new Thread(() -> {
+				try {
+					parse(filled, parsed, parseNanos);
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			}, "dataset-parser-" + i));
+		}
+		for (Thread t : stages) {
+			t.setDaemon(true);
+			t.start();
+		}
+
+		long insertNanos = 0;
+		long users = 0;
+		try {
+			// the workers finish out of order, buffers are inserted by sequence
+			Map<Long, Chunk> early = new HashMap<Long, Chunk>();
+			long next = 0;
+			int ended = 0;
+			while (ended < workers) {
+				Chunk c = parsed.poll(100, TimeUnit.MILLISECONDS);
+				if (failure.get() != null)
+					throw failure.get();
+				if (c == null)
+					continue;
+				if (c == END) {
+					ended++;
+					continue;
+				}
+				early.put(c.sequence, c);
+				while ((c = early.remove(next)) != null) {
+					long t = System.nanoTime();
+					for (int i = 0; i < c.users; i++) {
+						graph.insertVertex(c.ids[i], c.weights[i], c.friends.get(i));
+					}
+					insertNanos += System.nanoTime() - t;
+					users += c.users;
+					c.friends.clear();
+					free.put(c);
+					next++;
+				}
+			}
+			if (failure.get() != null)
+				throw failure.get();
+		} catch (IOException | RuntimeException | Error e) {
+			throw e;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while loading " + filename, e);
+		} catch (Throwable e) {
+			throw new IOException("cannot load " + filename, e);
+		} finally {
+			for (Thread t : stages) {
+				t.interrupt();
+			}
+			in.close();
+		}
+		return new Report(users, bytes.get(), readNanos.get(), parseNanos.get(), insertNanos, System.nanoTime() - start);
+	}
+
+	/**
+	 * Fills the free buffers with whole lines; the part of the last line that did not fit
+	 * is moved to the next buffer. A line longer than a buffer grows it.
+	 */
+	private static void read(InputStream in, BlockingQueue<Chunk> free, BlockingQueue<Chunk> filled, int workers,
+			AtomicLong readNanos, AtomicLong bytes) throws IOException, InterruptedException {
+		byte[] carry = new byte[0];
+		int carried = 0;
+		long sequence = 0;
+		boolean eof = false;
+		while (!eof) {
+			Chunk c = free.take();
+			if (c.data.length == 0)
+				c.data = new byte[BUFFER_SIZE];
+			if (c.data.length < carried * 2)
+				c.data = new byte[carried * 2];
+			System.arraycopy(carry, 0, c.data, 0, carried);
+			c.length = carried;
+			// read until the buffer is full or the file ends
+			long t = System.nanoTime();
+			while (c.length < c.data.length) {
+				int n = in.read(c.data, c.length, c.data.length - c.length);
+				if (n < 0) {
+					eof = true;
+					break;
+				}
+				c.length += n;
+				bytes.addAndGet(n);
+			}
+			readNanos.addAndGet(System.nanoTime() - t);
+
+			int end = c.length;
+			if (!eof) {
+				while (end > 0 && c.data[end - 1] != '\n') {
+					end--;
+				}
+				if (end == 0) {
+					// no line ends in the buffer, give it more room
+					carry = c.data;
+					carried = c.length;
+					c.data = new byte[c.data.length];
+					free.put(c);
+					continue;
+				}
+			}
+			carried = c.length - end;
+			if (carry.length < carried)
+				carry = new byte[Math.max(carried, BUFFER_SIZE)];
+			System.arraycopy(c.data, end, carry, 0, carried);
+			c.length = end;
+			c.sequence = sequence++;
+			filled.put(c);
+		}
+		for (int i = 0; i < workers; i++) {
+			filled.put(END);
+		}
+	}
+
+	/**
+	 * Parses the lines of the filled buffers until the end of the file.
+	 */
+	private static void parse(BlockingQueue<Chunk> filled, BlockingQueue<Chunk> parsed, AtomicLong parseNanos) throws InterruptedException {
+		JSONParser parser = new JSONParser();
+		LineScanner scanner = new LineScanner();
+		while (true) {
+			Chunk c = filled.take();
+			if (c == END) {
+				parsed.put(END);
+				return;
+			}
+			long t = System.nanoTime();
+			c.users = 0;
+			byte[] b = c.data;
+			int from = 0;
+			while (from < c.length) {
+				int to = from;
+				while (to < c.length && b[to] != '\n') {
+					to++;
+				}
+				// as BufferedReader.readLine, a line may also end with \r\n
+				int end = to > from && b[to - 1] == '\r' ? to - 1 : to;
+				if (scanner.scan(b, from, end))
+					add(c, scanner.id, scanner.skill, scanner.friends);
+				else
+					parseLine(parser, new String(b, from, end - from, StandardCharsets.UTF_8), c);
+				from = to + 1;
+			}
+			parseNanos.addAndGet(System.nanoTime() - t);
+			parsed.put(c);
+		}
+	}
+
+	/**
+	 * Parses a line with the JSONParser, the way loadData always did.
+	 */
+	private static void parseLine(JSONParser parser, String line, Chunk c) {
+		try {
+			JSONObject jsonObject = (JSONObject) parser.parse(line);
+			Long id = (Long) jsonObject.get("user");
+			Long skill = (Long) jsonObject.get("skill");
+			JSONArray friends = (JSONArray) jsonObject.get("friends");
+			Set<Long> friendsList = new HashSet<Long>();
+			for (Object friend : friends) {
+				friendsList.add((Long) friend);
+			}
+			add(c, id, skill, friendsList);
+		} catch (ParseException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static void add(Chunk c, long id, long skill, Set<Long> friends) {
+		if (c.users == c.ids.length) {
+			int n = Math.max(1024, c.users * 2);
+			c.ids = Arrays.copyOf(c.ids, n);
+			c.weights = Arrays.copyOf(c.weights, n);
+		}
+		c.ids[c.users] = id;
+		// inverse skill, 2.0 for no skill, as loadData always did
+		c.weights[c.users] = skill == 0 ? 2.0 : 1.0 / skill;
+		c.friends.add(friends);
+		c.users++;
+	}
+
+	/**
+	 * Scans a line holding exactly the user, skill and friends keys with integer values,
+	 * in any order and with any spacing. Returns false for anything else.
+	 */
+	private static class LineScanner {
+		long id;
+		long skill;
+		Set<Long> friends;
+
+		private byte[] b;
+		private int p;
+		private int end;
+
+		boolean scan(byte[] b, int from, int end) {
+			this.b = b;
+			this.p = from;
+			this.end = end;
+			boolean hasId = false, hasSkill = false;
+			friends = null;
+			skipSpace();
+			if (!consume('{'))
+				return false;
+			do {
+				skipSpace();
+				int key = key();
+				skipSpace();
+				if (!consume(':'))
+					return false;
+				skipSpace();
+				switch (key) {
+				case 'u':
+					if (hasId || !integer())
+						return false;
+					id = value;
+					hasId = true;
+					break;
+				case 's':
+					if (hasSkill || !integer())
+						return false;
+					skill = value;
+					hasSkill = true;
+					break;
+				case 'f':
+					if (friends != null || !array())
+						return false;
+					break;
+				default:
+					return false;
+				}
+				skipSpace();
+			} while (consume(','));
+			if (!consume('}'))
+				return false;
+			skipSpace();
+			return p == end && hasId && hasSkill && friends != null;
+		}
+
+		/**
+		 * Reads a quoted key and returns 'u', 's' or 'f' for user, skill and friends.
+		 */
+		private int key() {
+			if (match("\"user\""))
+				return 'u';
+			if (match("\"skill\""))
+				return 's';
+			if (match("\"friends\""))
+				return 'f';
+			return 0;
+		}
+
+		private boolean array() {
+			if (!consume('['))
+				return false;
+			friends = new HashSet<Long>();
+			skipSpace();
+			if (consume(']'))
+				return true;
+			do {
+				skipSpace();
+				if (!integer())
+					return false;
+				friends.add(value);
+				skipSpace();
+			} while (consume(','));
+			return consume(']');
+		}
+
+		private long value;
+
+		/**
+		 * Reads an integer that fits a long for sure; fractions and exponents are left to
+		 * the JSONParser, which would not give a Long for them.
+		 */
+		private boolean integer() {
+			boolean negative = consume('-');
+			int start = p;
+			long v = 0;
+			while (p < end && b[p] >= '0' && b[p] <= '9') {
+				v = v * 10 + (b[p++] - '0');
+			}
+			int digits = p - start;
+			if (digits == 0 || digits > 18 || (digits > 1 && b[start] == '0'))
+				return false;
+			if (p < end && (b[p] == '.' || b[p] == 'e' || b[p] == 'E'))
+				return false;
+			value = negative ? -v : v;
+			return true;
+		}
+
+		private boolean match(String s) {
+			int n = s.length();
+			if (end - p < n)
+				return false;
+			for (int i = 0; i < n; i++) {
+				if (b[p + i] != s.charAt(i))
+					return false;
+			}
+			p += n;
+			return true;
+		}
+
+		private boolean consume(char c) {
+			if (p < end && b[p] == c) {
+				p++;
+				return true;
+			}
+			return false;
+		}
+
+		private void skipSpace() {
+			while (p < end && (b[p] == ' ' || b[p] == '\t' || b[p] == '\r')) {
+				p++;
+			}
+		}
+	}
+
+	private static boolean startsWith(byte[] head, int n, byte[] magic) {
+		if (n < magic.length)
+			return false;
+		for (int i = 0; i < magic.length; i++) {
+			if (head[i] != magic[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Decompresses zstd with zstd-jni if it is on the class path, which keeps it an
+	 * optional dependency, or else with the zstd command line tool.
+	 */
+	private static InputStream zstd(String filename, InputStream in) throws IOException {
+		try {
+			Class<?> decoder = Class.forName("com.github.luben.zstd.ZstdInputStream");
+			return (InputStream) decoder.getConstructor(InputStream.class).newInstance(in);
+		} catch (ClassNotFoundException e) {
+			// fall back to the command line tool
+		} catch (InvocationTargetException e) {
+			in.close();
+			throw new IOException("cannot decompress " + filename, e.getCause());
+		} catch (ReflectiveOperationException e) {
+			in.close();
+			throw new IOException("cannot decompress " + filename, e);
+		}
+		in.close();
+		List<String> command = new ArrayList<String>(Arrays.asList(zstdCommand));
+		command.add("-dc");
+		command.add(filename);
+		Process zstd;
+		try {
+			zstd = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+		} catch (IOException e) {
+			throw new IOException(filename + " is compressed with zstd: add zstd-jni to the class path or install zstd", e);
+		}
+		// a corrupt or truncated file ends the output early, only the exit status tells
+		return new FilterInputStream(zstd.getInputStream()) {
+			private boolean exited;
+
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b < 0)
+					checkExit();
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int n = super.read(b, off, len);
+				if (n < 0)
+					checkExit();
+				return n;
+			}
+
+			@Override
+			public void close() throws IOException {
+				super.close();
+				if (zstd.isAlive())
+					zstd.destroy();
+				else
+					checkExit();
+			}
+
+			private void checkExit() throws IOException {
+				if (exited)
+					return;
+				exited = true;
+				try {
+					int status = zstd.waitFor();
+					if (status != 0)
+						throw new IOException("zstd exited with status " + status + " on " + filename);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("interrupted while waiting for zstd on " + filename);
+				}
+			}
+		};
+	}
+}
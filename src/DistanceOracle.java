@@ -0,0 +1,334 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Landmark distance oracle: estimates the distance between two users without a search.
+ * For a few landmark users the exact distances from every user to the landmark and from
+ * the landmark to every user are precomputed. The distance from s to t is then at most
+ * d(s, l) + d(l, t) for every landmark l, and by the triangle inequality at least
+ * d(l, t) - d(l, s) and d(s, l) - d(t, l). An estimate reads two rows of
+ * 2 * numLandmarks floats, so it takes well under a microsecond; more landmarks give
+ * tighter bounds for a larger index and a longer build (two Dijkstra searches each).
+ *
+ * Distances are stored as floats, so bounds carry a relative rounding error of about 1e-7.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class DistanceOracle {
+
+	/**
+	 * How the landmarks are chosen.
+	 */
+	public enum Selection {
+		/** The users with the most friends, cheap to pick. Hubs lie on many shortest
+		 *  paths, so this gives the best estimates (upper bounds). */
+		DEGREE,
+		/** Each landmark is the user furthest from the ones chosen before it, starting
+		 *  from the user with the most friends. Peripheral landmarks give the best lower
+		 *  bounds (e.g. as A* potentials) but are chosen one by one. */
+		FARTHEST
+	}
+
+	private static final int MAGIC = 0x444f5231;	// "DOR1"
+
+	private final long[] ids;		// user id of every row
+	private final int[] landmarks;	// dense ids of the landmarks
+	private final float[] to;		// to[v * k + i] = d(v, landmark i)
+	private final float[] from;		// from[v * k + i] = d(landmark i, v)
+
+	private DistanceOracle(long[] ids, int[] landmarks, float[] to, float[] from) {
+		this.ids = ids;
+		this.landmarks = landmarks;
+		this.to = to;
+		this.from = from;
+	}
+
+	/**
+	 * Builds the oracle over the inverse skill weights of the index.
+	 * @param graph the graph
+	 * @param numLandmarks the number of landmarks
+	 * @param selection how the landmarks are chosen
+	 * @param threads the number of threads running the searches
+	 * @return the oracle
+	 */
+	public static DistanceOracle build(GraphIndex graph, int numLandmarks, Selection selection, int threads) {
+		int n = graph.size();
+		int k = Math.min(numLandmarks, n);
+		double[] w = graph.weights();
+		float[] to = new float[n * k];
+		float[] from = new float[n * k];
+		int[] landmarks;
+
+		if (selection == Selection.FARTHEST) {
+			landmarks = new int[k];
+			SearchScratch scratch = new SearchScratch(n);
+			// smallest distance from the landmarks chosen so far
+			double[] nearest = new double[n];
+			Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+			int next = highestDegree(graph);
+			for (int i = 0; i < k; i++) {
+				landmarks[i] = next;
+				forward(graph, w, scratch, next, from, i, k);
+				// unreachable users are furthest of all, which also spreads landmarks over components
+				next = -1;
+				double far = -1.0;
+				for (int v = 0; v < n; v++) {
+					nearest[v] = Math.min(nearest[v], scratch.distance(v));
+					if (nearest[v] > far) {
+						far = nearest[v];
+						next = v;
+					}
+				}
+			}
+			parallel(threads, k, n, (scratchOf, i) -> backward(graph, w, scratchOf, landmarks[i], to, i, k));
+		} else {
+			landmarks = Arrays.copyOf(byDegree(graph), k);
+			parallel(threads, k, n, (scratchOf, i) -> {
+				forward(graph, w, scratchOf, landmarks[i], from, i, k);
+				backward(graph, w, scratchOf, landmarks[i], to, i, k);
+			});
+		}
+
+		long[] ids = new long[n];
+		for (int v = 0; v < n; v++) {
+			ids[v] = graph.idOf(v);
+		}
+		return new DistanceOracle(ids, landmarks, to, from);
+	}
+
+	/**
+	 * Returns the estimated distance from s to t: the shortest route through a landmark.
+	 * @param s the dense id of the source
+	 * @param t the dense id of the destination
+	 * @return the estimate, Double.POSITIVE_INFINITY if no landmark connects them
+	 */
+	public double estimate(int s, int t) {
+		return upperBound(s, t);
+	}
+
+	/**
+	 * Returns an upper bound of the distance from s to t.
+	 * @param s the dense id of the source
+	 * @param t the dense id of the destination
+	 * @return the upper bound
+	 */
+	public double upperBound(int s, int t) {
+		if (s == t)
+			return 0.0;
+		int k = landmarks.length;
+		int a = s * k, b = t * k;
+		float best = Float.POSITIVE_INFINITY;
+		for (int i = 0; i < k; i++) {
+			best = Math.min(best, to[a + i] + from[b + i]);
+		}
+		return best;
+	}
+
+	/**
+	 * Returns a lower bound of the distance from s to t.
+	 * @param s the dense id of the source
+	 * @param t the dense id of the destination
+	 * @return the lower bound, Double.POSITIVE_INFINITY if t is known to be unreachable
+	 */
+	public double lowerBound(int s, int t) {
+		if (s == t)
+			return 0.0;
+		int k = landmarks.length;
+		int a = s * k, b = t * k;
+		float best = 0.0f;
+		for (int i = 0; i < k; i++) {
+			float ls = from[a + i], lt = from[b + i], sl = to[a + i], tl = to[b + i];
+			// a landmark reaching s but not t, or reached from t but not from s, proves t unreachable
+			if ((ls != Float.POSITIVE_INFINITY && lt == Float.POSITIVE_INFINITY)
+					|| (tl != Float.POSITIVE_INFINITY && sl == Float.POSITIVE_INFINITY))
+				return Double.POSITIVE_INFINITY;
+			if (lt != Float.POSITIVE_INFINITY && ls != Float.POSITIVE_INFINITY)
+				best = Math.max(best, lt - ls);
+			if (sl != Float.POSITIVE_INFINITY && tl != Float.POSITIVE_INFINITY)
+				best = Math.max(best, sl - tl);
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the number of landmarks.
+	 * @return the number of landmarks
+	 */
+	public int numLandmarks() {
+		return landmarks.length;
+	}
+
+	/**
+	 * Returns the size of the distance tables.
+	 * @return the size in bytes
+	 */
+	public long sizeInBytes() {
+		return 4L * (to.length + from.length) + 8L * ids.length + 4L * landmarks.length;
+	}
+
+	/**
+	 * Writes the oracle to a file. The user ids are saved with it, so the file can be
+	 * loaded over an index with a different vertex ordering.
+	 * @param filename the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(String filename) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16))) {
+			int k = landmarks.length;
+			out.writeInt(MAGIC);
+			out.writeInt(ids.length);
+			out.writeInt(k);
+			for (int l : landmarks) {
+				out.writeLong(ids[l]);
+			}
+			for (int v = 0; v < ids.length; v++) {
+				out.writeLong(ids[v]);
+				for (int i = 0; i < k; i++) {
+					out.writeFloat(to[v * k + i]);
+				}
+				for (int i = 0; i < k; i++) {
+					out.writeFloat(from[v * k + i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads an oracle written by save() and maps it onto the dense ids of the index.
+	 * @param filename the file to read
+	 * @param graph the index of the same users
+	 * @return the oracle
+	 * @throws IOException if the file cannot be read or does not match the graph
+	 */
+	public static DistanceOracle load(String filename, GraphIndex graph) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename), 1 << 16))) {
+			if (in.readInt() != MAGIC)
+				throw new IOException(filename + " is not a distance oracle");
+			int n = in.readInt();
+			int k = in.readInt();
+			if (n != graph.size())
+				throw new IOException(filename + " has " + n + " users, the graph has " + graph.size());
+			int[] landmarks = new int[k];
+			for (int i = 0; i < k; i++) {
+				landmarks[i] = denseOf(graph, in.readLong(), filename);
+			}
+			float[] to = new float[n * k];
+			float[] from = new float[n * k];
+			for (int r = 0; r < n; r++) {
+				int v = denseOf(graph, in.readLong(), filename);
+				for (int i = 0; i < k; i++) {
+					to[v * k + i] = in.readFloat();
+				}
+				for (int i = 0; i < k; i++) {
+					from[v * k + i] = in.readFloat();
+				}
+			}
+			long[] ids = new long[n];
+			for (int v = 0; v < n; v++) {
+				ids[v] = graph.idOf(v);
+			}
+			return new DistanceOracle(ids, landmarks, to, from);
+		}
+	}
+
+	private static int denseOf(GraphIndex graph, long id, String filename) throws IOException {
+		int v = graph.indexOf(id);
+		if (v < 0)
+			throw new IOException(filename + " has user " + id + " that is not in the graph");
+		return v;
+	}
+
+	/**
+	 * Stores the distances from the landmark to every user in column i.
+	 */
+	private static void forward(GraphIndex graph, double[] w, SearchScratch scratch, int landmark, float[] table, int i, int k) {
+		scratch.clearBans();
+		scratch.runToAll(graph, w, landmark, new int[0]);
+		for (int v = 0; v < graph.size(); v++) {
+			table[v * k + i] = (float) scratch.distance(v);
+		}
+	}
+
+	/**
+	 * Stores the distances from every user to the landmark in column i. Stepping onto a
+	 * user in the transposed graph pays for that user instead of the next one on the
+	 * real path, hence d(v, l) = d'(l, v) - w[v] + w[l].
+	 */
+	private static void backward(GraphIndex graph, double[] w, SearchScratch scratch, int landmark, float[] table, int i, int k) {
+		scratch.clearBans();
+		scratch.runToAll(graph.transpose(), w, landmark, new int[0]);
+		for (int v = 0; v < graph.size(); v++) {
+			double d = scratch.distance(v);
+			table[v * k + i] = (float) (v == landmark ? 0.0 : d - w[v] + w[landmark]);
+		}
+	}
+
+	/**
+	 * A search run for landmark i on the scratch of the calling thread.
+	 */
+	private interface LandmarkTask {
+		void run(SearchScratch scratch, int i);
+	}
+
+	/**
+	 * Runs the task for landmarks 0 to k - 1 on a few threads, each with its own scratch.
+	 */
+	private static void parallel(int threads, int k, int n, LandmarkTask task) {
+		AtomicInteger next = new AtomicInteger();
+		Runnable worker = () -> {
+			SearchScratch scratch = null;
+			for (int i = next.getAndIncrement(); i < k; i = next.getAndIncrement()) {
+				if (scratch == null)
+					scratch = new SearchScratch(n);
+				task.run(scratch, i);
+			}
+		};
+		Thread[] pool = new Thread[Math.max(1, Math.min(threads, k)) - 1];
+		for (int j = 0; j < pool.length; j++) {
+			pool[j] = new Thread(worker, "distance-oracle-" + j);
+			pool[j].start();
+		}
+		worker.run();
+		for (Thread t : pool) {
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("interrupted while building the distance oracle", e);
+			}
+		}
+	}
+
+	private static int highestDegree(GraphIndex graph) {
+		int best = 0;
+		for (int v = 1; v < graph.size(); v++) {
+			if (graph.degree(v) > graph.degree(best))
+				best = v;
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the users by decreasing degree.
+	 */
+	private static int[] byDegree(GraphIndex graph) {
+		Integer[] order = new Integer[graph.size()];
+		for (int v = 0; v < order.length; v++) {
+			order[v] = v;
+		}
+		Arrays.sort(order, (a, b) -> Integer.compare(graph.degree(b), graph.degree(a)));
+		int[] res = new int[order.length];
+		for (int v = 0; v < res.length; v++) {
+			res[v] = order[v];
+		}
+		return res;
+	}
+}
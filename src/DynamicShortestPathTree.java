@@ -0,0 +1,348 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * Full shortest path tree of one source, kept up to date while skills and friendships
+ * change, so queries from the source are a walk along the predecessors.
+ *
+ * Changes are repaired incrementally in the style of Ramalingam and Reps instead of
+ * rerunning Dijkstra's algorithm:
+ * <ul>
+ * <li>a cheaper user or a new friendship can only shorten paths, so a Dijkstra search
+ * seeded with the improved users propagates the decrease as far as it reaches;</li>
+ * <li>a costlier user or a removed friendship can only lengthen the paths through it,
+ * i.e. through its subtree; every other distance stays exact, so the subtree is given
+ * the best distance through an unaffected friend and a Dijkstra search restricted to the
+ * subtree settles it.</li>
+ * </ul>
+ * Either way the work is proportional to the part of the tree that changes.
+ *
+ * The tree numbers the users by sorted id on its own, so it does not depend on the
+ * GraphIndex (which friendship changes invalidate), and reads the friend lists from the
+ * graph, which must be changed before the tree is told. The predecessor of a user must
+ * list it as a friend; the lists need not be mutual (see SocialNetwork.setValidateOnLoad),
+ * so the tree keeps the reverse lists to find the candidate predecessors of a user.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class DynamicShortestPathTree {
+
+	private final Graph<Long, Double, Double> graph;
+	private final long source;
+	private final long[] ids;			// sorted user ids, the index is the slot of the user
+	private final double[] weights;		// cost of stepping onto each user
+	private final double[] dist;
+	private final int[] pred;			// slot of the predecessor, -1 for the source and unreachable users
+	private final int[] mark;			// epoch in which the user was marked as affected
+	private final int[][] in;			// slots of the users listing each user as a friend
+	private final int[] inCount;
+	private int epoch;
+	private int repaired;				// users whose distance was recomputed by the last change
+
+	/**
+	 * Constructor: computes the tree of the source.
+	 * @param graph the graph, with inverse skills as weights
+	 * @param source the source user id
+	 */
+	public DynamicShortestPathTree(Graph<Long, Double, Double> graph, long source) {
+		this.graph = graph;
+		this.source = source;
+		Collection<Vertex<Long, Double, Double>> vertices = graph.getAllVertices();
+		int n = vertices.size();
+		this.ids = new long[n];
+		int i = 0;
+		for (Vertex<Long, Double, Double> v : vertices) {
+			ids[i++] = v.getId();
+		}
+		Arrays.sort(ids);
+		this.weights = new double[n];
+		for (Vertex<Long, Double, Double> v : vertices) {
+			weights[slotOf(v.getId())] = v.getSkills();
+		}
+		this.dist = new double[n];
+		this.pred = new int[n];
+		this.mark = new int[n];
+		this.inCount = new int[n];
+		for (Vertex<Long, Double, Double> v : vertices) {
+			for (Long f : v.getFriends()) {
+				int t = slotOf(f);
+				if (t >= 0)
+					inCount[t]++;
+			}
+		}
+		this.in = new int[n][];
+		for (int t = 0; t < n; t++) {
+			in[t] = new int[inCount[t]];
+			inCount[t] = 0;
+		}
+		for (Vertex<Long, Double, Double> v : vertices) {
+			int u = slotOf(v.getId());
+			for (Long f : v.getFriends()) {
+				int t = slotOf(f);
+				if (t >= 0)
+					in[t][inCount[t]++] = u;
+			}
+		}
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		Arrays.fill(pred, -1);
+
+		int s = slotOf(source);
+		if (s < 0)
+			throw new IllegalArgumentException("unknown user " + source);
+		dist[s] = 0.0;
+		Queue<Entry<Integer, Double>> pq = new PriorityQueue<>();
+		pq.add(new Entry<Integer, Double>(s, 0.0));
+		propagate(pq);
+		repaired = n;
+	}
+
+	/**
+	 * Returns the source of the tree.
+	 * @return the source user id
+	 */
+	public long getSource() {
+		return source;
+	}
+
+	/**
+	 * Returns the cost of the shortest path from the source to a user.
+	 * @param id the user id
+	 * @return the cost, Double.POSITIVE_INFINITY if the user cannot be reached
+	 */
+	public double distance(long id) {
+		int v = slotOf(id);
+		return v < 0 ? Double.POSITIVE_INFINITY : dist[v];
+	}
+
+	/**
+	 * Returns the shortest path from the source to a user, like SocialNetwork.pathFrom.
+	 * @param id the destination user id
+	 * @return the user ids from the source to the destination, or null if the destination
+	 * cannot be reached or is the source
+	 */
+	public List<Long> path(long id) {
+		int v = slotOf(id);
+		if (v < 0 || id == source || pred[v] < 0)
+			return null;
+		List<Long> res = new ArrayList<Long>();
+		for (; v >= 0; v = pred[v]) {
+			res.add(ids[v]);
+		}
+		Collections.reverse(res);
+		return res;
+	}
+
+	/**
+	 * Repairs the tree after the cost of stepping onto a user changed.
+	 * @param id the user id
+	 * @param weight the new inverse skill of the user
+	 */
+	public void updateWeight(long id, double weight) {
+		int x = slotOf(id);
+		if (x < 0)
+			return;
+		double old = weights[x];
+		weights[x] = weight;
+		repaired = 0;
+		if (weight == old || id == source || dist[x] == Double.POSITIVE_INFINITY)
+			return;
+		if (weight < old) {
+			// every path into x gets cheaper by the same amount, so its predecessor stays best;
+			// the distance is summed again rather than lowered by the difference, which drifts
+			dist[x] = dist[pred[x]] + weight;
+			Queue<Entry<Integer, Double>> pq = new PriorityQueue<>();
+			pq.add(new Entry<Integer, Double>(x, dist[x]));
+			propagate(pq);
+		} else {
+			rebuildSubtree(x);
+		}
+	}
+
+	/**
+	 * Repairs the tree after two users became friends.
+	 * @param u a user id
+	 * @param v the other user id
+	 */
+	public void addFriendship(long u, long v) {
+		int a = slotOf(u), b = slotOf(v);
+		repaired = 0;
+		if (a < 0 || b < 0)
+			return;
+		updateLinks(a, b);
+		Queue<Entry<Integer, Double>> pq = new PriorityQueue<>();
+		if (friendsOf(a).contains(v))
+			relax(a, b, pq);
+		if (friendsOf(b).contains(u))
+			relax(b, a, pq);
+		propagate(pq);
+	}
+
+	/**
+	 * Repairs the tree after two users stopped being friends.
+	 * @param u a user id
+	 * @param v the other user id
+	 */
+	public void removeFriendship(long u, long v) {
+		int a = slotOf(u), b = slotOf(v);
+		repaired = 0;
+		if (a < 0 || b < 0)
+			return;
+		updateLinks(a, b);
+		// only a tree link matters, and at most one direction of the friendship is in the tree
+		if (pred[b] == a)
+			rebuildSubtree(b);
+		else if (pred[a] == b)
+			rebuildSubtree(a);
+	}
+
+	/**
+	 * Returns the number of users whose distance was recomputed by the last change.
+	 * @return the size of the last repair
+	 */
+	public int lastRepairSize() {
+		return repaired;
+	}
+
+	/**
+	 * Estimates the memory retained by the tree.
+	 * @return the estimated size in bytes
+	 */
+	public long sizeInBytes() {
+		int n = ids.length;
+		long reverse = MemoryEstimate.array(n, MemoryEstimate.REFERENCE);
+		for (int[] links : in) {
+			reverse += MemoryEstimate.array(links.length, 4);
+		}
+		return 3 * MemoryEstimate.array(n, 8) + 3 * MemoryEstimate.array(n, 4) + reverse;
+	}
+
+	/**
+	 * Queues v if the link from u makes it cheaper.
+	 */
+	private void relax(int u, int v, Queue<Entry<Integer, Double>> pq) {
+		double d = dist[u] + weights[v];
+		if (d < dist[v]) {
+			dist[v] = d;
+			pred[v] = u;
+			pq.add(new Entry<Integer, Double>(v, d));
+		}
+	}
+
+	/**
+	 * Dijkstra's algorithm from the queued users, lowering every distance it can.
+	 */
+	private void propagate(Queue<Entry<Integer, Double>> pq) {
+		while (!pq.isEmpty()) {
+			Entry<Integer, Double> e = pq.poll();
+			int u = e.getId();
+			if (e.getDistance() > dist[u])
+				continue;
+			repaired++;
+			for (Long f : friendsOf(u)) {
+				int v = slotOf(f);
+				if (v >= 0)
+					relax(u, v, pq);
+			}
+		}
+	}
+
+	/**
+	 * Recomputes the distances of x and its subtree, whose paths got costlier. The other
+	 * users keep their distances, so the subtree is reattached through them.
+	 */
+	private void rebuildSubtree(int x) {
+		if (++epoch == Integer.MAX_VALUE) {
+			Arrays.fill(mark, 0);
+			epoch = 1;
+		}
+		// the subtree: the children of u are its friends whose predecessor is u
+		List<Integer> affected = new ArrayList<Integer>();
+		affected.add(x);
+		mark[x] = epoch;
+		for (int i = 0; i < affected.size(); i++) {
+			int u = affected.get(i);
+			for (Long f : friendsOf(u)) {
+				int v = slotOf(f);
+				if (v >= 0 && pred[v] == u && mark[v] != epoch) {
+					mark[v] = epoch;
+					affected.add(v);
+				}
+			}
+		}
+		for (int u : affected) {
+			dist[u] = Double.POSITIVE_INFINITY;
+			pred[u] = -1;
+		}
+
+		// best path through a user outside the subtree listing u, then Dijkstra inside the subtree
+		Queue<Entry<Integer, Double>> pq = new PriorityQueue<>();
+		for (int u : affected) {
+			for (int i = 0; i < inCount[u]; i++) {
+				int p = in[u][i];
+				if (mark[p] != epoch && dist[p] + weights[u] < dist[u]) {
+					dist[u] = dist[p] + weights[u];
+					pred[u] = p;
+				}
+			}
+			if (pred[u] >= 0)
+				pq.add(new Entry<Integer, Double>(u, dist[u]));
+		}
+		repaired = 0;
+		while (!pq.isEmpty()) {
+			Entry<Integer, Double> e = pq.poll();
+			int u = e.getId();
+			if (e.getDistance() > dist[u])
+				continue;
+			repaired++;
+			for (Long f : friendsOf(u)) {
+				int v = slotOf(f);
+				if (v >= 0 && mark[v] == epoch)
+					relax(u, v, pq);
+			}
+		}
+	}
+
+	/**
+	 * Brings the reverse lists of two users in line with their friend lists in the graph.
+	 */
+	private void updateLinks(int a, int b) {
+		setLink(a, b, friendsOf(a).contains(ids[b]));
+		setLink(b, a, friendsOf(b).contains(ids[a]));
+	}
+
+	/**
+	 * Adds or removes u from the reverse list of v.
+	 */
+	private void setLink(int u, int v, boolean linked) {
+		int[] links = in[v];
+		for (int i = 0; i < inCount[v]; i++) {
+			if (links[i] == u) {
+				if (!linked)
+					links[i] = links[--inCount[v]];
+				return;
+			}
+		}
+		if (!linked)
+			return;
+		if (inCount[v] == links.length)
+			in[v] = links = Arrays.copyOf(links, Math.max(4, 2 * links.length));
+		links[inCount[v]++] = u;
+	}
+
+	private Set<Long> friendsOf(int u) {
+		Set<Long> fs = graph.getFriends(ids[u]);
+		return fs == null ? Collections.<Long>emptySet() : fs;
+	}
+
+	private int slotOf(long id) {
+		int v = Arrays.binarySearch(ids, id);
+		return v < 0 ? -1 : v;
+	}
+}
@@ -56,17 +56,21 @@ public class Entry<V,E> implements Comparable<Entry<V,E>>{
 	}
 	
 	/**
-	 * Compare Entry objects 
+	 * Compare Entry objects by distance, and by id when the distances are equal, so that
+	 * searches settle tied users in the same order wherever they run
 	 * @return 0 if the objects are equal, 
 	 * 1 if the first object is greater than the second and 
 	 * -1 if the first object is smaller than the second 
 	 */
 	@Override
+	@SuppressWarnings("unchecked")
 	public int compareTo(Entry<V, E> v) {
 		if ((double) this.getDistance() > (double) v.getDistance())
 			return 1;
 		if ((double) this.getDistance() < (double) v.getDistance())
 			return -1;
+		if (this.id instanceof Comparable)
+			return Integer.signum(((Comparable<V>) this.id).compareTo(v.id));
 		return 0;
 	}
 	
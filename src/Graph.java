@@ -1,4 +1,5 @@
 import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -105,4 +106,10 @@ public interface Graph<V,E,D> {
 	 * @param v the vertex id
 	 */
 	public void remove(V v);
+	
+	/**
+	 * Estimates the memory retained by the structures of the graph, see MemoryEstimate.
+	 * @return the estimated bytes of each structure by name, in a stable order
+	 */
+	public Map<String, Long> memoryFootprint();
 }
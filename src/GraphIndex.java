@@ -0,0 +1,334 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Snapshot of a Graph using dense integer ids and flat arrays.
+ * Users are numbered 0..n-1 and the friends of each user are stored in a
+ * compressed sparse row layout, so the searches built on top of it only touch
+ * primitive arrays instead of the HashMap and the friend HashSets.
+ * The friend links are read-only; skills can be updated with setSkill().
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class GraphIndex {
+
+	private final long[] ids;					// dense id -> user id
+	private final Map<Long, Integer> dense;		// user id -> dense id
+	private final int[] offsets;				// friends of v are targets[offsets[v]..offsets[v+1])
+	private final int[] targets;				// dense ids of the friends
+	private final double[] weights;				// inverse skill of each user
+	private GraphIndex transpose;				// same users with every friend link reversed
+	private final Map<CostModel, double[]> models;	// materialised weights of each cost model
+
+	/**
+	 * Constructor: initializes the index with already built arrays.
+	 * @param ids the user id of every dense id
+	 * @param offsets the adjacency offsets, of length ids.length + 1
+	 * @param targets the adjacency targets
+	 * @param weights the inverse skill of every dense id
+	 */
+	GraphIndex(long[] ids, int[] offsets, int[] targets, double[] weights) {
+		this(ids, new HashMap<Long, Integer>(ids.length * 2), offsets, targets, weights,
+				new ConcurrentHashMap<CostModel, double[]>());
+		for (int i = 0; i < ids.length; i++) {
+			dense.put(ids[i], i);
+		}
+	}
+
+	private GraphIndex(long[] ids, Map<Long, Integer> dense, int[] offsets, int[] targets, double[] weights,
+			Map<CostModel, double[]> models) {
+		this.ids = ids;
+		this.dense = dense;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.weights = weights;
+		this.models = models;
+	}
+
+	/**
+	 * Builds an index from the current state of the graph.
+	 * Friend ids without a record of their own are skipped.
+	 * @param graph the graph to index
+	 * @return the index of the graph
+	 */
+	public static GraphIndex build(Graph<Long, Double, Double> graph) {
+		Collection<Vertex<Long, Double, Double>> vertices = graph.getAllVertices();
+		int n = vertices.size();
+		long[] ids = new long[n];
+		double[] weights = new double[n];
+		Map<Long, Integer> dense = new HashMap<Long, Integer>(n * 2);
+		List<Set<Long>> friends = new ArrayList<Set<Long>>(n);
+
+		int i = 0;
+		for (Vertex<Long, Double, Double> v : vertices) {
+			ids[i] = v.getId();
+			weights[i] = v.getSkills();
+			dense.put(v.getId(), i);
+			friends.add(v.getFriends());
+			i++;
+		}
+
+		// count the friends first so the targets can be allocated once
+		int[] offsets = new int[n + 1];
+		int[] buffer = new int[16];
+		List<int[]> rows = new ArrayList<int[]>(n);
+		for (i = 0; i < n; i++) {
+			int count = 0;
+			Set<Long> fs = friends.get(i);
+			if (fs != null) {
+				if (buffer.length < fs.size())
+					buffer = new int[fs.size()];
+				for (Long f : fs) {
+					Integer d = dense.get(f);
+					if (d != null)
+						buffer[count++] = d;
+				}
+			}
+			int[] row = Arrays.copyOf(buffer, count);
+			Arrays.sort(row);
+			rows.add(row);
+			offsets[i + 1] = offsets[i] + count;
+		}
+
+		int[] targets = new int[offsets[n]];
+		for (i = 0; i < n; i++) {
+			int[] row = rows.get(i);
+			System.arraycopy(row, 0, targets, offsets[i], row.length);
+		}
+		return new GraphIndex(ids, offsets, targets, weights);
+	}
+
+	/**
+	 * Builds an index from the current state of the graph, numbering the users
+	 * in the given order.
+	 * @param graph the graph to index
+	 * @param ordering the order of the dense ids
+	 * @return the index of the graph
+	 */
+	public static GraphIndex build(Graph<Long, Double, Double> graph, VertexOrdering ordering) {
+		GraphIndex index = build(graph);
+		return ordering == VertexOrdering.NATURAL ? index : index.reorder(ordering.rank(index));
+	}
+
+	/**
+	 * Returns a copy of the index with the users renumbered.
+	 * @param rank rank[v] is the new dense id of the user with dense id v
+	 * @return the renumbered index
+	 */
+	public GraphIndex reorder(int[] rank) {
+		int n = ids.length;
+		long[] rids = new long[n];
+		double[] rweights = new double[n];
+		int[] roffsets = new int[n + 1];
+		for (int v = 0; v < n; v++) {
+			rids[rank[v]] = ids[v];
+			rweights[rank[v]] = weights[v];
+			roffsets[rank[v] + 1] = degree(v);
+		}
+		for (int v = 0; v < n; v++) {
+			roffsets[v + 1] += roffsets[v];
+		}
+		int[] rtargets = new int[targets.length];
+		for (int v = 0; v < n; v++) {
+			int start = roffsets[rank[v]];
+			int count = 0;
+			for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+				rtargets[start + count++] = rank[targets[i]];
+			}
+			Arrays.sort(rtargets, start, start + count);
+		}
+		return new GraphIndex(rids, roffsets, rtargets, rweights);
+	}
+
+	/**
+	 * Returns the number of users in the index.
+	 * @return number of users
+	 */
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * Returns the number of (directed) friend links in the index.
+	 * @return number of friend links
+	 */
+	public int numEdges() {
+		return targets.length;
+	}
+
+	/**
+	 * Returns the dense id of a user.
+	 * @param id the user id
+	 * @return the dense id or -1 if the user is not in the index
+	 */
+	public int indexOf(Long id) {
+		Integer d = dense.get(id);
+		return d == null ? -1 : d;
+	}
+
+	/**
+	 * Returns the user id of a dense id.
+	 * @param v the dense id
+	 * @return the user id
+	 */
+	public long idOf(int v) {
+		return ids[v];
+	}
+
+	/**
+	 * Returns the number of friends of a user.
+	 * @param v the dense id
+	 * @return the degree of the user
+	 */
+	public int degree(int v) {
+		return offsets[v + 1] - offsets[v];
+	}
+
+	/**
+	 * Returns the adjacency offsets. The friends of v are stored in
+	 * targets()[offsets()[v]] up to (excluding) targets()[offsets()[v+1]].
+	 * The array is shared and must not be modified.
+	 * @return the adjacency offsets
+	 */
+	public int[] offsets() {
+		return offsets;
+	}
+
+	/**
+	 * Returns the adjacency targets. The array is shared and must not be modified.
+	 * @return the adjacency targets
+	 */
+	public int[] targets() {
+		return targets;
+	}
+
+	/**
+	 * Returns the inverse skill of every user, i.e. the cost of stepping onto the user.
+	 * The array is shared and must not be modified.
+	 * @return the weights indexed by dense id
+	 */
+	public double[] weights() {
+		return weights;
+	}
+
+	/**
+	 * Returns the weights of a cost model, materialising them on first use.
+	 * Any number of models can coexist over the same index.
+	 * The array is shared and must not be modified.
+	 * @param model the cost model
+	 * @return the weights indexed by dense id
+	 */
+	public double[] weights(CostModel model) {
+		if (model == StandardCostModel.INVERSE_SKILL)
+			return weights;
+		double[] w = models.get(model);
+		if (w == null) {
+			w = model.materialise(this);
+			models.put(model, w);
+		}
+		return w;
+	}
+
+	/**
+	 * Returns the raw skill of a user, recovered from its inverse skill.
+	 * @param v the dense id
+	 * @return the skill, 0 for users stored with weight 2
+	 */
+	public long skillOf(int v) {
+		return skillOf(weights[v]);
+	}
+
+	/**
+	 * Converts an inverse skill, as stored by loadData, back to the raw skill.
+	 * @param inverse the inverse skill
+	 * @return the skill
+	 */
+	public static long skillOf(double inverse) {
+		return inverse > 1.0 ? 0 : Math.round(1.0 / inverse);
+	}
+
+	/**
+	 * Converts a raw skill to the inverse skill stored by loadData.
+	 * @param skill the skill
+	 * @return the inverse skill, 2 for a skill of 0
+	 */
+	public static double inverseSkill(long skill) {
+		return skill == 0 ? 2.0 : 1.0 / skill;
+	}
+
+	/**
+	 * Changes the skill of a user. The weights array is updated in place, so searches
+	 * holding it see the new skill; the materialised cost models are dropped.
+	 * @param v the dense id
+	 * @param skill the new raw skill
+	 */
+	public void setSkill(int v, long skill) {
+		weights[v] = inverseSkill(skill);
+		models.clear();
+	}
+
+	/**
+	 * Returns the index with every friend link reversed, building it on first use.
+	 * Dense ids, weights and cost models are shared with this index.
+	 * @return the transposed index
+	 */
+	public synchronized GraphIndex transpose() {
+		if (transpose == null) {
+			int n = ids.length;
+			int[] toffsets = new int[n + 1];
+			for (int t : targets) {
+				toffsets[t + 1]++;
+			}
+			for (int v = 0; v < n; v++) {
+				toffsets[v + 1] += toffsets[v];
+			}
+			int[] next = Arrays.copyOf(toffsets, n);
+			int[] ttargets = new int[targets.length];
+			// sources are visited in increasing order so every reversed row stays sorted
+			for (int u = 0; u < n; u++) {
+				for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+					ttargets[next[targets[i]]++] = u;
+				}
+			}
+			transpose = new GraphIndex(ids, dense, toffsets, ttargets, weights, models);
+			transpose.transpose = this;
+		}
+		return transpose;
+	}
+
+	/**
+	 * Estimates the memory retained by the index: the id arrays and map, the friend arrays,
+	 * the weights of the materialised cost models and the transposed friend arrays if built.
+	 * @return the estimated size in bytes
+	 */
+	public synchronized long sizeInBytes() {
+		long n = ids.length;
+		long res = MemoryEstimate.array(n, 8) + MemoryEstimate.hashMap(n) + 2 * n * MemoryEstimate.BOXED
+				+ MemoryEstimate.array(offsets.length, 4) + MemoryEstimate.array(targets.length, 4)
+				+ MemoryEstimate.array(n, 8);
+		res += MemoryEstimate.hashMap(models.size()) + models.size() * MemoryEstimate.array(n, 8);
+		if (transpose != null)
+			res += MemoryEstimate.array(transpose.offsets.length, 4) + MemoryEstimate.array(transpose.targets.length, 4);
+		return res;
+	}
+
+	/**
+	 * Converts a path of dense ids into a path of user ids.
+	 * @param path the dense ids
+	 * @return the user ids
+	 */
+	public List<Long> toIds(int[] path) {
+		List<Long> res = new ArrayList<Long>(path.length);
+		for (int v : path) {
+			res.add(ids[v]);
+		}
+		return res;
+	}
+}
@@ -0,0 +1,331 @@
+import java.util.Arrays;
+
+/**
+ * Fewest intermediaries between users: breadth first search over the index, with the
+ * strongest coders as the tie break among paths with as few hops.
+ *
+ * Every level of the search is expanded in one of two directions (Beamer et al.):
+ * <ul>
+ * <li>top-down, each user of the frontier visits its friends, which pays while the
+ * frontier is small;</li>
+ * <li>bottom-up, each unvisited user looks for a friend in the frontier, held in a
+ * bitmap, and stops at the first one; once the frontier holds a large part of the
+ * network most unvisited users find one after a few checks, so far fewer links are
+ * examined than top-down.</li>
+ * </ul>
+ * A level goes bottom-up when the links out of the frontier exceed 1/ALPHA of the links
+ * of the unvisited users, and back top-down when the frontier shrinks below 1/BETA of
+ * the users.
+ *
+ * Between two users the search runs from both ends, always expanding the side with the
+ * fewer links out of its frontier, until the frontiers meet. The users on a fewest hop
+ * path are then exactly those whose hops from the source and to the destination add up
+ * to the total; a pass over that layered set picks the cheapest path by inverse skill.
+ * The result is the path findShortestPathBetween gives with the FEWEST_HOPS_THEN_SKILL
+ * cost model, without a priority queue.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class HopSearch {
+
+	// switching thresholds of the direction optimization, the values of Beamer et al.
+	private static final int ALPHA = 14;
+	private static final int BETA = 24;
+
+	private final GraphIndex graph;
+	private final int[] out;			// offsets and friends of each user
+	private final int[] outTargets;
+	private final int[] in;				// offsets and users listing each user as a friend
+	private final int[] inTargets;
+	private final Side forward;
+	private final Side backward;
+	private int epoch;
+
+	// fewest hop paths: layer of each user on them, cheapest cost and previous user
+	private final int[] layerOf;
+	private final int[] layerSeen;
+	private final double[] cost;
+	private final int[] pred;
+	private long examined;
+
+	/**
+	 * One direction of the search.
+	 */
+	private class Side {
+		private final int[] expandOffsets;	// links followed top-down
+		private final int[] expandTargets;
+		private final int[] checkOffsets;	// links checked bottom-up, the reverse ones
+		private final int[] checkTargets;
+		final int[] level;
+		final int[] seen;
+		int[] frontier;
+		int size;
+		private int[] next;
+		private final long[] bits;
+		long frontierLinks;
+		private long unvisitedLinks;
+		int depth;
+		private boolean bottomUp;
+		int bottomUpLevels;
+
+		Side(int[] expandOffsets, int[] expandTargets, int[] checkOffsets, int[] checkTargets) {
+			int n = expandOffsets.length - 1;
+			this.expandOffsets = expandOffsets;
+			this.expandTargets = expandTargets;
+			this.checkOffsets = checkOffsets;
+			this.checkTargets = checkTargets;
+			this.level = new int[n];
+			this.seen = new int[n];
+			this.frontier = new int[n];
+			this.next = new int[n];
+			this.bits = new long[(n + 63) >>> 6];
+		}
+
+		void start(int s) {
+			seen[s] = epoch;
+			level[s] = 0;
+			frontier[0] = s;
+			size = 1;
+			depth = 0;
+			bottomUp = false;
+			bottomUpLevels = 0;
+			frontierLinks = degree(s);
+			unvisitedLinks = expandTargets.length - frontierLinks;
+		}
+
+		private int degree(int v) {
+			return expandOffsets[v + 1] - expandOffsets[v];
+		}
+
+		/**
+		 * Expands the frontier by one level.
+		 */
+		void step() {
+			int n = level.length;
+			if (!bottomUp && frontierLinks > unvisitedLinks / ALPHA)
+				bottomUp = true;
+			else if (bottomUp && size < n / BETA)
+				bottomUp = false;
+			int found = 0;
+			long links = 0;
+			if (bottomUp) {
+				bottomUpLevels++;
+				for (int i = 0; i < size; i++) {
+					int u = frontier[i];
+					bits[u >>> 6] |= 1L << u;
+				}
+				for (int v = 0; v < n; v++) {
+					if (seen[v] == epoch)
+						continue;
+					for (int j = checkOffsets[v], end = checkOffsets[v + 1]; j < end; j++) {
+						int p = checkTargets[j];
+						examined++;
+						if ((bits[p >>> 6] & (1L << p)) != 0) {
+							seen[v] = epoch;
+							level[v] = depth + 1;
+							next[found++] = v;
+							links += degree(v);
+							break;
+						}
+					}
+				}
+				for (int i = 0; i < size; i++) {
+					bits[frontier[i] >>> 6] = 0;
+				}
+			} else {
+				for (int i = 0; i < size; i++) {
+					int u = frontier[i];
+					for (int j = expandOffsets[u], end = expandOffsets[u + 1]; j < end; j++) {
+						int f = expandTargets[j];
+						examined++;
+						if (seen[f] != epoch) {
+							seen[f] = epoch;
+							level[f] = depth + 1;
+							next[found++] = f;
+							links += degree(f);
+						}
+					}
+				}
+			}
+			int[] t = frontier;
+			frontier = next;
+			next = t;
+			size = found;
+			frontierLinks = links;
+			unvisitedLinks -= links;
+			depth++;
+		}
+	}
+
+	/**
+	 * Constructor
+	 * @param graph the graph to search
+	 */
+	public HopSearch(GraphIndex graph) {
+		int n = graph.size();
+		GraphIndex reverse = graph.transpose();
+		this.graph = graph;
+		this.out = graph.offsets();
+		this.outTargets = graph.targets();
+		this.in = reverse.offsets();
+		this.inTargets = reverse.targets();
+		this.forward = new Side(out, outTargets, in, inTargets);
+		this.backward = new Side(in, inTargets, out, outTargets);
+		this.layerOf = new int[n];
+		this.layerSeen = new int[n];
+		this.cost = new double[n];
+		this.pred = new int[n];
+	}
+
+	/**
+	 * Returns the number of hops from a source to every user.
+	 * @param source the dense id of the source
+	 * @return the hops of each user by dense id, -1 for the users that cannot be reached
+	 */
+	public int[] levels(int source) {
+		nextEpoch();
+		forward.start(source);
+		while (forward.size > 0) {
+			forward.step();
+		}
+		int[] res = new int[graph.size()];
+		for (int v = 0; v < res.length; v++) {
+			res[v] = forward.seen[v] == epoch ? forward.level[v] : -1;
+		}
+		return res;
+	}
+
+	/**
+	 * Returns the path from source to destination with the fewest hops and, among those,
+	 * the lowest inverse skill cost.
+	 * @param source the dense id of the source
+	 * @param destination the dense id of the destination
+	 * @return the path with its inverse skill cost, or null if the destination cannot be
+	 * reached or is the source
+	 */
+	public WeightedPath find(int source, int destination) {
+		nextEpoch();
+		if (source == destination)
+			return null;
+		forward.start(source);
+		backward.start(destination);
+		while (forward.size > 0 && backward.size > 0) {
+			Side side = forward.frontierLinks <= backward.frontierLinks ? forward : backward;
+			Side other = side == forward ? backward : forward;
+			side.step();
+			// the first level that reaches users seen from the other end holds the shortest total
+			int hops = Integer.MAX_VALUE;
+			for (int i = 0; i < side.size; i++) {
+				int v = side.frontier[i];
+				if (other.seen[v] == epoch)
+					hops = Math.min(hops, side.depth + other.level[v]);
+			}
+			if (hops != Integer.MAX_VALUE)
+				return cheapest(source, destination, hops, side, other);
+		}
+		return null;
+	}
+
+	/**
+	 * Picks the cheapest of the paths with the given hops. The users of the last expanded
+	 * level with the right hops to the other end are on every such path; the layers
+	 * before and after them are followed back level by level, then the cheapest path is
+	 * found layer by layer from the source.
+	 */
+	private WeightedPath cheapest(int source, int destination, int hops, Side side, Side other) {
+		int meetLayer = side == forward ? side.depth : hops - side.depth;
+		int[][] layers = new int[hops + 1][];
+		int[] buffer = new int[side.size];
+		int count = 0;
+		for (int i = 0; i < side.size; i++) {
+			int v = side.frontier[i];
+			if (other.seen[v] == epoch && side.depth + other.level[v] == hops)
+				buffer[count++] = v;
+		}
+		layers[meetLayer] = Arrays.copyOf(buffer, count);
+		for (int v : layers[meetLayer]) {
+			layerSeen[v] = epoch;
+			layerOf[v] = meetLayer;
+		}
+		// towards the source: friends listing a user of the layer, one hop less from the source
+		for (int k = meetLayer - 1; k >= 0; k--) {
+			layers[k] = collect(layers[k + 1], in, inTargets, forward, k, k);
+		}
+		// towards the destination: friends of a user of the layer, one hop less to the destination
+		for (int k = meetLayer + 1; k <= hops; k++) {
+			layers[k] = collect(layers[k - 1], out, outTargets, backward, hops - k, k);
+		}
+
+		double[] w = graph.weights();
+		cost[source] = 0.0;
+		pred[source] = -1;
+		for (int k = 1; k <= hops; k++) {
+			for (int v : layers[k]) {
+				double best = Double.POSITIVE_INFINITY;
+				for (int j = in[v], end = in[v + 1]; j < end; j++) {
+					int p = inTargets[j];
+					if (layerSeen[p] == epoch && layerOf[p] == k - 1 && cost[p] < best) {
+						best = cost[p];
+						pred[v] = p;
+					}
+				}
+				cost[v] = best + w[v];
+			}
+		}
+		int[] path = new int[hops + 1];
+		for (int k = hops, v = destination; k >= 0; k--, v = pred[v]) {
+			path[k] = v;
+		}
+		return new WeightedPath(path, cost[destination]);
+	}
+
+	/**
+	 * Returns the users linked to the given layer that are at the given level of a side.
+	 */
+	private int[] collect(int[] layer, int[] offsets, int[] targets, Side side, int level, int k) {
+		int[] res = new int[16];
+		int count = 0;
+		for (int v : layer) {
+			for (int j = offsets[v], end = offsets[v + 1]; j < end; j++) {
+				int p = targets[j];
+				if (side.seen[p] == epoch && side.level[p] == level && layerSeen[p] != epoch) {
+					layerSeen[p] = epoch;
+					layerOf[p] = k;
+					if (count == res.length)
+						res = Arrays.copyOf(res, count * 2);
+					res[count++] = p;
+				}
+			}
+		}
+		return Arrays.copyOf(res, count);
+	}
+
+	/**
+	 * Returns the number of links examined by the last search.
+	 * @return the number of links
+	 */
+	public long examinedCount() {
+		return examined;
+	}
+
+	/**
+	 * Returns the number of levels the last search expanded bottom-up, on both sides.
+	 * @return the number of bottom-up levels
+	 */
+	public int bottomUpLevels() {
+		return forward.bottomUpLevels + backward.bottomUpLevels;
+	}
+
+	private void nextEpoch() {
+		examined = 0;
+		forward.bottomUpLevels = 0;
+		backward.bottomUpLevels = 0;
+		if (++epoch == Integer.MAX_VALUE) {
+			Arrays.fill(forward.seen, 0);
+			Arrays.fill(backward.seen, 0);
+			Arrays.fill(layerSeen, 0);
+			epoch = 1;
+		}
+	}
+}
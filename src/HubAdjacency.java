@@ -0,0 +1,151 @@
+import java.util.Arrays;
+
+/**
+ * Friend lists of the high degree users (hubs) of a GraphIndex, kept separately and
+ * sorted by the cost of stepping onto each friend. When a search settles a hub it can
+ * relax the cheap friends first and stop as soon as the remaining ones cannot beat the
+ * best known distance of the destination, instead of queueing an entry for every friend.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class HubAdjacency {
+
+	private final GraphIndex graph;
+	private final double[] weights;
+	private final int threshold;
+	private final int[] slot;		// position of each hub in offsets, -1 for other users
+	private final int[] offsets;
+	private final int[] friends;	// friends of every hub by increasing weight
+
+	/**
+	 * Constructor: sorts the friends of every user with at least threshold friends.
+	 * @param graph the graph
+	 * @param weights the cost of stepping onto each user
+	 * @param threshold the degree from which a user is a hub
+	 */
+	public HubAdjacency(GraphIndex graph, double[] weights, int threshold) {
+		this.graph = graph;
+		this.weights = weights;
+		this.threshold = threshold;
+		int n = graph.size();
+		this.slot = new int[n];
+		Arrays.fill(slot, -1);
+		int hubs = 0;
+		long size = 0;
+		for (int v = 0; v < n; v++) {
+			if (graph.degree(v) >= threshold) {
+				slot[v] = hubs++;
+				size += graph.degree(v);
+			}
+		}
+		this.offsets = new int[hubs + 1];
+		this.friends = new int[(int) size];
+		int[] graphOffsets = graph.offsets();
+		int[] targets = graph.targets();
+		for (int v = 0; v < n; v++) {
+			int h = slot[v];
+			if (h < 0)
+				continue;
+			int start = offsets[h];
+			offsets[h + 1] = start + graph.degree(v);
+			sortByWeight(targets, graphOffsets[v], graph.degree(v), start);
+		}
+	}
+
+	/**
+	 * Copies count friends from targets[from] into friends[to], sorted by weight.
+	 */
+	private void sortByWeight(int[] targets, int from, int count, int to) {
+		// sort the weights together with the ids: pack both into a long, weights are positive
+		long[] keys = new long[count];
+		for (int i = 0; i < count; i++) {
+			int f = targets[from + i];
+			keys[i] = ((long) Float.floatToIntBits((float) weights[f]) << 32) | (f & 0xffffffffL);
+		}
+		Arrays.sort(keys);
+		for (int i = 0; i < count; i++) {
+			friends[to + i] = (int) keys[i];
+		}
+		// rounding the weights to float may swap nearly equal ones, restore the exact order
+		for (int i = to + 1; i < to + count; i++) {
+			int f = friends[i];
+			int j = i - 1;
+			while (j >= to && weights[friends[j]] > weights[f]) {
+				friends[j + 1] = friends[j];
+				j--;
+			}
+			friends[j + 1] = f;
+		}
+	}
+
+	/**
+	 * Returns whether the searches over this graph and weights can use these lists.
+	 * @param graph the graph being searched
+	 * @param weights the weights being searched with
+	 * @return <b>true</b> if they are the ones the lists were sorted for
+	 */
+	public boolean appliesTo(GraphIndex graph, double[] weights) {
+		return this.graph == graph && this.weights == weights;
+	}
+
+	/**
+	 * Returns whether the user has at least threshold friends.
+	 * @param v the dense id
+	 * @return <b>true</b> if v is a hub
+	 */
+	public boolean isHub(int v) {
+		return slot[v] >= 0;
+	}
+
+	/**
+	 * Returns the position of the first friend of a hub in friends().
+	 * @param v the dense id of a hub
+	 * @return the start of its friends
+	 */
+	public int start(int v) {
+		return offsets[slot[v]];
+	}
+
+	/**
+	 * Returns the position after the last friend of a hub in friends().
+	 * @param v the dense id of a hub
+	 * @return the end of its friends
+	 */
+	public int end(int v) {
+		return offsets[slot[v] + 1];
+	}
+
+	/**
+	 * Returns the friends of all hubs, each hub's sorted by increasing weight.
+	 * @return the friend lists
+	 */
+	public int[] friends() {
+		return friends;
+	}
+
+	/**
+	 * Returns the number of hubs.
+	 * @return the number of hubs
+	 */
+	public int numHubs() {
+		return offsets.length - 1;
+	}
+
+	/**
+	 * Returns the degree from which a user is a hub.
+	 * @return the threshold
+	 */
+	public int getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Estimates the memory retained by the sorted friend lists.
+	 * @return the estimated size in bytes
+	 */
+	public long sizeInBytes() {
+		return MemoryEstimate.array(slot.length, 4) + MemoryEstimate.array(offsets.length, 4)
+				+ MemoryEstimate.array(friends.length, 4);
+	}
+}
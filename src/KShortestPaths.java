@@ -0,0 +1,133 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Finds the k best loopless paths between two users (Yen's algorithm).
+ * Every spur path is a regular Dijkstra search on the shared SearchScratch with
+ * the root path vertices and the already used spur edges excluded, so the graph
+ * itself is never copied or modified. The spur searches are guided (A*) by the exact
+ * distances to the destination, computed once with a reverse search, so they only
+ * expand the users close to the cheapest detour.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class KShortestPaths {
+
+	private final GraphIndex graph;
+	private final double[] weights;
+	private final SearchScratch scratch;
+
+	/**
+	 * Constructor
+	 * @param graph the graph to search
+	 * @param weights the cost of stepping onto each user
+	 * @param scratch the scratch state used for the spur searches
+	 */
+	public KShortestPaths(GraphIndex graph, double[] weights, SearchScratch scratch) {
+		this.graph = graph;
+		this.weights = weights;
+		this.scratch = scratch;
+	}
+
+	/**
+	 * Returns up to k loopless paths from source to destination ordered by total cost.
+	 * @param source the dense id of the source
+	 * @param destination the dense id of the destination
+	 * @param k the maximum number of paths
+	 * @return the paths, best first; empty if the destination is unreachable
+	 */
+	public List<WeightedPath> find(int source, int destination, int k) {
+		List<WeightedPath> best = new ArrayList<WeightedPath>();
+		if (k <= 0 || source == destination)
+			return best;
+
+		scratch.clearBans();
+		double[] toDestination = distancesTo(destination);
+		double d = scratch.run(graph, weights, source, destination, toDestination);
+		if (d == Double.POSITIVE_INFINITY)
+			return best;
+		best.add(new WeightedPath(scratch.path(destination), d, 0));
+
+		// candidate paths, and every path generated so far to avoid duplicates
+		PriorityQueue<WeightedPath> candidates = new PriorityQueue<WeightedPath>();
+		Set<WeightedPath> generated = new HashSet<WeightedPath>();
+		generated.add(best.get(0));
+
+		while (best.size() < k) {
+			WeightedPath prev = best.get(best.size() - 1);
+			int[] p = prev.getVertices();
+			double rootCost = 0.0;
+			for (int j = 1; j <= prev.getDeviation(); j++) {
+				rootCost += weights[p[j]];
+			}
+
+			/* Spur vertices before the deviation index were already expanded
+			 * for the parent path, so start from the deviation (Lawler). */
+			for (int i = prev.getDeviation(); i < p.length - 1; i++) {
+				int spur = p[i];
+				scratch.clearBans();
+				// exclude the next edge of every known path sharing the same root
+				for (WeightedPath a : best) {
+					int[] q = a.getVertices();
+					if (q.length > i + 1 && sharesRoot(p, q, i))
+						scratch.banEdge(spur, q[i + 1]);
+				}
+				// exclude the root path to keep the result loopless
+				for (int j = 0; j < i; j++) {
+					scratch.banVertex(p[j]);
+				}
+
+				double spurCost = scratch.run(graph, weights, spur, destination, toDestination);
+				if (spurCost != Double.POSITIVE_INFINITY) {
+					int[] spurPath = scratch.path(destination);
+					int[] total = new int[i + spurPath.length];
+					System.arraycopy(p, 0, total, 0, i);
+					System.arraycopy(spurPath, 0, total, i, spurPath.length);
+					WeightedPath candidate = new WeightedPath(total, rootCost + spurCost, i);
+					if (generated.add(candidate))
+						candidates.add(candidate);
+				}
+				rootCost += weights[p[i + 1]];
+			}
+
+			if (candidates.isEmpty())
+				break;
+			best.add(candidates.poll());
+		}
+		scratch.clearBans();
+		return best;
+	}
+
+	/**
+	 * Returns the distance from every user to the destination. The reverse search
+	 * charges the weight of the user it leaves rather than the one it enters,
+	 * which is corrected for afterwards.
+	 * @param destination the dense id of the destination
+	 * @return the distances, Double.POSITIVE_INFINITY for users that cannot reach it
+	 */
+	private double[] distancesTo(int destination) {
+		double[] h = new double[graph.size()];
+		scratch.run(graph.transpose(), weights, destination, -1);
+		for (int v = 0; v < h.length; v++) {
+			double d = scratch.distance(v);
+			h[v] = d == Double.POSITIVE_INFINITY ? d : Math.max(0.0, d - weights[v] + weights[destination]);
+		}
+		h[destination] = 0.0;
+		return h;
+	}
+
+	/**
+	 * Returns whether the first i+1 vertices of both paths are the same.
+	 */
+	private static boolean sharesRoot(int[] p, int[] q, int i) {
+		for (int j = 0; j <= i; j++) {
+			if (p[j] != q[j])
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,141 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Load generator for the QueryServer. Sends /path requests for random pairs of
+ * users from the dataset with a fixed number of concurrent clients and reports
+ * the throughput, the p50/p99 latency of the served requests and, apart, the number
+ * of shed and failed requests.
+ *
+ * <pre>
+ * java -cp bin:json-simple-1.1.jar LoadGenerator &lt;dataset&gt; [url] [clients] [requests]
+ * </pre>
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class LoadGenerator {
+
+	private static final Pattern USER = Pattern.compile("\"user\"\\s*:\\s*(\\d+)");
+
+	/**
+	 * Application entry point.
+	 * @param args dataset [url] [clients] [requests]
+	 * @throws Exception if the dataset cannot be read
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			System.out.println("usage: LoadGenerator <dataset> [url] [clients] [requests]");
+			return;
+		}
+		String url = args.length > 1 ? args[1] : "http://localhost:8080";
+		int clients = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+		int requests = args.length > 3 ? Integer.parseInt(args[3]) : 2000;
+		run(readUserIds(args[0]), url, clients, requests);
+	}
+
+	/**
+	 * Sends the requests and prints the report.
+	 * @param ids the user ids to pick pairs from
+	 * @param url the base url of the server
+	 * @param clients the number of concurrent clients
+	 * @param requests the total number of requests
+	 * @return the latency of every successful (200) request in nanoseconds, sorted
+	 * @throws InterruptedException if interrupted while waiting for the clients
+	 */
+	public static long[] run(List<Long> ids, String url, int clients, int requests) throws InterruptedException {
+		Random random = new Random(42);
+		String[] paths = new String[requests];
+		for (int i = 0; i < requests; i++) {
+			paths[i] = url + "/path?from=" + ids.get(random.nextInt(ids.size())) + "&to=" + ids.get(random.nextInt(ids.size()));
+		}
+
+		long[] latencies = new long[requests];
+		AtomicInteger next = new AtomicInteger();
+		AtomicInteger ok = new AtomicInteger();
+		AtomicInteger shed = new AtomicInteger();
+		AtomicInteger failed = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(clients);
+		long start = System.nanoTime();
+		for (int c = 0; c < clients; c++) {
+			pool.execute(() -> {
+				int i;
+				while ((i = next.getAndIncrement()) < requests) {
+					long t = System.nanoTime();
+					int status = get(paths[i]);
+					long latency = System.nanoTime() - t;
+					// shed and failed requests return fast and would hide the latency of the served ones
+					if (status == 200)
+						latencies[ok.getAndIncrement()] = latency;
+					else if (status == 503)
+						shed.incrementAndGet();
+					else
+						failed.incrementAndGet();
+				}
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(1, TimeUnit.HOURS);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		long[] sorted = Arrays.copyOf(latencies, ok.get());
+		Arrays.sort(sorted);
+		System.out.printf("%d requests, %d clients: %.0f req/s, ok %d (%.0f/s)%n",
+				requests, clients, requests / seconds, ok.get(), ok.get() / seconds);
+		System.out.printf("shed %d (503), failed %d%n", shed.get(), failed.get());
+		System.out.printf("latency of the ok requests p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+				Benchmarks.percentile(sorted, 50) / 1e6, Benchmarks.percentile(sorted, 99) / 1e6,
+				(sorted.length == 0 ? 0 : sorted[sorted.length - 1]) / 1e6);
+		return sorted;
+	}
+
+	/**
+	 * Sends a GET request and returns the status, or -1 if the request failed.
+	 */
+	private static int get(String url) {
+		try {
+			HttpURLConnection c = (HttpURLConnection) new URL(url).openConnection();
+			int status = c.getResponseCode();
+			InputStream body = status < 400 ? c.getInputStream() : c.getErrorStream();
+			if (body != null) {
+				byte[] buffer = new byte[4096];
+				while (body.read(buffer) != -1) {
+					// drain the body so the connection can be reused
+				}
+				body.close();
+			}
+			return status;
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Reads the user ids from a JSON lines dataset without building the graph.
+	 */
+	static List<Long> readUserIds(String dataset) throws IOException {
+		List<Long> ids = new ArrayList<Long>();
+		try (BufferedReader br = DatasetLoader.reader(dataset)) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				Matcher m = USER.matcher(line);
+				if (m.find())
+					ids.add(Long.valueOf(m.group(1)));
+			}
+		}
+		return ids;
+	}
+}
@@ -0,0 +1,79 @@
+/**
+ * Estimates of the retained size of common JVM structures, for a 64-bit JVM with
+ * compressed references (heaps below 32 GB): 12 byte object headers, 4 byte references
+ * and 8 byte alignment. The estimates follow the OpenJDK layouts of HashMap, HashSet
+ * and the boxed types; they are meant for comparing representations, not for exact
+ * accounting.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public final class MemoryEstimate {
+
+	/** Size of an object header. */
+	public static final int HEADER = 12;
+	/** Size of a reference. */
+	public static final int REFERENCE = 4;
+	/** Size of a boxed Long, Double or Integer. */
+	public static final int BOXED = 16;
+
+	private static final int ARRAY_HEADER = 16;
+	private static final int HASH_MAP = 48;			// the HashMap object itself
+	private static final int HASH_MAP_NODE = 32;	// hash, key, value and next
+	private static final int HASH_SET = 16;			// the HashSet wrapping its HashMap
+
+	private MemoryEstimate() {
+	}
+
+	/**
+	 * Rounds a size up to the object alignment.
+	 * @param bytes the unaligned size
+	 * @return the aligned size
+	 */
+	public static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+
+	/**
+	 * Returns the size of an array.
+	 * @param length the number of elements
+	 * @param elementSize the size of an element, REFERENCE for object arrays
+	 * @return the size in bytes
+	 */
+	public static long array(long length, int elementSize) {
+		return align(ARRAY_HEADER + length * elementSize);
+	}
+
+	/**
+	 * Returns the size of a HashMap with the given number of entries, excluding its keys
+	 * and values: the map, its table at the default load factor and one node per entry.
+	 * @param entries the number of entries
+	 * @return the size in bytes
+	 */
+	public static long hashMap(long entries) {
+		long capacity = 16;
+		while (capacity * 3 / 4 < entries) {
+			capacity *= 2;
+		}
+		return HASH_MAP + array(entries == 0 ? 0 : capacity, REFERENCE) + entries * HASH_MAP_NODE;
+	}
+
+	/**
+	 * Returns the size of a HashSet with the given number of elements, excluding the elements.
+	 * @param elements the number of elements
+	 * @return the size in bytes
+	 */
+	public static long hashSet(long elements) {
+		return HASH_SET + hashMap(elements);
+	}
+
+	/**
+	 * Returns the size of an object with the given fields.
+	 * @param references the number of reference fields
+	 * @param primitiveBytes the total size of the primitive fields
+	 * @return the size in bytes
+	 */
+	public static long object(int references, int primitiveBytes) {
+		return align(HEADER + references * REFERENCE + primitiveBytes);
+	}
+}
@@ -0,0 +1,111 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Estimated retained size of each structure of a SocialNetwork, with the averages per
+ * user and per friend link. The sizes come from MemoryEstimate and are meant to compare
+ * representations and to find the structures worth shrinking.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class MemoryReport {
+
+	private final long users;
+	private final long edges;
+	private final Map<String, Long> structures;
+
+	/**
+	 * Constructor
+	 * @param users the number of users
+	 * @param edges the number of friend links, counting each direction
+	 */
+	public MemoryReport(long users, long edges) {
+		this.users = users;
+		this.edges = edges;
+		this.structures = new LinkedHashMap<String, Long>();
+	}
+
+	/**
+	 * Adds the estimated size of a structure.
+	 * @param name the name of the structure
+	 * @param bytes the estimated size in bytes
+	 */
+	public void add(String name, long bytes) {
+		structures.merge(name, bytes, Long::sum);
+	}
+
+	/**
+	 * Returns the estimated size of each structure, in the order they were added.
+	 * @return the sizes in bytes by name
+	 */
+	public Map<String, Long> getStructures() {
+		return Collections.unmodifiableMap(structures);
+	}
+
+	/**
+	 * Returns the estimated size of a structure.
+	 * @param name the name of the structure
+	 * @return the size in bytes, 0 if the structure is not reported
+	 */
+	public long get(String name) {
+		return structures.getOrDefault(name, 0L);
+	}
+
+	/**
+	 * Returns the estimated size of all structures.
+	 * @return the total in bytes
+	 */
+	public long total() {
+		long res = 0;
+		for (long bytes : structures.values()) {
+			res += bytes;
+		}
+		return res;
+	}
+
+	/**
+	 * Returns the number of users.
+	 * @return the number of users
+	 */
+	public long getUsers() {
+		return users;
+	}
+
+	/**
+	 * Returns the number of friend links.
+	 * @return the number of friend links
+	 */
+	public long getEdges() {
+		return edges;
+	}
+
+	/**
+	 * Returns the average size per user.
+	 * @return the total divided by the number of users
+	 */
+	public double bytesPerUser() {
+		return users == 0 ? 0.0 : (double) total() / users;
+	}
+
+	/**
+	 * Returns the average size per friend link.
+	 * @return the total divided by the number of friend links
+	 */
+	public double bytesPerEdge() {
+		return edges == 0 ? 0.0 : (double) total() / edges;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, Long> e : structures.entrySet()) {
+			sb.append(String.format("%-28s %,16d%n", e.getKey(), e.getValue()));
+		}
+		sb.append(String.format("%-28s %,16d%n", "total", total()));
+		sb.append(String.format("%,d users, %,d links: %.1f bytes/user, %.1f bytes/link%n",
+				users, edges, bytesPerUser(), bytesPerEdge()));
+		return sb.toString();
+	}
+}
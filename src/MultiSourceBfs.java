@@ -0,0 +1,260 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hop distances from many sources at once (MS-BFS, Then et al.). The breadth first
+ * searches of a batch of sources run together, with one bit per source in the state of
+ * every user: the sources that have seen it and the sources whose frontier holds it. A
+ * user in the frontier of several sources is expanded once for all of them, its friends
+ * receive the bits of those sources with a single OR, and the searches of nearby sources,
+ * which mostly overlap after a few levels, cost about as much as one.
+ *
+ * A batch holds width sources, a multiple of 64, stored as that many bits per user. Each
+ * thread runs its own batches with its own state. The searches are not kept, only what
+ * they add up to: the users reached by each source and how many at each hop.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class MultiSourceBfs {
+
+	private final GraphIndex graph;
+	private final int words;		// longs per user, width / 64
+
+	/**
+	 * Hop counts of a set of sources.
+	 */
+	public static class Result {
+		private final long[] sources;
+		private final int[][] histograms;
+
+		Result(long[] sources, int[][] histograms) {
+			this.sources = sources;
+			this.histograms = histograms;
+		}
+
+		/**
+		 * Returns the number of sources.
+		 * @return the number of sources
+		 */
+		public int size() {
+			return sources.length;
+		}
+
+		/**
+		 * Returns a source.
+		 * @param i the index of the source, in the order they were given
+		 * @return the user id of the source
+		 */
+		public long getSource(int i) {
+			return sources[i];
+		}
+
+		/**
+		 * Returns how many users a source reaches at each number of hops.
+		 * @param i the index of the source
+		 * @return the counts by hops, 1 at 0 hops for the source itself
+		 */
+		public int[] getHistogram(int i) {
+			return histograms[i];
+		}
+
+		/**
+		 * Returns the number of users a source reaches, not counting itself.
+		 * @param i the index of the source
+		 * @return the number of reachable users
+		 */
+		public long getReachable(int i) {
+			long sum = 0;
+			for (int h = 1; h < histograms[i].length; h++) {
+				sum += histograms[i][h];
+			}
+			return sum;
+		}
+
+		/**
+		 * Returns the largest number of hops from a source to a user it reaches.
+		 * @param i the index of the source
+		 * @return the eccentricity of the source within its component
+		 */
+		public int getEccentricity(int i) {
+			return histograms[i].length - 1;
+		}
+
+		/**
+		 * Returns the sum of the hops from a source to every user it reaches.
+		 * @param i the index of the source
+		 * @return the total hops, the inverse of the closeness of the source
+		 */
+		public long getTotalHops(int i) {
+			long sum = 0;
+			for (int h = 1; h < histograms[i].length; h++) {
+				sum += (long) h * histograms[i][h];
+			}
+			return sum;
+		}
+
+		/**
+		 * Returns how many (source, user) pairs are at each number of hops, over every source.
+		 * @return the counts by hops
+		 */
+		public long[] getTotalHistogram() {
+			int max = 0;
+			for (int[] h : histograms) {
+				max = Math.max(max, h.length);
+			}
+			long[] res = new long[max];
+			for (int[] h : histograms) {
+				for (int j = 0; j < h.length; j++) {
+					res[j] += h[j];
+				}
+			}
+			return res;
+		}
+	}
+
+	/**
+	 * Constructor
+	 * @param graph the graph to search
+	 * @param width the number of sources searched together, a positive multiple of 64
+	 */
+	public MultiSourceBfs(GraphIndex graph, int width) {
+		if (width <= 0 || width % 64 != 0)
+			throw new IllegalArgumentException("width must be a positive multiple of 64: " + width);
+		this.graph = graph;
+		this.words = width / 64;
+	}
+
+	/**
+	 * Counts the users reached by each source at each number of hops.
+	 * @param sources the dense ids of the sources
+	 * @param threads the number of threads, each running whole batches
+	 * @return the hop histograms of the sources, in the given order
+	 */
+	public Result run(int[] sources, int threads) {
+		int width = words * 64;
+		int batches = (sources.length + width - 1) / width;
+		int[][] histograms = new int[sources.length][];
+		AtomicInteger next = new AtomicInteger();
+		Runnable worker = () -> {
+			Batch batch = null;
+			for (int b = next.getAndIncrement(); b < batches; b = next.getAndIncrement()) {
+				if (batch == null)
+					batch = new Batch();
+				int from = b * width;
+				batch.run(sources, from, Math.min(sources.length, from + width), histograms);
+			}
+		};
+		Thread[] pool = new Thread[Math.max(1, Math.min(threads, batches)) - 1];
+		for (int j = 0; j < pool.length; j++) {
+			pool[j] = new Thread(worker, "multi-source-bfs-" + j);
+			pool[j].start();
+		}
+		worker.run();
+		for (Thread t : pool) {
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("interrupted while searching", e);
+			}
+		}
+		long[] ids = new long[sources.length];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = graph.idOf(sources[i]);
+		}
+		return new Result(ids, histograms);
+	}
+
+	/**
+	 * The state of one batch: three bitmasks per user, words longs each.
+	 */
+	private class Batch {
+		private final long[] seen;
+		private long[] visit;
+		private long[] visitNext;
+		private final List<int[]> counts = new ArrayList<int[]>();	// users newly reached, by hop and source
+
+		Batch() {
+			int n = graph.size();
+			seen = new long[n * words];
+			visit = new long[n * words];
+			visitNext = new long[n * words];
+		}
+
+		void run(int[] sources, int from, int to, int[][] histograms) {
+			int n = graph.size();
+			int[] offsets = graph.offsets();
+			int[] targets = graph.targets();
+			int k = to - from;
+			Arrays.fill(seen, 0L);
+			Arrays.fill(visit, 0L);
+			counts.clear();
+			counts.add(new int[k]);
+			for (int i = 0; i < k; i++) {
+				int s = sources[from + i];
+				int bit = s * words + (i >>> 6);
+				// a source may be listed twice, each copy is its own search
+				seen[bit] |= 1L << i;
+				visit[bit] |= 1L << i;
+				counts.get(0)[i] = 1;
+			}
+
+			boolean active = true;
+			while (active) {
+				// expand every user of any frontier once, for all its sources
+				for (int v = 0; v < n; v++) {
+					int base = v * words;
+					long any = 0;
+					for (int w = 0; w < words; w++) {
+						any |= visit[base + w];
+					}
+					if (any == 0)
+						continue;
+					for (int j = offsets[v], end = offsets[v + 1]; j < end; j++) {
+						int f = targets[j] * words;
+						for (int w = 0; w < words; w++) {
+							long bits = visit[base + w];
+							if (bits != 0)
+								visitNext[f + w] |= bits;
+						}
+					}
+				}
+				// keep the bits of the sources that had not seen the user yet
+				active = false;
+				int[] level = new int[k];
+				for (int x = 0; x < n * words; x++) {
+					long fresh = visitNext[x] & ~seen[x];
+					visitNext[x] = 0L;
+					visit[x] = fresh;
+					if (fresh == 0)
+						continue;
+					active = true;
+					seen[x] |= fresh;
+					int first = (x % words) * 64;
+					while (fresh != 0) {
+						level[first + Long.numberOfTrailingZeros(fresh)]++;
+						fresh &= fresh - 1;
+					}
+				}
+				if (active)
+					counts.add(level);
+			}
+
+			for (int i = 0; i < k; i++) {
+				// the last hop any user was reached at
+				int last = counts.size() - 1;
+				while (last > 0 && counts.get(last)[i] == 0) {
+					last--;
+				}
+				int[] h = new int[last + 1];
+				for (int j = 0; j <= last; j++) {
+					h[j] = counts.get(j)[i];
+				}
+				histograms[from + i] = h;
+			}
+		}
+	}
+}
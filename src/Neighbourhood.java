@@ -0,0 +1,229 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Queue;
+
+/**
+ * Explores the users around a source in order of path cost, within a number of hops
+ * and/or a cost radius. The exploration is a lazy Dijkstra search: each call to next()
+ * settles just enough of the graph to return the next closest user, so callers that stop
+ * early never pay for the rest of the neighbourhood.
+ *
+ * With a hop limit the cheapest path to a user may be too long while a costlier one fits,
+ * so the search keeps (user, hops) labels like ConstrainedSearch: a label is expanded only
+ * if no cheaper label with fewer or equal hops was settled at the same user, and each user
+ * is returned with the first (cheapest) label settled there. The per-user state is reset
+ * through the list of touched users, so starting a new exploration costs O(touched).
+ *
+ * Starting a new exploration invalidates the iterator of the previous one.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class Neighbourhood {
+
+	/**
+	 * A user found by the exploration.
+	 */
+	public static class Neighbour {
+		private final int user;
+		private final long id;
+		private final double cost;
+		private final int hops;
+		private final int predecessor;
+
+		Neighbour(int user, long id, double cost, int hops, int predecessor) {
+			this.user = user;
+			this.id = id;
+			this.cost = cost;
+			this.hops = hops;
+			this.predecessor = predecessor;
+		}
+
+		/**
+		 * Returns the dense id of the user.
+		 * @return the dense id
+		 */
+		public int getUser() {
+			return user;
+		}
+
+		/**
+		 * Returns the user id.
+		 * @return the user id
+		 */
+		public long getId() {
+			return id;
+		}
+
+		/**
+		 * Returns the cost of the cheapest path within the hop limit.
+		 * @return the path cost
+		 */
+		public double getCost() {
+			return cost;
+		}
+
+		/**
+		 * Returns the number of hops of that path.
+		 * @return the hops
+		 */
+		public int getHops() {
+			return hops;
+		}
+
+		/**
+		 * Returns the dense id of the previous user on that path.
+		 * @return the predecessor
+		 */
+		public int getPredecessor() {
+			return predecessor;
+		}
+
+		@Override
+		public String toString() {
+			return "Neighbour [id=" + id + ", cost=" + cost + ", hops=" + hops + "]";
+		}
+	}
+
+	private final GraphIndex graph;
+	private final double[] weights;
+
+	// fewest hops of a settled label of each user, reset through the touched list
+	private final int[] bestHops;
+	private int[] touched;
+	private int numTouched;
+
+	// labels: user, distance, hops and parent label
+	private int[] labelVertex;
+	private double[] labelDist;
+	private int[] labelHops;
+	private int[] labelParent;
+	private int numLabels;
+
+	private final Queue<Entry<Integer, Double>> pq;
+	private int generation;		// identifies the current exploration
+
+	/**
+	 * Constructor
+	 * @param graph the graph to explore
+	 * @param weights the cost of stepping onto each user
+	 */
+	public Neighbourhood(GraphIndex graph, double[] weights) {
+		this.graph = graph;
+		this.weights = weights;
+		this.bestHops = new int[graph.size()];
+		Arrays.fill(bestHops, Integer.MAX_VALUE);
+		this.touched = new int[64];
+		this.labelVertex = new int[64];
+		this.labelDist = new double[64];
+		this.labelHops = new int[64];
+		this.labelParent = new int[64];
+		this.pq = new PriorityQueue<>();
+	}
+
+	/**
+	 * Starts an exploration around the source.
+	 * @param source the dense id of the source, which is not returned itself
+	 * @param maxHops the largest number of hops, Integer.MAX_VALUE for no limit
+	 * @param maxCost the largest path cost, Double.POSITIVE_INFINITY for no limit
+	 * @return the users around the source by increasing path cost
+	 */
+	public Iterator<Neighbour> explore(int source, int maxHops, double maxCost) {
+		reset();
+		int current = ++generation;
+		boolean hopLimit = maxHops != Integer.MAX_VALUE;
+		pq.add(new Entry<Integer, Double>(addLabel(source, 0.0, 0, -1), 0.0));
+
+		return new Iterator<Neighbour>() {
+			private Neighbour next;
+
+			@Override
+			public boolean hasNext() {
+				if (generation != current)
+					throw new IllegalStateException("another exploration was started");
+				if (next == null)
+					next = advance(source, maxHops, maxCost, hopLimit);
+				return next != null;
+			}
+
+			@Override
+			public Neighbour next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				Neighbour res = next;
+				next = null;
+				return res;
+			}
+		};
+	}
+
+	/**
+	 * Settles labels until one reaches a user for the first time.
+	 * @return that user or null when the neighbourhood is exhausted
+	 */
+	private Neighbour advance(int source, int maxHops, double maxCost, boolean hopLimit) {
+		int[] offsets = graph.offsets();
+		int[] targets = graph.targets();
+		while (!pq.isEmpty()) {
+			int l = pq.poll().getId();
+			int u = labelVertex[l];
+			// without a hop limit every user is settled once, as in Dijkstra's algorithm
+			int h = hopLimit ? labelHops[l] : 0;
+			// dominated: a cheaper label with fewer or equal hops was settled here already
+			if (bestHops[u] <= h)
+				continue;
+			boolean first = bestHops[u] == Integer.MAX_VALUE;
+			if (first)
+				touch(u);
+			bestHops[u] = h;
+
+			if (labelHops[l] < maxHops) {
+				double du = labelDist[l];
+				for (int i = offsets[u], end = offsets[u + 1]; i < end; i++) {
+					int f = targets[i];
+					double d = du + weights[f];
+					if (bestHops[f] <= (hopLimit ? h + 1 : 0) || d > maxCost)
+						continue;
+					pq.add(new Entry<Integer, Double>(addLabel(f, d, labelHops[l] + 1, l), d));
+				}
+			}
+			if (first && u != source) {
+				int parent = labelParent[l];
+				return new Neighbour(u, graph.idOf(u), labelDist[l], labelHops[l], labelVertex[parent]);
+			}
+		}
+		return null;
+	}
+
+	private void reset() {
+		for (int i = 0; i < numTouched; i++) {
+			bestHops[touched[i]] = Integer.MAX_VALUE;
+		}
+		numTouched = 0;
+		numLabels = 0;
+		pq.clear();
+	}
+
+	private void touch(int v) {
+		if (numTouched == touched.length)
+			touched = Arrays.copyOf(touched, numTouched * 2);
+		touched[numTouched++] = v;
+	}
+
+	private int addLabel(int v, double d, int hops, int parent) {
+		if (numLabels == labelVertex.length) {
+			int size = numLabels * 2;
+			labelVertex = Arrays.copyOf(labelVertex, size);
+			labelDist = Arrays.copyOf(labelDist, size);
+			labelHops = Arrays.copyOf(labelHops, size);
+			labelParent = Arrays.copyOf(labelParent, size);
+		}
+		labelVertex[numLabels] = v;
+		labelDist[numLabels] = d;
+		labelHops[numLabels] = hops;
+		labelParent[numLabels] = parent;
+		return numLabels++;
+	}
+}
@@ -0,0 +1,445 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pruned landmark labelling (a 2-hop cover) answering exact distance queries without a
+ * search. Every user v gets an out label of hubs it reaches, L_out(v) = {(h, d(v, h))},
+ * and an in label of hubs that reach it, L_in(v) = {(h, d(h, v))}, such that a shortest
+ * path from s to t always passes a hub in both L_out(s) and L_in(t). The distance is then
+ * the smallest d(s, h) + d(h, t) over the common hubs, a merge of two short sorted lists.
+ *
+ * Users are made hubs in decreasing degree order. Each hub runs a forward and a backward
+ * Dijkstra search that stops expanding at users whose distance the labels built so far
+ * already cover (pruning), so later hubs only label the few users that earlier hubs miss.
+ * Hubs are processed in batches on several threads; a batch only prunes against the labels
+ * of earlier batches, which may add a few redundant entries but keeps every label exact.
+ *
+ * Labels live in flat arrays (CSR layout, sorted by hub rank). With parent hints every
+ * entry also records the next user towards or from its hub, so paths can be rebuilt.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class PrunedLandmarkLabels {
+
+	// the first hubs prune the most, they are processed one at a time
+	private static final int SEQUENTIAL_HUBS = 256;
+
+	private final int[] order;		// order[r] is the dense id of the hub with rank r
+
+	// out labels: hubs each user reaches, entries [outOffsets[v], outOffsets[v + 1])
+	private final int[] outOffsets;
+	private final int[] outHubs;
+	private final double[] outDists;
+	private final int[] outParents;	// next user towards the hub, or null without parent hints
+
+	// in labels: hubs that reach each user
+	private final int[] inOffsets;
+	private final int[] inHubs;
+	private final double[] inDists;
+	private final int[] inParents;	// previous user from the hub, or null without parent hints
+
+	/**
+	 * Labels of one direction while they are being built.
+	 */
+	private static class Labels {
+		final int[][] hubs;
+		final double[][] dists;
+		final int[][] parents;
+		final int[] counts;
+
+		Labels(int n) {
+			hubs = new int[n][];
+			dists = new double[n][];
+			parents = new int[n][];
+			counts = new int[n];
+		}
+
+		void add(int v, int hub, double d, int parent) {
+			int c = counts[v];
+			if (hubs[v] == null || hubs[v].length == c) {
+				int size = Math.max(4, c * 2);
+				hubs[v] = hubs[v] == null ? new int[size] : Arrays.copyOf(hubs[v], size);
+				dists[v] = dists[v] == null ? new double[size] : Arrays.copyOf(dists[v], size);
+				parents[v] = parents[v] == null ? new int[size] : Arrays.copyOf(parents[v], size);
+			}
+			hubs[v][c] = hub;
+			dists[v][c] = d;
+			parents[v][c] = parent;
+			counts[v] = c + 1;
+		}
+	}
+
+	/**
+	 * Search state of one thread, reset between hubs through the epoch.
+	 */
+	private static class Worker {
+		final double[] hubDist;		// labels of the current hub, scattered by hub rank
+		final double[] dist;
+		final int[] parent;
+		final int[] seen;
+		final int[] settled;
+		final Queue<Entry<Integer, Double>> pq = new PriorityQueue<>();
+		int epoch;
+
+		// entries found for the current hub: user, distance, parent
+		int[] users = new int[64];
+		double[] found = new double[64];
+		int[] parents = new int[64];
+		int count;
+
+		Worker(int n) {
+			hubDist = new double[n];
+			Arrays.fill(hubDist, Double.POSITIVE_INFINITY);
+			dist = new double[n];
+			parent = new int[n];
+			seen = new int[n];
+			settled = new int[n];
+		}
+
+		void emit(int v, double d, int p) {
+			if (count == users.length) {
+				users = Arrays.copyOf(users, count * 2);
+				found = Arrays.copyOf(found, count * 2);
+				parents = Arrays.copyOf(parents, count * 2);
+			}
+			users[count] = v;
+			found[count] = d;
+			parents[count] = p;
+			count++;
+		}
+	}
+
+	/**
+	 * Entries a hub adds in one direction, kept until its batch is committed.
+	 */
+	private static class Pending {
+		int[] users;
+		double[] dists;
+		int[] parents;
+		int count;
+
+		void copyFrom(Worker w) {
+			users = Arrays.copyOf(w.users, w.count);
+			dists = Arrays.copyOf(w.found, w.count);
+			parents = Arrays.copyOf(w.parents, w.count);
+			count = w.count;
+		}
+	}
+
+	private PrunedLandmarkLabels(int[] order, Labels out, Labels in, boolean keepParents) {
+		this.order = order;
+		int n = order.length;
+		this.outOffsets = new int[n + 1];
+		this.inOffsets = new int[n + 1];
+		for (int v = 0; v < n; v++) {
+			outOffsets[v + 1] = outOffsets[v] + out.counts[v];
+			inOffsets[v + 1] = inOffsets[v] + in.counts[v];
+		}
+		this.outHubs = new int[outOffsets[n]];
+		this.outDists = new double[outOffsets[n]];
+		this.outParents = keepParents ? new int[outOffsets[n]] : null;
+		this.inHubs = new int[inOffsets[n]];
+		this.inDists = new double[inOffsets[n]];
+		this.inParents = keepParents ? new int[inOffsets[n]] : null;
+		for (int v = 0; v < n; v++) {
+			flatten(out, v, outOffsets[v], outHubs, outDists, outParents);
+			flatten(in, v, inOffsets[v], inHubs, inDists, inParents);
+		}
+	}
+
+	private static void flatten(Labels labels, int v, int at, int[] hubs, double[] dists, int[] parents) {
+		int c = labels.counts[v];
+		if (c == 0)
+			return;
+		System.arraycopy(labels.hubs[v], 0, hubs, at, c);
+		System.arraycopy(labels.dists[v], 0, dists, at, c);
+		if (parents != null)
+			System.arraycopy(labels.parents[v], 0, parents, at, c);
+		// free the build arrays as we go
+		labels.hubs[v] = null;
+		labels.dists[v] = null;
+		labels.parents[v] = null;
+	}
+
+	/**
+	 * Builds the labels over the inverse skill weights of the index.
+	 * @param graph the graph
+	 * @param threads the number of threads
+	 * @param parentHints whether to keep the parent hints needed by path()
+	 * @return the labels
+	 */
+	public static PrunedLandmarkLabels build(GraphIndex graph, int threads, boolean parentHints) {
+		int n = graph.size();
+		int[] rank = VertexOrdering.DEGREE.rank(graph);
+		int[] order = new int[n];
+		for (int v = 0; v < n; v++) {
+			order[rank[v]] = v;
+		}
+		Labels out = new Labels(n);
+		Labels in = new Labels(n);
+		int numThreads = Math.max(1, threads);
+		Worker[] workers = new Worker[numThreads];
+		for (int i = 0; i < numThreads; i++) {
+			workers[i] = new Worker(n);
+		}
+
+		// a few hubs per thread and batch, so the threads rarely wait for each other
+		int maxBatch = numThreads == 1 ? 1 : 4 * numThreads;
+		Pending[] forward = new Pending[maxBatch];
+		Pending[] backward = new Pending[maxBatch];
+		for (int i = 0; i < maxBatch; i++) {
+			forward[i] = new Pending();
+			backward[i] = new Pending();
+		}
+
+		ExecutorService pool = numThreads == 1 ? null : Executors.newFixedThreadPool(numThreads);
+		try {
+			int r = 0;
+			while (r < n) {
+				int batch = r < SEQUENTIAL_HUBS ? 1 : Math.min(maxBatch, n - r);
+				int first = r;
+				if (batch == 1) {
+					search(graph, order, first, out, in, workers[0], true, forward[0]);
+					search(graph, order, first, out, in, workers[0], false, backward[0]);
+				} else {
+					AtomicInteger next = new AtomicInteger();
+					List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+					for (Worker w : workers) {
+						tasks.add(() -> {
+							for (int i = next.getAndIncrement(); i < batch; i = next.getAndIncrement()) {
+								search(graph, order, first + i, out, in, w, true, forward[i]);
+								search(graph, order, first + i, out, in, w, false, backward[i]);
+							}
+							return null;
+						});
+					}
+					for (Future<Void> f : pool.invokeAll(tasks)) {
+						f.get();
+					}
+				}
+				// commit in rank order so every label stays sorted by hub rank
+				for (int i = 0; i < batch; i++) {
+					commit(in, forward[i], first + i);
+					commit(out, backward[i], first + i);
+				}
+				r += batch;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while building the labels", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("cannot build the labels", e.getCause());
+		} finally {
+			if (pool != null)
+				pool.shutdown();
+		}
+		return new PrunedLandmarkLabels(order, out, in, parentHints);
+	}
+
+	private static void commit(Labels labels, Pending p, int hub) {
+		for (int i = 0; i < p.count; i++) {
+			labels.add(p.users[i], hub, p.dists[i], p.parents[i]);
+		}
+	}
+
+	/**
+	 * Pruned Dijkstra search from the hub with the given rank, forward over the friend
+	 * links (filling in labels) or backward over the transposed links (filling out labels).
+	 */
+	private static void search(GraphIndex graph, int[] order, int hubRank, Labels out, Labels in, Worker w, boolean forward, Pending result) {
+		int hub = order[hubRank];
+		double[] weights = graph.weights();
+		GraphIndex g = forward ? graph : graph.transpose();
+		int[] offsets = g.offsets();
+		int[] targets = g.targets();
+		// forward: d(hub, v) is covered by L_out(hub) and L_in(v); backward: L_out(v) and L_in(hub)
+		Labels own = forward ? out : in;
+		Labels other = forward ? in : out;
+
+		for (int i = 0; i < own.counts[hub]; i++) {
+			w.hubDist[own.hubs[hub][i]] = own.dists[hub][i];
+		}
+		if (++w.epoch == Integer.MAX_VALUE) {
+			Arrays.fill(w.seen, 0);
+			Arrays.fill(w.settled, 0);
+			w.epoch = 1;
+		}
+		w.count = 0;
+		w.pq.clear();
+		w.seen[hub] = w.epoch;
+		w.dist[hub] = 0.0;
+		w.parent[hub] = -1;
+		w.pq.add(new Entry<Integer, Double>(hub, 0.0));
+
+		while (!w.pq.isEmpty()) {
+			int u = w.pq.poll().getId();
+			if (w.settled[u] == w.epoch)
+				continue;
+			w.settled[u] = w.epoch;
+			double du = w.dist[u];
+
+			// prune if a hub processed before already gives a path this short
+			boolean covered = false;
+			int[] hubs = other.hubs[u];
+			double[] dists = other.dists[u];
+			for (int i = 0, c = other.counts[u]; i < c; i++) {
+				if (w.hubDist[hubs[i]] + dists[i] <= du) {
+					covered = true;
+					break;
+				}
+			}
+			if (covered)
+				continue;
+			w.emit(u, du, w.parent[u]);
+
+			// forward, stepping onto f costs w[f]; backward, f steps onto u and pays w[u]
+			for (int i = offsets[u], end = offsets[u + 1]; i < end; i++) {
+				int f = targets[i];
+				if (w.settled[f] == w.epoch)
+					continue;
+				double d = du + (forward ? weights[f] : weights[u]);
+				if (w.seen[f] == w.epoch && w.dist[f] <= d)
+					continue;
+				w.seen[f] = w.epoch;
+				w.dist[f] = d;
+				w.parent[f] = u;
+				w.pq.add(new Entry<Integer, Double>(f, d));
+			}
+		}
+
+		for (int i = 0; i < own.counts[hub]; i++) {
+			w.hubDist[own.hubs[hub][i]] = Double.POSITIVE_INFINITY;
+		}
+		result.copyFrom(w);
+	}
+
+	/**
+	 * Returns the exact distance from s to t.
+	 * @param s the dense id of the source
+	 * @param t the dense id of the destination
+	 * @return the distance or Double.POSITIVE_INFINITY if t cannot be reached
+	 */
+	public double distance(int s, int t) {
+		return bestHub(s, t, null);
+	}
+
+	/**
+	 * Returns the shortest path from s to t, rebuilt from the parent hints.
+	 * @param s the dense id of the source
+	 * @param t the dense id of the destination
+	 * @return the dense ids from s to t or null if t cannot be reached
+	 * @throws IllegalStateException if the labels were built without parent hints
+	 */
+	public int[] path(int s, int t) {
+		if (outParents == null)
+			throw new IllegalStateException("the labels were built without parent hints");
+		int[] at = new int[2];
+		if (bestHub(s, t, at) == Double.POSITIVE_INFINITY)
+			return null;
+		int hubRank = outHubs[at[0]];
+		int hub = order[hubRank];
+
+		// s to the hub through the out labels, then the hub to t through the in labels, reversed
+		int[] path = new int[16];
+		int length = 0;
+		for (int v = s, e = at[0]; ; ) {
+			if (length == path.length)
+				path = Arrays.copyOf(path, length * 2);
+			path[length++] = v;
+			if (v == hub)
+				break;
+			v = outParents[e];
+			e = find(outOffsets, outHubs, v, hubRank);
+		}
+		int mid = length;
+		for (int v = t, e = at[1]; v != hub; ) {
+			if (length == path.length)
+				path = Arrays.copyOf(path, length * 2);
+			path[length++] = v;
+			v = inParents[e];
+			e = find(inOffsets, inHubs, v, hubRank);
+		}
+		for (int a = mid, b = length - 1; a < b; a++, b--) {
+			int x = path[a];
+			path[a] = path[b];
+			path[b] = x;
+		}
+		return Arrays.copyOf(path, length);
+	}
+
+	/**
+	 * Merges L_out(s) and L_in(t).
+	 * @param at if not null, receives the positions of the best common hub in both labels
+	 * @return the distance through the best common hub
+	 */
+	private double bestHub(int s, int t, int[] at) {
+		double best = Double.POSITIVE_INFINITY;
+		int i = outOffsets[s], iEnd = outOffsets[s + 1];
+		int j = inOffsets[t], jEnd = inOffsets[t + 1];
+		while (i < iEnd && j < jEnd) {
+			int a = outHubs[i], b = inHubs[j];
+			if (a < b) {
+				i++;
+			} else if (a > b) {
+				j++;
+			} else {
+				double d = outDists[i] + inDists[j];
+				if (d < best) {
+					best = d;
+					if (at != null) {
+						at[0] = i;
+						at[1] = j;
+					}
+				}
+				i++;
+				j++;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the position of the hub in the label of v.
+	 */
+	private static int find(int[] offsets, int[] hubs, int v, int hubRank) {
+		int e = Arrays.binarySearch(hubs, offsets[v], offsets[v + 1], hubRank);
+		if (e < 0)
+			throw new IllegalStateException("missing parent hint for user " + v);
+		return e;
+	}
+
+	/**
+	 * Returns whether the labels were built with the parent hints path() needs.
+	 * @return <b>true</b> if paths can be rebuilt
+	 */
+	public boolean hasParentHints() {
+		return outParents != null;
+	}
+
+	/**
+	 * Returns the number of label entries in both directions.
+	 * @return the number of entries
+	 */
+	public long numEntries() {
+		return (long) outHubs.length + inHubs.length;
+	}
+
+	/**
+	 * Returns the size of the label arrays.
+	 * @return the size in bytes
+	 */
+	public long sizeInBytes() {
+		long perEntry = outParents == null ? 12 : 16;
+		return numEntries() * perEntry + 4L * (outOffsets.length + inOffsets.length + order.length);
+	}
+}
@@ -0,0 +1,201 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent path queries into micro-batches.
+ * Queries wait in a bounded queue; when the queue is full new queries are rejected
+ * (load shedding) instead of piling up. Each worker takes up to maxBatch queries,
+ * waiting at most maxWait for the batch to fill, groups them by source and answers
+ * every group with a single Dijkstra search that stops once all of its destinations
+ * are settled. Every worker has its own SearchScratch over the shared, read-only index.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class QueryBatcher {
+
+	/**
+	 * A query waiting for its batch.
+	 */
+	private static class Query {
+		final int source;
+		final int destination;
+		final CompletableFuture<WeightedPath> result;
+
+		Query(int source, int destination) {
+			this.source = source;
+			this.destination = destination;
+			this.result = new CompletableFuture<WeightedPath>();
+		}
+	}
+
+	private final GraphIndex graph;
+	private final double[] weights;
+	private final BlockingQueue<Query> queue;
+	private final int maxBatch;
+	private final long maxWaitNanos;
+	private final Thread[] workers;
+	private volatile boolean running;
+
+	// statistics
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong searches = new AtomicLong();
+
+	/**
+	 * Constructor: starts the workers.
+	 * @param graph the graph to search
+	 * @param weights the cost of stepping onto each user
+	 * @param numWorkers the number of worker threads
+	 * @param queueCapacity the maximum number of queries waiting, further queries are rejected
+	 * @param maxBatch the maximum number of queries per batch
+	 * @param maxWaitMicros the longest a worker waits for a batch to fill, in microseconds
+	 */
+	public QueryBatcher(GraphIndex graph, double[] weights, int numWorkers, int queueCapacity, int maxBatch, long maxWaitMicros) {
+		this.graph = graph;
+		this.weights = weights;
+		this.queue = new ArrayBlockingQueue<Query>(queueCapacity);
+		this.maxBatch = maxBatch;
+		this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+		this.running = true;
+		this.workers = new Thread[numWorkers];
+		for (int i = 0; i < numWorkers; i++) {
+			workers[i] = new Thread(this::work, "query-batcher-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * Queues a query. The future completes with the path, or null if there is none,
+	 * and fails with a RejectedExecutionException if the queue is full.
+	 * @param source the dense id of the source
+	 * @param destination the dense id of the destination
+	 * @return the future result
+	 */
+	public CompletableFuture<WeightedPath> submit(int source, int destination) {
+		Query q = new Query(source, destination);
+		submitted.incrementAndGet();
+		if (!running || !queue.offer(q)) {
+			rejected.incrementAndGet();
+			q.result.completeExceptionally(new RejectedExecutionException("query queue is full"));
+		}
+		return q.result;
+	}
+
+	/**
+	 * Stops the workers; queued queries are rejected.
+	 */
+	public void shutdown() {
+		running = false;
+		for (Thread t : workers) {
+			t.interrupt();
+		}
+		Query q;
+		while ((q = queue.poll()) != null) {
+			q.result.completeExceptionally(new RejectedExecutionException("shutting down"));
+		}
+	}
+
+	/**
+	 * Returns the number of queries waiting for a worker.
+	 * @return the queue depth
+	 */
+	public int queued() {
+		return queue.size();
+	}
+
+	/**
+	 * Returns the statistics of the batcher.
+	 * @return the counters by name
+	 */
+	public Map<String, Long> stats() {
+		Map<String, Long> stats = new HashMap<String, Long>();
+		stats.put("submitted", submitted.get());
+		stats.put("rejected", rejected.get());
+		stats.put("completed", completed.get());
+		stats.put("batches", batches.get());
+		stats.put("searches", searches.get());
+		stats.put("queued", (long) queue.size());
+		return stats;
+	}
+
+	private void work() {
+		SearchScratch scratch = new SearchScratch(graph.size());
+		List<Query> batch = new ArrayList<Query>(maxBatch);
+		while (running) {
+			try {
+				batch.add(queue.take());
+				long deadline = System.nanoTime() + maxWaitNanos;
+				while (batch.size() < maxBatch) {
+					// take whatever is already waiting, then wait for the rest of the window
+					if (queue.drainTo(batch, maxBatch - batch.size()) > 0)
+						continue;
+					long left = deadline - System.nanoTime();
+					Query q = left > 0 ? queue.poll(left, TimeUnit.NANOSECONDS) : null;
+					if (q == null)
+						break;
+					batch.add(q);
+				}
+			} catch (InterruptedException e) {
+				for (Query q : batch) {
+					q.result.completeExceptionally(new RejectedExecutionException("shutting down"));
+				}
+				return;
+			}
+			answer(batch, scratch);
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Answers a batch with one search per distinct source.
+	 */
+	private void answer(List<Query> batch, SearchScratch scratch) {
+		batches.incrementAndGet();
+		Map<Integer, List<Query>> bySource = new HashMap<Integer, List<Query>>();
+		for (Query q : batch) {
+			List<Query> group = bySource.get(q.source);
+			if (group == null) {
+				group = new ArrayList<Query>();
+				bySource.put(q.source, group);
+			}
+			group.add(q);
+		}
+
+		for (Map.Entry<Integer, List<Query>> e : bySource.entrySet()) {
+			List<Query> group = e.getValue();
+			try {
+				int[] destinations = new int[group.size()];
+				for (int i = 0; i < destinations.length; i++) {
+					destinations[i] = group.get(i).destination;
+				}
+				scratch.clearBans();
+				scratch.runToAll(graph, weights, e.getKey(), destinations);
+				searches.incrementAndGet();
+				for (Query q : group) {
+					WeightedPath p = null;
+					if (q.source != q.destination && scratch.isSettled(q.destination))
+						p = new WeightedPath(scratch.path(q.destination), scratch.distance(q.destination));
+					// counted first, so the stats include a query once its future is done
+					completed.incrementAndGet();
+					q.result.complete(p);
+				}
+			} catch (RuntimeException ex) {
+				for (Query q : group) {
+					q.result.completeExceptionally(ex);
+				}
+			}
+		}
+	}
+}
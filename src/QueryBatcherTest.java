@@ -0,0 +1,48 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+public class QueryBatcherTest {
+
+	String sample = "sample.json";
+
+	@Test
+	public void testBatchedQueriesMatchShortestPaths() throws Exception {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		GraphIndex g = network.getIndex();
+		QueryBatcher batcher = new QueryBatcher(g, g.weights(), 2, 64, 16, 1000);
+		
+		long[][] pairs = { {1, 4}, {5, 8}, {5, 9}, {13, 16}, {1, 16}, {4, 4} };
+		List<CompletableFuture<WeightedPath>> futures = new ArrayList<CompletableFuture<WeightedPath>>();
+		for (long[] p : pairs) {
+			futures.add(batcher.submit(g.indexOf(p[0]), g.indexOf(p[1])));
+		}
+		
+		assertEquals(g.toIds(futures.get(0).get().getVertices()), Arrays.asList(new Long(1),new Long(2),new Long(4)));
+		assertEquals(g.toIds(futures.get(1).get().getVertices()), Arrays.asList(new Long(5),new Long(7),new Long(8)));
+		assertEquals(g.toIds(futures.get(2).get().getVertices()), Arrays.asList(new Long(5),new Long(7),new Long(9)));
+		assertEquals(g.toIds(futures.get(3).get().getVertices()), Arrays.asList(new Long(13),new Long(14),new Long(16)));
+		assertNull(futures.get(4).get());
+		assertNull(futures.get(5).get());
+		assertEquals(batcher.stats().get("completed"), new Long(6));
+		batcher.shutdown();
+	}
+	
+	@Test
+	public void testShutdownRejectsQueries() {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		GraphIndex g = network.getIndex();
+		QueryBatcher batcher = new QueryBatcher(g, g.weights(), 1, 4, 4, 10);
+		batcher.shutdown();
+		
+		assertTrue(batcher.submit(0, 1).isCompletedExceptionally());
+		assertEquals(batcher.stats().get("rejected"), new Long(1));
+	}
+}
@@ -0,0 +1,53 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits of a single query: how long it may run and how many users it may settle.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class QueryBudget {
+
+	private final long timeoutNanos;	// Long.MAX_VALUE for no time limit
+	private final int maxSettled;		// Integer.MAX_VALUE for no limit
+
+	/**
+	 * Constructor
+	 * @param timeoutMillis the time the query may run for, in milliseconds, 0 for no limit
+	 * @param maxSettled the number of users the query may settle, 0 for no limit
+	 */
+	public QueryBudget(long timeoutMillis, int maxSettled) {
+		this.timeoutNanos = timeoutMillis <= 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		this.maxSettled = maxSettled <= 0 ? Integer.MAX_VALUE : maxSettled;
+	}
+
+	/**
+	 * Returns a budget without limits.
+	 * @return the unlimited budget
+	 */
+	public static QueryBudget unlimited() {
+		return new QueryBudget(0, 0);
+	}
+
+	/**
+	 * Returns the deadline of a query starting now.
+	 * @param now the start of the query (System.nanoTime())
+	 * @return the deadline or Long.MAX_VALUE if the time is not limited
+	 */
+	public long deadlineFrom(long now) {
+		return timeoutNanos == Long.MAX_VALUE ? Long.MAX_VALUE : now + timeoutNanos;
+	}
+
+	/**
+	 * Returns the number of users the query may settle.
+	 * @return the settled budget
+	 */
+	public int getMaxSettled() {
+		return maxSettled;
+	}
+
+	@Override
+	public String toString() {
+		return "QueryBudget [timeoutNanos=" + timeoutNanos + ", maxSettled=" + maxSettled + "]";
+	}
+}
@@ -0,0 +1,237 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary log of path queries for offline replay. Each query is a fixed size record:
+ *
+ * <pre>
+ * source (8) | destination (8) | start, ns since the log was opened (8) | latency ns (8) |
+ * settled users (4) | path length, -1 if none (4) | path cost (8)
+ * </pre>
+ *
+ * Records are appended to a buffer under a lock and written out when it fills, so logging
+ * a query costs a few stores and no system call. The log must be closed to write the tail;
+ * queries appended after that are dropped.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class QueryLog implements Closeable {
+
+	private static final int MAGIC = 0x514c4f31;	// "QLO1"
+	static final int RECORD_BYTES = 48;
+
+	/**
+	 * A logged query.
+	 */
+	public static class Record {
+		private final long source;
+		private final long destination;
+		private final long start;
+		private final long latency;
+		private final int settled;
+		private final int length;
+		private final double cost;
+
+		/**
+		 * Constructor
+		 * @param source the source user id
+		 * @param destination the destination user id
+		 * @param start the start of the query in nanoseconds since the log was opened
+		 * @param latency the latency in nanoseconds
+		 * @param settled the number of users settled by the search
+		 * @param length the number of users on the path, -1 if there was no path
+		 * @param cost the cost of the path, Double.POSITIVE_INFINITY if there was no path
+		 */
+		public Record(long source, long destination, long start, long latency, int settled, int length, double cost) {
+			this.source = source;
+			this.destination = destination;
+			this.start = start;
+			this.latency = latency;
+			this.settled = settled;
+			this.length = length;
+			this.cost = cost;
+		}
+
+		/**
+		 * Returns the source user id.
+		 * @return the source
+		 */
+		public long getSource() {
+			return source;
+		}
+
+		/**
+		 * Returns the destination user id.
+		 * @return the destination
+		 */
+		public long getDestination() {
+			return destination;
+		}
+
+		/**
+		 * Returns the start of the query.
+		 * @return nanoseconds since the log was opened
+		 */
+		public long getStart() {
+			return start;
+		}
+
+		/**
+		 * Returns the latency of the query.
+		 * @return the latency in nanoseconds
+		 */
+		public long getLatency() {
+			return latency;
+		}
+
+		/**
+		 * Returns the number of users settled by the search.
+		 * @return the settled users
+		 */
+		public int getSettled() {
+			return settled;
+		}
+
+		/**
+		 * Returns the number of users on the path.
+		 * @return the path length, -1 if there was no path
+		 */
+		public int getLength() {
+			return length;
+		}
+
+		/**
+		 * Returns the cost of the path.
+		 * @return the cost, Double.POSITIVE_INFINITY if there was no path
+		 */
+		public double getCost() {
+			return cost;
+		}
+
+		@Override
+		public String toString() {
+			return "Record [source=" + source + ", destination=" + destination + ", latency=" + latency
+					+ ", settled=" + settled + ", length=" + length + ", cost=" + cost + "]";
+		}
+	}
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final long opened;
+	private long records;
+
+	/**
+	 * Constructor: creates or truncates the log file.
+	 * @param filename the file to write
+	 * @throws IOException if the file cannot be created
+	 */
+	public QueryLog(String filename) throws IOException {
+		this.channel = new FileOutputStream(filename).getChannel();
+		this.buffer = ByteBuffer.allocateDirect(RECORD_BYTES * 4096);
+		this.opened = System.nanoTime();
+		buffer.putInt(MAGIC);
+		buffer.putInt(RECORD_BYTES);
+	}
+
+	/**
+	 * Returns the time the log was opened, the origin of the record start times.
+	 * @return the System.nanoTime() at opening
+	 */
+	public long getOpened() {
+		return opened;
+	}
+
+	/**
+	 * Appends a query, or drops it if the log is closed.
+	 * @param source the source user id
+	 * @param destination the destination user id
+	 * @param start the System.nanoTime() at the start of the query
+	 * @param latency the latency in nanoseconds
+	 * @param settled the number of users settled by the search
+	 * @param length the number of users on the path, -1 if there was no path
+	 * @param cost the cost of the path, Double.POSITIVE_INFINITY if there was no path
+	 */
+	public synchronized void append(long source, long destination, long start, long latency, int settled, int length, double cost) {
+		// a query that saw the log before its capture stopped may end after the close
+		if (!channel.isOpen())
+			return;
+		if (buffer.remaining() < RECORD_BYTES)
+			drain();
+		buffer.putLong(source);
+		buffer.putLong(destination);
+		buffer.putLong(start - opened);
+		buffer.putLong(latency);
+		buffer.putInt(settled);
+		buffer.putInt(length);
+		buffer.putDouble(cost);
+		records++;
+	}
+
+	/**
+	 * Returns the number of queries logged.
+	 * @return the number of records
+	 */
+	public synchronized long size() {
+		return records;
+	}
+
+	/**
+	 * Writes the buffered records and closes the file.
+	 */
+	@Override
+	public synchronized void close() {
+		if (!channel.isOpen())
+			return;
+		drain();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void drain() {
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Reads every record of a log.
+	 * @param filename the log file
+	 * @return the records in the order they were logged
+	 * @throws IOException if the file cannot be read or is not a query log
+	 */
+	public static List<Record> read(String filename) throws IOException {
+		List<Record> res = new ArrayList<Record>();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename), 1 << 16))) {
+			if (in.readInt() != MAGIC || in.readInt() != RECORD_BYTES)
+				throw new IOException(filename + " is not a query log");
+			while (true) {
+				long source;
+				try {
+					source = in.readLong();
+				} catch (EOFException e) {
+					return res;
+				}
+				res.add(new Record(source, in.readLong(), in.readLong(), in.readLong(), in.readInt(), in.readInt(), in.readDouble()));
+			}
+		}
+	}
+}
@@ -0,0 +1,498 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Picks the strategy of each shortest path query from cheap statistics of the query: a
+ * recent answer for the same users, the components of the endpoints, their degrees and
+ * the distance estimated by the distance oracle when one was built.
+ * <ul>
+ * <li>an answer still in the cache is returned as is;</li>
+ * <li>users in different components, or proven apart by the oracle, are unreachable
+ * without a search;</li>
+ * <li>otherwise the applicable strategy with the lowest predicted latency runs: the tree
+ * of a pinned source, the landmark labels, Dijkstra from the source or bidirectional
+ * Dijkstra.</li>
+ * </ul>
+ * The predicted latency of a strategy is the mean latency it had on earlier queries of the
+ * same bucket, a coarse class of the estimated distance or, without an oracle, of the
+ * smaller endpoint degree. The mean is over the last 64 or so queries, so it follows the
+ * traffic. A strategy with fewer than MIN_SAMPLES queries in a bucket is tried there first,
+ * and every EXPLORE_EVERY-th query runs the least tried strategy, so each one keeps being
+ * measured.
+ *
+ * Every decision is kept with its outcome, the last logCapacity of them, for write() to
+ * dump and calibrate the cost model offline. The components and the cache belong to one
+ * index; SocialNetwork calls invalidate() whenever paths may have changed.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class QueryPlanner {
+
+	/** Default number of answers kept in the cache */
+	public static final int DEFAULT_CACHE_CAPACITY = 4096;
+
+	/** Default number of decisions kept in the log */
+	public static final int DEFAULT_LOG_CAPACITY = 65536;
+
+	private static final int BUCKETS = 16;
+	private static final int MIN_SAMPLES = 8;
+	private static final int EXPLORE_EVERY = 32;
+	private static final int WINDOW = 64;		// queries over which the mean latency is kept
+
+	/**
+	 * The ways a query can be answered.
+	 */
+	public enum Strategy {
+		/** the answer of an earlier query, from the cache */
+		CACHED(0),
+		/** the users are in different components or the oracle proves there is no path */
+		UNREACHABLE(0),
+		/** a walk along the predecessors of the tree of a pinned source */
+		PINNED(1e3),
+		/** the path rebuilt from the landmark labels and their parent hints */
+		LABELS(1e4),
+		/** Dijkstra's algorithm over the index from the source, stopping at the destination */
+		DIJKSTRA(1e6),
+		/** exact bidirectional Dijkstra over the index */
+		BIDIRECTIONAL(1e6);
+
+		// the latency predicted before the strategy was measured, in nanoseconds
+		private final double prior;
+
+		Strategy(double prior) {
+			this.prior = prior;
+		}
+	}
+
+	/**
+	 * A decision of the planner, with the statistics it was based on and, once the query
+	 * ran, its outcome.
+	 */
+	public static class Decision {
+		private final long source;
+		private final long destination;
+		private final long key;			// the dense ids of the users, the key of the cache
+		private final Strategy strategy;
+		private final boolean explored;
+		private final int sourceDegree;
+		private final int destinationDegree;
+		private final double estimate;
+		private final int bucket;
+		private final double predicted;
+		private final Cached cached;
+		private long latency = -1;
+		private int settled;
+		private double cost = Double.POSITIVE_INFINITY;
+
+		Decision(long source, long destination, long key, Strategy strategy, boolean explored, int sourceDegree,
+				int destinationDegree, double estimate, int bucket, double predicted, Cached cached) {
+			this.source = source;
+			this.destination = destination;
+			this.key = key;
+			this.strategy = strategy;
+			this.explored = explored;
+			this.sourceDegree = sourceDegree;
+			this.destinationDegree = destinationDegree;
+			this.estimate = estimate;
+			this.bucket = bucket;
+			this.predicted = predicted;
+			this.cached = cached;
+		}
+
+		/**
+		 * Returns the user id of the source.
+		 * @return the source
+		 */
+		public long getSource() {
+			return source;
+		}
+
+		/**
+		 * Returns the user id of the destination.
+		 * @return the destination
+		 */
+		public long getDestination() {
+			return destination;
+		}
+
+		/**
+		 * Returns the strategy picked.
+		 * @return the strategy
+		 */
+		public Strategy getStrategy() {
+			return strategy;
+		}
+
+		/**
+		 * Returns whether the strategy was picked to measure it rather than as the cheapest.
+		 * @return <b>true</b> for an exploring decision
+		 */
+		public boolean isExplored() {
+			return explored;
+		}
+
+		/**
+		 * Returns the number of friends of the source.
+		 * @return the degree of the source
+		 */
+		public int getSourceDegree() {
+			return sourceDegree;
+		}
+
+		/**
+		 * Returns the number of friends of the destination.
+		 * @return the degree of the destination
+		 */
+		public int getDestinationDegree() {
+			return destinationDegree;
+		}
+
+		/**
+		 * Returns the distance estimated by the oracle.
+		 * @return the estimate, NaN without an oracle
+		 */
+		public double getEstimate() {
+			return estimate;
+		}
+
+		/**
+		 * Returns the bucket of the query in the cost model.
+		 * @return the bucket
+		 */
+		public int getBucket() {
+			return bucket;
+		}
+
+		/**
+		 * Returns the latency predicted for the strategy.
+		 * @return the predicted latency in nanoseconds
+		 */
+		public double getPredicted() {
+			return predicted;
+		}
+
+		/**
+		 * Returns the latency of the query, planning included.
+		 * @return the latency in nanoseconds, -1 until the query completed
+		 */
+		public long getLatency() {
+			return latency;
+		}
+
+		/**
+		 * Returns the number of users the search settled.
+		 * @return the settled users, 0 for the strategies that do not search
+		 */
+		public int getSettled() {
+			return settled;
+		}
+
+		/**
+		 * Returns the cost of the path found.
+		 * @return the cost, Double.POSITIVE_INFINITY if there is no path
+		 */
+		public double getCost() {
+			return cost;
+		}
+
+		/**
+		 * Returns the cached path of a CACHED decision.
+		 * @return the user ids of the path, null if there is no path or the decision is not CACHED
+		 */
+		public List<Long> getCachedPath() {
+			return cached == null ? null : cached.path;
+		}
+
+		/**
+		 * Returns the cached cost of a CACHED decision.
+		 * @return the cost, Double.POSITIVE_INFINITY if there is no path or the decision is not CACHED
+		 */
+		public double getCachedCost() {
+			return cached == null ? Double.POSITIVE_INFINITY : cached.cost;
+		}
+	}
+
+	/**
+	 * An answer in the cache.
+	 */
+	private static class Cached {
+		final List<Long> path;
+		final double cost;
+
+		Cached(List<Long> path, double cost) {
+			// a copy, the caller owns the list it returned
+			this.path = path == null ? null : new ArrayList<Long>(path);
+			this.cost = path == null ? Double.POSITIVE_INFINITY : cost;
+		}
+	}
+
+	private final Map<Long, Cached> cache;
+	private final ArrayDeque<Decision> decisions = new ArrayDeque<Decision>();
+	private final int logCapacity;
+
+	// the index the components and the cached answers belong to, and the weak component of each user
+	private GraphIndex graph;
+	private int[] component;
+
+	// mean latency and number of queries by strategy and bucket
+	private final double[][] meanLatency = new double[Strategy.values().length][BUCKETS];
+	private final long[][] samples = new long[Strategy.values().length][BUCKETS];
+	private long planned;
+	private long hits;
+
+	/**
+	 * Constructor
+	 * @param cacheCapacity the number of answers kept, least recently used first out, 0 for no cache
+	 * @param logCapacity the number of decisions kept
+	 */
+	public QueryPlanner(int cacheCapacity, int logCapacity) {
+		this.logCapacity = logCapacity;
+		this.cache = new LinkedHashMap<Long, Cached>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Cached> eldest) {
+				return size() > cacheCapacity;
+			}
+		};
+	}
+
+	/**
+	 * Drops the cached answers and the components, e.g. after the friends or the skills changed.
+	 * The cost model is kept.
+	 */
+	public synchronized void invalidate() {
+		cache.clear();
+		graph = null;
+		component = null;
+	}
+
+	/**
+	 * Picks the strategy of a query.
+	 * @param g the index
+	 * @param source the dense id of the source
+	 * @param destination the dense id of the destination
+	 * @param pinned whether the source is pinned
+	 * @param labels whether landmark labels with parent hints were built
+	 * @param oracle the distance oracle, or null
+	 * @return the decision, to pass to complete() with the outcome
+	 */
+	public synchronized Decision plan(GraphIndex g, int source, int destination, boolean pinned, boolean labels, DistanceOracle oracle) {
+		if (graph != g) {
+			invalidate();
+			graph = g;
+		}
+		planned++;
+		int sourceDegree = g.degree(source);
+		int destinationDegree = g.degree(destination);
+		double estimate = oracle == null ? Double.NaN : oracle.estimate(source, destination);
+		int bucket = bucket(sourceDegree, destinationDegree, estimate);
+
+		long key = key(source, destination);
+		long sourceId = g.idOf(source);
+		long destinationId = g.idOf(destination);
+		Cached cached = cache.get(key);
+		if (cached != null) {
+			hits++;
+			return new Decision(sourceId, destinationId, key, Strategy.CACHED, false, sourceDegree, destinationDegree, estimate, bucket, 0, cached);
+		}
+		if (component(g, source) != component(g, destination)
+				|| (oracle != null && oracle.lowerBound(source, destination) == Double.POSITIVE_INFINITY))
+			return new Decision(sourceId, destinationId, key, Strategy.UNREACHABLE, false, sourceDegree, destinationDegree, estimate, bucket, 0, null);
+
+		EnumSet<Strategy> applicable = EnumSet.of(Strategy.DIJKSTRA, Strategy.BIDIRECTIONAL);
+		if (pinned)
+			applicable.add(Strategy.PINNED);
+		if (labels)
+			applicable.add(Strategy.LABELS);
+		Strategy best = null;
+		Strategy least = null;
+		for (Strategy s : applicable) {
+			if (best == null || predict(s, bucket) < predict(best, bucket))
+				best = s;
+			if (least == null || samples[s.ordinal()][bucket] < samples[least.ordinal()][bucket])
+				least = s;
+		}
+		// measure the strategies no query of the bucket has tried enough, and now and then the others
+		boolean explore = least != best
+				&& (samples[least.ordinal()][bucket] < MIN_SAMPLES || planned % EXPLORE_EVERY == 0);
+		Strategy picked = explore ? least : best;
+		return new Decision(sourceId, destinationId, key, picked, explore, sourceDegree, destinationDegree, estimate, bucket, predict(picked, bucket), null);
+	}
+
+	/**
+	 * Records the outcome of a query: the decision goes to the log, the latency to the
+	 * cost model and the answer to the cache.
+	 * @param decision the decision returned by plan()
+	 * @param path the user ids of the path, or null if there is none
+	 * @param cost the cost of the path
+	 * @param settled the number of users the search settled
+	 * @param latency the latency of the query, planning included, in nanoseconds
+	 */
+	public synchronized void complete(Decision decision, List<Long> path, double cost, int settled, long latency) {
+		decision.latency = latency;
+		decision.settled = settled;
+		decision.cost = path == null ? Double.POSITIVE_INFINITY : cost;
+		if (decisions.size() == logCapacity)
+			decisions.pollFirst();
+		if (logCapacity > 0)
+			decisions.addLast(decision);
+
+		int s = decision.strategy.ordinal();
+		int b = decision.bucket;
+		long n = Math.min(++samples[s][b], WINDOW);
+		meanLatency[s][b] += (latency - meanLatency[s][b]) / n;
+		// the answers of a graph the planner was invalidated for since are not cached
+		if (decision.strategy != Strategy.CACHED && graph != null)
+			cache.put(decision.key, new Cached(path, cost));
+	}
+
+	/**
+	 * Returns the latency predicted for a strategy in a bucket: its mean in the bucket once
+	 * measured, else its mean over the buckets, else a prior.
+	 */
+	private double predict(Strategy s, int bucket) {
+		int i = s.ordinal();
+		if (samples[i][bucket] >= MIN_SAMPLES)
+			return meanLatency[i][bucket];
+		double sum = 0;
+		long n = 0;
+		for (int b = 0; b < BUCKETS; b++) {
+			sum += meanLatency[i][b] * samples[i][b];
+			n += samples[i][b];
+		}
+		return n >= MIN_SAMPLES ? sum / n : s.prior;
+	}
+
+	/**
+	 * Returns the bucket of a query: the log2 of the estimated distance in quarter units
+	 * in the upper half, the log2 of the smaller degree in the lower half without an estimate.
+	 */
+	private static int bucket(int sourceDegree, int destinationDegree, double estimate) {
+		int half = BUCKETS / 2;
+		if (!Double.isNaN(estimate) && estimate != Double.POSITIVE_INFINITY)
+			return half + Math.min(half - 1, 32 - Integer.numberOfLeadingZeros((int) (estimate * 4)));
+		return Math.min(half - 1, 32 - Integer.numberOfLeadingZeros(Math.min(sourceDegree, destinationDegree)));
+	}
+
+	private static long key(int source, int destination) {
+		return ((long) source << 32) | (destination & 0xffffffffL);
+	}
+
+	/**
+	 * Returns the weak component of a user, labelling every user of the index on first use.
+	 * Users of different weak components cannot reach each other whichever the direction
+	 * of the friend lists.
+	 */
+	private int component(GraphIndex g, int v) {
+		if (component == null)
+			component = components(g);
+		return component[v];
+	}
+
+	private static int[] components(GraphIndex g) {
+		int n = g.size();
+		int[] offsets = g.offsets();
+		int[] targets = g.targets();
+		int[] parent = new int[n];
+		for (int v = 0; v < n; v++) {
+			parent[v] = v;
+		}
+		for (int u = 0; u < n; u++) {
+			for (int i = offsets[u], end = offsets[u + 1]; i < end; i++) {
+				int a = find(parent, u), b = find(parent, targets[i]);
+				if (a != b)
+					parent[Math.max(a, b)] = Math.min(a, b);
+			}
+		}
+		for (int v = 0; v < n; v++) {
+			parent[v] = find(parent, v);
+		}
+		return parent;
+	}
+
+	private static int find(int[] parent, int v) {
+		while (parent[v] != v) {
+			// path halving
+			parent[v] = parent[parent[v]];
+			v = parent[v];
+		}
+		return v;
+	}
+
+	/**
+	 * Returns the logged decisions, oldest first.
+	 * @return the last decisions with their outcome
+	 */
+	public synchronized List<Decision> getDecisions() {
+		return new ArrayList<Decision>(decisions);
+	}
+
+	/**
+	 * Returns the number of queries planned.
+	 * @return the number of queries
+	 */
+	public synchronized long getPlanned() {
+		return planned;
+	}
+
+	/**
+	 * Returns the number of queries answered from the cache.
+	 * @return the number of cache hits
+	 */
+	public synchronized long getCacheHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of queries a strategy answered, over every bucket.
+	 * @param strategy the strategy
+	 * @return the number of queries
+	 */
+	public synchronized long getCount(Strategy strategy) {
+		return Arrays.stream(samples[strategy.ordinal()]).sum();
+	}
+
+	/**
+	 * Returns the latency the planner predicts for a strategy, over every bucket.
+	 * @param strategy the strategy
+	 * @return the predicted latency in nanoseconds
+	 */
+	public synchronized double getPredictedLatency(Strategy strategy) {
+		long n = getCount(strategy);
+		if (n < MIN_SAMPLES)
+			return strategy.prior;
+		double sum = 0;
+		for (int b = 0; b < BUCKETS; b++) {
+			sum += meanLatency[strategy.ordinal()][b] * samples[strategy.ordinal()][b];
+		}
+		return sum / n;
+	}
+
+	/**
+	 * Writes the logged decisions as tab separated values, one per line after a header.
+	 * @param filename the output file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(String filename) throws IOException {
+		List<Decision> log = getDecisions();
+		try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(filename)))) {
+			out.println("# source\tdestination\tstrategy\texplored\tsource degree\tdestination degree\testimate\tbucket\tpredicted ns\tlatency ns\tsettled\tcost");
+			for (Decision d : log) {
+				out.println(d.source + "\t" + d.destination + "\t" + d.strategy + "\t" + d.explored + "\t"
+						+ d.sourceDegree + "\t" + d.destinationDegree + "\t" + d.estimate + "\t" + d.bucket + "\t"
+						+ Math.round(d.predicted) + "\t" + d.latency + "\t" + d.settled + "\t" + d.cost);
+			}
+		}
+	}
+}
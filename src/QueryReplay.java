@@ -0,0 +1,277 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a query log captured with SocialNetwork.startCapture against a dataset, with a
+ * chosen backend, algorithm, number of clients and arrival rate, checks every result
+ * against the captured one and reports the latency percentiles next to the captured ones.
+ *
+ * <pre>
+ * java -cp bin:json-simple-1.1.jar QueryReplay &lt;dataset&gt; &lt;log&gt; [list|compressed] [algorithm] [clients] [rate]
+ * </pre>
+ *
+ * The rate is in queries per second, 0 to send them as fast as the clients can answer, or
+ * "recorded" to keep the captured arrival times. Queries are sent at fixed times and each
+ * latency is measured from the time its query was due rather than from when a client got
+ * to it, so a stall also counts against the queries that queued up behind it instead of
+ * being hidden (coordinated omission). A result matches when both found a path or both
+ * did not, and the costs agree; among equally short paths the algorithms may pick
+ * different ones.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class QueryReplay {
+
+	/**
+	 * The searches a log can be replayed with.
+	 */
+	public enum Algorithm {
+		/** findShortestPathBetween on the users, one query at a time */
+		LEGACY,
+		/** Dijkstra's algorithm over the shared GraphIndex, a SearchScratch per client */
+		INDEX,
+		/** exact bidirectional search over the shared GraphIndex, one per client */
+		BIDIRECTIONAL,
+		/** findPlannedPathBetween, one query at a time, which calibrates the planner on the log */
+		PLANNED
+	}
+
+	// relative tolerance of the cost comparison, the algorithms add the weights in different orders
+	private static final double TOLERANCE = 1e-9;
+
+	/**
+	 * Outcome of a replay.
+	 */
+	public static class Result {
+		private final long[] latencies;
+		private final int mismatches;
+		private final double seconds;
+
+		Result(long[] latencies, int mismatches, double seconds) {
+			this.latencies = latencies;
+			this.mismatches = mismatches;
+			this.seconds = seconds;
+		}
+
+		/**
+		 * Returns the latency of every query in nanoseconds, measured from its due time.
+		 * @return the latencies, sorted
+		 */
+		public long[] getLatencies() {
+			return latencies;
+		}
+
+		/**
+		 * Returns the number of queries whose result differs from the captured one.
+		 * @return the number of mismatches
+		 */
+		public int getMismatches() {
+			return mismatches;
+		}
+
+		/**
+		 * Returns the wall clock time of the replay.
+		 * @return the time in seconds
+		 */
+		public double getSeconds() {
+			return seconds;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d queries in %.2f s (%.0f q/s), %d mismatches, latency %s",
+					latencies.length, seconds, latencies.length / seconds, mismatches, percentiles(latencies));
+		}
+	}
+
+	/**
+	 * Application entry point.
+	 * @param args dataset log [list|compressed] [algorithm] [clients] [rate]
+	 * @throws Exception if the dataset or the log cannot be read
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("usage: QueryReplay <dataset> <log> [list|compressed] [legacy|index|bidirectional|planned] [clients] [rate|recorded]");
+			return;
+		}
+		SocialNetwork network = "compressed".equals(args.length > 2 ? args[2] : "list")
+				? new SocialNetwork(CompressedAdjacencyGraph::new) : new SocialNetwork();
+		Algorithm algorithm = args.length > 3 ? Algorithm.valueOf(args[3].toUpperCase()) : Algorithm.INDEX;
+		int clients = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+		String rate = args.length > 5 ? args[5] : "0";
+		if (!network.loadData(args[0]))
+			return;
+		List<QueryLog.Record> log = QueryLog.read(args[1]);
+
+		long[] recorded = new long[log.size()];
+		for (int i = 0; i < recorded.length; i++) {
+			recorded[i] = log.get(i).getLatency();
+		}
+		Arrays.sort(recorded);
+		System.out.println("captured " + percentiles(recorded));
+		Result result = "recorded".equals(rate)
+				? replay(network, log, algorithm, clients, -1)
+				: replay(network, log, algorithm, clients, Double.parseDouble(rate));
+		System.out.println(algorithm + " x" + clients + ": " + result);
+		if (algorithm == Algorithm.PLANNED) {
+			QueryPlanner planner = network.getQueryPlanner();
+			for (QueryPlanner.Strategy s : QueryPlanner.Strategy.values()) {
+				System.out.printf("  %-14s %8d queries  predicted %8.3f ms%n", s, planner.getCount(s), planner.getPredictedLatency(s) / 1e6);
+			}
+		}
+	}
+
+	/**
+	 * Replays a log.
+	 * @param network the loaded network
+	 * @param log the captured queries
+	 * @param algorithm the search to run
+	 * @param clients the number of concurrent clients
+	 * @param rate the queries per second, 0 for as fast as possible, negative for the captured arrival times
+	 * @return the latencies and the number of mismatched results
+	 * @throws InterruptedException if interrupted while waiting for the clients
+	 */
+	public static Result replay(SocialNetwork network, List<QueryLog.Record> log, Algorithm algorithm, int clients, double rate) throws InterruptedException {
+		int n = log.size();
+		long[] due = schedule(log, rate);
+		GraphIndex g = network.getIndex();
+		double[] w = g.weights();
+		// built before the clients start, they only read it
+		HubAdjacency hubs = network.getHubAdjacency();
+
+		long[] latencies = new long[n];
+		AtomicInteger next = new AtomicInteger();
+		AtomicInteger mismatches = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(clients);
+		long start = System.nanoTime();
+		for (int c = 0; c < clients; c++) {
+			pool.execute(() -> {
+				SearchScratch scratch = null;
+				ApproximateSearch bidirectional = null;
+				if (algorithm == Algorithm.INDEX) {
+					scratch = new SearchScratch(g.size());
+					scratch.setHubAdjacency(hubs);
+				} else if (algorithm == Algorithm.BIDIRECTIONAL) {
+					bidirectional = new ApproximateSearch(g, w);
+				}
+				int i;
+				while ((i = next.getAndIncrement()) < n) {
+					QueryLog.Record r = log.get(i);
+					long t = start;
+					if (due != null) {
+						t += due[i];
+						long wait;
+						while ((wait = t - System.nanoTime()) > 0) {
+							LockSupport.parkNanos(wait);
+						}
+					} else {
+						t = System.nanoTime();
+					}
+					double cost;
+					switch (algorithm) {
+					case LEGACY:
+						cost = legacy(network, r.getSource(), r.getDestination());
+						break;
+					case INDEX:
+						cost = index(g, w, scratch, r.getSource(), r.getDestination());
+						break;
+					case PLANNED:
+						cost = planned(network, r.getSource(), r.getDestination());
+						break;
+					default:
+						cost = bidirectional(g, bidirectional, r.getSource(), r.getDestination());
+						break;
+					}
+					latencies[i] = System.nanoTime() - t;
+					if (!matches(r, cost))
+						mismatches.incrementAndGet();
+				}
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(1, TimeUnit.HOURS);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		Arrays.sort(latencies);
+		return new Result(latencies, mismatches.get(), seconds);
+	}
+
+	/**
+	 * Returns the due time of each query relative to the start of the replay, or null if
+	 * the rate is unlimited.
+	 */
+	private static long[] schedule(List<QueryLog.Record> log, double rate) {
+		if (rate == 0)
+			return null;
+		long[] due = new long[log.size()];
+		long first = due.length == 0 ? 0 : log.get(0).getStart();
+		for (int i = 0; i < due.length; i++) {
+			due[i] = rate < 0 ? log.get(i).getStart() - first : (long) (i * 1e9 / rate);
+		}
+		return due;
+	}
+
+	/**
+	 * Returns whether a replayed cost agrees with the captured result.
+	 */
+	static boolean matches(QueryLog.Record r, double cost) {
+		if (r.getLength() < 0 || cost == Double.POSITIVE_INFINITY)
+			return r.getLength() < 0 && cost == Double.POSITIVE_INFINITY;
+		return Math.abs(cost - r.getCost()) <= TOLERANCE * Math.max(1.0, Math.abs(r.getCost()));
+	}
+
+	/**
+	 * Formats the latency percentiles of sorted nanoseconds.
+	 */
+	static String percentiles(long[] sorted) {
+		return String.format("p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms",
+				Benchmarks.percentile(sorted, 50) / 1e6, Benchmarks.percentile(sorted, 90) / 1e6,
+				Benchmarks.percentile(sorted, 99) / 1e6, Benchmarks.percentile(sorted, 99.9) / 1e6,
+				(sorted.length == 0 ? 0 : sorted[sorted.length - 1]) / 1e6);
+	}
+
+	/**
+	 * The search keeps its state on the users, so the queries are run one at a time.
+	 */
+	private static double legacy(SocialNetwork network, long source, long destination) {
+		synchronized (network) {
+			User<Long, Double, Double> s = network.getUser(source);
+			User<Long, Double, Double> d = network.getUser(destination);
+			if (network.findShortestPathBetween(s, d) == null)
+				return Double.POSITIVE_INFINITY;
+			return network.getPinnedSources().contains(source)
+					? network.pinSource(s).distance(destination) : d.getDistance();
+		}
+	}
+
+	/**
+	 * The planner shares the scratch state of the network, so the queries are run one at a time.
+	 */
+	private static double planned(SocialNetwork network, long source, long destination) {
+		synchronized (network) {
+			SearchResult r = network.findPlannedPathBetween(network.getUser(source), network.getUser(destination));
+			return r == null ? Double.POSITIVE_INFINITY : r.getUpperBound();
+		}
+	}
+
+	private static double index(GraphIndex g, double[] w, SearchScratch scratch, long source, long destination) {
+		int s = g.indexOf(source), t = g.indexOf(destination);
+		// as findShortestPathBetween, there is no path from a user to itself
+		if (s < 0 || t < 0 || s == t)
+			return Double.POSITIVE_INFINITY;
+		return scratch.run(g, w, s, t);
+	}
+
+	private static double bidirectional(GraphIndex g, ApproximateSearch search, long source, long destination) {
+		int s = g.indexOf(source), t = g.indexOf(destination);
+		if (s < 0 || t < 0 || s == t)
+			return Double.POSITIVE_INFINITY;
+		WeightedPath path = search.find(s, t, 0.0);
+		return path == null ? Double.POSITIVE_INFINITY : path.getCost();
+	}
+}
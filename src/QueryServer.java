@@ -0,0 +1,274 @@
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Lightweight HTTP server answering path queries over a graph loaded once.
+ *
+ * <pre>
+ * GET  /path?from=&lt;id&gt;&amp;to=&lt;id&gt;   the shortest path through the strongest coders
+ * POST /batch                     body [[from, to], ...], answers in the same order
+ * GET  /stats                     counters of the server and the batcher
+ * </pre>
+ *
+ * Requests are handled on virtual threads when the JVM has them, and on a cached
+ * thread pool otherwise; they block cheaply while their queries wait in the
+ * QueryBatcher, which bounds the work in flight and sheds load with 503 responses.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class QueryServer {
+
+	private static final long QUERY_TIMEOUT_MILLIS = 10000;
+
+	private final SocialNetwork network;
+	private final GraphIndex graph;
+	private final QueryBatcher batcher;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final long started;
+
+	/**
+	 * Constructor: binds the server, call start() to serve requests.
+	 * @param network the loaded network
+	 * @param port the port to listen on, 0 for any free port
+	 * @param workers the number of search workers
+	 * @param queueCapacity the maximum number of queries waiting for a worker
+	 * @param maxBatch the maximum number of queries per batch
+	 * @param maxWaitMicros the longest a worker waits for a batch to fill
+	 * @throws IOException if the port cannot be bound
+	 */
+	public QueryServer(SocialNetwork network, int port, int workers, int queueCapacity, int maxBatch, long maxWaitMicros) throws IOException {
+		this.network = network;
+		this.graph = network.getIndex();
+		this.batcher = new QueryBatcher(graph, graph.weights(), workers, queueCapacity, maxBatch, maxWaitMicros);
+		this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+		this.executor = newRequestExecutor();
+		this.started = System.currentTimeMillis();
+		server.setExecutor(executor);
+		server.createContext("/path", this::handlePath);
+		server.createContext("/batch", this::handleBatch);
+		server.createContext("/stats", this::handleStats);
+	}
+
+	/**
+	 * Application entry point.
+	 * @param args dataset [port] [workers] [queueCapacity]
+	 * @throws IOException if the port cannot be bound
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.out.println("usage: QueryServer <dataset> [port] [workers] [queueCapacity]");
+			return;
+		}
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+		int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		int capacity = args.length > 3 ? Integer.parseInt(args[3]) : 1024;
+
+		SocialNetwork network = new SocialNetwork();
+		if (!network.loadData(args[0])) {
+			System.out.println("cannot load " + args[0]);
+			return;
+		}
+		QueryServer server = new QueryServer(network, port, workers, capacity, 64, 200);
+		server.start();
+		System.out.println("serving " + network.numUsers() + " users on port " + server.getPort());
+	}
+
+	/**
+	 * Starts serving requests.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops the server and the batcher.
+	 */
+	public void stop() {
+		server.stop(0);
+		batcher.shutdown();
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Returns the port the server listens on.
+	 * @return the port
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Uses a virtual thread per request when the JVM supports it (Java 21+).
+	 */
+	private static ExecutorService newRequestExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	private void handlePath(HttpExchange exchange) throws IOException {
+		Map<String, String> params = queryParameters(exchange.getRequestURI().getRawQuery());
+		Long from, to;
+		try {
+			from = Long.valueOf(params.get("from"));
+			to = Long.valueOf(params.get("to"));
+		} catch (NumberFormatException e) {
+			sendError(exchange, 400, "from and to must be user ids");
+			return;
+		}
+		int s = graph.indexOf(from), t = graph.indexOf(to);
+		if (s < 0 || t < 0) {
+			sendError(exchange, 404, "unknown user " + (s < 0 ? from : to));
+			return;
+		}
+		try {
+			WeightedPath p = batcher.submit(s, t).get(QUERY_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			send(exchange, 200, toJson(from, to, p).toJSONString());
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RejectedExecutionException)
+				sendError(exchange, 503, "overloaded, retry later");
+			else
+				sendError(exchange, 500, String.valueOf(e.getCause()));
+		} catch (TimeoutException e) {
+			sendError(exchange, 504, "query timed out");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			sendError(exchange, 503, "interrupted");
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void handleBatch(HttpExchange exchange) throws IOException {
+		if (!"POST".equals(exchange.getRequestMethod())) {
+			sendError(exchange, 405, "POST a JSON array of [from, to] pairs");
+			return;
+		}
+		JSONArray pairs;
+		try (Reader body = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+			pairs = (JSONArray) new JSONParser().parse(body);
+		} catch (ParseException | ClassCastException e) {
+			sendError(exchange, 400, "body must be a JSON array of [from, to] pairs");
+			return;
+		}
+
+		// check every pair before submitting any, a malformed body is rejected as a whole
+		List<Long[]> ids = new ArrayList<Long[]>();
+		for (Object o : pairs) {
+			if (!(o instanceof JSONArray) || ((JSONArray) o).size() != 2
+					|| !(((JSONArray) o).get(0) instanceof Long) || !(((JSONArray) o).get(1) instanceof Long)) {
+				sendError(exchange, 400, "body must be a JSON array of [from, to] pairs of user ids");
+				return;
+			}
+			JSONArray pair = (JSONArray) o;
+			ids.add(new Long[] { (Long) pair.get(0), (Long) pair.get(1) });
+		}
+
+		// submit everything first so the batcher can coalesce the queries
+		List<CompletableFuture<WeightedPath>> futures = new ArrayList<CompletableFuture<WeightedPath>>();
+		for (Long[] pair : ids) {
+			int s = graph.indexOf(pair[0]), t = graph.indexOf(pair[1]);
+			futures.add(s < 0 || t < 0 ? CompletableFuture.completedFuture((WeightedPath) null) : batcher.submit(s, t));
+		}
+
+		JSONArray results = new JSONArray();
+		for (int i = 0; i < futures.size(); i++) {
+			JSONObject r;
+			try {
+				r = toJson(ids.get(i)[0], ids.get(i)[1], futures.get(i).get(QUERY_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+			} catch (ExecutionException e) {
+				r = toJson(ids.get(i)[0], ids.get(i)[1], null);
+				r.put("error", e.getCause() instanceof RejectedExecutionException ? "overloaded" : String.valueOf(e.getCause()));
+			} catch (TimeoutException e) {
+				r = toJson(ids.get(i)[0], ids.get(i)[1], null);
+				r.put("error", "query timed out");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				sendError(exchange, 503, "interrupted");
+				return;
+			}
+			results.add(r);
+		}
+		send(exchange, 200, results.toJSONString());
+	}
+
+	@SuppressWarnings("unchecked")
+	private void handleStats(HttpExchange exchange) throws IOException {
+		JSONObject stats = new JSONObject();
+		stats.putAll(batcher.stats());
+		stats.put("users", network.numUsers());
+		stats.put("edges", (long) graph.numEdges());
+		stats.put("uptimeMillis", System.currentTimeMillis() - started);
+		send(exchange, 200, stats.toJSONString());
+	}
+
+	@SuppressWarnings("unchecked")
+	private JSONObject toJson(Long from, Long to, WeightedPath p) {
+		JSONObject r = new JSONObject();
+		r.put("from", from);
+		r.put("to", to);
+		if (p == null) {
+			r.put("path", null);
+		} else {
+			JSONArray path = new JSONArray();
+			path.addAll(graph.toIds(p.getVertices()));
+			r.put("path", path);
+			r.put("cost", p.getCost());
+		}
+		return r;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		JSONObject r = new JSONObject();
+		r.put("error", message);
+		send(exchange, status, r.toJSONString());
+	}
+
+	private static void send(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static Map<String, String> queryParameters(String query) {
+		Map<String, String> params = new HashMap<String, String>();
+		if (query == null)
+			return params;
+		for (String kv : query.split("&")) {
+			int eq = kv.indexOf('=');
+			if (eq > 0)
+				params.put(kv.substring(0, eq), kv.substring(eq + 1));
+		}
+		return params;
+	}
+}
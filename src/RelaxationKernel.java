@@ -0,0 +1,71 @@
+/**
+ * The inner loop of the searches over a GraphIndex: given a user settled at distance du,
+ * find the friends in a block of its row whose tentative distance du + w[f] beats the one
+ * they have. The kernel only reads; it writes the friends that would improve, in row order,
+ * to a batch the search then relaxes one by one with its own bookkeeping.
+ *
+ * A distance counts only if its user was seen in the current epoch, as in SearchScratch;
+ * the others are improved by any finite distance.
+ *
+ * best() returns the Vector API kernel (VectorRelaxationKernel, compiled from src-vector
+ * with --add-modules jdk.incubator.vector) when it was compiled and the module is present
+ * at run time, and the scalar kernel otherwise.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public interface RelaxationKernel {
+
+	/**
+	 * Returns the name of the kernel.
+	 * @return the name
+	 */
+	String getName();
+
+	/**
+	 * Returns whether the kernel processes several friends per instruction.
+	 * @return <b>true</b> for a SIMD kernel
+	 */
+	boolean isVectorised();
+
+	/**
+	 * Finds the friends targets[from..to) whose distance du + w[f] is below dist[f], or
+	 * that were not seen in the epoch.
+	 * @param targets the friends of the graph, GraphIndex.targets()
+	 * @param from the first position of the block
+	 * @param to the position after the block
+	 * @param du the distance of the user the block belongs to
+	 * @param w the cost of stepping onto each user
+	 * @param dist the tentative distance of each user
+	 * @param seen the epoch in which each distance was written
+	 * @param epoch the current epoch
+	 * @param improved receives the friends that improve, at least to - from long
+	 * @return the number of friends written to improved
+	 */
+	int relax(int[] targets, int from, int to, double du, double[] w, double[] dist, int[] seen, int epoch, int[] improved);
+
+	/**
+	 * Returns the scalar kernel.
+	 * @return the scalar kernel
+	 */
+	static RelaxationKernel scalar() {
+		return ScalarRelaxationKernel.INSTANCE;
+	}
+
+	/**
+	 * Returns the fastest kernel available: the Vector API one if it can be loaded,
+	 * the scalar one otherwise.
+	 * @return the kernel
+	 */
+	static RelaxationKernel best() {
+		try {
+			Class<?> vector = Class.forName("VectorRelaxationKernel");
+			RelaxationKernel kernel = (RelaxationKernel) vector.getConstructor().newInstance();
+			if (kernel.isVectorised())
+				return kernel;
+		} catch (ReflectiveOperationException | LinkageError e) {
+			// not compiled in, or jdk.incubator.vector is not in the module graph
+		}
+		return scalar();
+	}
+}
@@ -0,0 +1,39 @@
+/**
+ * The relaxation kernel of plain Java: one friend at a time.
+ * It also handles the tails of the blocks the vector kernel leaves over.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class ScalarRelaxationKernel implements RelaxationKernel {
+
+	static final ScalarRelaxationKernel INSTANCE = new ScalarRelaxationKernel();
+
+	@Override
+	public String getName() {
+		return "scalar";
+	}
+
+	@Override
+	public boolean isVectorised() {
+		return false;
+	}
+
+	@Override
+	public int relax(int[] targets, int from, int to, double du, double[] w, double[] dist, int[] seen, int epoch, int[] improved) {
+		return relax(targets, from, to, du, w, dist, seen, epoch, improved, 0);
+	}
+
+	/**
+	 * Appends the friends that improve to the batch after count.
+	 * @return the new number of friends in the batch
+	 */
+	static int relax(int[] targets, int from, int to, double du, double[] w, double[] dist, int[] seen, int epoch, int[] improved, int count) {
+		for (int i = from; i < to; i++) {
+			int f = targets[i];
+			if (seen[f] != epoch || du + w[f] < dist[f])
+				improved[count++] = f;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,105 @@
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Constraints of an introduction request: users the path must not go through,
+ * the maximum number of hops and the minimum skill of the intermediate users.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class SearchConstraints {
+
+	private Set<Long> excluded;		// users the path must avoid
+	private int maxHops;			// maximum number of links in the path
+	private long minSkill;			// minimum raw skill of every intermediate user
+
+	/**
+	 * Default Constructor: no constraints.
+	 */
+	public SearchConstraints() {
+		this(new HashSet<Long>(), Integer.MAX_VALUE, 0);
+	}
+
+	/**
+	 * Constructor: initializes all the constraints.
+	 * @param excluded the ids of the users the path must avoid
+	 * @param maxHops the maximum number of links in the path
+	 * @param minSkill the minimum skill of every user between source and destination
+	 */
+	public SearchConstraints(Set<Long> excluded, int maxHops, long minSkill) {
+		this.excluded = excluded;
+		this.maxHops = maxHops;
+		this.minSkill = minSkill;
+	}
+
+	/**
+	 * Returns the ids of the users the path must avoid.
+	 * @return the excluded users
+	 */
+	public Set<Long> getExcluded() {
+		return excluded;
+	}
+
+	/**
+	 * Sets the ids of the users the path must avoid.
+	 * @param excluded the excluded users
+	 */
+	public void setExcluded(Set<Long> excluded) {
+		this.excluded = excluded;
+	}
+
+	/**
+	 * Returns the maximum number of links in the path.
+	 * @return the maximum number of hops
+	 */
+	public int getMaxHops() {
+		return maxHops;
+	}
+
+	/**
+	 * Sets the maximum number of links in the path.
+	 * @param maxHops the maximum number of hops
+	 */
+	public void setMaxHops(int maxHops) {
+		this.maxHops = maxHops;
+	}
+
+	/**
+	 * Returns the minimum skill of every user between source and destination.
+	 * @return the minimum skill
+	 */
+	public long getMinSkill() {
+		return minSkill;
+	}
+
+	/**
+	 * Sets the minimum skill of every user between source and destination.
+	 * @param minSkill the minimum skill
+	 */
+	public void setMinSkill(long minSkill) {
+		this.minSkill = minSkill;
+	}
+
+	/**
+	 * Returns whether the hop count is limited.
+	 * @return <b>true</b> if the path length is capped
+	 */
+	public boolean hasHopLimit() {
+		return maxHops != Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Returns the largest inverse skill allowed for an intermediate user.
+	 * Skills are stored as 1/skill, so skill >= minSkill means weight <= 1/minSkill.
+	 * @return the weight limit
+	 */
+	public double weightLimit() {
+		return minSkill <= 0 ? Double.POSITIVE_INFINITY : 1.0 / minSkill;
+	}
+
+	@Override
+	public String toString() {
+		return "SearchConstraints [excluded=" + excluded + ", maxHops=" + maxHops + ", minSkill=" + minSkill + "]";
+	}
+}
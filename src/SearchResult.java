@@ -0,0 +1,115 @@
+import java.util.List;
+
+/**
+ * Outcome of a budgeted or approximate path query. When the budget runs out the
+ * result is best effort: the destination is known to be at least lowerBound away, and if
+ * it was reached but not settled, the path found so far costs upperBound.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class SearchResult {
+
+	/**
+	 * How the query ended.
+	 */
+	public enum Status {
+		/** The shortest path was found. */
+		FOUND,
+		/** A path within the reported factor of the shortest one was found. */
+		APPROXIMATE,
+		/** The destination cannot be reached from the source. */
+		UNREACHABLE,
+		/** The deadline or the settled user budget ran out. */
+		BUDGET_EXHAUSTED
+	}
+
+	private final Status status;
+	private final List<Long> path;
+	private final double lowerBound;
+	private final double upperBound;
+	private final int settled;
+
+	/**
+	 * Constructor
+	 * @param status how the query ended
+	 * @param path the shortest path, or the best path found so far, or null
+	 * @param lowerBound the distance the destination is known to be at least
+	 * @param upperBound the cost of the path, Double.POSITIVE_INFINITY without one
+	 * @param settled the number of users the search settled
+	 */
+	public SearchResult(Status status, List<Long> path, double lowerBound, double upperBound, int settled) {
+		this.status = status;
+		this.path = path;
+		this.lowerBound = lowerBound;
+		this.upperBound = upperBound;
+		this.settled = settled;
+	}
+
+	/**
+	 * Returns how the query ended.
+	 * @return the status
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns the shortest path if the status is FOUND, otherwise the best path found
+	 * before the query stopped, or null.
+	 * @return the path from source to destination
+	 */
+	public List<Long> getPath() {
+		return path;
+	}
+
+	/**
+	 * Returns a lower bound of the distance of the destination. It is exact when the
+	 * status is FOUND, and the best frontier distance when the query stopped early.
+	 * @return the lower bound
+	 */
+	public double getLowerBound() {
+		return lowerBound;
+	}
+
+	/**
+	 * Returns the cost of the returned path, Double.POSITIVE_INFINITY without one.
+	 * @return the upper bound
+	 */
+	public double getUpperBound() {
+		return upperBound;
+	}
+
+	/**
+	 * Returns the number of users the search settled.
+	 * @return the settled users
+	 */
+	public int getSettled() {
+		return settled;
+	}
+
+	/**
+	 * Returns the factor by which the returned path may be longer than the shortest one:
+	 * 1 when the path is the shortest, Double.POSITIVE_INFINITY without a path.
+	 * @return upperBound / lowerBound
+	 */
+	public double getErrorBound() {
+		if (upperBound == Double.POSITIVE_INFINITY)
+			return Double.POSITIVE_INFINITY;
+		return upperBound <= lowerBound ? 1.0 : upperBound / lowerBound;
+	}
+
+	/**
+	 * Returns whether the query finished within its budget.
+	 * @return <b>true</b> if the result is exact
+	 */
+	public boolean isExact() {
+		return status == Status.FOUND || status == Status.UNREACHABLE;
+	}
+
+	@Override
+	public String toString() {
+		return "SearchResult [status=" + status + ", path=" + path + ", lowerBound=" + lowerBound
+				+ ", upperBound=" + upperBound + ", settled=" + settled + "]";
+	}
+}
@@ -0,0 +1,533 @@
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntPredicate;
+
+/**
+ * Per-query scratch state for searches over a GraphIndex.
+ * Distances, predecessors and visited flags live in arrays that are allocated
+ * once and invalidated between queries by bumping an epoch counter, so starting
+ * a new search does not cost O(n). A scratch is not thread safe; use one per thread.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class SearchScratch {
+
+	// the fewest friends of a user whose row goes through the relaxation kernel
+	static final int KERNEL_DEGREE = 16;
+
+	private final double[] dist;	// tentative distance from the source
+	private final int[] pred;		// predecessor on the shortest path
+	private final int[] seen;		// epoch in which dist/pred were written
+	private final int[] settled;	// epoch in which the vertex was settled
+	private final int[] banned;		// ban epoch in which the vertex was excluded
+	private final int[] target;		// epoch in which the vertex was marked as a destination
+	private int targetsLeft;		// marked destinations not settled yet
+	private final Set<Long> bannedEdges;
+	private double weightLimit;		// users above this weight may only be the destination
+	private int epoch;
+	private int banEpoch;
+	private int settledCount;
+	private int peakQueueSize;		// largest priority queue size of the last search
+	private double[] potential;		// A* lower bounds of the current search, or null
+	private HubAdjacency hubs;		// weight sorted friends of the high degree users, or null
+	private IntPredicate nearest;	// the search stops at the first settled user it accepts, or null
+	private int winner;				// the user that stopped the last nearest search, or -1
+	private RelaxationKernel kernel;	// relaxes the friends of high degree users, or null
+	private int[] improved;			// the batch of friends the kernel found
+
+	// budget of the searches: deadline (System.nanoTime), settled users and cancellation
+	private long deadline;
+	private int maxSettled;
+	private BooleanSupplier cancelled;
+	private boolean stopped;		// the last search ran out of budget or was cancelled
+	private double frontier;		// smallest queued key when the last search stopped
+
+	// Create a (min) priority queue to order the users by their distance from the source
+	private final Queue<Entry<Integer, Double>> pq;
+
+	/**
+	 * Constructor: allocates scratch space for a graph with n users
+	 * @param n the number of users
+	 */
+	public SearchScratch(int n) {
+		dist = new double[n];
+		pred = new int[n];
+		seen = new int[n];
+		settled = new int[n];
+		banned = new int[n];
+		target = new int[n];
+		bannedEdges = new HashSet<Long>();
+		pq = new PriorityQueue<>();
+		epoch = 0;
+		banEpoch = 1;
+		weightLimit = Double.POSITIVE_INFINITY;
+		improved = new int[0];
+		clearBudget();
+	}
+
+	/**
+	 * Returns the number of users this scratch can hold.
+	 * @return the capacity
+	 */
+	public int capacity() {
+		return dist.length;
+	}
+
+	/**
+	 * Invalidates the distances of the previous search.
+	 */
+	public void reset() {
+		if (++epoch == Integer.MAX_VALUE) {
+			Arrays.fill(seen, 0);
+			Arrays.fill(settled, 0);
+			Arrays.fill(target, 0);
+			epoch = 1;
+		}
+		pq.clear();
+		settledCount = 0;
+		peakQueueSize = 0;
+		targetsLeft = 0;
+		stopped = false;
+		frontier = 0.0;
+		nearest = null;
+		winner = -1;
+	}
+
+	/**
+	 * Limits the following searches, until clearBudget() is called. The budget is
+	 * checked every few settled users, so a search may overrun it slightly.
+	 * @param deadline the System.nanoTime() after which searches stop, or Long.MAX_VALUE
+	 * @param maxSettled the number of users a search may settle, or Integer.MAX_VALUE
+	 * @param cancelled returns true when the search should stop, or null
+	 */
+	public void setBudget(long deadline, int maxSettled, BooleanSupplier cancelled) {
+		this.deadline = deadline;
+		this.maxSettled = maxSettled;
+		this.cancelled = cancelled;
+	}
+
+	/**
+	 * Removes the budget of the searches.
+	 */
+	public void clearBudget() {
+		setBudget(Long.MAX_VALUE, Integer.MAX_VALUE, null);
+	}
+
+	/**
+	 * Returns whether the last search stopped before it finished because its budget
+	 * ran out or it was cancelled.
+	 * @return <b>true</b> if the last search was cut short
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * Returns the smallest key left in the queue when the last search was cut short.
+	 * No user that was not settled is closer to the source than this (with a potential,
+	 * the destination is not closer than this).
+	 * @return the frontier distance
+	 */
+	public double frontierDistance() {
+		return frontier;
+	}
+
+	/**
+	 * Uses the weight sorted friend lists of the hubs in the following searches over the
+	 * graph and weights they were built for, so settling a hub stops relaxing friends once
+	 * they cannot beat the best known distance of the destination.
+	 * @param hubs the hub friend lists, or null to relax every friend
+	 */
+	public void setHubAdjacency(HubAdjacency hubs) {
+		this.hubs = hubs;
+	}
+
+	/**
+	 * Relaxes the friends of the users with at least KERNEL_DEGREE friends through a
+	 * kernel, which finds those that improve before they are checked against the bans.
+	 * The searches settle the same users in the same order whatever the kernel. Off by
+	 * default: the gathers are bound by memory like the plain loop (Benchmarks relax).
+	 * @param kernel the kernel, or null to relax friends one by one
+	 */
+	public void setRelaxationKernel(RelaxationKernel kernel) {
+		this.kernel = kernel;
+	}
+
+	/**
+	 * Removes every vertex and edge exclusion and the weight limit.
+	 */
+	public void clearBans() {
+		if (++banEpoch == Integer.MAX_VALUE) {
+			Arrays.fill(banned, 0);
+			banEpoch = 1;
+		}
+		bannedEdges.clear();
+		weightLimit = Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Excludes every user whose inverse skill is above the limit from the following
+	 * searches, unless it is the destination, until clearBans() is called.
+	 * The limit applies to the inverse skill whatever cost model is searched.
+	 * @param limit the largest inverse skill of an intermediate user
+	 */
+	public void setWeightLimit(double limit) {
+		weightLimit = limit;
+	}
+
+	/**
+	 * Returns the largest inverse skill allowed for an intermediate user.
+	 * @return the weight limit
+	 */
+	public double getWeightLimit() {
+		return weightLimit;
+	}
+
+	/**
+	 * Excludes a vertex from the following searches, until clearBans() is called.
+	 * @param v the dense id
+	 */
+	public void banVertex(int v) {
+		banned[v] = banEpoch;
+	}
+
+	/**
+	 * Excludes the link from u to v from the following searches, until clearBans() is called.
+	 * @param u the dense id of the tail
+	 * @param v the dense id of the head
+	 */
+	public void banEdge(int u, int v) {
+		bannedEdges.add(edgeKey(u, v));
+	}
+
+	/**
+	 * Returns whether the vertex is excluded.
+	 * @param v the dense id
+	 * @return <b>true</b> if the vertex is excluded
+	 */
+	public boolean isBanned(int v) {
+		return banned[v] == banEpoch;
+	}
+
+	private static long edgeKey(int u, int v) {
+		return ((long) u << 32) | (v & 0xffffffffL);
+	}
+
+	/**
+	 * Find the shortest path from source to destination (Dijkstra's algorithm),
+	 * honouring the excluded vertices and edges. The search stops as soon as the
+	 * destination is settled; pass -1 as the destination to settle every reachable user.
+	 * @param graph the graph
+	 * @param w the cost of stepping onto each user
+	 * @param source the dense id of the source
+	 * @param destination the dense id of the destination or -1
+	 * @return the distance of the destination or Double.POSITIVE_INFINITY if it is unreachable
+	 */
+	public double run(GraphIndex graph, double[] w, int source, int destination) {
+		return run(graph, w, source, destination, null);
+	}
+
+	/**
+	 * Find the shortest path from source to destination (A* search). The potential
+	 * must be a consistent lower bound of the remaining distance to the destination;
+	 * users with an infinite potential cannot reach it and are never queued.
+	 * A null potential gives plain Dijkstra's algorithm.
+	 * @param graph the graph
+	 * @param w the cost of stepping onto each user
+	 * @param source the dense id of the source
+	 * @param destination the dense id of the destination or -1
+	 * @param potential the lower bound of the distance to the destination, or null
+	 * @return the distance of the destination or Double.POSITIVE_INFINITY if it is unreachable
+	 */
+	public double run(GraphIndex graph, double[] w, int source, int destination, double[] potential) {
+		reset();
+		this.potential = potential;
+		return search(graph, w, source, destination);
+	}
+
+	/**
+	 * The search loop of run() and runToAll(), on already reset state.
+	 */
+	private double search(GraphIndex graph, double[] w, int source, int destination) {
+		if (isBanned(source))
+			return Double.POSITIVE_INFINITY;
+		int[] offsets = graph.offsets();
+		int[] targets = graph.targets();
+		boolean checkEdges = !bannedEdges.isEmpty();
+		double limit = weightLimit;
+		double[] skills = graph.weights();
+		boolean budgeted = deadline != Long.MAX_VALUE || maxSettled != Integer.MAX_VALUE || cancelled != null;
+		// sorted hub friends only pay off with a destination to bound the relaxation
+		HubAdjacency sorted = hubs != null && destination >= 0 && hubs.appliesTo(graph, w) ? hubs : null;
+
+		relax(source, -1, 0.0);
+		while (!pq.isEmpty()) {
+			Entry<Integer, Double> curr = pq.poll();
+			int u = curr.getId();
+			// skip stale entries for users already settled with a shorter distance
+			if (settled[u] == epoch)
+				continue;
+			// check the budget cheaply: the clock and the cancellation flag every 64 users
+			if (budgeted && (settledCount >= maxSettled
+					|| ((settledCount & 63) == 0 && settledCount > 0 && outOfTime()))) {
+				stopped = true;
+				frontier = curr.getDistance();
+				return Double.POSITIVE_INFINITY;
+			}
+			settled[u] = epoch;
+			settledCount++;
+			if (u == destination)
+				return dist[u];
+			if (target[u] == epoch && --targetsLeft == 0)
+				return dist[u];
+			// sources are never targets of a nearest search, only they have no predecessor
+			if (nearest != null && pred[u] >= 0 && nearest.test(u)) {
+				winner = u;
+				return dist[u];
+			}
+
+			double du = dist[u];
+			if (sorted != null && sorted.isHub(u)) {
+				relaxHub(sorted, u, du, w, destination, skills, limit, checkEdges);
+				continue;
+			}
+			if (kernel != null && offsets[u + 1] - offsets[u] >= KERNEL_DEGREE) {
+				relaxBlock(u, du, targets, offsets[u], offsets[u + 1], w, destination, skills, limit, checkEdges);
+				continue;
+			}
+			for (int i = offsets[u], end = offsets[u + 1]; i < end; i++) {
+				int f = targets[i];
+				if (settled[f] == epoch || banned[f] == banEpoch)
+					continue;
+				if (skills[f] > limit && f != destination)
+					continue;
+				if (checkEdges && bannedEdges.contains(edgeKey(u, f)))
+					continue;
+				relax(f, u, du + w[f]);
+			}
+		}
+		return destination < 0 ? 0.0 : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Relaxes the friends of a hub by increasing weight, up to the first one that cannot
+	 * be reached more cheaply than the best known distance of the destination.
+	 */
+	private void relaxHub(HubAdjacency sorted, int u, double du, double[] w, int destination, double[] skills, double limit, boolean checkEdges) {
+		int[] friends = sorted.friends();
+		double bound = seen[destination] == epoch ? dist[destination] : Double.POSITIVE_INFINITY;
+		for (int i = sorted.start(u), end = sorted.end(u); i < end; i++) {
+			int f = friends[i];
+			double d = du + w[f];
+			if (d >= bound)
+				break;
+			if (settled[f] == epoch || banned[f] == banEpoch)
+				continue;
+			if (skills[f] > limit && f != destination)
+				continue;
+			if (checkEdges && bannedEdges.contains(edgeKey(u, f)))
+				continue;
+			if (relax(f, u, d) && f == destination)
+				bound = d;
+		}
+	}
+
+	/**
+	 * Relaxes the friends of a user that the kernel finds to improve, in the order of
+	 * its row, so the queue sees the same insertions as the loop over every friend.
+	 */
+	private void relaxBlock(int u, double du, int[] targets, int from, int to, double[] w, int destination, double[] skills, double limit, boolean checkEdges) {
+		if (improved.length < to - from)
+			improved = new int[to - from];
+		int count = kernel.relax(targets, from, to, du, w, dist, seen, epoch, improved);
+		for (int i = 0; i < count; i++) {
+			int f = improved[i];
+			if (settled[f] == epoch || banned[f] == banEpoch)
+				continue;
+			if (skills[f] > limit && f != destination)
+				continue;
+			if (checkEdges && bannedEdges.contains(edgeKey(u, f)))
+				continue;
+			relax(f, u, du + w[f]);
+		}
+	}
+
+	/**
+	 * Find the shortest paths from one source to several destinations with a single
+	 * Dijkstra search that stops once every destination is settled. The paths are then
+	 * read with distance() and path().
+	 * @param graph the graph
+	 * @param w the cost of stepping onto each user
+	 * @param source the dense id of the source
+	 * @param destinations the dense ids of the destinations
+	 * @return the number of destinations reached
+	 */
+	public int runToAll(GraphIndex graph, double[] w, int source, int[] destinations) {
+		reset();
+		potential = null;
+		int left = 0;
+		for (int t : destinations) {
+			if (target[t] != epoch) {
+				target[t] = epoch;
+				left++;
+			}
+		}
+		// reset() cleared the counter, search() must not call it again
+		targetsLeft = left;
+		search(graph, w, source, -1);
+		int reached = 0;
+		for (int t : destinations) {
+			if (settled[t] == epoch)
+				reached++;
+		}
+		return reached;
+	}
+
+	/**
+	 * Find the closest user that satisfies the predicate from any of the sources, with a
+	 * single Dijkstra search seeded with every source. Sources are not candidates.
+	 * The path is then read with path(), it starts at the source closest to the winner.
+	 * @param graph the graph
+	 * @param w the cost of stepping onto each user
+	 * @param sources the dense ids of the sources
+	 * @param isTarget accepts the dense ids of the users the search looks for
+	 * @return the dense id of the closest accepted user, or -1 if none can be reached
+	 */
+	public int runToNearest(GraphIndex graph, double[] w, int[] sources, IntPredicate isTarget) {
+		reset();
+		potential = null;
+		int first = -1;
+		for (int s : sources) {
+			if (!isBanned(s)) {
+				relax(s, -1, 0.0);
+				first = s;
+			}
+		}
+		if (first < 0)
+			return -1;
+		nearest = isTarget;
+		search(graph, w, first, -1);
+		nearest = null;
+		return winner;
+	}
+
+	/**
+	 * Find the closest of the targets from any of the sources, with a single Dijkstra search.
+	 * @param graph the graph
+	 * @param w the cost of stepping onto each user
+	 * @param sources the dense ids of the sources
+	 * @param targets the dense ids of the targets
+	 * @return the dense id of the closest target, or -1 if none can be reached
+	 */
+	public int runToNearest(GraphIndex graph, double[] w, int[] sources, int[] targets) {
+		int[] sorted = targets.clone();
+		Arrays.sort(sorted);
+		return runToNearest(graph, w, sources, v -> Arrays.binarySearch(sorted, v) >= 0);
+	}
+
+	private boolean outOfTime() {
+		return (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0)
+				|| (cancelled != null && cancelled.getAsBoolean());
+	}
+
+	/**
+	 * Lowers the tentative distance of a vertex if the given distance is shorter.
+	 * @param v the dense id
+	 * @param p the predecessor
+	 * @param d the new distance
+	 * @return <b>true</b> if the distance was lowered
+	 */
+	boolean relax(int v, int p, double d) {
+		if (seen[v] == epoch && dist[v] <= d)
+			return false;
+		seen[v] = epoch;
+		dist[v] = d;
+		pred[v] = p;
+		if (potential == null) {
+			pq.add(new Entry<Integer, Double>(v, d));
+		} else if (potential[v] != Double.POSITIVE_INFINITY) {
+			pq.add(new Entry<Integer, Double>(v, d + potential[v]));
+		}
+		if (pq.size() > peakQueueSize)
+			peakQueueSize = pq.size();
+		return true;
+	}
+
+	/**
+	 * Returns the distance of a vertex found by the last search.
+	 * @param v the dense id
+	 * @return the distance or Double.POSITIVE_INFINITY if the vertex was not reached
+	 */
+	public double distance(int v) {
+		return seen[v] == epoch ? dist[v] : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Returns the predecessor of a vertex found by the last search.
+	 * @param v the dense id
+	 * @return the predecessor or -1 for the source and unreached users
+	 */
+	public int predecessor(int v) {
+		return seen[v] == epoch ? pred[v] : -1;
+	}
+
+	/**
+	 * Returns whether the vertex was settled by the last search.
+	 * @param v the dense id
+	 * @return <b>true</b> if the distance of the vertex is final
+	 */
+	public boolean isSettled(int v) {
+		return settled[v] == epoch;
+	}
+
+	/**
+	 * Returns the number of users settled by the last search.
+	 * @return the number of settled users
+	 */
+	public int settledCount() {
+		return settledCount;
+	}
+
+	/**
+	 * Returns the largest number of entries in the priority queue during the last search.
+	 * @return the peak queue size
+	 */
+	public int peakQueueSize() {
+		return peakQueueSize;
+	}
+
+	/**
+	 * Estimates the memory retained by the scratch arrays, excluding the priority queue
+	 * whose size depends on the search, see peakQueueSize().
+	 * @return the estimated size in bytes
+	 */
+	public long sizeInBytes() {
+		int n = dist.length;
+		return MemoryEstimate.array(n, 8) + 5 * MemoryEstimate.array(n, 4)
+				+ MemoryEstimate.hashSet(bannedEdges.size()) + bannedEdges.size() * MemoryEstimate.BOXED;
+	}
+
+	/**
+	 * Returns the path from the source of the last search to the destination.
+	 * @param destination the dense id of the destination
+	 * @return the dense ids from source to destination or null if it was not reached
+	 */
+	public int[] path(int destination) {
+		if (seen[destination] != epoch)
+			return null;
+		int length = 0;
+		for (int v = destination; v != -1; v = pred[v]) {
+			length++;
+		}
+		int[] path = new int[length];
+		for (int v = destination; v != -1; v = pred[v]) {
+			path[--length] = v;
+		}
+		return path;
+	}
+}
@@ -0,0 +1,299 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs shortest path searches over a network partitioned by ShardPartitioner, with every
+ * shard held by a ShardServer, usually in its own process.
+ *
+ * <pre>
+ * java -cp bin:json-simple-1.1.jar ShardCoordinator &lt;prefix&gt; &lt;shards&gt; &lt;from&gt; &lt;to&gt;
+ * </pre>
+ *
+ * The search is Dijkstra's algorithm run in rounds. Each shard keeps a priority queue of
+ * its own users; in a round every shard settles its queued users below a common bound and
+ * returns the links it relaxed into other shards, which the coordinator forwards to their
+ * owners in the next round. With L a lower bound of every queued distance and w the
+ * smallest cost of stepping onto a user, no relaxation can bring a user below L + w, so
+ * every shard can settle below that bound independently and the distances are exact.
+ * Every predecessor of a user settled in a round was settled in an earlier round, so ties
+ * between shortest paths are broken as on a single node, where Entry orders tied users by
+ * id, and the paths match findShortestPathBetween. A round costs one message to and from
+ * every shard, and the shards work in parallel.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class ShardCoordinator implements Closeable {
+
+	private final Map<Long, Integer> routing;
+	private final Socket[] sockets;
+	private final DataInputStream[] in;
+	private final DataOutputStream[] out;
+	private final List<Process> processes;
+	private final double minWeight;		// smallest cost of stepping onto any user
+	private int rounds;
+
+	/**
+	 * Constructor: connects to running shard servers.
+	 * @param routingFile the routing file written by ShardPartitioner
+	 * @param ports the port of each shard server on this host, by shard
+	 * @throws IOException if the routing file cannot be read, a shard cannot be reached or
+	 * a shard already serves another coordinator
+	 */
+	public ShardCoordinator(String routingFile, int[] ports) throws IOException {
+		this(ShardPartitioner.readRouting(routingFile), ports, Collections.<Process>emptyList());
+	}
+
+	private ShardCoordinator(Map<Long, Integer> routing, int[] ports, List<Process> processes) throws IOException {
+		this.routing = routing;
+		this.processes = processes;
+		int k = ports.length;
+		sockets = new Socket[k];
+		in = new DataInputStream[k];
+		out = new DataOutputStream[k];
+		double min = Double.POSITIVE_INFINITY;
+		int i = 0;
+		try {
+			for (; i < k; i++) {
+				sockets[i] = new Socket(InetAddress.getLoopbackAddress(), ports[i]);
+				sockets[i].setTcpNoDelay(true);
+				in[i] = new DataInputStream(new BufferedInputStream(sockets[i].getInputStream(), 1 << 16));
+				out[i] = new DataOutputStream(new BufferedOutputStream(sockets[i].getOutputStream(), 1 << 16));
+				out[i].writeByte(ShardServer.INFO);
+				out[i].flush();
+				try {
+					in[i].readInt();
+				} catch (EOFException e) {
+					throw new IOException("shard " + i + " closed the connection, it serves another coordinator", e);
+				}
+				min = Math.min(min, in[i].readDouble());
+			}
+		} catch (IOException e) {
+			// release the shards already connected, they would refuse every other coordinator
+			for (int j = 0; j <= i && j < k; j++) {
+				try {
+					if (j < i)
+						disconnect(j);
+					else if (sockets[j] != null)
+						sockets[j].close();
+				} catch (IOException suppressed) {
+					e.addSuppressed(suppressed);
+				}
+			}
+			throw e;
+		}
+		this.minWeight = min;
+	}
+
+	/**
+	 * Starts a ShardServer process for every shard file with the same JVM and class path,
+	 * and connects to them. Closing the coordinator stops the processes.
+	 * @param prefix the prefix of the shard and routing files
+	 * @param shards the number of shards
+	 * @return the coordinator
+	 * @throws IOException if a process cannot be started or reached
+	 */
+	public static ShardCoordinator launch(String prefix, int shards) throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		String classpath = System.getProperty("java.class.path");
+		List<Process> processes = new ArrayList<Process>();
+		int[] ports = new int[shards];
+		try {
+			for (int i = 0; i < shards; i++) {
+				ProcessBuilder pb = new ProcessBuilder(java, "-cp", classpath, "ShardServer", prefix, String.valueOf(i));
+				pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+				processes.add(pb.start());
+			}
+			// the shards load in parallel, wait for each to report its port
+			for (int i = 0; i < shards; i++) {
+				BufferedReader br = new BufferedReader(new InputStreamReader(processes.get(i).getInputStream()));
+				String line = br.readLine();
+				if (line == null || !line.startsWith("listening "))
+					throw new IOException("shard " + i + " did not start");
+				ports[i] = Integer.parseInt(line.substring("listening ".length()).trim());
+			}
+			return new ShardCoordinator(ShardPartitioner.readRouting(ShardPartitioner.routingFile(prefix)), ports, processes);
+		} catch (IOException e) {
+			for (Process p : processes) {
+				p.destroy();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Application entry point.
+	 * @param args prefix shards from to
+	 * @throws IOException if the shards cannot be started
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 4) {
+			System.out.println("usage: ShardCoordinator <prefix> <shards> <from> <to>");
+			return;
+		}
+		try (ShardCoordinator coordinator = launch(args[0], Integer.parseInt(args[1]))) {
+			long start = System.nanoTime();
+			List<Long> path = coordinator.findShortestPathBetween(Long.parseLong(args[2]), Long.parseLong(args[3]));
+			System.out.printf("%s in %d rounds, %.1f ms%n", path, coordinator.lastRounds(), (System.nanoTime() - start) / 1e6);
+		}
+	}
+
+	/**
+	 * Find the shortest path between two users through the strongest coders.
+	 * @param source the source user id
+	 * @param destination the destination user id
+	 * @return the user ids from source to destination or null if there is no path
+	 * @throws IOException if a shard cannot be reached
+	 */
+	public synchronized List<Long> findShortestPathBetween(long source, long destination) throws IOException {
+		rounds = 0;
+		Integer owner = routing.get(destination);
+		// as on a single node, there is no path from a user to itself
+		if (owner == null || !routing.containsKey(source) || source == destination)
+			return null;
+		int k = sockets.length;
+		double[] mins = new double[k];
+		for (int i = 0; i < k; i++) {
+			out[i].writeByte(ShardServer.START);
+			out[i].writeLong(source);
+			out[i].writeLong(destination);
+			out[i].flush();
+		}
+		for (int i = 0; i < k; i++) {
+			mins[i] = in[i].readDouble();
+		}
+
+		// relaxations to forward, by shard: user, bits of the distance of the predecessor, predecessor
+		List<List<long[]>> pending = new ArrayList<List<long[]>>();
+		for (int i = 0; i < k; i++) {
+			pending.add(new ArrayList<long[]>());
+		}
+		while (true) {
+			double lower = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < k; i++) {
+				lower = Math.min(lower, mins[i]);
+				for (long[] r : pending.get(i)) {
+					lower = Math.min(lower, Double.longBitsToDouble(r[1]) + minWeight);
+				}
+			}
+			if (lower == Double.POSITIVE_INFINITY)
+				return null;
+			double bound = lower + minWeight;
+			rounds++;
+
+			// send to every shard before reading, so they work in parallel
+			for (int i = 0; i < k; i++) {
+				out[i].writeByte(ShardServer.ROUND);
+				out[i].writeDouble(bound);
+				out[i].writeInt(pending.get(i).size());
+				for (long[] r : pending.get(i)) {
+					out[i].writeLong(r[0]);
+					out[i].writeDouble(Double.longBitsToDouble(r[1]));
+					out[i].writeLong(r[2]);
+				}
+				out[i].flush();
+				pending.get(i).clear();
+			}
+			boolean found = false;
+			for (int i = 0; i < k; i++) {
+				found |= in[i].readBoolean();
+				in[i].readDouble();
+				mins[i] = in[i].readDouble();
+				int count = in[i].readInt();
+				for (int j = 0; j < count; j++) {
+					long v = in[i].readLong();
+					double d = in[i].readDouble();
+					long p = in[i].readLong();
+					Integer shard = routing.get(v);
+					if (shard != null)
+						pending.get(shard).add(new long[] { v, Double.doubleToLongBits(d), p });
+				}
+			}
+			if (found)
+				return path(source, destination, owner);
+		}
+	}
+
+	/**
+	 * Follows the predecessors from the destination back to the source, one shard at a time.
+	 */
+	private List<Long> path(long source, long destination, int owner) throws IOException {
+		List<Long> res = new ArrayList<Long>();
+		long v = destination;
+		int shard = owner;
+		while (true) {
+			out[shard].writeByte(ShardServer.PATH);
+			out[shard].writeLong(v);
+			out[shard].flush();
+			int count = in[shard].readInt();
+			long last = v;
+			for (int j = 0; j < count; j++) {
+				last = in[shard].readLong();
+				// the first user was the last one of the previous shard
+				if (j > 0 || res.isEmpty())
+					res.add(last);
+			}
+			if (last == source)
+				break;
+			if (last == v)
+				throw new IOException("no predecessor of " + v + " on shard " + shard);
+			v = last;
+			shard = routing.get(v);
+		}
+		Collections.reverse(res);
+		return res;
+	}
+
+	/**
+	 * Returns the number of rounds of the last search.
+	 * @return the number of rounds
+	 */
+	public int lastRounds() {
+		return rounds;
+	}
+
+	/**
+	 * Disconnects from the shards and stops the processes started by launch().
+	 */
+	@Override
+	public void close() {
+		for (int i = 0; i < sockets.length; i++) {
+			try {
+				disconnect(i);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		for (Process p : processes) {
+			p.destroy();
+		}
+	}
+
+	/**
+	 * Sends CLOSE to a shard and waits for the acknowledgement, after which the shard
+	 * accepts another coordinator.
+	 */
+	private void disconnect(int shard) throws IOException {
+		try {
+			out[shard].writeByte(ShardServer.CLOSE);
+			out[shard].flush();
+			in[shard].readByte();
+		} finally {
+			sockets[shard].close();
+		}
+	}
+}
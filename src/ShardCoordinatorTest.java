@@ -0,0 +1,106 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ShardCoordinatorTest {
+
+	String sample = "sample.json";
+
+	@Test
+	public void testShardedPathsMatchSingleNode() throws Exception {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		File dir = Files.createTempDirectory("shards").toFile();
+		dir.deleteOnExit();
+		
+		for (ShardPartitioner.Strategy strategy : ShardPartitioner.Strategy.values()) {
+			String prefix = new File(dir, strategy.name()).getPath();
+			long[] links = ShardPartitioner.partition(sample, 3, strategy, prefix);
+			assertTrue(links[1] <= links[0]);
+			
+			List<ShardServer> shards = new ArrayList<ShardServer>();
+			int[] ports = serve(prefix, 3, shards);
+			
+			try (ShardCoordinator coordinator = new ShardCoordinator(ShardPartitioner.routingFile(prefix), ports)) {
+				for (long s = 1; s <= 16; s++) {
+					for (long d = 1; d <= 16; d++) {
+						assertEquals(network.findShortestPathBetween(network.getUser(s), network.getUser(d)), 
+								coordinator.findShortestPathBetween(s, d));
+					}
+				}
+				assertNull(coordinator.findShortestPathBetween(1, 99));
+				// the shards keep the search state of the connected coordinator, a second one is refused
+				try {
+					new ShardCoordinator(ShardPartitioner.routingFile(prefix), ports).close();
+					fail("a second coordinator connected");
+				} catch (IOException e) {
+					// expected
+				}
+				assertEquals(network.findShortestPathBetween(network.getUser(new Long(1)), network.getUser(new Long(4))),
+						coordinator.findShortestPathBetween(1, 4));
+			} finally {
+				for (ShardServer shard : shards) {
+					shard.close();
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRefusedCoordinatorReleasesShards() throws Exception {
+		File dir = Files.createTempDirectory("shards").toFile();
+		dir.deleteOnExit();
+		String prefix = new File(dir, "busy").getPath();
+		ShardPartitioner.partition(sample, 2, ShardPartitioner.Strategy.HASH, prefix);
+		List<ShardServer> shards = new ArrayList<ShardServer>();
+		int[] ports = serve(prefix, 2, shards);
+		String routing = ShardPartitioner.routingFile(prefix);
+		try {
+			// only the second shard is busy, the first is connected before the refusal
+			ShardCoordinator busy = new ShardCoordinator(routing, new int[] { ports[1] });
+			try {
+				new ShardCoordinator(routing, ports).close();
+				fail("the second shard accepted two coordinators");
+			} catch (IOException e) {
+				// expected
+			}
+			busy.close();
+			try (ShardCoordinator coordinator = new ShardCoordinator(routing, ports)) {
+				SocialNetwork network = new SocialNetwork();
+				network.loadData(sample);
+				assertEquals(network.findShortestPathBetween(network.getUser(new Long(1)), network.getUser(new Long(4))),
+						coordinator.findShortestPathBetween(1, 4));
+			}
+		} finally {
+			for (ShardServer shard : shards) {
+				shard.close();
+			}
+		}
+	}
+
+	/**
+	 * Starts the servers of the shards in this JVM, ShardCoordinator.launch starts them as processes.
+	 * @return the port of each shard
+	 */
+	private int[] serve(String prefix, int count, List<ShardServer> shards) throws IOException {
+		int[] ports = new int[count];
+		for (int i = 0; i < count; i++) {
+			new File(ShardPartitioner.shardFile(prefix, i)).deleteOnExit();
+			new File(ShardPartitioner.linksFile(prefix, i)).deleteOnExit();
+			ShardServer shard = new ShardServer(prefix, i, 0);
+			Thread t = new Thread(shard::serve);
+			t.setDaemon(true);
+			t.start();
+			shards.add(shard);
+			ports[i] = shard.getPort();
+		}
+		new File(ShardPartitioner.routingFile(prefix)).deleteOnExit();
+		return ports;
+	}
+}
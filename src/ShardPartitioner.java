@@ -0,0 +1,276 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Splits a JSON-lines dataset into shards, one file per shard holding the lines of the
+ * users it owns and one with the reverse of the links into it, plus a routing file
+ * mapping every user id to its shard.
+ *
+ * <pre>
+ * java -cp bin:json-simple-1.1.jar ShardPartitioner &lt;dataset&gt; &lt;shards&gt; [hash|locality] [prefix]
+ * </pre>
+ *
+ * The LOCALITY strategy is the streaming linear deterministic greedy heuristic: each user
+ * goes to the shard holding most of its friends seen so far, discounted by how full the
+ * shard is. It cuts far fewer friend links than hashing in one pass over the file, which
+ * keeps more of each search inside one shard; a full min-cut partitioner would need the
+ * whole graph in memory, which is what sharding avoids.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class ShardPartitioner {
+
+	/**
+	 * How users are assigned to shards.
+	 */
+	public enum Strategy {
+		/** By a hash of the user id: balanced, but cuts about (shards - 1) / shards of the links. */
+		HASH,
+		/** By the shard of the friends seen so far, with balanced sizes. */
+		LOCALITY
+	}
+
+	private static final int MAGIC = 0x52544531;	// "RTE1"
+	private static final double SLACK = 1.05;		// largest shard size over the mean size
+
+	/**
+	 * Application entry point.
+	 * @param args dataset shards [hash|locality] [prefix]
+	 * @throws IOException if the files cannot be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("usage: ShardPartitioner <dataset> <shards> [hash|locality] [prefix]");
+			return;
+		}
+		int shards = Integer.parseInt(args[1]);
+		Strategy strategy = args.length > 2 ? Strategy.valueOf(args[2].toUpperCase()) : Strategy.LOCALITY;
+		String prefix = args.length > 3 ? args[3] : args[0];
+		long[] res = partition(args[0], shards, strategy, prefix);
+		System.out.printf("%d links, %d cut (%.1f%%), %d dropped, shards in %s-*.json, routing in %s%n",
+				res[0], res[1], 100.0 * res[1] / Math.max(1, res[0]), res[2], prefix, routingFile(prefix));
+	}
+
+	/**
+	 * Returns the file holding the users of a shard.
+	 * @param prefix the prefix of the shard files
+	 * @param shard the shard
+	 * @return the file name
+	 */
+	public static String shardFile(String prefix, int shard) {
+		return prefix + "-" + shard + ".json";
+	}
+
+	/**
+	 * Returns the file mapping the users to their shards.
+	 * @param prefix the prefix of the shard files
+	 * @return the file name
+	 */
+	public static String routingFile(String prefix) {
+		return prefix + ".routing";
+	}
+
+	/**
+	 * Returns the file holding the reverse of every friend link into a shard.
+	 * @param prefix the prefix of the shard files
+	 * @param shard the shard
+	 * @return the file name
+	 */
+	public static String linksFile(String prefix, int shard) {
+		return prefix + "-" + shard + ".links";
+	}
+
+	/**
+	 * Splits the dataset into shards. Like SocialNetwork.loadData, the friend lists are
+	 * repaired on the way: friend ids without a record and self-loops are dropped, and the
+	 * reverse of every link is written to the links file of the shard of the friend, so
+	 * each shard can make its one-sided friendships mutual without seeing the others.
+	 * @param filename the dataset
+	 * @param shards the number of shards
+	 * @param strategy how users are assigned to shards
+	 * @param prefix the prefix of the shard, links and routing files
+	 * @return the number of friend links, of those between two shards and of dropped links
+	 * @throws IOException if the files cannot be read or written
+	 */
+	@SuppressWarnings("unchecked")
+	public static long[] partition(String filename, int shards, Strategy strategy, String prefix) throws IOException {
+		long lines = 0;
+		try (BufferedReader br = DatasetLoader.reader(filename)) {
+			while (br.readLine() != null) {
+				lines++;
+			}
+		}
+		double capacity = Math.max(1.0, SLACK * lines / shards);
+
+		// pass 1: assign every user to a shard
+		Map<Long, Integer> shardOf = new HashMap<Long, Integer>();
+		int[] sizes = new int[shards];
+		long links = 0, cut = 0;
+		JSONParser parser = new JSONParser();
+		try (BufferedReader br = DatasetLoader.reader(filename)) {
+			int[] shared = new int[shards];
+			String line;
+			while ((line = br.readLine()) != null) {
+				JSONObject jsonObject = parse(parser, line);
+				if (jsonObject == null)
+					continue;
+				Long id = (Long) jsonObject.get("user");
+				JSONArray friends = (JSONArray) jsonObject.get("friends");
+
+				// friends assigned so far, by shard
+				Arrays.fill(shared, 0);
+				int seen = 0;
+				for (Object f : friends) {
+					Integer s = shardOf.get((Long) f);
+					if (s != null) {
+						shared[s]++;
+						seen++;
+					}
+				}
+				int shard = strategy == Strategy.HASH ? hashShard(id, shards) : greedyShard(shared, sizes, capacity);
+				links += seen;
+				cut += seen - shared[shard];
+				shardOf.put(id, shard);
+				sizes[shard]++;
+			}
+		}
+
+		// pass 2: write the repaired lines and the reverse links to the shards
+		long dropped = 0;
+		BufferedWriter[] out = new BufferedWriter[shards];
+		DataOutputStream[] reverse = new DataOutputStream[shards];
+		try (BufferedReader br = DatasetLoader.reader(filename)) {
+			for (int i = 0; i < shards; i++) {
+				out[i] = new BufferedWriter(new FileWriter(shardFile(prefix, i)), 1 << 16);
+				reverse[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(linksFile(prefix, i)), 1 << 16));
+			}
+			String line;
+			while ((line = br.readLine()) != null) {
+				JSONObject jsonObject = parse(parser, line);
+				if (jsonObject == null)
+					continue;
+				Long id = (Long) jsonObject.get("user");
+				JSONArray friends = (JSONArray) jsonObject.get("friends");
+				JSONArray kept = new JSONArray();
+				for (Object f : friends) {
+					Integer s = shardOf.get((Long) f);
+					if (s == null || f.equals(id)) {
+						dropped++;
+						continue;
+					}
+					kept.add(f);
+					reverse[s].writeLong((Long) f);
+					reverse[s].writeLong(id);
+				}
+				if (kept.size() < friends.size()) {
+					jsonObject.put("friends", kept);
+					line = jsonObject.toJSONString();
+				}
+				int shard = shardOf.get(id);
+				out[shard].write(line);
+				out[shard].newLine();
+			}
+		} finally {
+			for (int i = 0; i < shards; i++) {
+				if (out[i] != null)
+					out[i].close();
+				if (reverse[i] != null)
+					reverse[i].close();
+			}
+		}
+		writeRouting(routingFile(prefix), shards, shardOf);
+		return new long[] { links, cut, dropped };
+	}
+
+	private static JSONObject parse(JSONParser parser, String line) {
+		try {
+			return (JSONObject) parser.parse(line);
+		} catch (ParseException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the shard of a user id under the HASH strategy.
+	 */
+	static int hashShard(long id, int shards) {
+		long h = id * 0x9E3779B97F4A7C15L;
+		return (int) Math.floorMod(h ^ (h >>> 32), (long) shards);
+	}
+
+	/**
+	 * Picks the shard with the most friends weighted by its free capacity, the emptiest on ties.
+	 */
+	private static int greedyShard(int[] shared, int[] sizes, double capacity) {
+		int best = -1;
+		double bestScore = -1.0;
+		for (int i = 0; i < sizes.length; i++) {
+			if (sizes[i] >= capacity)
+				continue;
+			double score = shared[i] * (1.0 - sizes[i] / capacity);
+			if (score > bestScore || (score == bestScore && sizes[i] < sizes[best])) {
+				best = i;
+				bestScore = score;
+			}
+		}
+		if (best < 0) {
+			// every shard is full, which rounding allows at the very end
+			best = 0;
+			for (int i = 1; i < sizes.length; i++) {
+				if (sizes[i] < sizes[best])
+					best = i;
+			}
+		}
+		return best;
+	}
+
+	private static void writeRouting(String filename, int shards, Map<Long, Integer> shardOf) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(shards);
+			out.writeInt(shardOf.size());
+			for (Map.Entry<Long, Integer> e : shardOf.entrySet()) {
+				out.writeLong(e.getKey());
+				out.writeInt(e.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Reads a routing file.
+	 * @param filename the routing file
+	 * @return the shard of every user id
+	 * @throws IOException if the file cannot be read or is not a routing file
+	 */
+	public static Map<Long, Integer> readRouting(String filename) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename), 1 << 16))) {
+			if (in.readInt() != MAGIC)
+				throw new IOException(filename + " is not a routing file");
+			in.readInt();
+			int n = in.readInt();
+			Map<Long, Integer> res = new HashMap<Long, Integer>(n * 2);
+			for (int i = 0; i < n; i++) {
+				res.put(in.readLong(), in.readInt());
+			}
+			return res;
+		}
+	}
+}
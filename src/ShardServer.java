@@ -0,0 +1,333 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One shard of a partitioned network: holds the users of a shard file in an
+ * AdjacencyListMap and runs its part of the distributed searches of a ShardCoordinator.
+ * Friends owned by other shards are kept in the friend lists; relaxing a link to one of
+ * them is sent back to the coordinator, which forwards it to the owner. The reverse links
+ * written by ShardPartitioner are added on load, so friendship is mutual across shards.
+ *
+ * <pre>
+ * java -cp bin:json-simple-1.1.jar ShardServer &lt;prefix&gt; &lt;shard&gt; [port]
+ * </pre>
+ *
+ * The server listens on the loopback interface and prints "listening &lt;port&gt;" once
+ * the shard is loaded. The state of a search lives on the users of the shard, so the
+ * server answers one coordinator at a time: while a coordinator is connected, other
+ * connections are closed as soon as they are accepted. The server acknowledges CLOSE
+ * once it is free again, so a coordinator can hand a shard over to the next one.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class ShardServer {
+
+	// requests of the coordinator
+	static final byte INFO = 1;		// -> users, smallest weight
+	static final byte START = 2;	// source, destination -> smallest queued distance
+	static final byte ROUND = 3;	// bound, relaxations -> destination settled, distance, smallest queued distance, relaxations
+	static final byte PATH = 4;		// user -> predecessors of the user within the shard
+	static final byte CLOSE = 5;	// -> CLOSE, once the shard accepts another coordinator
+
+	private final SocialNetwork network;
+	private final ServerSocket server;
+	private final AtomicBoolean connected = new AtomicBoolean();	// a coordinator holds the search state
+
+	// state of the current search
+	private final Queue<Entry<Long, Double>> pq;
+	private final List<User<Long, Double, Double>> touched;
+	private final Map<Long, Entry<Long, Double>> predecessor;	// predecessor and its distance
+	private final Map<Long, Entry<Long, Double>> sent;			// best relaxation sent for each foreign user
+	private Long destination;
+
+	/**
+	 * Constructor: loads the shard and binds the server, call serve() to answer the coordinator.
+	 * @param prefix the prefix of the files written by ShardPartitioner
+	 * @param shard the shard to load
+	 * @param port the port to listen on, 0 for any free port
+	 * @throws IOException if the shard cannot be loaded or the port cannot be bound
+	 */
+	public ShardServer(String prefix, int shard, int port) throws IOException {
+		network = new SocialNetwork();
+		// friends owned by other shards have no record here, they must be kept
+		network.setValidateOnLoad(false);
+		String filename = ShardPartitioner.shardFile(prefix, shard);
+		if (!network.loadData(filename))
+			throw new IOException("cannot load " + filename);
+		addReverseLinks(ShardPartitioner.linksFile(prefix, shard));
+		server = new ServerSocket(port, 16, InetAddress.getLoopbackAddress());
+		pq = new PriorityQueue<>();
+		touched = new ArrayList<User<Long, Double, Double>>();
+		predecessor = new HashMap<Long, Entry<Long, Double>>();
+		sent = new HashMap<Long, Entry<Long, Double>>();
+	}
+
+	/**
+	 * Application entry point.
+	 * @param args prefix shard [port]
+	 * @throws IOException if the shard cannot be loaded or the port cannot be bound
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("usage: ShardServer <prefix> <shard> [port]");
+			return;
+		}
+		ShardServer shard = new ShardServer(args[0], Integer.parseInt(args[1]), args.length > 2 ? Integer.parseInt(args[2]) : 0);
+		System.out.println("listening " + shard.getPort());
+		System.out.flush();
+		shard.serve();
+	}
+
+	/**
+	 * Adds the reverse of the links into this shard that its users do not list themselves.
+	 */
+	private void addReverseLinks(String filename) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename), 1 << 16))) {
+			while (true) {
+				long user, friend;
+				try {
+					user = in.readLong();
+				} catch (EOFException e) {
+					return;
+				}
+				friend = in.readLong();
+				User<Long, Double, Double> u = network.getUser(user);
+				if (u != null)
+					u.getFriends().add(friend);
+			}
+		}
+	}
+
+	/**
+	 * Returns the port the server listens on.
+	 * @return the port
+	 */
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Answers coordinators until the server is closed, one connection at a time on its own thread.
+	 */
+	public void serve() {
+		while (!server.isClosed()) {
+			try {
+				Socket socket = server.accept();
+				if (!connected.compareAndSet(false, true)) {
+					// another coordinator would interleave its searches with the current one
+					socket.close();
+					continue;
+				}
+				socket.setTcpNoDelay(true);
+				Thread t = new Thread(() -> handle(socket), "shard-connection");
+				t.setDaemon(true);
+				t.start();
+			} catch (IOException e) {
+				if (!server.isClosed())
+					e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Stops accepting coordinators.
+	 */
+	public void close() {
+		try {
+			server.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void handle(Socket socket) {
+		boolean released = false;
+		try (Socket s = socket;
+				DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 1 << 16))) {
+			while (true) {
+				byte request = in.readByte();
+				if (request == CLOSE) {
+					// free the shard before the acknowledgement, the next coordinator may follow it
+					connected.set(false);
+					released = true;
+					out.writeByte(CLOSE);
+					out.flush();
+					return;
+				}
+				synchronized (this) {
+					switch (request) {
+					case INFO:
+						info(out);
+						break;
+					case START:
+						start(in.readLong(), in.readLong(), out);
+						break;
+					case ROUND:
+						round(in, out);
+						break;
+					case PATH:
+						path(in.readLong(), out);
+						break;
+					default:
+						throw new IOException("unknown request " + request);
+					}
+				}
+				out.flush();
+			}
+		} catch (EOFException e) {
+			// the coordinator went away
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			if (!released)
+				connected.set(false);
+		}
+	}
+
+	private void info(DataOutputStream out) throws IOException {
+		double min = Double.POSITIVE_INFINITY;
+		for (Vertex<Long, Double, Double> v : network.getAllUsers()) {
+			min = Math.min(min, v.getSkills());
+		}
+		out.writeInt(network.numUsers().intValue());
+		out.writeDouble(min);
+	}
+
+	/**
+	 * Clears the previous search and queues the source if this shard owns it.
+	 */
+	private void start(long source, long destination, DataOutputStream out) throws IOException {
+		for (User<Long, Double, Double> u : touched) {
+			u.setDistance(Double.MAX_VALUE);
+			u.setVisited(false);
+		}
+		touched.clear();
+		predecessor.clear();
+		sent.clear();
+		pq.clear();
+		this.destination = destination;
+
+		User<Long, Double, Double> s = network.getUser(source);
+		if (s != null) {
+			s.setDistance(0.0);
+			touched.add(s);
+			pq.add(new Entry<Long, Double>(source, 0.0));
+		}
+		out.writeDouble(pq.isEmpty() ? Double.POSITIVE_INFINITY : 0.0);
+	}
+
+	/**
+	 * Applies the relaxations forwarded by the coordinator, then settles every queued user
+	 * below the bound. Relaxations of users of other shards are returned as the distance of
+	 * the settled user; the owner adds the cost of stepping onto its user.
+	 */
+	private void round(DataInputStream in, DataOutputStream out) throws IOException {
+		double bound = in.readDouble();
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			long v = in.readLong();
+			double d = in.readDouble();
+			long p = in.readLong();
+			User<Long, Double, Double> u = network.getUser(v);
+			if (u != null)
+				relax(u, d + u.getSkills(), new Entry<Long, Double>(p, d));
+		}
+
+		List<long[]> outgoing = new ArrayList<long[]>();
+		boolean found = false;
+		double distance = Double.POSITIVE_INFINITY;
+		while (!pq.isEmpty() && pq.peek().getDistance() < bound) {
+			Entry<Long, Double> e = pq.poll();
+			User<Long, Double, Double> u = network.getUser(e.getId());
+			if (u.isVisited())
+				continue;
+			u.setVisited(true);
+			double du = u.getDistance();
+			if (e.getId().equals(destination)) {
+				found = true;
+				distance = du;
+				break;
+			}
+			Entry<Long, Double> via = new Entry<Long, Double>(u.getId(), du);
+			for (Long f : u.getFriends()) {
+				User<Long, Double, Double> friend = network.getUser(f);
+				if (friend == null) {
+					// the owner adds the same cost to every relaxation, only a better predecessor can win
+					Entry<Long, Double> best = sent.get(f);
+					if (best == null || via.compareTo(best) < 0) {
+						sent.put(f, via);
+						outgoing.add(new long[] { f, Double.doubleToLongBits(du), u.getId() });
+					}
+				} else if (!friend.isVisited()) {
+					relax(friend, du + friend.getSkills(), via);
+				}
+			}
+		}
+
+		out.writeBoolean(found);
+		out.writeDouble(distance);
+		out.writeDouble(pq.isEmpty() ? Double.POSITIVE_INFINITY : pq.peek().getDistance());
+		out.writeInt(outgoing.size());
+		for (long[] r : outgoing) {
+			out.writeLong(r[0]);
+			out.writeDouble(Double.longBitsToDouble(r[1]));
+			out.writeLong(r[2]);
+		}
+	}
+
+	/**
+	 * Lowers the distance of a user. On a tie the predecessor with the smaller distance,
+	 * then the smaller id, is kept: the one a single node search settles first.
+	 */
+	private void relax(User<Long, Double, Double> u, double d, Entry<Long, Double> via) {
+		if (u.isVisited() || u.getDistance() < d)
+			return;
+		if (u.getDistance() == d) {
+			if (via.compareTo(predecessor.get(u.getId())) < 0)
+				predecessor.put(u.getId(), via);
+			return;
+		}
+		if (u.getDistance() == Double.MAX_VALUE)
+			touched.add(u);
+		u.setDistance(d);
+		predecessor.put(u.getId(), via);
+		pq.add(new Entry<Long, Double>(u.getId(), d));
+	}
+
+	/**
+	 * Returns the user and its predecessors while they are owned by this shard, followed
+	 * by the first predecessor owned by another shard, if any.
+	 */
+	private void path(long v, DataOutputStream out) throws IOException {
+		List<Long> res = new ArrayList<Long>();
+		Long u = v;
+		while (u != null) {
+			res.add(u);
+			if (network.getUser(u) == null)
+				break;
+			Entry<Long, Double> p = predecessor.get(u);
+			u = p == null ? null : p.getId();
+		}
+		out.writeInt(res.size());
+		for (Long id : res) {
+			out.writeLong(id);
+		}
+	}
+}
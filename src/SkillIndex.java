@@ -0,0 +1,166 @@
+import java.util.Arrays;
+
+/**
+ * Secondary index of the users of a GraphIndex by raw skill. The dense ids are kept in
+ * a primitive array sorted by skill, so a skill range is found with two binary searches
+ * and the top coders are the tail of the array. Results are dense ids that the searches
+ * over the same GraphIndex use directly.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class SkillIndex {
+
+	private final long[] skills;	// skills[i] is the skill of users[i], ascending
+	private final int[] users;		// dense ids by ascending skill, ties by dense id
+	private final int[] position;	// position[v] is the index of v in users
+
+	/**
+	 * Constructor: sorts the users of the index by skill.
+	 * @param graph the graph
+	 */
+	public SkillIndex(GraphIndex graph) {
+		int n = graph.size();
+		Integer[] order = new Integer[n];
+		for (int v = 0; v < n; v++) {
+			order[v] = v;
+		}
+		long[] raw = new long[n];
+		for (int v = 0; v < n; v++) {
+			raw[v] = graph.skillOf(v);
+		}
+		Arrays.sort(order, (a, b) -> raw[a] != raw[b] ? Long.compare(raw[a], raw[b]) : Integer.compare(a, b));
+		this.skills = new long[n];
+		this.users = new int[n];
+		this.position = new int[n];
+		for (int i = 0; i < n; i++) {
+			users[i] = order[i];
+			skills[i] = raw[order[i]];
+			position[order[i]] = i;
+		}
+	}
+
+	/**
+	 * Returns the users whose skill is between min and max, by ascending skill.
+	 * @param min the lowest skill, inclusive
+	 * @param max the highest skill, inclusive
+	 * @return the dense ids
+	 */
+	public int[] range(long min, long max) {
+		if (min > max)
+			return new int[0];
+		return Arrays.copyOfRange(users, lowerBound(min), upperBound(max));
+	}
+
+	/**
+	 * Returns the number of users whose skill is between min and max.
+	 * @param min the lowest skill, inclusive
+	 * @param max the highest skill, inclusive
+	 * @return the number of users
+	 */
+	public int count(long min, long max) {
+		return min > max ? 0 : upperBound(max) - lowerBound(min);
+	}
+
+	/**
+	 * Returns the users with the highest skills, best first.
+	 * @param n the number of users
+	 * @return the dense ids
+	 */
+	public int[] top(int n) {
+		int k = Math.max(0, Math.min(n, users.length));
+		int[] res = new int[k];
+		for (int i = 0; i < k; i++) {
+			res[i] = users[users.length - 1 - i];
+		}
+		return res;
+	}
+
+	/**
+	 * Returns the skill of a user.
+	 * @param v the dense id
+	 * @return the raw skill
+	 */
+	public long skillOf(int v) {
+		return skills[position[v]];
+	}
+
+	/**
+	 * Changes the skill of a user, moving it to its new place in the sorted array.
+	 * The cost is the number of users whose skill lies between the old and the new one.
+	 * @param v the dense id
+	 * @param skill the new raw skill
+	 */
+	public void update(int v, long skill) {
+		int i = position[v];
+		// shift the users in between towards the old place until the new one is found
+		while (i > 0 && compare(skill, v, skills[i - 1], users[i - 1]) < 0) {
+			move(i - 1, i);
+			i--;
+		}
+		while (i < users.length - 1 && compare(skill, v, skills[i + 1], users[i + 1]) > 0) {
+			move(i + 1, i);
+			i++;
+		}
+		skills[i] = skill;
+		users[i] = v;
+		position[v] = i;
+	}
+
+	/**
+	 * Returns the number of users in the index.
+	 * @return the number of users
+	 */
+	public int size() {
+		return users.length;
+	}
+
+	/**
+	 * Estimates the memory retained by the index.
+	 * @return the estimated size in bytes
+	 */
+	public long sizeInBytes() {
+		return MemoryEstimate.array(skills.length, 8) + MemoryEstimate.array(users.length, 4)
+				+ MemoryEstimate.array(position.length, 4);
+	}
+
+	private void move(int from, int to) {
+		skills[to] = skills[from];
+		users[to] = users[from];
+		position[users[to]] = to;
+	}
+
+	private static int compare(long skillA, int a, long skillB, int b) {
+		return skillA != skillB ? Long.compare(skillA, skillB) : Integer.compare(a, b);
+	}
+
+	/**
+	 * Returns the first position with a skill of at least min.
+	 */
+	private int lowerBound(long min) {
+		int lo = 0, hi = skills.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (skills[mid] < min)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Returns the first position with a skill above max.
+	 */
+	private int upperBound(long max) {
+		int lo = 0, hi = skills.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (skills[mid] <= max)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+}
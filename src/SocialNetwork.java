@@ -1,22 +1,26 @@
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 //import java.util.Stack;
 
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
-
 /**
  * SocialNetwork class is the application entry point. 
  * @author rabiachaudry
@@ -24,85 +28,150 @@ import org.json.simple.parser.ParseException;
  */
 public class SocialNetwork {
 	
+	/** Default degree from which a user is treated as a hub */
+	public static final int DEFAULT_HUB_THRESHOLD = 256;
+	
 	// Graph representing the social network
 	private Graph<Long,Double,Double> graph;
 	
 	// Create a (min) priority queue to order the users by their distance from the source
 	Queue<Entry<Long,Double>> pq;
 	
+	// Users whose distance, predecessor or visited flag were changed by the last search
+	private List<User<Long,Double,Double>> touched;
+	
+	// Largest size of the priority queue and number of users settled during the last search
+	private int peakQueueSize;
+	private int settled;
+	
+	// Creates the graph when data is loaded
+	private Supplier<Graph<Long,Double,Double>> graphFactory;
+	
+	// Dense snapshot of the graph and scratch state used by the index based searches
+	private GraphIndex index;
+	private SearchScratch scratch;
+	private ConstrainedSearch constrained;
+	private ApproximateSearch approximate;
+	private HopSearch hops;
+	private DistanceOracle oracle;
+	private PrunedLandmarkLabels labels;
+	private SkillIndex skillIndex;
+	private Neighbourhood neighbourhood;
+	
+	// Users with at least this many friends are hubs, whose friends are relaxed by increasing skill cost
+	private int hubThreshold = DEFAULT_HUB_THRESHOLD;
+	private HubAdjacency hubs;
+	private Map<Long, Long[]> hubFriends;
+	private User<Long,Double,Double> searchDestination;
+	private VertexOrdering ordering = VertexOrdering.NATURAL;
+	
+	// Runs the asynchronous queries, each worker thread with its own scratch state
+	private Executor executor = ForkJoinPool.commonPool();
+	
+	// Shortest path trees of the pinned sources, repaired on every change, by source id
+	private final Map<Long, DynamicShortestPathTree> pinned = new LinkedHashMap<Long, DynamicShortestPathTree>();
+	
+	// Whether loadData validates and repairs the friend lists, and what it found last time
+	private boolean validateOnLoad = true;
+	private AdjacencyValidator.Report validation;
+	private DatasetLoader.Report loadReport;
+	private final ThreadLocal<SearchScratch> asyncScratch = new ThreadLocal<SearchScratch>();
+	
+	// Log of the path queries while a capture is running, see startCapture
+	private volatile QueryLog capture;
+	
+	// Picks the strategy of findPlannedPathBetween, with its cache and decision log
+	private QueryPlanner planner;
+	
 	/**
 	 * Default Constructor
 	 */
 	public SocialNetwork() {
-		graph = new AdjacencyListMap<Long,Double,Double>();
+		this(AdjacencyListMap::new);
+	}
+	
+	/**
+	 * Constructor: uses the given factory to create the graph backend, 
+	 * e.g. CompressedAdjacencyGraph::new.
+	 * @param graphFactory creates an empty graph
+	 */
+	public SocialNetwork(Supplier<Graph<Long,Double,Double>> graphFactory) {
+		this.graphFactory = graphFactory;
+		graph = graphFactory.get();
 		pq = new PriorityQueue<>();
+		touched = new ArrayList<User<Long,Double,Double>>();
 	}
 
 	/**
-	 * Loads data from the JSON file into the graph. 
+	 * Loads data from the JSON file into the graph. The file may be compressed with 
+	 * gzip or zstd; it is decompressed, parsed and inserted in a pipeline.
+	 * Unless disabled with setValidateOnLoad, the friend lists are then validated and 
+	 * repaired: friend ids without a record and self-loops are dropped and one-sided 
+	 * friendships are made mutual, so every friend of a user can be looked up.
 	 * 
 	 * @param filename
 	 * @return
 	 */
 	public boolean loadData(String filename) {
 		// Initialize the graph 
-		graph = new AdjacencyListMap<Long,Double,Double>();
-		// Buffered reader for reading from file
-		BufferedReader br = null;
-		// JSON parser for parsing JSON file
-		JSONParser parser = new JSONParser();
-        
+		graph = graphFactory.get();
+		touched.clear();
+		index = null;
+		scratch = null;
+		constrained = null;
+		approximate = null;
+		hops = null;
+		oracle = null;
+		labels = null;
+		skillIndex = null;
+		neighbourhood = null;
+		hubs = null;
+		hubFriends = null;
+		if (planner != null)
+			planner.invalidate();
+		validation = null;
+		loadReport = null;
+		pinned.clear();
 		try {
-			// holds the last line read from the file
-			String sCurrentLine;
-			// set the file to be read
-			br = new BufferedReader(new FileReader(filename));
-			
-			// while not EOF, read and parse each line
-			while ((sCurrentLine = br.readLine()) != null) {
-                Object object; 
-                try {
-                	// parse the current line
-                	object = parser.parse(sCurrentLine);
-                    JSONObject jsonObject = (JSONObject) object;
-                    Long id = (Long) jsonObject.get("user");
-                    Long skill = (Long)jsonObject.get("skill");
-                    JSONArray friends = (JSONArray)jsonObject.get("friends");
-
-                    // create a set of the user's friends 
-                    Set<Long> friendsList = new HashSet<Long>();
-                    for (Object friend : friends) {
-            			friendsList.add((Long)friend);
-            		}
-                    
-                    /* Add the user to the network. 
-                     * Set skills to inverse i.e. it can range from 0.0-1.0 for values from 1.0 to Double.MAX_VALUE.
-                     * Set skills = 2 where skills = 0 since 1/0 is infinity. 
-                    */
-                    this.graph.insertVertex(id, (Double)(skill == 0 ? 2.0 : 1.0/skill), friendsList);	// Using inverse skill to convert it into a shortest path problem
-                    
-                  // exception handling
-                } catch(ParseException e) {
-                	e.printStackTrace();
-                }
-			} // end while    
-        } catch(FileNotFoundException fe) {
-            fe.printStackTrace();
-            return false;
-        } catch(Exception e) {
-            e.printStackTrace();
-            return false;
-        } finally {
-            try {
-                if (br != null)
-                	br.close();
-            } catch (IOException ex) {
-                ex.printStackTrace();
-            }
-        }
+			// decompress, parse and insert in a pipeline, see DatasetLoader
+			loadReport = DatasetLoader.load(filename, graph, Runtime.getRuntime().availableProcessors());
+		} catch(Exception e) {
+			e.printStackTrace();
+			return false;
+		}
+		if (validateOnLoad)
+			validation = AdjacencyValidator.validate(graph, Runtime.getRuntime().availableProcessors());
+		// renumber the users for locality before any query runs
+		if (ordering != VertexOrdering.NATURAL)
+			getIndex();
 		return true;
 	}
 
+	/**
+	 * Returns how long the last loadData spent reading, parsing and inserting the users.
+	 * @return the report, null if no file was loaded
+	 */
+	public DatasetLoader.Report getLoadReport() {
+		return loadReport;
+	}
+	
+	/**
+	 * Sets whether loadData validates and repairs the friend lists. Without validation, 
+	 * the file must list every friendship on both sides and only users with a record.
+	 * @param validate <b>true</b> to validate, the default
+	 */
+	public void setValidateOnLoad(boolean validate) {
+		this.validateOnLoad = validate;
+	}
+	
+	/**
+	 * Returns what the validation of the last loadData found and repaired.
+	 * @return the report, or null if the data was not validated
+	 */
+	public AdjacencyValidator.Report getValidationReport() {
+		return validation;
+	}
+	
 	/**
 	 * Returns the number of users in the network.
 	 * @return the total number of users in the network
@@ -114,7 +183,8 @@ public class SocialNetwork {
 	
 	/**
 	 * Find the Shortest Path between two people in a network through the strongest coders 
-	 * (Dijkstra's algorithm).
+	 * (Dijkstra's algorithm). Paths from a pinned source are read from its tree instead.
+	 * While a capture is running the query is appended to its log.
 	 * @param source the source user 
 	 * @param destination the destination user
 	 * @return
@@ -123,16 +193,47 @@ public class SocialNetwork {
 		if (source == null || destination == null)
 			return null;
 		
+		QueryLog log = capture;
+		if (log == null)
+			return shortestPath(source, destination);
+		long start = System.nanoTime();
+		List<Long> path = shortestPath(source, destination);
+		long latency = System.nanoTime() - start;
+		double cost = Double.POSITIVE_INFINITY;
+		if (path != null) {
+			DynamicShortestPathTree tree = pinned.get(source.getId());
+			cost = tree != null ? tree.distance(destination.getId()) : destination.getDistance();
+		}
+		log.append(source.getId(), destination.getId(), start, latency, settled, path == null ? -1 : path.size(), cost);
+		return path;
+	}
+	
+	/**
+	 * Runs findShortestPathBetween, counting the settled users.
+	 */
+	private List<Long> shortestPath(User<Long, Double, Double> source, User<Long, Double, Double> destination) {
+		settled = 0;
+		DynamicShortestPathTree tree = pinned.get(source.getId());
+		if (tree != null)
+			return tree.path(destination.getId());
+		
 		// initialize the priority queue
 		pq = new PriorityQueue<>();
+		peakQueueSize = 0;
 		// current entry extracted from the priority queue
 		Entry<Long,Double> curr;
 		
+		// clear the state left on the users by the previous search
+		resetSearchState();
+		
+		searchDestination = destination;
+		
 		// initialize the distance of the source to 0
 		source.setDistance(new Double(0.0));
+		touched.add(source);
 		
 		// Add source to the pq 
-		pq.add(new Entry<Long,Double>(source.getId(),source.getDistance()));
+		enqueue(source.getId(), source.getDistance());
 				
 		while(!pq.isEmpty()) {
 			// extract the friend with the shortest distance from the PQ
@@ -141,7 +242,7 @@ public class SocialNetwork {
 			/* Stop searching if the destination has been found. 
 			 * No need to traverse the rest of the paths.
 			 * Improved efficiency in average case. */
-			if (curr.getId() == destination.getId()) {
+			if (curr.getId().equals(destination.getId())) {
 				break;
 			}
 			
@@ -152,6 +253,748 @@ public class SocialNetwork {
 		return pathFrom(source,destination);
 	}
 	
+	/**
+	 * Find the shortest path between two people in the network under the given cost model 
+	 * (Dijkstra's algorithm). Every model is materialised once into a weight array over 
+	 * the shared index, so several models can be compared on the same loaded graph.
+	 * @param source the source user
+	 * @param destination the destination user
+	 * @param model the cost model, e.g. StandardCostModel.FEWEST_HOPS_THEN_SKILL
+	 * @return the path from source to destination or null if it does not exist
+	 */
+	public List<Long> findShortestPathBetween(User<Long, Double, Double> source, User<Long, Double, Double> destination, CostModel model) {
+		if (source == null || destination == null || source.getId().equals(destination.getId()))
+			return null;
+		
+		GraphIndex g = getIndex();
+		SearchScratch s = getScratch();
+		s.clearBans();
+		int t = g.indexOf(destination.getId());
+		if (s.run(g, g.weights(model), g.indexOf(source.getId()), t) == Double.POSITIVE_INFINITY)
+			return null;
+		return g.toIds(s.path(t));
+	}
+	
+	/**
+	 * Find the shortest path between two people in the network through the strongest coders
+	 * without blocking the caller. The search stops when the budget runs out, counted from
+	 * this call, or when the returned future is cancelled; it then completes with the best
+	 * known path and a lower bound of the distance instead of failing.
+	 * @param source the source user
+	 * @param destination the destination user
+	 * @param budget the time and settled users the query may use
+	 * @return the future result, completed with null if either user is null
+	 */
+	public CompletableFuture<SearchResult> findShortestPathAsync(User<Long, Double, Double> source, User<Long, Double, Double> destination, QueryBudget budget) {
+		if (source == null || destination == null)
+			return CompletableFuture.completedFuture(null);
+		
+		// resolved on the calling thread, the workers only read them
+		GraphIndex g = getIndex();
+		HubAdjacency h = getHubAdjacency();
+		int s = g.indexOf(source.getId());
+		int t = g.indexOf(destination.getId());
+		long deadline = budget.deadlineFrom(System.nanoTime());
+		CompletableFuture<SearchResult> result = new CompletableFuture<SearchResult>();
+		try {
+			executor.execute(() -> {
+				if (result.isDone())
+					return;
+				try {
+					result.complete(search(g, h, s, t, deadline, budget.getMaxSettled(), result));
+				} catch (RuntimeException e) {
+					result.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			result.completeExceptionally(e);
+		}
+		return result;
+	}
+	
+	/**
+	 * Runs a budgeted search on the scratch state of the current thread.
+	 */
+	private SearchResult search(GraphIndex g, HubAdjacency hubs, int source, int destination, long deadline, int maxSettled, CompletableFuture<?> future) {
+		SearchScratch s = asyncScratch.get();
+		if (s == null || s.capacity() != g.size()) {
+			s = new SearchScratch(g.size());
+			asyncScratch.set(s);
+		}
+		s.setHubAdjacency(hubs);
+		s.clearBans();
+		s.setBudget(deadline, maxSettled, future::isCancelled);
+		try {
+			double d = s.run(g, g.weights(), source, destination);
+			if (!s.isStopped()) {
+				if (d == Double.POSITIVE_INFINITY)
+					return new SearchResult(SearchResult.Status.UNREACHABLE, null, d, d, s.settledCount());
+				return new SearchResult(SearchResult.Status.FOUND, g.toIds(s.path(destination)), d, d, s.settledCount());
+			}
+			// the destination may have been reached without being settled
+			double upper = s.distance(destination);
+			List<Long> best = upper == Double.POSITIVE_INFINITY ? null : g.toIds(s.path(destination));
+			return new SearchResult(SearchResult.Status.BUDGET_EXHAUSTED, best, s.frontierDistance(), upper, s.settledCount());
+		} finally {
+			s.clearBudget();
+		}
+	}
+	
+	/**
+	 * Find a path between two people in the network through the strongest coders that
+	 * costs at most (1 + epsilon) times the shortest one (bidirectional Dijkstra that
+	 * stops as soon as the bound is proven). The result reports the proven bound, which
+	 * is often tighter than 1 + epsilon.
+	 * @param source the source user
+	 * @param destination the destination user
+	 * @param epsilon the accepted relative error, 0 for the shortest path
+	 * @return the result, or null if either user is null
+	 */
+	public SearchResult findApproximatePathBetween(User<Long, Double, Double> source, User<Long, Double, Double> destination, double epsilon) {
+		if (source == null || destination == null)
+			return null;
+		
+		GraphIndex g = getIndex();
+		if (approximate == null)
+			approximate = new ApproximateSearch(g, g.weights());
+		WeightedPath p = approximate.find(g.indexOf(source.getId()), g.indexOf(destination.getId()), epsilon);
+		if (p == null)
+			return new SearchResult(SearchResult.Status.UNREACHABLE, null, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, approximate.settledCount());
+		double lower = approximate.lowerBound();
+		SearchResult.Status status = lower < p.getCost() ? SearchResult.Status.APPROXIMATE : SearchResult.Status.FOUND;
+		return new SearchResult(status, g.toIds(p.getVertices()), lower, p.getCost(), approximate.settledCount());
+	}
+	
+	/**
+	 * Find the path between two people in the network with the fewest intermediaries and, 
+	 * among those, through the strongest coders (direction optimizing breadth first search 
+	 * from both ends). The path has the same cost as findShortestPathBetween with 
+	 * StandardCostModel.FEWEST_HOPS_THEN_SKILL, without a priority queue.
+	 * @param source the source user
+	 * @param destination the destination user
+	 * @return the path from source to destination or null if it does not exist
+	 */
+	public List<Long> findFewestHopsPathBetween(User<Long, Double, Double> source, User<Long, Double, Double> destination) {
+		if (source == null || destination == null)
+			return null;
+		
+		GraphIndex g = getIndex();
+		if (hops == null)
+			hops = new HopSearch(g);
+		WeightedPath p = hops.find(g.indexOf(source.getId()), g.indexOf(destination.getId()));
+		return p == null ? null : g.toIds(p.getVertices());
+	}
+	
+	/**
+	 * Find the shortest path between two people in the network through the strongest coders
+	 * with the strategy the query planner predicts to be the cheapest: a cached answer, an
+	 * immediate unreachable result when the users are in different components, the tree of
+	 * a pinned source, the landmark labels, or Dijkstra's algorithm from the source or from
+	 * both ends. The path has the same cost as the one returned by findShortestPathBetween,
+	 * though it may be another among equally short ones. The decision and its outcome are
+	 * logged by the planner, see getQueryPlanner.
+	 * @param source the source user
+	 * @param destination the destination user
+	 * @return the result, FOUND or UNREACHABLE, or null if either user is null or they are the same
+	 */
+	public SearchResult findPlannedPathBetween(User<Long, Double, Double> source, User<Long, Double, Double> destination) {
+		if (source == null || destination == null || source.getId().equals(destination.getId()))
+			return null;
+		
+		long start = System.nanoTime();
+		GraphIndex g = getIndex();
+		int s = g.indexOf(source.getId());
+		int t = g.indexOf(destination.getId());
+		QueryPlanner p = getQueryPlanner();
+		QueryPlanner.Decision decision = p.plan(g, s, t, pinned.containsKey(source.getId()),
+				labels != null && labels.hasParentHints(), oracle);
+		List<Long> path = null;
+		double cost = Double.POSITIVE_INFINITY;
+		int settledUsers = 0;
+		switch (decision.getStrategy()) {
+		case CACHED:
+			if (decision.getCachedPath() != null)
+				path = new ArrayList<Long>(decision.getCachedPath());
+			cost = decision.getCachedCost();
+			break;
+		case UNREACHABLE:
+			break;
+		case PINNED:
+			DynamicShortestPathTree tree = pinned.get(source.getId());
+			path = tree.path(destination.getId());
+			cost = tree.distance(destination.getId());
+			break;
+		case LABELS:
+			int[] labelled = labels.path(s, t);
+			if (labelled != null) {
+				path = g.toIds(labelled);
+				cost = labels.distance(s, t);
+			}
+			break;
+		case BIDIRECTIONAL:
+			if (approximate == null)
+				approximate = new ApproximateSearch(g, g.weights());
+			WeightedPath found = approximate.find(s, t, 0.0);
+			settledUsers = approximate.settledCount();
+			if (found != null) {
+				path = g.toIds(found.getVertices());
+				cost = found.getCost();
+			}
+			break;
+		default:
+			SearchScratch scratch = getScratch();
+			scratch.clearBans();
+			cost = scratch.run(g, g.weights(), s, t);
+			settledUsers = scratch.settledCount();
+			if (cost != Double.POSITIVE_INFINITY)
+				path = g.toIds(scratch.path(t));
+			break;
+		}
+		p.complete(decision, path, cost, settledUsers, System.nanoTime() - start);
+		if (path == null)
+			return new SearchResult(SearchResult.Status.UNREACHABLE, null, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, settledUsers);
+		return new SearchResult(SearchResult.Status.FOUND, path, cost, cost, settledUsers);
+	}
+	
+	/**
+	 * Returns the query planner of findPlannedPathBetween, with the statistics of its
+	 * decisions. The planner is kept across changes of the network, only its cache and
+	 * components are dropped.
+	 * @return the planner
+	 */
+	public QueryPlanner getQueryPlanner() {
+		if (planner == null)
+			planner = new QueryPlanner(QueryPlanner.DEFAULT_CACHE_CAPACITY, QueryPlanner.DEFAULT_LOG_CAPACITY);
+		return planner;
+	}
+	
+	/**
+	 * Builds the distance oracle used by estimateDistanceBetween. Each landmark costs two 
+	 * Dijkstra searches to build and 8 bytes per user to store.
+	 * @param numLandmarks the number of landmarks, e.g. 16
+	 * @param selection how the landmarks are chosen
+	 * @return the oracle, which can be saved with DistanceOracle.save
+	 */
+	public DistanceOracle buildDistanceOracle(int numLandmarks, DistanceOracle.Selection selection) {
+		oracle = DistanceOracle.build(getIndex(), numLandmarks, selection, Runtime.getRuntime().availableProcessors());
+		return oracle;
+	}
+	
+	/**
+	 * Loads a distance oracle saved for the users of this network.
+	 * @param filename the file written by DistanceOracle.save
+	 * @return <b>true</b> if the oracle was loaded
+	 */
+	public boolean loadDistanceOracle(String filename) {
+		try {
+			oracle = DistanceOracle.load(filename, getIndex());
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+	
+	/**
+	 * Estimates the distance between two people in the network through the strongest coders
+	 * without a search, using the distance oracle built or loaded before.
+	 * @param source the source user
+	 * @param destination the destination user
+	 * @return an upper bound of the distance, Double.POSITIVE_INFINITY if no landmark connects them
+	 * @throws IllegalStateException if no distance oracle was built or loaded
+	 */
+	public double estimateDistanceBetween(User<Long, Double, Double> source, User<Long, Double, Double> destination) {
+		if (oracle == null)
+			throw new IllegalStateException("no distance oracle, call buildDistanceOracle or loadDistanceOracle first");
+		GraphIndex g = getIndex();
+		return oracle.estimate(g.indexOf(source.getId()), g.indexOf(destination.getId()));
+	}
+	
+	/**
+	 * Builds the pruned landmark labels used by findExactDistanceBetween and
+	 * findLabelledPathBetween.
+	 * @param parentHints whether to keep the hints needed to recover paths (a third more memory)
+	 * @return the labels
+	 */
+	public PrunedLandmarkLabels buildLandmarkLabels(boolean parentHints) {
+		labels = PrunedLandmarkLabels.build(getIndex(), Runtime.getRuntime().availableProcessors(), parentHints);
+		return labels;
+	}
+	
+	/**
+	 * Returns the exact distance between two people in the network through the strongest 
+	 * coders from the landmark labels, without a search.
+	 * @param source the source user
+	 * @param destination the destination user
+	 * @return the distance, Double.POSITIVE_INFINITY if there is no path
+	 * @throws IllegalStateException if the labels were not built
+	 */
+	public double findExactDistanceBetween(User<Long, Double, Double> source, User<Long, Double, Double> destination) {
+		if (labels == null)
+			throw new IllegalStateException("no landmark labels, call buildLandmarkLabels first");
+		GraphIndex g = getIndex();
+		return labels.distance(g.indexOf(source.getId()), g.indexOf(destination.getId()));
+	}
+	
+	/**
+	 * Find the shortest path between two people in the network through the strongest coders 
+	 * from the landmark labels. The path has the same cost as the one returned by
+	 * findShortestPathBetween, though it may pick another path among equally short ones.
+	 * @param source the source user
+	 * @param destination the destination user
+	 * @return the path from source to destination or null if it does not exist
+	 * @throws IllegalStateException if the labels were not built with parent hints
+	 */
+	public List<Long> findLabelledPathBetween(User<Long, Double, Double> source, User<Long, Double, Double> destination) {
+		if (labels == null)
+			throw new IllegalStateException("no landmark labels, call buildLandmarkLabels first");
+		if (source == null || destination == null || source.getId().equals(destination.getId()))
+			return null;
+		GraphIndex g = getIndex();
+		int[] path = labels.path(g.indexOf(source.getId()), g.indexOf(destination.getId()));
+		return path == null ? null : g.toIds(path);
+	}
+	
+	/**
+	 * Sets the executor that runs the asynchronous queries, the common fork join pool by default.
+	 * @param executor the executor
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+	
+	/**
+	 * Find the shortest path through the strongest coders from any of the sources to any of 
+	 * the targets, with a single search seeded with every source. A user that is both a 
+	 * source and a target only counts as a source. Unknown ids are ignored.
+	 * @param sources the ids of the users the path may start from, e.g. the members of a team
+	 * @param targets the ids of the users the path may end at
+	 * @return the path from the winning source to the winning target, or null if none is reachable
+	 */
+	public List<Long> findNearestPathBetween(Collection<Long> sources, Collection<Long> targets) {
+		if (sources == null || targets == null)
+			return null;
+		GraphIndex g = getIndex();
+		int[] t = denseIds(g, targets);
+		return nearestPath(g, denseIds(g, sources), v -> Arrays.binarySearch(t, v) >= 0);
+	}
+	
+	/**
+	 * Find the shortest path through the strongest coders from the source to the closest 
+	 * other user that satisfies the condition, e.g. u -> u.getSkills() &lt;= 1.0 / 50.
+	 * @param source the source user
+	 * @param condition accepts the users the path may end at
+	 * @return the path from the source to the winning user, or null if none is reachable
+	 */
+	public List<Long> findNearestPathTo(User<Long, Double, Double> source, Predicate<User<Long, Double, Double>> condition) {
+		if (source == null || condition == null)
+			return null;
+		GraphIndex g = getIndex();
+		return nearestPath(g, new int[] { g.indexOf(source.getId()) }, v -> condition.test(getUser(g.idOf(v))));
+	}
+	
+	/**
+	 * Find the shortest path through the strongest coders from the source to the closest 
+	 * other user with at least the given skill.
+	 * @param source the source user
+	 * @param minSkill the minimum skill of the user the path ends at
+	 * @return the path from the source to the winning user, or null if none is reachable
+	 */
+	public List<Long> findNearestCoderWithSkill(User<Long, Double, Double> source, long minSkill) {
+		if (source == null)
+			return null;
+		GraphIndex g = getIndex();
+		return nearestPath(g, new int[] { g.indexOf(source.getId()) }, v -> g.skillOf(v) >= minSkill);
+	}
+	
+	private List<Long> nearestPath(GraphIndex g, int[] sources, IntPredicate isTarget) {
+		SearchScratch s = getScratch();
+		s.clearBans();
+		int winner = s.runToNearest(g, g.weights(), sources, isTarget);
+		return winner < 0 ? null : g.toIds(s.path(winner));
+	}
+	
+	/**
+	 * Returns the sorted dense ids of the known users.
+	 */
+	private static int[] denseIds(GraphIndex g, Collection<Long> ids) {
+		int[] res = new int[ids.size()];
+		int count = 0;
+		for (Long id : ids) {
+			int v = g.indexOf(id);
+			if (v >= 0)
+				res[count++] = v;
+		}
+		res = Arrays.copyOf(res, count);
+		Arrays.sort(res);
+		return res;
+	}
+	
+	/**
+	 * Counts the users each source reaches at each number of hops, searching from up to 
+	 * 256 sources at once (multi-source breadth first search) on every processor.
+	 * @param sources the user ids of the sources, unknown users are skipped
+	 * @return the hop histogram of each source, the sources in the order of the index
+	 */
+	public MultiSourceBfs.Result findHopHistograms(Collection<Long> sources) {
+		GraphIndex g = getIndex();
+		// sources close in the index share more of their searches in a batch
+		return new MultiSourceBfs(g, 256).run(denseIds(g, sources), Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Explores the people around a user through the strongest coders, closest first: every
+	 * user within maxHops hops and maxCost cost, with the cost of the cheapest path that 
+	 * fits the hop limit. Users are found lazily as the iterator advances, so callers can 
+	 * stop early. Starting another exploration invalidates the returned iterator.
+	 * @param source the user to explore around, not returned itself
+	 * @param maxHops the largest number of hops, Integer.MAX_VALUE for no limit
+	 * @param maxCost the largest path cost, Double.POSITIVE_INFINITY for no limit
+	 * @return the users around the source by increasing path cost
+	 */
+	public Iterator<Neighbourhood.Neighbour> exploreNeighbourhood(User<Long, Double, Double> source, int maxHops, double maxCost) {
+		GraphIndex g = getIndex();
+		if (neighbourhood == null)
+			neighbourhood = new Neighbourhood(g, g.weights());
+		return neighbourhood.explore(g.indexOf(source.getId()), maxHops, maxCost);
+	}
+	
+	/**
+	 * Returns the index of the users by skill, building it on first use.
+	 * @return the skill index over the dense ids of getIndex()
+	 */
+	public SkillIndex getSkillIndex() {
+		if (skillIndex == null)
+			skillIndex = new SkillIndex(getIndex());
+		return skillIndex;
+	}
+	
+	/**
+	 * Returns the users whose skill is between min and max, by ascending skill.
+	 * @param min the lowest skill, inclusive
+	 * @param max the highest skill, inclusive
+	 * @return the user ids
+	 */
+	public List<Long> findUsersWithSkillBetween(long min, long max) {
+		return getIndex().toIds(getSkillIndex().range(min, max));
+	}
+	
+	/**
+	 * Returns the n strongest coders of the network, best first.
+	 * @param n the number of users
+	 * @return the user ids
+	 */
+	public List<Long> findTopCoders(int n) {
+		return getIndex().toIds(getSkillIndex().top(n));
+	}
+
+	/**
+	 * Ranks the users by how many strongest coder paths between other users go through
+	 * them (betweenness centrality), e.g. top(10) of the result for the best connectors.
+	 * @param samples the number of sampled sources, 0 or at least the number of users for the exact scores
+	 * @param threads the number of threads
+	 * @return the scores, with a standard error when sampled
+	 */
+	public BetweennessCentrality computeBetweenness(int samples, int threads) {
+		GraphIndex g = getIndex();
+		if (samples <= 0 || samples >= g.size())
+			return BetweennessCentrality.exact(g, threads);
+		return BetweennessCentrality.sampled(g, samples, 42, threads);
+	}
+
+	/**
+	 * Changes the skill of a user, in the graph, the index and the skill index. 
+	 * The distance oracle and the landmark labels depend on the old skill and are dropped.
+	 * @param user the user
+	 * @param skill the new raw skill
+	 */
+	public void setSkills(User<Long, Double, Double> user, long skill) {
+		graph.setSkills(user.getId(), GraphIndex.inverseSkill(skill));
+		if (index != null) {
+			int v = index.indexOf(user.getId());
+			index.setSkill(v, skill);
+			if (skillIndex != null)
+				skillIndex.update(v, skill);
+		}
+		hubs = null;
+		hubFriends = null;
+		oracle = null;
+		labels = null;
+		if (planner != null)
+			planner.invalidate();
+		for (DynamicShortestPathTree tree : pinned.values()) {
+			tree.updateWeight(user.getId(), GraphIndex.inverseSkill(skill));
+		}
+	}
+	
+	/**
+	 * Starts logging every findShortestPathBetween query with its latency, settled users 
+	 * and result to a binary QueryLog, which QueryReplay runs again. A running capture is 
+	 * stopped first.
+	 * @param filename the log file, created or truncated
+	 * @return true if the log was opened
+	 */
+	public boolean startCapture(String filename) {
+		stopCapture();
+		try {
+			capture = new QueryLog(filename);
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+	
+	/**
+	 * Stops the running capture, if any, and writes out its log. Queries running on other 
+	 * threads meanwhile may be left out of it.
+	 * @return the number of queries captured, 0 if no capture was running
+	 */
+	public long stopCapture() {
+		QueryLog log = capture;
+		if (log == null)
+			return 0;
+		capture = null;
+		log.close();
+		return log.size();
+	}
+	
+	/**
+	 * Keeps the full shortest path tree of a source resident, so paths from it are a walk 
+	 * along the predecessors. The tree is repaired incrementally by setSkills, 
+	 * addFriendship and removeFriendship. Among several shortest paths, the one kept 
+	 * may differ from the one a search would return.
+	 * @param source the source user
+	 * @return the tree of the source
+	 */
+	public DynamicShortestPathTree pinSource(User<Long, Double, Double> source) {
+		DynamicShortestPathTree tree = pinned.get(source.getId());
+		if (tree == null) {
+			tree = new DynamicShortestPathTree(graph, source.getId());
+			pinned.put(source.getId(), tree);
+		}
+		return tree;
+	}
+	
+	/**
+	 * Drops the tree of a pinned source.
+	 * @param source the source user
+	 * @return <b>true</b> if the source was pinned
+	 */
+	public boolean unpinSource(User<Long, Double, Double> source) {
+		return pinned.remove(source.getId()) != null;
+	}
+	
+	/**
+	 * Returns the ids of the pinned sources.
+	 * @return the pinned source ids
+	 */
+	public Set<Long> getPinnedSources() {
+		return Collections.unmodifiableSet(pinned.keySet());
+	}
+	
+	/**
+	 * Makes two users friends. The index and everything built over it are rebuilt on 
+	 * next use; the trees of the pinned sources are repaired.
+	 * @param a a user
+	 * @param b the other user
+	 * @return <b>true</b> if they were not friends yet
+	 */
+	public boolean addFriendship(User<Long, Double, Double> a, User<Long, Double, Double> b) {
+		if (a.getId().equals(b.getId()) || a.getFriends().contains(b.getId()))
+			return false;
+		setFriendship(a, b.getId(), true);
+		setFriendship(b, a.getId(), true);
+		for (DynamicShortestPathTree tree : pinned.values()) {
+			tree.addFriendship(a.getId(), b.getId());
+		}
+		return true;
+	}
+	
+	/**
+	 * Ends the friendship of two users. The index and everything built over it are 
+	 * rebuilt on next use; the trees of the pinned sources are repaired.
+	 * @param a a user
+	 * @param b the other user
+	 * @return <b>true</b> if they were friends
+	 */
+	public boolean removeFriendship(User<Long, Double, Double> a, User<Long, Double, Double> b) {
+		if (!a.getFriends().contains(b.getId()) && !b.getFriends().contains(a.getId()))
+			return false;
+		setFriendship(a, b.getId(), false);
+		setFriendship(b, a.getId(), false);
+		for (DynamicShortestPathTree tree : pinned.values()) {
+			tree.removeFriendship(a.getId(), b.getId());
+		}
+		return true;
+	}
+	
+	/**
+	 * Adds or removes a friend of a user and drops the structures built over the friend lists.
+	 */
+	private void setFriendship(User<Long, Double, Double> user, Long friend, boolean add) {
+		// the friend lists of some graphs are read only views, so the list is replaced
+		Set<Long> friends = new HashSet<Long>(user.getFriends());
+		if (add)
+			friends.add(friend);
+		else
+			friends.remove(friend);
+		graph.getVertex(user.getId()).setFriends(friends);
+		index = null;
+		scratch = null;
+		constrained = null;
+		approximate = null;
+		hops = null;
+		oracle = null;
+		labels = null;
+		skillIndex = null;
+		neighbourhood = null;
+		hubs = null;
+		hubFriends = null;
+		if (planner != null)
+			planner.invalidate();
+	}
+	
+	/**
+	 * Find the k best loopless paths between two people in the network through the strongest coders 
+	 * (Yen's algorithm). The first path has the same cost as the one returned by findShortestPathBetween.
+	 * @param source the source user
+	 * @param destination the destination user
+	 * @param k the maximum number of paths to return
+	 * @return the paths ordered by total inverse skill cost, or null if either user is null
+	 */
+	public List<List<Long>> findKShortestPathsBetween(User<Long, Double, Double> source, User<Long, Double, Double> destination, int k) {
+		return findKShortestPathsBetween(source, destination, k, StandardCostModel.INVERSE_SKILL);
+	}
+	
+	/**
+	 * Find the k best loopless paths between two people in the network under the given cost model 
+	 * (Yen's algorithm).
+	 * @param source the source user
+	 * @param destination the destination user
+	 * @param k the maximum number of paths to return
+	 * @param model the cost model used to rank the paths
+	 * @return the paths ordered by total cost, or null if either user is null
+	 */
+	public List<List<Long>> findKShortestPathsBetween(User<Long, Double, Double> source, User<Long, Double, Double> destination, int k, CostModel model) {
+		if (source == null || destination == null)
+			return null;
+		
+		GraphIndex g = getIndex();
+		KShortestPaths yen = new KShortestPaths(g, g.weights(model), getScratch());
+		
+		List<List<Long>> paths = new ArrayList<List<Long>>();
+		for (WeightedPath p : yen.find(g.indexOf(source.getId()), g.indexOf(destination.getId()), k)) {
+			paths.add(g.toIds(p.getVertices()));
+		}
+		return paths;
+	}
+	
+	/**
+	 * Find the shortest path between two people in the network through the strongest coders
+	 * that satisfies the given constraints: it avoids the excluded users, has at most the
+	 * maximum number of hops, and every user between the source and destination has at
+	 * least the minimum skill.
+	 * @param source the source user
+	 * @param destination the destination user
+	 * @param constraints the constraints of the request
+	 * @return the path from source to destination or null if no path satisfies the constraints
+	 */
+	public List<Long> findConstrainedPathBetween(User<Long, Double, Double> source, User<Long, Double, Double> destination, SearchConstraints constraints) {
+		if (source == null || destination == null || constraints == null)
+			return null;
+		
+		GraphIndex g = getIndex();
+		if (constrained == null)
+			constrained = new ConstrainedSearch(g, g.weights(), getScratch());
+		WeightedPath p = constrained.find(g.indexOf(source.getId()), g.indexOf(destination.getId()), constraints);
+		return p == null ? null : g.toIds(p.getVertices());
+	}
+	
+	/**
+	 * Returns the dense index of the network, building it on first use.
+	 * @return the index of the graph
+	 */
+	public GraphIndex getIndex() {
+		if (index == null)
+			index = GraphIndex.build(graph, ordering);
+		return index;
+	}
+	
+	/**
+	 * Sets the order in which users are numbered in the index. Unless the order is 
+	 * NATURAL, loadData renumbers the users and builds the index as its last step.
+	 * @param ordering the vertex ordering
+	 */
+	public void setVertexOrdering(VertexOrdering ordering) {
+		this.ordering = ordering;
+		index = null;
+		scratch = null;
+		constrained = null;
+		approximate = null;
+		hops = null;
+		oracle = null;
+		labels = null;
+		skillIndex = null;
+		neighbourhood = null;
+		hubs = null;
+		hubFriends = null;
+		if (planner != null)
+			planner.invalidate();
+	}
+	
+	/**
+	 * Sets the number of friends from which a user is a hub. Searches relax the friends 
+	 * of hubs by increasing skill cost and stop early once they cannot improve the path.
+	 * @param threshold the hub degree, Integer.MAX_VALUE to treat no user as a hub
+	 */
+	public void setHubThreshold(int threshold) {
+		this.hubThreshold = threshold;
+		hubs = null;
+		hubFriends = null;
+		if (scratch != null)
+			scratch.setHubAdjacency(null);
+	}
+	
+	/**
+	 * Returns the number of friends from which a user is a hub.
+	 * @return the hub degree
+	 */
+	public int getHubThreshold() {
+		return hubThreshold;
+	}
+	
+	/**
+	 * Returns the weight sorted friend lists of the hubs of the index, building them on first use.
+	 * @return the hub friend lists
+	 */
+	HubAdjacency getHubAdjacency() {
+		GraphIndex g = getIndex();
+		if (hubs == null || !hubs.appliesTo(g, g.weights()))
+			hubs = new HubAdjacency(g, g.weights(), hubThreshold);
+		return hubs;
+	}
+	
+	/**
+	 * Returns the order in which users are numbered in the index.
+	 * @return the vertex ordering
+	 */
+	public VertexOrdering getVertexOrdering() {
+		return ordering;
+	}
+	
+	/**
+	 * Returns the scratch state used by the index based searches.
+	 * @return the scratch state
+	 */
+	SearchScratch getScratch() {
+		GraphIndex g = getIndex();
+		if (scratch == null || scratch.capacity() != g.size())
+			scratch = new SearchScratch(g.size());
+		scratch.setHubAdjacency(getHubAdjacency());
+		return scratch;
+	}
+	
 	/**
 	 * Evaluates and updates the distance of friends to the shortest distance, if applicable
 	 * @param v the entry pulled from the priority queue containing the user id and distance
@@ -162,20 +1005,131 @@ public class SocialNetwork {
 		// if it has been processed before, return without doing anything
 		if (curr.isVisited()) 
 			return;
+		settled++;
+		// hubs relax their friends by increasing skill cost, see relaxHubFriends
+		if (curr.getFriends().size() >= hubThreshold) {
+			relaxHubFriends(curr);
+			curr.setVisited(true);
+			return;
+		}
 		// othewise, update distance of all the friends where the new distance is less than the existing one
 		for (Long f : curr.getFriends()) {
 			User<Long,Double,Double> friend = getUser(f);
 			if (!friend.isVisited() && friend.getDistance() > curr.getDistance() + friend.getSkills()) {
 				friend.setDistance(curr.getDistance() + friend.getSkills());
 				friend.setPredecessor(curr);
+				touched.add(friend);
 				// add an entry relating to the processed friend to the PQ
-				pq.add(new Entry<Long, Double>(f,friend.getDistance()));
+				enqueue(f, friend.getDistance());
 			}
 		}
 		// mark the current node as visited to avoid it from being processed again
 		curr.setVisited(true);
 	}
 	
+	/**
+	 * Relaxes the friends of a hub by increasing skill cost and stops at the first friend
+	 * that cannot be reached more cheaply than the current distance of the destination: 
+	 * no friend after it can be on a shorter path. The sorted friends are cached per hub.
+	 * @param curr the hub being processed
+	 */
+	private void relaxHubFriends(User<Long,Double,Double> curr) {
+		if (hubFriends == null)
+			hubFriends = new HashMap<Long, Long[]>();
+		Long[] sorted = hubFriends.get(curr.getId());
+		if (sorted == null) {
+			sorted = curr.getFriends().toArray(new Long[0]);
+			Arrays.sort(sorted, (a, b) -> Double.compare(getUser(a).getSkills(), getUser(b).getSkills()));
+			hubFriends.put(curr.getId(), sorted);
+		}
+		double bound = searchDestination == null ? Double.MAX_VALUE : searchDestination.getDistance();
+		for (Long f : sorted) {
+			User<Long,Double,Double> friend = getUser(f);
+			double d = curr.getDistance() + friend.getSkills();
+			if (d >= bound)
+				break;
+			if (!friend.isVisited() && friend.getDistance() > d) {
+				friend.setDistance(d);
+				friend.setPredecessor(curr);
+				touched.add(friend);
+				enqueue(f, d);
+				if (searchDestination != null && f.equals(searchDestination.getId()))
+					bound = d;
+			}
+		}
+	}
+	
+	/**
+	 * Adds an entry to the priority queue, keeping track of its peak size.
+	 * @param id the user id
+	 * @param distance the distance of the user from the source
+	 */
+	private void enqueue(Long id, Double distance) {
+		pq.add(new Entry<Long, Double>(id, distance));
+		if (pq.size() > peakQueueSize)
+			peakQueueSize = pq.size();
+	}
+	
+	/**
+	 * Estimates the memory retained by the network: the structures of the graph, the 
+	 * priority queue at its peak size during the last search and every cache or index 
+	 * built so far. Structures that were not built are not reported.
+	 * @return the estimated size of each structure with the averages per user and link
+	 */
+	public MemoryReport memoryReport() {
+		// taken first: counting the links compacts the pending changes of a compressed graph
+		Map<String, Long> footprint = graph.memoryFootprint();
+		long edges = 0;
+		for (Vertex<Long,Double,Double> v : graph.getAllVertices()) {
+			edges += v.getFriends().size();
+		}
+		MemoryReport report = new MemoryReport(graph.numVertices(), edges);
+		for (Map.Entry<String, Long> e : footprint.entrySet()) {
+			report.add("graph: " + e.getKey(), e.getValue());
+		}
+		// an entry is the Entry object with its boxed id and distance, and a slot in the heap array
+		long entry = MemoryEstimate.object(2, 0) + 2 * MemoryEstimate.BOXED + MemoryEstimate.REFERENCE;
+		int peak = Math.max(peakQueueSize, scratch == null ? 0 : scratch.peakQueueSize());
+		report.add("search queue (peak)", peak * entry);
+		report.add("search touched list", MemoryEstimate.array(touched.size(), MemoryEstimate.REFERENCE));
+		if (index != null)
+			report.add("index", index.sizeInBytes());
+		if (scratch != null)
+			report.add("search scratch", scratch.sizeInBytes());
+		if (hubs != null)
+			report.add("hub friend lists", hubs.sizeInBytes());
+		if (hubFriends != null) {
+			long bytes = MemoryEstimate.hashMap(hubFriends.size());
+			for (Long[] friends : hubFriends.values()) {
+				bytes += MemoryEstimate.BOXED + MemoryEstimate.array(friends.length, MemoryEstimate.REFERENCE);
+			}
+			report.add("hub friend cache", bytes);
+		}
+		if (skillIndex != null)
+			report.add("skill index", skillIndex.sizeInBytes());
+		if (oracle != null)
+			report.add("distance oracle", oracle.sizeInBytes());
+		if (labels != null)
+			report.add("landmark labels", labels.sizeInBytes());
+		for (DynamicShortestPathTree tree : pinned.values()) {
+			report.add("pinned trees", tree.sizeInBytes());
+		}
+		return report;
+	}
+	
+	/**
+	 * Restores the distance, predecessor and visited flag of the users changed by the 
+	 * previous search, so the cost of a new search does not depend on the network size.
+	 */
+	public void resetSearchState() {
+		for (User<Long,Double,Double> u : touched) {
+			u.setDistance(Double.MAX_VALUE);
+			u.setPredecessor(null);
+			u.setVisited(false);
+		}
+		touched.clear();
+	}
+	
 	/**
 	 * Returns the path from the source to the destination user. 
 	 * Returns null if a path is not found.
@@ -188,7 +1142,7 @@ public class SocialNetwork {
 		
 		/* if either the source or destination is null or 
 		 * source and destination are the same, return null */
-		if (source == null || destination == null || source.getId() == destination.getId())
+		if (source == null || destination == null || source.getId().equals(destination.getId()))
 			return null;
 		
 		// Create an ArrayList to store the path 
@@ -200,7 +1154,7 @@ public class SocialNetwork {
 		// loop until the source is found or the user is null
 		while (curr != null) {
 			path.add(curr.getId());
-			if (curr.getId() == source.getId())
+			if (curr.getId().equals(source.getId()))
 				break;
 			curr = (User<Long, Double, Double>) curr.getPredecessor(); 
 		}
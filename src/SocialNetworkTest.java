@@ -1,7 +1,20 @@
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
 import org.junit.Test;
 
 public class SocialNetworkTest {
@@ -175,6 +188,796 @@ public class SocialNetworkTest {
 		assertEquals(path, new ArrayList<Long>(Arrays.asList(new Long(13),new Long(14),new Long(16))));	
 	}
 	
+	@Test
+	public void testFindKShortestPathsBetween5and8() {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		
+		User<Long,Double,Double> s = network.getUser(new Long(5));
+		User<Long,Double,Double> d = network.getUser(new Long(8));
+		
+		List<List<Long>> paths = network.findKShortestPathsBetween(s, d, 5);
+		
+		assertEquals(paths.size(), 3);
+		assertEquals(paths.get(0), Arrays.asList(new Long(5),new Long(7),new Long(8)));
+		assertEquals(paths.get(1), Arrays.asList(new Long(5),new Long(6),new Long(8)));
+		assertEquals(paths.get(2), Arrays.asList(new Long(5),new Long(7),new Long(9),new Long(8)));
+	}
+	
+	@Test
+	public void testFindKShortestPathsBetweenDisconnectedUsers() {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		
+		User<Long,Double,Double> s = network.getUser(new Long(1));
+		User<Long,Double,Double> d = network.getUser(new Long(16));
+		
+		assertTrue(network.findKShortestPathsBetween(s, d, 3).isEmpty());
+		assertEquals(network.findKShortestPathsBetween(null, d, 3), null);
+	}
+	
+	@Test
+	public void testFindShortestPathAsync5and8() throws Exception {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		
+		User<Long,Double,Double> s = network.getUser(new Long(5));
+		User<Long,Double,Double> d = network.getUser(new Long(8));
+		
+		SearchResult r = network.findShortestPathAsync(s, d, QueryBudget.unlimited()).get();
+		
+		assertEquals(r.getStatus(), SearchResult.Status.FOUND);
+		assertEquals(r.getPath(), Arrays.asList(new Long(5),new Long(7),new Long(8)));
+		assertEquals(r.getLowerBound(), r.getUpperBound(), 1e-9);
+	}
+	
+	@Test
+	public void testFindShortestPathAsyncStopsWhenBudgetRunsOut() throws Exception {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		
+		User<Long,Double,Double> s = network.getUser(new Long(5));
+		User<Long,Double,Double> d = network.getUser(new Long(8));
+		
+		SearchResult r = network.findShortestPathAsync(s, d, new QueryBudget(0, 1)).get();
+		
+		assertEquals(r.getStatus(), SearchResult.Status.BUDGET_EXHAUSTED);
+		assertEquals(r.getSettled(), 1);
+		assertTrue(r.getLowerBound() <= network.findShortestPathAsync(s, d, QueryBudget.unlimited()).get().getLowerBound());
+	}
+	
+	@Test
+	public void testFindApproximatePathBetween5and8() {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		
+		User<Long,Double,Double> s = network.getUser(new Long(5));
+		User<Long,Double,Double> d = network.getUser(new Long(8));
+		
+		SearchResult exact = network.findApproximatePathBetween(s, d, 0.0);
+		assertEquals(exact.getStatus(), SearchResult.Status.FOUND);
+		assertEquals(exact.getPath(), Arrays.asList(new Long(5),new Long(7),new Long(8)));
+		
+		SearchResult r = network.findApproximatePathBetween(s, d, 1.0);
+		assertTrue(r.getUpperBound() <= 2.0 * exact.getUpperBound() + 1e-9);
+		assertTrue(r.getErrorBound() <= 2.0 + 1e-9);
+		assertEquals(network.findApproximatePathBetween(network.getUser(new Long(1)), network.getUser(new Long(16)), 0.5).getStatus(), SearchResult.Status.UNREACHABLE);
+	}
+	
+	@Test
+	public void testEstimateDistanceBetween() throws Exception {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		
+		User<Long,Double,Double> s = network.getUser(new Long(5));
+		User<Long,Double,Double> d = network.getUser(new Long(8));
+		double exact = network.findApproximatePathBetween(s, d, 0.0).getUpperBound();
+		
+		DistanceOracle few = network.buildDistanceOracle(2, DistanceOracle.Selection.FARTHEST);
+		GraphIndex g = network.getIndex();
+		assertTrue(network.estimateDistanceBetween(s, d) >= exact - 1e-6);
+		assertTrue(few.lowerBound(g.indexOf(new Long(5)), g.indexOf(new Long(8))) <= exact + 1e-6);
+		
+		// with every user as a landmark the estimate is exact, also after a save and load
+		File file = tempFile("oracle", ".bin");
+		network.buildDistanceOracle(g.size(), DistanceOracle.Selection.DEGREE).save(file.getPath());
+		network.setVertexOrdering(VertexOrdering.RCM);
+		assertTrue(network.loadDistanceOracle(file.getPath()));
+		assertEquals(network.estimateDistanceBetween(s, d), exact, 1e-6);
+	}
+	
+	@Test
+	public void testLandmarkLabelsMatchDijkstra() {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		network.buildLandmarkLabels(true);
+		
+		for (Vertex<Long,Double,Double> a : network.getAllUsers()) {
+			for (Vertex<Long,Double,Double> b : network.getAllUsers()) {
+				User<Long,Double,Double> s = network.getUser(a.getId());
+				User<Long,Double,Double> d = network.getUser(b.getId());
+				SearchResult exact = network.findApproximatePathBetween(s, d, 0.0);
+				assertEquals(network.findExactDistanceBetween(s, d), exact.getUpperBound(), 1e-9);
+				List<Long> path = network.findLabelledPathBetween(s, d);
+				if (!s.getId().equals(d.getId()))
+					assertEquals(path == null ? null : path.size(), exact.getPath() == null ? null : exact.getPath().size());
+			}
+		}
+		assertEquals(network.findLabelledPathBetween(network.getUser(new Long(5)), network.getUser(new Long(8))), 
+				Arrays.asList(new Long(5),new Long(7),new Long(8)));
+	}
+	
+	@Test
+	public void testFindNearestPathBetween() {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		
+		List<Long> sources = Arrays.asList(new Long(5), new Long(1));
+		List<Long> path = network.findNearestPathBetween(sources, Arrays.asList(new Long(8), new Long(16)));
+		assertEquals(path, Arrays.asList(new Long(5),new Long(7),new Long(8)));
+		assertEquals(network.findNearestPathBetween(Arrays.asList(new Long(1)), Arrays.asList(new Long(16))), null);
+	}
+	
+	@Test
+	public void testFindNearestCoderWithSkill() {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		
+		User<Long,Double,Double> s = network.getUser(new Long(5));
+		List<Long> path = network.findNearestCoderWithSkill(s, 50);
+		User<Long,Double,Double> winner = network.getUser(path.get(path.size() - 1));
+		assertEquals(path.get(0), new Long(5));
+		assertTrue(winner.getSkills() <= 1.0 / 50);
+		assertEquals(network.findNearestPathTo(s, u -> u.getSkills() <= 1.0 / 50), path);
+		
+		// no other user is closer than the winner
+		double best = network.findApproximatePathBetween(s, winner, 0.0).getUpperBound();
+		for (Vertex<Long,Double,Double> v : network.getAllUsers()) {
+			User<Long,Double,Double> u = network.getUser(v.getId());
+			if (u.getSkills() <= 1.0 / 50 && !u.getId().equals(s.getId()))
+				assertTrue(network.findApproximatePathBetween(s, u, 0.0).getUpperBound() >= best - 1e-9);
+		}
+	}
+	
+	@Test
+	public void testSkillIndex() {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		
+		List<Long> strong = network.findUsersWithSkillBetween(50, Long.MAX_VALUE);
+		int count = 0;
+		for (Vertex<Long,Double,Double> v : network.getAllUsers()) {
+			if (GraphIndex.skillOf(v.getSkills()) >= 50) {
+				assertTrue(strong.contains(v.getId()));
+				count++;
+			}
+		}
+		assertEquals(strong.size(), count);
+		
+		// raise a user to the top, the index and the searches follow
+		User<Long,Double,Double> u = network.getUser(new Long(6));
+		network.setSkills(u, 1000);
+		assertEquals(network.findTopCoders(1), Arrays.asList(new Long(6)));
+		assertTrue(network.findUsersWithSkillBetween(1000, 1000).contains(new Long(6)));
+		assertEquals(network.getUser(new Long(6)).getSkills(), 0.001, 1e-12);
+		assertEquals(network.findShortestPathBetween(network.getUser(new Long(5)), network.getUser(new Long(8)), StandardCostModel.INVERSE_SKILL), 
+				network.findShortestPathBetween(network.getUser(new Long(5)), network.getUser(new Long(8))));
+	}
+	
+	@Test
+	public void testExploreNeighbourhood() {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		User<Long,Double,Double> s = network.getUser(new Long(5));
+		
+		// without limits every reachable user comes out once, at its shortest path cost, cheapest first
+		Iterator<Neighbourhood.Neighbour> it = network.exploreNeighbourhood(s, Integer.MAX_VALUE, Double.POSITIVE_INFINITY);
+		HashSet<Long> seen = new HashSet<Long>();
+		double last = 0.0;
+		while (it.hasNext()) {
+			Neighbourhood.Neighbour n = it.next();
+			assertTrue(seen.add(n.getId()));
+			assertTrue(n.getCost() >= last);
+			last = n.getCost();
+			assertEquals(n.getCost(), network.findApproximatePathBetween(s, network.getUser(n.getId()), 0.0).getUpperBound(), 1e-9);
+		}
+		assertFalse(seen.contains(new Long(5)));
+		assertTrue(seen.contains(new Long(8)));
+		
+		// one hop gives the friends
+		it = network.exploreNeighbourhood(s, 1, Double.POSITIVE_INFINITY);
+		HashSet<Long> friends = new HashSet<Long>();
+		while (it.hasNext()) {
+			Neighbourhood.Neighbour n = it.next();
+			assertEquals(n.getHops(), 1);
+			friends.add(n.getId());
+		}
+		assertEquals(friends, s.getFriends());
+	}
+	
+	@Test
+	public void testLoadRepairsFriendLists() throws Exception {
+		// 1 lists 2 but not the other way round, 2 lists the missing user 9 and itself
+		File file = writeDataset(
+				"{\"user\": 1, \"friends\": [2, 3], \"skill\": 1}",
+				"{\"user\": 2, \"friends\": [2, 9], \"skill\": 2}",
+				"{\"user\": 3, \"friends\": [1], \"skill\": 3}");
+		for (SocialNetwork network : Arrays.asList(new SocialNetwork(), new SocialNetwork(CompressedAdjacencyGraph::new))) {
+			assertTrue(network.loadData(file.getPath()));
+			AdjacencyValidator.Report report = network.getValidationReport();
+			assertEquals(report.getDanglingLinks(), 1);
+			assertEquals(report.getSelfLoops(), 1);
+			assertEquals(report.getOneSidedLinks(), 1);
+			assertEquals(report.getRepairedUsers(), 1);
+			assertEquals(network.getUser(new Long(2)).getFriends(), new HashSet<Long>(Arrays.asList(new Long(1))));
+			// the path now exists in both directions
+			assertEquals(network.findShortestPathBetween(network.getUser(new Long(2)), network.getUser(new Long(3))), 
+					Arrays.asList(new Long(2),new Long(1),new Long(3)));
+		}
+		
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		assertEquals(network.getValidationReport().getOneSidedLinks(), 1);
+		network.setValidateOnLoad(false);
+		network.loadData(sample);
+		assertNull(network.getValidationReport());
+	}
+	
+	@Test
+	public void testPinnedSourceTreeIsRepaired() {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		User<Long,Double,Double> s = network.getUser(new Long(5));
+		DynamicShortestPathTree tree = network.pinSource(s);
+		assertEquals(network.findShortestPathBetween(s, network.getUser(new Long(9))), Arrays.asList(new Long(5),new Long(7),new Long(9)));
+		
+		// a weaker 7 makes the path through 6 and 8 cheaper
+		network.setSkills(network.getUser(new Long(7)), 0);
+		assertEquals(network.findShortestPathBetween(s, network.getUser(new Long(9))), Arrays.asList(new Long(5),new Long(6),new Long(8),new Long(9)));
+		// a friendship to another component makes it reachable, removing it cuts it off again
+		assertNull(network.findShortestPathBetween(s, network.getUser(new Long(13))));
+		assertTrue(network.addFriendship(network.getUser(new Long(9)), network.getUser(new Long(13))));
+		assertEquals(network.findShortestPathBetween(s, network.getUser(new Long(14))), 
+				Arrays.asList(new Long(5),new Long(6),new Long(8),new Long(9),new Long(13),new Long(14)));
+		assertTrue(network.removeFriendship(network.getUser(new Long(13)), network.getUser(new Long(9))));
+		assertNull(network.findShortestPathBetween(s, network.getUser(new Long(14))));
+		
+		// the repaired distances are those of a search from scratch
+		assertTrue(network.unpinSource(s));
+		for (long d = 5; d <= 9; d++) {
+			double cost = 0.0;
+			Collection<Long> path = network.findShortestPathBetween(s, network.getUser(d));
+			if (path != null)
+				for (Long v : path)
+					if (!v.equals(s.getId()))
+						cost += network.getUser(v).getSkills();
+			assertEquals(tree.distance(d), d == 5 ? 0.0 : cost, 1e-9);
+		}
+	}
+
+	@Test
+	public void testRepairedTreesMatchRebuiltTrees() {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		long[] sources = { 1, 5, 9, 13 };
+		List<DynamicShortestPathTree> trees = new ArrayList<DynamicShortestPathTree>();
+		for (long s : sources) {
+			trees.add(network.pinSource(network.getUser(s)));
+		}
+		Random random = new Random(42);
+		for (int i = 0; i < 5000; i++) {
+			network.setSkills(network.getUser((long) (1 + random.nextInt(16))), random.nextInt(10));
+		}
+		// the repaired distances are bit for bit those of a tree built from scratch
+		for (int i = 0; i < sources.length; i++) {
+			User<Long,Double,Double> s = network.getUser(sources[i]);
+			assertTrue(network.unpinSource(s));
+			DynamicShortestPathTree rebuilt = network.pinSource(s);
+			for (long d = 1; d <= 16; d++) {
+				assertEquals(trees.get(i).distance(d), rebuilt.distance(d), 0.0);
+				assertEquals(trees.get(i).path(d), rebuilt.path(d));
+			}
+		}
+	}
+
+	@Test
+	public void testPinnedSourceTreeWithOneSidedFriends() throws Exception {
+		// 4 lists 3 but 3 does not list 4, so 3 cannot be the predecessor of 4
+		File file = writeDataset(
+				"{\"user\": 1, \"friends\": [2, 3], \"skill\": 1}",
+				"{\"user\": 2, \"friends\": [4], \"skill\": 1}",
+				"{\"user\": 3, \"friends\": [], \"skill\": 1}",
+				"{\"user\": 4, \"friends\": [3], \"skill\": 1}");
+		SocialNetwork network = new SocialNetwork();
+		network.setValidateOnLoad(false);
+		network.loadData(file.getPath());
+		User<Long,Double,Double> s = network.getUser(new Long(1));
+		DynamicShortestPathTree tree = network.pinSource(s);
+		assertEquals(tree.path(4), Arrays.asList(new Long(1),new Long(2),new Long(4)));
+		
+		assertTrue(network.removeFriendship(network.getUser(new Long(2)), network.getUser(new Long(4))));
+		assertNull(tree.path(4));
+		assertEquals(tree.distance(4), Double.POSITIVE_INFINITY, 0.0);
+		
+		// the friendship is now mutual, 3 becomes the predecessor of 4
+		assertTrue(network.addFriendship(network.getUser(new Long(3)), network.getUser(new Long(4))));
+		assertEquals(tree.path(4), Arrays.asList(new Long(1),new Long(3),new Long(4)));
+		assertTrue(network.removeFriendship(network.getUser(new Long(4)), network.getUser(new Long(3))));
+		assertNull(tree.path(4));
+	}
+
+	@Test
+	public void testLoadsGzipDataset() throws Exception {
+		File file = tempFile("sample", ".json.gz");
+		try (OutputStream out = new GZIPOutputStream(new FileOutputStream(file))) {
+			out.write(Files.readAllBytes(Paths.get(sample)));
+			// key order, spacing and \r\n the scanner leaves to the JSONParser or skips
+			out.write("\r\n{ \"skill\" : 7, \"friends\":[ ], \"user\":100 }\r\n{\"user\": 101, \"friends\": [], \"skill\": 1, \"name\": \"x\"}".getBytes("UTF-8"));
+		}
+		SocialNetwork plain = new SocialNetwork();
+		plain.loadData(sample);
+		SocialNetwork packed = new SocialNetwork();
+		assertTrue(packed.loadData(file.getPath()));
+		assertEquals(packed.numUsers().longValue(), plain.numUsers() + 2);
+		assertEquals(packed.getLoadReport().getUsers(), plain.numUsers() + 2);
+		for (Vertex<Long,Double,Double> v : plain.getAllUsers()) {
+			assertEquals(packed.getUser(v.getId()).getFriends(), v.getFriends());
+			assertEquals(packed.getUser(v.getId()).getSkills(), v.getSkills(), 0.0);
+		}
+		assertEquals(packed.getUser(new Long(100)).getSkills(), 1.0 / 7, 0.0);
+		assertNotNull(packed.getUser(new Long(101)));
+		assertEquals(packed.findShortestPathBetween(packed.getUser(new Long(5)), packed.getUser(new Long(9))), Arrays.asList(new Long(5),new Long(7),new Long(9)));
+	}
+
+	@Test
+	public void testZstdToolExitStatusIsChecked() throws Exception {
+		// the file holds the zstd magic and then the plain lines, a fake tool strips the magic
+		File file = tempFile("sample", ".json.zst");
+		try (OutputStream out = new FileOutputStream(file)) {
+			out.write(new byte[] { (byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd });
+			out.write(Files.readAllBytes(Paths.get(sample)));
+		}
+		File tool = tempFile("FakeZstd", ".java");
+		Files.write(tool.toPath(), Arrays.asList(
+				"public class FakeZstd {",
+				"	public static void main(String[] args) throws Exception {",
+				"		byte[] b = java.nio.file.Files.readAllBytes(java.nio.file.Paths.get(args[args.length - 1]));",
+				"		int lines = Integer.getInteger(\"lines\", Integer.MAX_VALUE);",
+				"		int end = 4;",
+				"		while (end < b.length && lines > 0)",
+				"			if (b[end++] == '\\n') lines--;",
+				"		System.out.write(b, 4, end - 4);",
+				"		System.out.flush();",
+				"		System.exit(Integer.getInteger(\"status\", 0));",
+				"	}",
+				"}"));
+		String launcher = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		String[] zstd = DatasetLoader.zstdCommand;
+		try {
+			SocialNetwork network = new SocialNetwork();
+			DatasetLoader.zstdCommand = new String[] { launcher, tool.getPath() };
+			assertTrue(network.loadData(file.getPath()));
+			assertEquals(network.numUsers().longValue(), 16);
+			// two lines, then a failure: the partial graph is not a successful load
+			DatasetLoader.zstdCommand = new String[] { launcher, "-Dlines=2", "-Dstatus=1", tool.getPath() };
+			assertFalse(network.loadData(file.getPath()));
+		} finally {
+			DatasetLoader.zstdCommand = zstd;
+		}
+	}
+
+	@Test
+	public void testFewestHopsPathMatchesHopsThenSkillModel() {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		// 5 to 9: 5-7-9 has fewer hops than the cheaper 5-6-8-9
+		assertEquals(network.findFewestHopsPathBetween(network.getUser(new Long(5)), network.getUser(new Long(9))),
+				Arrays.asList(new Long(5),new Long(7),new Long(9)));
+		// 5 to 8: two paths of 2 hops, through the stronger 7 rather than 6
+		assertEquals(network.findFewestHopsPathBetween(network.getUser(new Long(5)), network.getUser(new Long(8))),
+				Arrays.asList(new Long(5),new Long(7),new Long(8)));
+		for (Vertex<Long,Double,Double> s : network.getAllUsers()) {
+			for (Vertex<Long,Double,Double> d : network.getAllUsers()) {
+				User<Long,Double,Double> from = network.getUser(s.getId()), to = network.getUser(d.getId());
+				List<Long> expected = network.findShortestPathBetween(from, to, StandardCostModel.FEWEST_HOPS_THEN_SKILL);
+				List<Long> path = network.findFewestHopsPathBetween(from, to);
+				if (expected == null) {
+					assertNull(path);
+					continue;
+				}
+				assertEquals(path.size(), expected.size());
+				assertEquals(path.get(0), s.getId());
+				assertEquals(path.get(path.size() - 1), d.getId());
+				double cost = 0.0, best = 0.0;
+				for (int i = 1; i < path.size(); i++) {
+					assertTrue(network.getUser(path.get(i - 1)).getFriends().contains(path.get(i)));
+					cost += network.getUser(path.get(i)).getSkills();
+					best += network.getUser(expected.get(i)).getSkills();
+				}
+				assertEquals(cost, best, 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void testHopHistogramsOfManySources() {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		MultiSourceBfs.Result r = network.findHopHistograms(Arrays.asList(new Long(5), new Long(1), new Long(99)));
+		assertEquals(r.size(), 2);
+		assertEquals(r.getSource(0), 1);
+		// 1 reaches 2 and 3, then 4
+		assertArrayEquals(r.getHistogram(0), new int[] { 1, 2, 1 });
+		assertEquals(r.getSource(1), 5);
+		assertArrayEquals(r.getHistogram(1), new int[] { 1, 2, 2 });
+		assertEquals(r.getReachable(1), 4);
+		assertEquals(r.getTotalHops(1), 6);
+		assertEquals(r.getEccentricity(1), 2);
+
+		// more sources than a batch holds, on several threads, against one search at a time
+		GraphIndex g = network.getIndex();
+		int[] sources = new int[150];
+		for (int i = 0; i < sources.length; i++)
+			sources[i] = (i * 7) % g.size();
+		MultiSourceBfs.Result all = new MultiSourceBfs(g, 64).run(sources, 2);
+		HopSearch single = new HopSearch(g);
+		for (int i = 0; i < sources.length; i++) {
+			int[] levels = single.levels(sources[i]);
+			int[] h = all.getHistogram(i);
+			int reached = 0;
+			for (int v = 0; v < levels.length; v++) {
+				if (levels[v] >= 0) {
+					assertTrue(levels[v] < h.length);
+					reached++;
+				}
+			}
+			assertEquals(all.getReachable(i) + 1, reached);
+			for (int hop = 0; hop < h.length; hop++) {
+				int count = 0;
+				for (int l : levels)
+					if (l == hop)
+						count++;
+				assertEquals(h[hop], count);
+			}
+		}
+		assertEquals(all.getTotalHistogram()[0], sources.length);
+	}
+
+	@Test
+	public void testBetweennessCentrality() throws Exception {
+		// a star around 2, and a diamond 5-6-8-7 with two equally short sides
+		File file = writeDataset(
+				"{\"user\": 1, \"friends\": [2], \"skill\": 1}",
+				"{\"user\": 2, \"friends\": [1, 3, 4], \"skill\": 1}",
+				"{\"user\": 3, \"friends\": [2], \"skill\": 1}",
+				"{\"user\": 4, \"friends\": [2], \"skill\": 1}",
+				"{\"user\": 5, \"friends\": [6, 7], \"skill\": 4}",
+				"{\"user\": 6, \"friends\": [5, 8], \"skill\": 2}",
+				"{\"user\": 7, \"friends\": [5, 8], \"skill\": 2}",
+				"{\"user\": 8, \"friends\": [6, 7], \"skill\": 4}");
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(file.getPath());
+		for (int threads = 1; threads <= 3; threads++) {
+			BetweennessCentrality exact = network.computeBetweenness(0, threads);
+			assertTrue(exact.isExact());
+			// the 6 ordered pairs of leaves go through 2
+			assertEquals(exact.getScore(new Long(2)), 6.0, 1e-9);
+			assertEquals(exact.getScore(new Long(1)), 0.0, 1e-9);
+			// 5 to 8 and back split between 6 and 7, as 6 to 7 and back between 5 and 8
+			for (long v = 5; v <= 8; v++)
+				assertEquals(exact.getScore(v), 1.0, 1e-9);
+			assertEquals(exact.top(1), Arrays.asList(new Long(2)));
+			assertEquals(exact.getMaxStandardError(), 0.0, 0.0);
+		}
+
+		BetweennessCentrality sampled = network.computeBetweenness(4, 2);
+		assertFalse(sampled.isExact());
+		assertEquals(sampled.getSources(), 4);
+		assertTrue(sampled.getMaxStandardError() > 0);
+
+		File output = tempFile("centrality", ".tsv");
+		network.computeBetweenness(0, 1).write(output.getPath());
+		List<String> lines = Files.readAllLines(output.toPath());
+		assertEquals(lines.size(), 9);
+		assertTrue(lines.get(1).startsWith("1\t2\t6.0"));
+	}
+
+	@Test
+	public void testRelaxationKernels() throws Exception {
+		int[] targets = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 };
+		double[] w = { 1, 1, 1, 1, 1, 1, 1, 1, 1, 1 };
+		double[] dist = { 5, 1, 5, 1, 5, 1, 5, 1, 0, 9 };
+		int[] seen = { 3, 3, 3, 3, 3, 3, 3, 3, 3, 2 };
+		for (RelaxationKernel kernel : Arrays.asList(RelaxationKernel.scalar(), RelaxationKernel.best())) {
+			int[] improved = new int[targets.length];
+			// 2 + 1 beats 5 but not 1, and 9 is stale
+			int count = kernel.relax(targets, 0, targets.length, 2.0, w, dist, seen, 3, improved);
+			assertArrayEquals(Arrays.copyOf(improved, count), new int[] { 0, 2, 4, 6, 9 });
+			count = kernel.relax(targets, 3, 7, 2.0, w, dist, seen, 3, improved);
+			assertArrayEquals(Arrays.copyOf(improved, count), new int[] { 4, 6 });
+		}
+
+		// a hub with more friends than KERNEL_DEGREE, the friends in a ring
+		int users = 3 * SearchScratch.KERNEL_DEGREE;
+		List<String> lines = new ArrayList<String>();
+		StringBuilder hub = new StringBuilder();
+		for (int i = 1; i <= users; i++) {
+			hub.append(i == 1 ? "" : ", ").append(i);
+			lines.add("{\"user\": " + i + ", \"friends\": [0, " + (i % users + 1) + "], \"skill\": " + (i % 7 + 1) + "}");
+		}
+		lines.add("{\"user\": 0, \"friends\": [" + hub + "], \"skill\": 3}");
+		File file = writeDataset(lines.toArray(new String[0]));
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(file.getPath());
+		GraphIndex g = network.getIndex();
+		SearchScratch plain = new SearchScratch(g.size());
+		SearchScratch batched = new SearchScratch(g.size());
+		batched.setRelaxationKernel(RelaxationKernel.best());
+		for (int s = 0; s < g.size(); s += 5) {
+			for (int t = 0; t < g.size(); t += 3) {
+				plain.clearBans();
+				batched.clearBans();
+				plain.banVertex(g.indexOf(new Long(users)));
+				batched.banVertex(g.indexOf(new Long(users)));
+				double expected = plain.run(g, g.weights(), s, t);
+				assertEquals(batched.run(g, g.weights(), s, t), expected, 0.0);
+				if (expected != Double.POSITIVE_INFINITY)
+					assertArrayEquals(batched.path(t), plain.path(t));
+			}
+		}
+	}
+
+	@Test
+	public void testPlannedPathsMatchShortestPaths() throws Exception {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		QueryPlanner planner = network.getQueryPlanner();
+		for (int round = 0; round < 2; round++) {
+			for (long a = 1; a <= 16; a++) {
+				for (long b = 1; b <= 16; b++) {
+					User<Long, Double, Double> s = network.getUser(a), d = network.getUser(b);
+					SearchResult planned = network.findPlannedPathBetween(s, d);
+					if (a == b) {
+						assertNull(planned);
+						continue;
+					}
+					Collection<Long> path = network.findShortestPathBetween(s, d);
+					if (path == null) {
+						assertEquals(planned.getStatus(), SearchResult.Status.UNREACHABLE);
+					} else {
+						assertEquals(planned.getStatus(), SearchResult.Status.FOUND);
+						assertEquals(planned.getUpperBound(), d.getDistance(), 1e-9);
+						assertEquals(planned.getPath().get(0), new Long(a));
+					}
+				}
+			}
+		}
+		// the second round is answered from the cache, the other components without a search
+		assertEquals(planner.getPlanned(), 2 * 16 * 15);
+		assertEquals(planner.getCacheHits(), 16 * 15);
+		assertTrue(planner.getCount(QueryPlanner.Strategy.UNREACHABLE) > 0);
+		for (QueryPlanner.Decision d : planner.getDecisions()) {
+			if (d.getStrategy() == QueryPlanner.Strategy.UNREACHABLE)
+				assertEquals(d.getSettled(), 0);
+			assertTrue(d.getLatency() >= 0);
+		}
+		assertTrue(planner.getCount(QueryPlanner.Strategy.DIJKSTRA) > 0);
+		assertTrue(planner.getCount(QueryPlanner.Strategy.BIDIRECTIONAL) > 0);
+
+		// a change drops the cached answers: 1 and 5 were apart
+		assertEquals(network.findPlannedPathBetween(network.getUser(new Long(1)), network.getUser(new Long(5))).getStatus(), SearchResult.Status.UNREACHABLE);
+		network.addFriendship(network.getUser(new Long(4)), network.getUser(new Long(5)));
+		SearchResult joined = network.findPlannedPathBetween(network.getUser(new Long(1)), network.getUser(new Long(5)));
+		assertEquals(joined.getPath(), Arrays.asList(new Long(1), new Long(2), new Long(4), new Long(5)));
+
+		// a pinned source is read from its tree
+		network.pinSource(network.getUser(new Long(5)));
+		SearchResult pinned = network.findPlannedPathBetween(network.getUser(new Long(5)), network.getUser(new Long(9)));
+		List<QueryPlanner.Decision> decisions = planner.getDecisions();
+		assertEquals(decisions.get(decisions.size() - 1).getStrategy(), QueryPlanner.Strategy.PINNED);
+		assertEquals(pinned.getUpperBound(), network.pinSource(network.getUser(new Long(5))).distance(9), 1e-9);
+
+		File file = tempFile("decisions", ".tsv");
+		planner.write(file.getPath());
+		List<String> lines = Files.readAllLines(file.toPath());
+		assertEquals(lines.size(), decisions.size() + 1);
+		assertTrue(lines.get(lines.size() - 1).startsWith("5\t9\tPINNED"));
+	}
+
+	@Test
+	public void testHubRelaxationKeepsPaths() {
+		SocialNetwork off = new SocialNetwork();
+		off.loadData(sample);
+		off.setHubThreshold(Integer.MAX_VALUE);
+		SocialNetwork on = new SocialNetwork();
+		on.loadData(sample);
+		// every user with two friends or more is a hub
+		on.setHubThreshold(2);
+		// relaxing a hub before any search has no destination to bound it
+		on.updateFriends(new Entry<Long, Double>(new Long(1), 0.0));
+		on.resetSearchState();
+		// all but 4, whose only friend is 2
+		assertEquals(on.getHubAdjacency().numHubs(), 15);
+		for (long a = 1; a <= 16; a++) {
+			for (long b = 1; b <= 16; b++) {
+				Collection<Long> expected = off.findShortestPathBetween(off.getUser(a), off.getUser(b));
+				Collection<Long> path = on.findShortestPathBetween(on.getUser(a), on.getUser(b));
+				assertEquals(path, expected);
+				if (expected != null)
+					assertEquals(on.getUser(b).getDistance(), off.getUser(b).getDistance(), 0.0);
+
+				List<Long> indexed = on.findShortestPathBetween(on.getUser(a), on.getUser(b), StandardCostModel.INVERSE_SKILL);
+				assertEquals(indexed, off.findShortestPathBetween(off.getUser(a), off.getUser(b), StandardCostModel.INVERSE_SKILL));
+				if (indexed != null)
+					assertEquals(indexed, expected);
+			}
+		}
+	}
+
+	@Test
+	public void testCapturedQueriesReplay() throws Exception {
+		File file = tempFile("queries", ".log");
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		assertTrue(network.startCapture(file.getPath()));
+		for (long s = 1; s <= 9; s++)
+			for (long d = 1; d <= 9; d++)
+				network.findShortestPathBetween(network.getUser(s), network.getUser(d));
+		assertEquals(network.stopCapture(), 81);
+		// not captured any more
+		network.findShortestPathBetween(network.getUser(new Long(5)), network.getUser(new Long(9)));
+
+		List<QueryLog.Record> log = QueryLog.read(file.getPath());
+		assertEquals(log.size(), 81);
+		QueryLog.Record r = log.get(4 * 9 + 8);
+		assertEquals(r.getSource(), 5);
+		assertEquals(r.getDestination(), 9);
+		assertEquals(r.getLength(), 3);
+		assertTrue(r.getSettled() > 0);
+		assertEquals(log.get(0).getLength(), -1);
+
+		for (QueryReplay.Algorithm algorithm : QueryReplay.Algorithm.values()) {
+			QueryReplay.Result result = QueryReplay.replay(network, log, algorithm, 2, 0);
+			assertEquals(result.getLatencies().length, 81);
+			assertEquals(result.getMismatches(), 0);
+		}
+		assertEquals(QueryReplay.replay(network, log, QueryReplay.Algorithm.INDEX, 1, -1).getMismatches(), 0);
+
+		// a query that read the capture before stopCapture may end after the close, it is dropped
+		QueryLog late = new QueryLog(file.getPath());
+		late.append(5, 9, late.getOpened(), 1, 3, 3, 1.0);
+		late.close();
+		late.append(5, 9, late.getOpened(), 1, 3, 3, 1.0);
+		late.close();
+		assertEquals(late.size(), 1);
+		assertEquals(QueryLog.read(file.getPath()).size(), 1);
+	}
+
+	@Test
+	public void testMemoryReport() {
+		SocialNetwork plain = new SocialNetwork();
+		plain.loadData(sample);
+		SocialNetwork packed = new SocialNetwork(CompressedAdjacencyGraph::new);
+		packed.loadData(sample);
+		
+		for (SocialNetwork network : Arrays.asList(plain, packed)) {
+			network.findShortestPathBetween(network.getUser(new Long(5)), network.getUser(new Long(8)));
+			MemoryReport report = network.memoryReport();
+			assertEquals(report.getUsers(), network.numUsers().longValue());
+			assertTrue(report.get("graph: id map") > 0);
+			assertTrue(report.get("graph: vertices") > 0);
+			assertTrue(report.get("graph: friend sets") > 0);
+			assertTrue(report.get("search queue (peak)") > 0);
+			assertEquals(report.get("index"), 0);
+			assertEquals(report.bytesPerUser() * report.getUsers(), report.total(), 1e-6);
+			
+			// indexes are reported once built
+			network.getSkillIndex();
+			report = network.memoryReport();
+			assertTrue(report.get("index") > 0);
+			assertTrue(report.get("skill index") > 0);
+		}
+		// the compressed friend lists are smaller than the HashSets
+		assertTrue(packed.memoryReport().get("graph: friend sets") < plain.memoryReport().get("graph: friend sets"));
+	}
+	
+	@Test
+	public void testFindConstrainedPathAvoidsExcludedUsers() {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		
+		User<Long,Double,Double> s = network.getUser(new Long(5));
+		User<Long,Double,Double> d = network.getUser(new Long(8));
+		
+		SearchConstraints constraints = new SearchConstraints();
+		constraints.getExcluded().add(new Long(7));
+		
+		assertEquals(network.findConstrainedPathBetween(s, d, constraints), Arrays.asList(new Long(5),new Long(6),new Long(8)));
+		
+		constraints.getExcluded().add(new Long(6));
+		assertNull(network.findConstrainedPathBetween(s, d, constraints));
+	}
+	
+	@Test
+	public void testFindConstrainedPathWithMinimumSkill() {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		
+		User<Long,Double,Double> s = network.getUser(new Long(5));
+		User<Long,Double,Double> d = network.getUser(new Long(8));
+		
+		// 7 (skill 30) is not strong enough, 9 (skill 50) is, but can only be reached through 7
+		SearchConstraints constraints = new SearchConstraints(new HashSet<Long>(), Integer.MAX_VALUE, 40);
+		assertNull(network.findConstrainedPathBetween(s, d, constraints));
+		
+		constraints.setMinSkill(20);
+		assertEquals(network.findConstrainedPathBetween(s, d, constraints), Arrays.asList(new Long(5),new Long(7),new Long(8)));
+	}
+	
+	@Test
+	public void testFindConstrainedPathWithHopLimit() {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		
+		User<Long,Double,Double> s = network.getUser(new Long(13));
+		User<Long,Double,Double> d = network.getUser(new Long(16));
+		
+		SearchConstraints constraints = new SearchConstraints(new HashSet<Long>(), 2, 0);
+		assertEquals(network.findConstrainedPathBetween(s, d, constraints), Arrays.asList(new Long(13),new Long(14),new Long(16)));
+		
+		constraints.setMaxHops(1);
+		assertNull(network.findConstrainedPathBetween(s, d, constraints));
+	}
+	
+	@Test
+	public void testFindShortestPathWithCostModels() throws Exception {
+		SocialNetwork network = new SocialNetwork();
+		network.loadData(sample);
+		
+		User<Long,Double,Double> s = network.getUser(new Long(1));
+		User<Long,Double,Double> d = network.getUser(new Long(4));
+		
+		assertEquals(network.findShortestPathBetween(s, d, StandardCostModel.INVERSE_SKILL), Arrays.asList(new Long(1),new Long(2),new Long(4)));
+		assertEquals(network.findShortestPathBetween(s, d, StandardCostModel.FEWEST_HOPS_THEN_SKILL), Arrays.asList(new Long(1),new Long(2),new Long(4)));
+		
+		s = network.getUser(new Long(5));
+		d = network.getUser(new Long(9));
+		
+		// 5-6-8-9 goes through the weakest coder, 5-7-9 is both shorter and stronger
+		assertEquals(network.findShortestPathBetween(s, d, StandardCostModel.HOP_COUNT), Arrays.asList(new Long(5),new Long(7),new Long(9)));
+		assertEquals(network.findShortestPathBetween(s, d, StandardCostModel.LOG_SKILL), Arrays.asList(new Long(5),new Long(7),new Long(9)));
+		
+		// the models agree on the sample; here 1-2-4 has fewer hops, 1-3-5-4 stronger coders
+		network.loadData(writeDataset(
+				"{\"user\": 1, \"friends\": [2, 3], \"skill\": 1}",
+				"{\"user\": 2, \"friends\": [1, 4], \"skill\": 1}",
+				"{\"user\": 3, \"friends\": [1, 5], \"skill\": 9}",
+				"{\"user\": 4, \"friends\": [2, 5], \"skill\": 1}",
+				"{\"user\": 5, \"friends\": [3, 4], \"skill\": 9}").getPath());
+		s = network.getUser(new Long(1));
+		d = network.getUser(new Long(4));
+		assertEquals(network.findShortestPathBetween(s, d, StandardCostModel.INVERSE_SKILL), Arrays.asList(new Long(1),new Long(3),new Long(5),new Long(4)));
+		assertEquals(network.findShortestPathBetween(s, d, StandardCostModel.FEWEST_HOPS_THEN_SKILL), Arrays.asList(new Long(1),new Long(2),new Long(4)));
+		assertEquals(network.findShortestPathBetween(s, d, StandardCostModel.HOP_COUNT), Arrays.asList(new Long(1),new Long(2),new Long(4)));
+		// 1/(1 + ln 2) twice is cheaper than 1/(1 + ln 10) twice and 1/(1 + ln 2)
+		assertEquals(network.findShortestPathBetween(s, d, StandardCostModel.LOG_SKILL), Arrays.asList(new Long(1),new Long(2),new Long(4)));
+	}
+	
+	@Test
+	public void testVertexOrderingsKeepShortestPaths() {
+		for (VertexOrdering o : VertexOrdering.values()) {
+			SocialNetwork network = new SocialNetwork();
+			network.setVertexOrdering(o);
+			network.loadData(sample);
+			
+			User<Long,Double,Double> s = network.getUser(new Long(5));
+			User<Long,Double,Double> d = network.getUser(new Long(8));
+			
+			assertEquals(network.getIndex().size(), 16);
+			assertEquals(network.findShortestPathBetween(s, d, StandardCostModel.INVERSE_SKILL), Arrays.asList(new Long(5),new Long(7),new Long(8)));
+		}
+	}
+	
 	/* Tests with full dataset */
 	String task = "task.json";
 	
@@ -244,4 +1047,20 @@ public class SocialNetworkTest {
 		
 		assertEquals(path, new ArrayList<Long>(Arrays.asList(new Long(17),new Long(333621),new Long(66741))));	
 	}
+
+	/**
+	 * Writes JSON lines to a temporary dataset file.
+	 * @return the file, deleted on exit
+	 */
+	private File writeDataset(String... lines) throws IOException {
+		File file = tempFile("dataset", ".json");
+		Files.write(file.toPath(), Arrays.asList(lines));
+		return file;
+	}
+
+	private File tempFile(String prefix, String suffix) throws IOException {
+		File file = File.createTempFile(prefix, suffix);
+		file.deleteOnExit();
+		return file;
+	}
 }
@@ -0,0 +1,63 @@
+import java.util.Arrays;
+
+/**
+ * The cost models available out of the box.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public enum StandardCostModel implements CostModel {
+
+	/** Inverse skill, the cost used by findShortestPathBetween: 1/skill, or 2 for skill 0. */
+	INVERSE_SKILL {
+		@Override
+		public double[] materialise(GraphIndex graph) {
+			return graph.weights().clone();
+		}
+	},
+
+	/** Logarithmic skill: 1/(1 + ln(1 + skill)), which flattens the gap between strong coders. */
+	LOG_SKILL {
+		@Override
+		public double[] materialise(GraphIndex graph) {
+			double[] w = new double[graph.size()];
+			for (int v = 0; v < w.length; v++) {
+				w[v] = 1.0 / (1.0 + Math.log1p(graph.skillOf(v)));
+			}
+			return w;
+		}
+	},
+
+	/** Every user costs 1, i.e. the fewest intermediaries. */
+	HOP_COUNT {
+		@Override
+		public double[] materialise(GraphIndex graph) {
+			double[] w = new double[graph.size()];
+			Arrays.fill(w, 1.0);
+			return w;
+		}
+	},
+
+	/**
+	 * Fewest hops first, then the strongest coders. Each user costs 1 plus its inverse
+	 * skill scaled down so that the inverse skills of a whole path (at most 2 per user)
+	 * add up to less than a single hop.
+	 */
+	FEWEST_HOPS_THEN_SKILL {
+		@Override
+		public double[] materialise(GraphIndex graph) {
+			double[] inverse = graph.weights();
+			double scale = 1.0 / (2.0 * graph.size() + 1.0);
+			double[] w = new double[graph.size()];
+			for (int v = 0; v < w.length; v++) {
+				w[v] = 1.0 + inverse[v] * scale;
+			}
+			return w;
+		}
+	};
+
+	@Override
+	public String getName() {
+		return name();
+	}
+}
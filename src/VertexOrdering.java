@@ -0,0 +1,155 @@
+import java.util.Arrays;
+
+/**
+ * Orderings used to number the users of a GraphIndex, so that friends end up
+ * close to each other in the flat arrays and traversals touch nearby memory.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public enum VertexOrdering {
+
+	/** The order in which the graph returned its vertices. */
+	NATURAL,
+
+	/** Breadth first order, each component starting from its highest degree user. */
+	BFS,
+
+	/** Reverse Cuthill-McKee: breadth first from a low degree user, friends by increasing degree, reversed. */
+	RCM,
+
+	/** Decreasing degree, so the hubs that most searches pass through share a few cache lines. */
+	DEGREE;
+
+	/**
+	 * Computes the new position of every user.
+	 * @param graph the graph to reorder
+	 * @return rank[v] is the new dense id of the user with dense id v
+	 */
+	public int[] rank(GraphIndex graph) {
+		int n = graph.size();
+		int[] order;
+		switch (this) {
+		case BFS:
+			order = breadthFirst(graph, false);
+			break;
+		case RCM:
+			order = breadthFirst(graph, true);
+			for (int i = 0, j = n - 1; i < j; i++, j--) {
+				int t = order[i];
+				order[i] = order[j];
+				order[j] = t;
+			}
+			break;
+		case DEGREE:
+			order = byDegree(graph, false);
+			break;
+		default:
+			order = new int[n];
+			for (int v = 0; v < n; v++) {
+				order[v] = v;
+			}
+		}
+		int[] rank = new int[n];
+		for (int i = 0; i < n; i++) {
+			rank[order[i]] = i;
+		}
+		return rank;
+	}
+
+	/**
+	 * Returns the users sorted by degree, stable for equal degrees.
+	 */
+	private static int[] byDegree(GraphIndex graph, boolean ascending) {
+		int n = graph.size();
+		int maxDegree = 0;
+		for (int v = 0; v < n; v++) {
+			maxDegree = Math.max(maxDegree, graph.degree(v));
+		}
+		// counting sort on the degree
+		int[] count = new int[maxDegree + 2];
+		for (int v = 0; v < n; v++) {
+			int key = ascending ? graph.degree(v) : maxDegree - graph.degree(v);
+			count[key + 1]++;
+		}
+		for (int d = 0; d <= maxDegree; d++) {
+			count[d + 1] += count[d];
+		}
+		int[] order = new int[n];
+		for (int v = 0; v < n; v++) {
+			int key = ascending ? graph.degree(v) : maxDegree - graph.degree(v);
+			order[count[key]++] = v;
+		}
+		return order;
+	}
+
+	/**
+	 * Breadth first order over every component. Cuthill-McKee starts each component
+	 * from its lowest degree user and visits friends by increasing degree; plain BFS
+	 * starts from the highest degree user and visits friends in adjacency order.
+	 */
+	private static int[] breadthFirst(GraphIndex graph, boolean cuthillMcKee) {
+		int n = graph.size();
+		int[] offsets = graph.offsets();
+		int[] targets = graph.targets();
+		int[] starts = byDegree(graph, cuthillMcKee);
+		boolean[] visited = new boolean[n];
+		int[] order = new int[n];
+		int[] row = new int[16];
+		int tail = 0;
+
+		for (int s : starts) {
+			if (visited[s])
+				continue;
+			visited[s] = true;
+			order[tail++] = s;
+			// the order array doubles as the queue
+			for (int head = tail - 1; head < tail; head++) {
+				int u = order[head];
+				int count = 0;
+				for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+					int f = targets[i];
+					if (!visited[f]) {
+						visited[f] = true;
+						if (row.length == count)
+							row = Arrays.copyOf(row, count * 2);
+						row[count++] = f;
+					}
+				}
+				if (cuthillMcKee)
+					sortByDegree(graph, row, count);
+				System.arraycopy(row, 0, order, tail, count);
+				tail += count;
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * Sorts the first count users of the row by increasing degree (insertion sort,
+	 * rows are short; long rows fall back to a boxed sort).
+	 */
+	private static void sortByDegree(GraphIndex graph, int[] row, int count) {
+		if (count > 64) {
+			Integer[] boxed = new Integer[count];
+			for (int i = 0; i < count; i++) {
+				boxed[i] = row[i];
+			}
+			Arrays.sort(boxed, (a, b) -> Integer.compare(graph.degree(a), graph.degree(b)));
+			for (int i = 0; i < count; i++) {
+				row[i] = boxed[i];
+			}
+			return;
+		}
+		for (int i = 1; i < count; i++) {
+			int v = row[i];
+			int d = graph.degree(v);
+			int j = i - 1;
+			while (j >= 0 && graph.degree(row[j]) > d) {
+				row[j + 1] = row[j];
+				j--;
+			}
+			row[j + 1] = v;
+		}
+	}
+}
@@ -0,0 +1,98 @@
+import java.util.Arrays;
+
+/**
+ * A path of dense user ids together with its total cost.
+ * Paths are ordered by cost so they can be held in a Priority Queue.
+ *
+ * @author rabiachaudry
+ * @version 1.0
+ */
+public class WeightedPath implements Comparable<WeightedPath> {
+
+	private final int[] vertices;
+	private final double cost;
+	private final int deviation;	// index of the first vertex that differs from the parent path (Yen)
+
+	/**
+	 * Constructor: initializes the path with its vertices and cost
+	 * @param vertices the dense ids from source to destination
+	 * @param cost the total cost of the path
+	 */
+	public WeightedPath(int[] vertices, double cost) {
+		this(vertices, cost, 0);
+	}
+
+	/**
+	 * Constructor: initializes the path with its vertices, cost and deviation index
+	 * @param vertices the dense ids from source to destination
+	 * @param cost the total cost of the path
+	 * @param deviation the index of the spur vertex the path was derived from
+	 */
+	public WeightedPath(int[] vertices, double cost, int deviation) {
+		this.vertices = vertices;
+		this.cost = cost;
+		this.deviation = deviation;
+	}
+
+	/**
+	 * Returns the dense ids from source to destination.
+	 * @return the vertices of the path
+	 */
+	public int[] getVertices() {
+		return vertices;
+	}
+
+	/**
+	 * Returns the total cost of the path.
+	 * @return the cost
+	 */
+	public double getCost() {
+		return cost;
+	}
+
+	/**
+	 * Returns the number of links (hops) of the path.
+	 * @return the number of hops
+	 */
+	public int hops() {
+		return vertices.length - 1;
+	}
+
+	/**
+	 * Returns the index of the spur vertex the path was derived from.
+	 * @return the deviation index
+	 */
+	public int getDeviation() {
+		return deviation;
+	}
+
+	/**
+	 * Compare paths by cost, then by number of hops.
+	 */
+	@Override
+	public int compareTo(WeightedPath p) {
+		int c = Double.compare(this.cost, p.cost);
+		if (c != 0)
+			return c;
+		return Integer.compare(this.vertices.length, p.vertices.length);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(vertices);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null || getClass() != obj.getClass())
+			return false;
+		return Arrays.equals(vertices, ((WeightedPath) obj).vertices);
+	}
+
+	@Override
+	public String toString() {
+		return "WeightedPath [vertices=" + Arrays.toString(vertices) + ", cost=" + cost + "]";
+	}
+}